@@ -0,0 +1,150 @@
+package org.spider.railway.messaging;
+
+import org.openjdk.jmh.annotations.*;
+import org.spider.railway.messaging.message.StatusMessage;
+import org.spider.railway.messaging.message.SwitchStatusMessage;
+import org.spider.railway.messaging.message.TrainStatusMessage;
+import reactor.util.annotation.NonNull;
+
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Row preparation of MessageStoreService: bind values of a single INSERT and columns of the batch INSERT
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FillDataArrayBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    private static final OffsetDateTime TIME = OffsetDateTime.now();
+
+    private final StatusMessage[] messages = new StatusMessage[BATCH_SIZE];
+
+    private final Object[] row = new Object[12];
+
+    private final Object[][] columns = new Object[12][BATCH_SIZE];
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < BATCH_SIZE; i++)
+            messages[i] = i % 4 == 0 ? switchStatus("switch-" + i % 32, i) : trainStatus("train-" + i % 8, i);
+    }
+
+    @Benchmark
+    public Object[] fillRow() {
+        MessageStoreService.fillDataArray(messages[0], row);
+
+        return row;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object[][] fillColumns() {
+        for (int i = 0; i < BATCH_SIZE; i++)
+            MessageStoreService.fillDataArray(messages[i], i, columns);
+
+        return columns;
+    }
+
+    @NonNull
+    private static TrainStatusMessage trainStatus(@NonNull String id, int version) {
+        final OffsetDateTime time = TIME.plusNanos(version * 1_000_000L);
+
+        return new TrainStatusMessage() {
+            @Override
+            @NonNull
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            @NonNull
+            public OffsetDateTime getReceiveTimestamp() {
+                return time;
+            }
+
+            @Override
+            @NonNull
+            public OffsetDateTime getTimestamp() {
+                return time;
+            }
+
+            @Override
+            @NonNull
+            public OffsetDateTime getCorrectedTimestamp() {
+                return time;
+            }
+
+            @Override
+            public double getInternalTemp() {
+                return 41.5;
+            }
+
+            @Override
+            public long getVersion() {
+                return version;
+            }
+
+            @Override
+            public OffsetDateTime getSchemeMarkerTime() {
+                return TIME;
+            }
+
+            @Override
+            public int getSpeed() {
+                return 320;
+            }
+
+            @Override
+            public double getPower() {
+                return 0.45;
+            }
+        };
+    }
+
+    @NonNull
+    private static SwitchStatusMessage switchStatus(@NonNull String id, int version) {
+        final OffsetDateTime time = TIME.plusNanos(version * 1_000_000L);
+
+        return new SwitchStatusMessage() {
+            @Override
+            @NonNull
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            @NonNull
+            public OffsetDateTime getReceiveTimestamp() {
+                return time;
+            }
+
+            @Override
+            @NonNull
+            public OffsetDateTime getTimestamp() {
+                return time;
+            }
+
+            @Override
+            @NonNull
+            public OffsetDateTime getCorrectedTimestamp() {
+                return time;
+            }
+
+            @Override
+            public double getInternalTemp() {
+                return 39.0;
+            }
+
+            @Override
+            public long getVersion() {
+                return version;
+            }
+
+            @Override
+            public boolean getState() {
+                return version % 2 == 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,132 @@
+package org.spider.railway.messaging.parsers;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.*;
+import org.spider.railway.messaging.UdpMessagingServiceImpl;
+
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BinarySerializerBenchmark {
+    private static final OffsetDateTime TIME = OffsetDateTime.now();
+
+    private final BinarySerializer<UdpMessagingServiceImpl.HandshakeEntity> handshakeSerializer =
+            BinarySerializer.get(UdpMessagingServiceImpl.HandshakeEntity.class);
+
+    private final BinarySerializer<UdpMessagingServiceImpl.LogEntity> logSerializer =
+            BinarySerializer.get(UdpMessagingServiceImpl.LogEntity.class);
+
+    private final BinarySerializer<UdpMessagingServiceImpl.TrainStatusEntity> trainSerializer =
+            BinarySerializer.get(UdpMessagingServiceImpl.TrainStatusEntity.class);
+
+    private final BinarySerializer<UdpMessagingServiceImpl.SwitchStatusEntity> switchSerializer =
+            BinarySerializer.get(UdpMessagingServiceImpl.SwitchStatusEntity.class);
+
+    private final BinarySerializer<UdpMessagingServiceImpl.SemaphoreStatusEntity> semaphoreSerializer =
+            BinarySerializer.get(UdpMessagingServiceImpl.SemaphoreStatusEntity.class);
+
+    private final BinarySerializer<UdpMessagingServiceImpl.SwitchWithSemaphoresStatusEntity> switchWithSemaphoresSerializer =
+            BinarySerializer.get(UdpMessagingServiceImpl.SwitchWithSemaphoresStatusEntity.class);
+
+    private final UdpMessagingServiceImpl.HandshakeEntity handshake =
+            new UdpMessagingServiceImpl.HandshakeEntity("train-0001", (short) 0, TIME, (byte) 2);
+
+    private final UdpMessagingServiceImpl.LogEntity log =
+            new UdpMessagingServiceImpl.LogEntity("train-0001", TIME, (byte) 1, (byte) 3, "motor", "PID output saturated");
+
+    private final UdpMessagingServiceImpl.TrainStatusEntity train =
+            new UdpMessagingServiceImpl.TrainStatusEntity(TIME, 12, 4150, (short) 320, 45000, TIME);
+
+    private final UdpMessagingServiceImpl.SwitchStatusEntity switchStatus =
+            new UdpMessagingServiceImpl.SwitchStatusEntity(TIME, 12, 3900, true);
+
+    private final UdpMessagingServiceImpl.SemaphoreStatusEntity semaphore =
+            new UdpMessagingServiceImpl.SemaphoreStatusEntity(TIME, 12, 3900, 0x00ff00);
+
+    private final UdpMessagingServiceImpl.SwitchWithSemaphoresStatusEntity switchWithSemaphores =
+            new UdpMessagingServiceImpl.SwitchWithSemaphoresStatusEntity(TIME, 12, 3900, true, new int[] {0xff0000, 0x00ff00});
+
+    private ByteBuf buffer;
+
+    private ByteBuf handshakeBytes, logBytes, trainBytes, switchBytes, semaphoreBytes, switchWithSemaphoresBytes;
+
+    @Setup
+    public void setup() {
+        buffer = Unpooled.directBuffer(1024);
+        handshakeBytes = handshakeSerializer.serialize(Unpooled.buffer(), handshake);
+        logBytes = logSerializer.serialize(Unpooled.buffer(), log);
+        trainBytes = trainSerializer.serialize(Unpooled.buffer(), train);
+        switchBytes = switchSerializer.serialize(Unpooled.buffer(), switchStatus);
+        semaphoreBytes = semaphoreSerializer.serialize(Unpooled.buffer(), semaphore);
+        switchWithSemaphoresBytes = switchWithSemaphoresSerializer.serialize(Unpooled.buffer(), switchWithSemaphores);
+    }
+
+    @TearDown
+    public void tearDown() {
+        buffer.release();
+    }
+
+    @Benchmark
+    public ByteBuf serializeHandshake() {
+        return handshakeSerializer.serialize(buffer.clear(), handshake);
+    }
+
+    @Benchmark
+    public ByteBuf serializeLog() {
+        return logSerializer.serialize(buffer.clear(), log);
+    }
+
+    @Benchmark
+    public ByteBuf serializeTrainStatus() {
+        return trainSerializer.serialize(buffer.clear(), train);
+    }
+
+    @Benchmark
+    public ByteBuf serializeSwitchStatus() {
+        return switchSerializer.serialize(buffer.clear(), switchStatus);
+    }
+
+    @Benchmark
+    public ByteBuf serializeSemaphoreStatus() {
+        return semaphoreSerializer.serialize(buffer.clear(), semaphore);
+    }
+
+    @Benchmark
+    public ByteBuf serializeSwitchWithSemaphoresStatus() {
+        return switchWithSemaphoresSerializer.serialize(buffer.clear(), switchWithSemaphores);
+    }
+
+    @Benchmark
+    public Object deserializeHandshake() {
+        return handshakeSerializer.deserialize(handshakeBytes.duplicate());
+    }
+
+    @Benchmark
+    public Object deserializeLog() {
+        return logSerializer.deserialize(logBytes.duplicate());
+    }
+
+    @Benchmark
+    public Object deserializeTrainStatus() {
+        return trainSerializer.deserialize(trainBytes.duplicate());
+    }
+
+    @Benchmark
+    public Object deserializeSwitchStatus() {
+        return switchSerializer.deserialize(switchBytes.duplicate());
+    }
+
+    @Benchmark
+    public Object deserializeSemaphoreStatus() {
+        return semaphoreSerializer.deserialize(semaphoreBytes.duplicate());
+    }
+
+    @Benchmark
+    public Object deserializeSwitchWithSemaphoresStatus() {
+        return switchWithSemaphoresSerializer.deserialize(switchWithSemaphoresBytes.duplicate());
+    }
+}
@@ -0,0 +1,84 @@
+package org.spider.railway.messaging.parsers;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.socket.DatagramPacket;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Flux;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Framing of PACKETS datagrams with FRAMES status frames each, the datagrams are retained and rewound before every
+// invocation, so the same buffers go through the parser again
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParserUtilsBenchmark {
+    private static final int PACKETS = 64;
+
+    private static final int FRAMES = 4;
+
+    private static final int PAYLOAD_SIZE = 40;
+
+    private static final byte STATUS_CODE = 1;
+
+    private final List<DatagramPacket> packets = new ArrayList<>(PACKETS);
+
+    @Setup
+    public void setup() {
+        final InetSocketAddress recipient = new InetSocketAddress("127.0.0.1", 10037);
+
+        for (int i = 0; i < PACKETS; i++) {
+            final ByteBuf buf = Unpooled.directBuffer(FRAMES * (PAYLOAD_SIZE + 3));
+
+            for (int frame = 0; frame < FRAMES; frame++) {
+                buf.writeShortLE(PAYLOAD_SIZE + 1);
+                buf.writeByte(STATUS_CODE);
+                buf.writeZero(PAYLOAD_SIZE);
+            }
+
+            packets.add(new DatagramPacket(buf, recipient, new InetSocketAddress("10.0.0." + (i % 16 + 1), 10037)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        packets.forEach(DatagramPacket::release);
+    }
+
+    @Setup(Level.Invocation)
+    public void rewind() {
+        for (DatagramPacket packet : packets) {
+            packet.retain();
+            packet.content().readerIndex(0);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS * FRAMES)
+    public void parsePackets(Blackhole blackhole) {
+        ParserUtils.parsePackets(Flux.fromIterable(packets))
+                .doOnNext(frame -> {
+                    blackhole.consume(frame.getT1());
+                    frame.getT3().release();
+                })
+                .blockLast();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS * FRAMES)
+    public void parseBatches(Blackhole blackhole) {
+        ParserUtils.parseBatches(Flux.just(packets), InetSocketAddress::hashCode, 4)
+                .doOnNext(batch -> {
+                    for (int i = 0; i < batch.size(); i++)
+                        blackhole.consume(batch.code(i));
+
+                    batch.release();
+                })
+                .blockLast();
+    }
+}
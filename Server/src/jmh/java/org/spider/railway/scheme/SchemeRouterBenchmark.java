@@ -0,0 +1,99 @@
+package org.spider.railway.scheme;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Routes between random links of two parallel tracks with a crossover every fourth piece, the switches in random
+// states. Only the pairs with a route are asked for, the search is not cached.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SchemeRouterBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"64", "1024"})
+    private int pieces;
+
+    private SchemeRouter router;
+
+    private long[] states;
+
+    private final int[] froms = new int[QUERIES];
+
+    private final int[] tos = new int[QUERIES];
+
+    private int query;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(5);
+        final List<SchemeNode> nodes = new ArrayList<>();
+        SchemeConnector lastA = null, lastB = null;
+
+        for (int i = 0; i < pieces; i++) {
+            final double x = i * 240.0;
+
+            if (i % 4 == 1) {
+                // Crossover from A to B rightwards or leftwards
+                final boolean right = random.nextBoolean();
+                final SchemeCoords middle = new SchemeCoords(x + 120, 31);
+                final SchemeSwitch a = new SchemeSwitch("SA" + i, new SchemeCoords(right ? x : x + 240, 0),
+                        new SchemeCoords(right ? x + 240 : x, 0), 240, middle, 135, List.of());
+                final SchemeSwitch b = new SchemeSwitch("SB" + i, new SchemeCoords(right ? x + 240 : x, 62),
+                        new SchemeCoords(right ? x : x + 240, 62), 240, middle, 135, List.of());
+
+                a.addBidirectionalExternalLink(a.getDiverging(), b.getDiverging());
+                if (lastA != null) {
+                    a.addBidirectionalExternalLink(lastA, right ? a.getRoot() : a.getStraight());
+                    b.addBidirectionalExternalLink(lastB, right ? b.getStraight() : b.getRoot());
+                }
+
+                lastA = right ? a.getStraight() : a.getRoot();
+                lastB = right ? b.getRoot() : b.getStraight();
+                nodes.add(a);
+                nodes.add(b);
+            } else {
+                final SchemeLine a = new SchemeLine("A" + i, new SchemeCoords(x, 0), new SchemeCoords(x + 240, 0), 240);
+                final SchemeLine b = new SchemeLine("B" + i, new SchemeCoords(x, 62), new SchemeCoords(x + 240, 62), 240);
+
+                if (lastA != null) {
+                    a.addBidirectionalExternalLink(lastA, a.getConnector1());
+                    b.addBidirectionalExternalLink(lastB, b.getConnector1());
+                }
+
+                lastA = a.getConnector2();
+                lastB = b.getConnector2();
+                nodes.add(a);
+                nodes.add(b);
+            }
+        }
+
+        final SchemeGraph graph = SchemeGraph.compile(0, nodes, List.of());
+
+        for (SchemeNode node : nodes)
+            if (node instanceof SchemeSwitch)
+                graph.setSwitchState(node.getId(), random.nextBoolean());
+
+        router = new SchemeRouter(graph, 100);
+        states = graph.getSwitchStates();
+
+        for (int i = 0; i < QUERIES; ) {
+            froms[i] = random.nextInt(graph.getLinkCount());
+            tos[i] = random.nextInt(graph.getLinkCount());
+
+            if (router.route(froms[i], tos[i], states) != null)
+                i++;
+        }
+    }
+
+    @Benchmark
+    public int[] route() {
+        final int i = query++ & (QUERIES - 1);
+
+        return router.route(froms[i], tos[i], states);
+    }
+}
@@ -0,0 +1,30 @@
+package org.spider.railway.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Every thread adds and polls the same shared queue, the queue stays short and the CAS on its head is contended
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SingleLinkedQueueBenchmark {
+    private final SingleLinkedQueue<String> queue = new SingleLinkedQueue<>();
+
+    @Benchmark
+    public String addPoll() {
+        queue.add("uuid");
+
+        return queue.poll();
+    }
+
+    @Benchmark
+    public void add() {
+        queue.add("uuid");
+
+        // Keeps the queue from growing without bounds between iterations
+        if (queue.getSize() > 1_000_000)
+            while (queue.poll() != null)
+                ;
+    }
+}
@@ -0,0 +1,121 @@
+package org.spider.railway.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Nearest track lookups of a train position against a layout of random walks of lines and curves, the positions
+// are close to the track like the ones of trains. linear is the scan the index replaces.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrackIndexBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"256", "4096"})
+    private int pieces;
+
+    private TrackIndex<Integer> index;
+
+    // kind, then the segment ends or the center, radius, start and sweep of the arc
+    private double[][] shapes;
+
+    private final double[] xs = new double[QUERIES];
+
+    private final double[] ys = new double[QUERIES];
+
+    private int query;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(17);
+        final TrackIndex.Builder<Integer> builder = TrackIndex.builder();
+        shapes = new double[pieces][];
+
+        double x = 0, y = 0;
+        int heading = 0;
+
+        for (int i = 0; i < pieces; i++) {
+            if (random.nextBoolean()) {
+                final int length = 119 + random.nextInt(120);
+                final double toX = x + length * Geometry.cos(heading), toY = y + length * Geometry.sin(heading);
+
+                builder.segment(i, x, y, toX, toY);
+                shapes[i] = new double[] {0, x, y, toX, toY};
+                x = toX;
+                y = toY;
+            } else {
+                final int radius = random.nextBoolean() ? 422 : 908;
+                final int degrees = random.nextBoolean() ? 15 : -15;
+                final int rad = degrees < 0 ? -radius : radius;
+                final double centerX = x - rad * Geometry.sin(heading), centerY = y + rad * Geometry.cos(heading);
+                final double start = Geometry.toRadians(heading + (degrees < 0 ? 90 : -90));
+
+                builder.arc(i, centerX, centerY, radius, start, Geometry.toRadians(degrees));
+                shapes[i] = new double[] {1, centerX, centerY, radius, start};
+                x += rad * (Geometry.sin(heading + degrees) - Geometry.sin(heading));
+                y -= rad * (Geometry.cos(heading + degrees) - Geometry.cos(heading));
+                heading = Geometry.normalize(heading + degrees);
+            }
+
+            // A new track somewhere else now and then, so the layout is not one long line
+            if (random.nextInt(64) == 0) {
+                x = random.nextDouble() * 50_000;
+                y = random.nextDouble() * 50_000;
+                heading = random.nextInt(24) * 15;
+            }
+        }
+
+        index = builder.build();
+
+        for (int i = 0; i < QUERIES; i++) {
+            final double[] shape = shapes[random.nextInt(pieces)];
+            final double startX = shape[0] == 0 ? shape[1] : shape[1] + shape[3] * Math.cos(shape[4]);
+            final double startY = shape[0] == 0 ? shape[2] : shape[2] + shape[3] * Math.sin(shape[4]);
+
+            xs[i] = startX + random.nextGaussian() * 50;
+            ys[i] = startY + random.nextGaussian() * 50;
+        }
+    }
+
+    @Benchmark
+    public int nearest() {
+        final int i = query++ & (QUERIES - 1);
+
+        return index.nearestShape(xs[i], ys[i], Double.POSITIVE_INFINITY);
+    }
+
+    @Benchmark
+    public List<TrackIndex.Hit<Integer>> nearest4() {
+        final int i = query++ & (QUERIES - 1);
+
+        return index.nearest(xs[i], ys[i], 4);
+    }
+
+    @Benchmark
+    public List<TrackIndex.Hit<Integer>> within500() {
+        final int i = query++ & (QUERIES - 1);
+
+        return index.within(xs[i], ys[i], 500);
+    }
+
+    @Benchmark
+    public int linear() {
+        final int i = query++ & (QUERIES - 1);
+        int result = -1;
+        double min = Double.POSITIVE_INFINITY;
+
+        for (int shape = 0; shape < index.size(); shape++) {
+            final double distance = index.getDistance(shape, xs[i], ys[i]);
+
+            if (distance < min) {
+                min = distance;
+                result = shape;
+            }
+        }
+
+        return result;
+    }
+}
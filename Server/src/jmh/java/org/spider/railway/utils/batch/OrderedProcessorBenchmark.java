@@ -0,0 +1,46 @@
+package org.spider.railway.utils.batch;
+
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Producers put into one shared processor. The processing function either completes in place or hops to another
+// thread, as the database writers do, so the producers race with the consumer for the queue head.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrderedProcessorBenchmark {
+    @Param({"SYNC", "ASYNC"})
+    public String consumer;
+
+    @Param({"UNBOUNDED", "DROP_OLDEST", "BATCHED"})
+    public String options;
+
+    private OrderedProcessor<Integer, Void> processor;
+
+    // Written by the consumer thread, a Blackhole can't be shared with it
+    private int consumed;
+
+    @Setup
+    public void setup() {
+        final BatchProcessor.Options processorOptions = switch (options) {
+            case "DROP_OLDEST" -> new BatchProcessor.Options(10_000, OverflowPolicy.DROP_OLDEST);
+            case "BATCHED" -> new BatchProcessor.Options(100_000, OverflowPolicy.DROP_OLDEST, 1000, Duration.ofMillis(1));
+            default -> BatchProcessor.Options.UNBOUNDED;
+        };
+
+        processor = new OrderedProcessor<>(tuples -> {
+            final Mono<Void> result = Mono.fromRunnable(() -> tuples.forEach(tuple -> consumed += tuple.getT1()));
+
+            return "ASYNC".equals(consumer) ? result.subscribeOn(Schedulers.parallel()) : result;
+        }, processorOptions, null, null);
+    }
+
+    @Benchmark
+    public void process() {
+        processor.process(42);
+    }
+}
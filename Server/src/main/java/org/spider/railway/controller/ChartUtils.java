@@ -0,0 +1,80 @@
+package org.spider.railway.controller;
+
+import org.spider.railway.messaging.message.StatusMessage;
+import org.spider.railway.statuses.StatusService;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+// Points of the live charts. The mapper turns a status into a point or null for the statuses without the metric.
+class ChartUtils {
+    static final long MAX_MS_IN_CHARTS = 1L * 60_000L;
+
+    static final long DEFAULT_STREAM_INTERVAL_MS = 250L;
+
+    static final long MIN_STREAM_INTERVAL_MS = 50L;
+
+    static final int MAX_HISTORY_POINTS = 5_000;
+
+    // The last minute, between two empty points at its ends so the chart always spans the whole minute
+    @NonNull
+    static <P> Flux<P> getChartData(@NonNull StatusService statusService,
+                                    @NonNull String itemId,
+                                    @NonNull Function<StatusMessage, P> mapper,
+                                    @NonNull LongFunction<P> emptyPoint) {
+        return Flux.defer(() -> {
+            final OffsetDateTime now = OffsetDateTime.now();
+
+            return Flux.concat(
+                    Flux.just(emptyPoint.apply(now.toInstant().toEpochMilli() - MAX_MS_IN_CHARTS)),
+                    statusService.getMessages(itemId, now.minus(MAX_MS_IN_CHARTS, ChronoUnit.MILLIS), now)
+                            .mapNotNull(mapper),
+                    Flux.just(emptyPoint.apply(now.toInstant().toEpochMilli())));
+        });
+    }
+
+    @NonNull
+    static <P> Flux<List<P>> streamPoints(@NonNull StatusService statusService,
+                                          @NonNull String itemId,
+                                          @Nullable Long since,
+                                          @Nullable Long interval,
+                                          @NonNull Function<StatusMessage, P> mapper) {
+        final long intervalMs = interval == null ? DEFAULT_STREAM_INTERVAL_MS : Math.max(MIN_STREAM_INTERVAL_MS, interval);
+
+        return statusService.streamMessages(itemId, since, MAX_MS_IN_CHARTS, Duration.ofMillis(intervalMs))
+                .map(messages -> {
+                    final List<P> result = new ArrayList<>(messages.size());
+
+                    for (StatusMessage message : messages) {
+                        final P point = mapper.apply(message);
+
+                        if (point != null)
+                            result.add(point);
+                    }
+
+                    return result;
+                });
+    }
+
+    // Last-Event-ID is the timestamp of the last point of an event, so a reconnecting EventSource resumes from it
+    @NonNull
+    static <P> Flux<ServerSentEvent<List<P>>> toEvents(@NonNull Flux<List<P>> points, @NonNull ToLongFunction<P> x) {
+        return points.map(list -> ServerSentEvent.<List<P>>builder(list)
+                .id(list.isEmpty() ? null : Long.toString(x.applyAsLong(list.get(list.size() - 1))))
+                .build());
+    }
+
+    static int limitHistoryPoints(int points) {
+        return Math.min(Math.max(points, 2), MAX_HISTORY_POINTS);
+    }
+}
@@ -0,0 +1,102 @@
+package org.spider.railway.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.spider.railway.logger.LoggerServiceImpl;
+import org.spider.railway.messaging.EventTap;
+import org.spider.railway.messaging.IngestShard;
+import org.spider.railway.messaging.MessageStoreService;
+import org.spider.railway.messaging.UdpMessagingServiceImpl;
+import org.spider.railway.utils.batch.BatchProcessor;
+import org.spider.railway.utils.spool.Spool;
+import org.spider.railway.utils.spool.SpoolService;
+import org.spider.railway.utils.udp.UdpServer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RestController
+@RequestMapping("/api/messaging")
+@Slf4j
+public class MessagingController {
+    private final UdpMessagingServiceImpl udpMessagingService;
+
+    private final SpoolService spoolService;
+
+    private final MessageStoreService messageStoreService;
+
+    private final LoggerServiceImpl loggerService;
+
+    private final EventTap eventTap;
+
+    @Autowired
+    public MessagingController(UdpMessagingServiceImpl udpMessagingService, SpoolService spoolService,
+                               MessageStoreService messageStoreService, LoggerServiceImpl loggerService,
+                               EventTap eventTap) {
+        this.udpMessagingService = udpMessagingService;
+        this.spoolService = spoolService;
+        this.messageStoreService = messageStoreService;
+        this.loggerService = loggerService;
+        this.eventTap = eventTap;
+    }
+
+    @GetMapping(value = "shards", produces = MediaType.APPLICATION_JSON_VALUE)
+    @NonNull
+    public Flux<IngestShard.Statistics> getShards() {
+        return Flux.defer(() -> Flux.fromIterable(udpMessagingService.getShardStatistics()));
+    }
+
+    @GetMapping(value = "sockets", produces = MediaType.APPLICATION_JSON_VALUE)
+    @NonNull
+    public Flux<UdpServer.SocketStatistics> getSockets() {
+        return Flux.defer(() -> Flux.fromIterable(udpMessagingService.getSocketStatistics()));
+    }
+
+    @GetMapping(value = "sockets/kernel", produces = MediaType.APPLICATION_JSON_VALUE)
+    @NonNull
+    public Flux<UdpServer.KernelStatistics> getKernelSockets() {
+        return Flux.defer(() -> Flux.fromIterable(udpMessagingService.getKernelStatistics()));
+    }
+
+    @GetMapping(value = "spools", produces = MediaType.APPLICATION_JSON_VALUE)
+    @NonNull
+    public Mono<Map<String, Spool.Statistics>> getSpools() {
+        return Mono.fromSupplier(spoolService::getStatistics);
+    }
+
+    @GetMapping(value = "processors", produces = MediaType.APPLICATION_JSON_VALUE)
+    @NonNull
+    public Mono<Map<String, BatchProcessor.Statistics>> getProcessors() {
+        return Mono.fromSupplier(() -> {
+            final Map<String, BatchProcessor.Statistics> result = new TreeMap<>(messageStoreService.getProcessorStatistics());
+            result.put("log-store", loggerService.getProcessorStatistics());
+
+            return result;
+        });
+    }
+
+    // Recent raw frames, newest first. With a client id only the frames from its current address.
+    @GetMapping(value = "frames", produces = MediaType.APPLICATION_JSON_VALUE)
+    @NonNull
+    public Flux<EventTap.Frame> getFrames(@RequestParam(defaultValue = "100") int limit,
+                                          @RequestParam(required = false) @Nullable String client) {
+        return Flux.defer(() -> {
+            final InetSocketAddress sender = client == null ? null : udpMessagingService.getClientAddress(client);
+
+            if (client != null && sender == null)
+                return Flux.empty();
+
+            return Flux.fromIterable(eventTap.getFrames(limit, sender));
+        });
+    }
+}
@@ -5,22 +5,28 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.spider.railway.utils.Geometry;
 import org.spider.railway.utils.MathUtils;
+import org.spider.railway.utils.TrackIndex;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.FluxSink;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
 import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
 
-import java.math.BigDecimal;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.spider.railway.utils.MathUtils.*;
@@ -219,21 +225,21 @@ public class SchemeController {
     @Getter
     @Setter
     public static abstract class LineItem extends TwoPointItem {
-        private final BigDecimal length;
+        private final int length;
 
         public LineItem(@NonNull String id, int length, AbstractItem child) {
             super(id, child);
-            this.length = toBigDecimal(length);
+            this.length = length;
         }
 
         public LineItem(@NonNull String id, int length, TwoPointItem child) {
             super(id, child);
-            this.length = toBigDecimal(length);
+            this.length = length;
         }
 
         public LineItem(@NonNull String id, int length, TreePointItem child) {
             super(id, child);
-            this.length = toBigDecimal(length);
+            this.length = length;
         }
 
         public LineItem(@NonNull String id, int length) {
@@ -251,31 +257,27 @@ public class SchemeController {
         }
     }
 
-    private static final BigDecimal DEGREE_180 = toBigDecimal(180);
-
-    @NonNull
-    private static BigDecimal fromDegree(int degree) {
-        return toBigDecimal(degree).multiply(PI).divide(DEGREE_180, PRECISION);
-    }
-
     @Getter
     @Setter
     public static abstract class RadiusItem extends TwoPointItem {
-        private final BigDecimal radius;
-        private final BigDecimal angle;
+        private final int radius;
+        private final int degrees;
+        private final double angle;
 
         public RadiusItem(@NonNull String id, int radius, int degree, AbstractItem child) {
             super(id, child);
 
-            this.radius = toBigDecimal(radius);
-            this.angle = fromDegree(degree);
+            this.radius = radius;
+            this.degrees = degree;
+            this.angle = Geometry.toRadians(degree);
         }
 
         public RadiusItem(@NonNull String id, int radius, int degree, TwoPointItem child) {
             super(id, child);
 
-            this.radius = toBigDecimal(radius);
-            this.angle = fromDegree(degree);
+            this.radius = radius;
+            this.degrees = degree;
+            this.angle = Geometry.toRadians(degree);
         }
 
         public RadiusItem(@NonNull String id, int radius, int degree) {
@@ -619,14 +621,20 @@ public class SchemeController {
             if (rightChild != null)
                 rightChild.setRoot(this);
         }
+
+        public abstract int getLineLength();
+
+        public abstract int getDegrees();
+
+        public abstract int getRadius();
     }
 
     public static class SwitchLineRight extends TreePointItem {
-        private static final BigDecimal LINE_LENGTH = toBigDecimal(239);
+        private static final int LINE_LENGTH = 239;
 
-        private static final BigDecimal ANGLE = fromDegree(-15);
+        private static final int DEGREES = -15;
 
-        private static final BigDecimal RADIUS = toBigDecimal(908);
+        private static final int RADIUS = 908;
 
         public SwitchLineRight(@NonNull String id) {
             super(id);
@@ -651,28 +659,25 @@ public class SchemeController {
             visitor.visit(this, context);
         }
 
-        @NonNull
-        public BigDecimal getLineLength() {
+        public int getLineLength() {
             return LINE_LENGTH;
         }
 
-        @NonNull
-        public BigDecimal getAngle() {
-            return ANGLE;
+        public int getDegrees() {
+            return DEGREES;
         }
 
-        @NonNull
-        public BigDecimal getRadius() {
+        public int getRadius() {
             return RADIUS;
         }
     }
 
     public static class SwitchLineLeft extends TreePointItem {
-        private static final BigDecimal LINE_LENGTH = toBigDecimal(239);
+        private static final int LINE_LENGTH = 239;
 
-        private static final BigDecimal ANGLE = fromDegree(15);
+        private static final int DEGREES = 15;
 
-        private static final BigDecimal RADIUS = toBigDecimal(908);
+        private static final int RADIUS = 908;
 
         public SwitchLineLeft(@NonNull String id) {
             super(id);
@@ -697,28 +702,25 @@ public class SchemeController {
             visitor.visit(this, context);
         }
 
-        @NonNull
-        public BigDecimal getLineLength() {
+        public int getLineLength() {
             return LINE_LENGTH;
         }
 
-        @NonNull
-        public BigDecimal getAngle() {
-            return ANGLE;
+        public int getDegrees() {
+            return DEGREES;
         }
 
-        @NonNull
-        public BigDecimal getRadius() {
+        public int getRadius() {
             return RADIUS;
         }
     }
 
     public static class SwitchR2Right extends TreePointItem {
-        private static final BigDecimal LINE_LENGTH = toBigDecimal(61);
+        private static final int LINE_LENGTH = 61;
 
-        private static final BigDecimal ANGLE = fromDegree(-30);
+        private static final int DEGREES = -30;
 
-        private static final BigDecimal RADIUS = toBigDecimal(422);
+        private static final int RADIUS = 422;
 
         public SwitchR2Right(@NonNull String id) {
             super(id);
@@ -743,28 +745,25 @@ public class SchemeController {
             visitor.visit(this, context);
         }
 
-        @NonNull
-        public BigDecimal getLineLength() {
+        public int getLineLength() {
             return LINE_LENGTH;
         }
 
-        @NonNull
-        public BigDecimal getAngle() {
-            return ANGLE;
+        public int getDegrees() {
+            return DEGREES;
         }
 
-        @NonNull
-        public BigDecimal getRadius() {
+        public int getRadius() {
             return RADIUS;
         }
     }
 
     public static class SwitchR2Left extends TreePointItem {
-        private static final BigDecimal LINE_LENGTH = toBigDecimal(61);
+        private static final int LINE_LENGTH = 61;
 
-        private static final BigDecimal ANGLE = fromDegree(30);
+        private static final int DEGREES = 30;
 
-        private static final BigDecimal RADIUS = toBigDecimal(422);
+        private static final int RADIUS = 422;
 
         public SwitchR2Left(@NonNull String id) {
             super(id);
@@ -789,18 +788,15 @@ public class SchemeController {
             visitor.visit(this, context);
         }
 
-        @NonNull
-        public BigDecimal getLineLength() {
+        public int getLineLength() {
             return LINE_LENGTH;
         }
 
-        @NonNull
-        public BigDecimal getAngle() {
-            return ANGLE;
+        public int getDegrees() {
+            return DEGREES;
         }
 
-        @NonNull
-        public BigDecimal getRadius() {
+        public int getRadius() {
             return RADIUS;
         }
     }
@@ -810,111 +806,163 @@ public class SchemeController {
     public static class ItemDto {
         private final String id;
         private final String type;
-        private final BigDecimal x, y, angle;
+        private final double x, y, angle;
     }
 
     @AllArgsConstructor
     @Getter
     public static class PositionedItem {
         private final SchemeItem item;
-        private final BigDecimal x, y, angle;
+        private final double x, y, angle;
+        private final int degrees;
     }
 
-    @Getter
-    @Setter
-    private static class DirectionContext extends ContextBase {
-        BigDecimal currentX, currentY, currentAngle;
+    // Position and heading of the layout walk. The pieces only turn by whole degrees, so the walk is described
+    // by moves, turns and arcs of integer lengths and angles.
+    static abstract class LayoutContext<C extends LayoutContext<C>> extends ContextBase {
         SchemeItem parent;
 
-        public DirectionContext() {
-            clearData();
-            this.parent = null;
+        protected LayoutContext() {
+            super();
         }
 
-        DirectionContext(@NonNull DirectionContext from) {
+        protected LayoutContext(@NonNull LayoutContext<C> from) {
             super(from.visited);
 
-            this.currentX = from.currentX;
-            this.currentY = from.currentY;
-            this.currentAngle = from.currentAngle;
             this.parent = from.parent;
         }
 
-        private void setPositiveAngle(@NonNull BigDecimal angle) {
-            BigDecimal result = angle;
+        public void setParent(SchemeItem parent) {
+            this.parent = parent;
+        }
+
+        @NonNull
+        public abstract C turn(int degrees);
 
-            while (result.compareTo(DOUBLE_PI) >= 0)
-                result = result.subtract(DOUBLE_PI);
+        @NonNull
+        public abstract C move(int length);
 
-            this.currentAngle = result;
+        @NonNull
+        public abstract C arc(int radius, int degrees);
+
+        public abstract void clearData();
+
+        @NonNull
+        public abstract C copy();
+
+        @NonNull
+        public abstract PositionedItem toPosition(@NonNull SchemeItem item);
+    }
+
+    @Getter
+    private static class DirectionContext extends LayoutContext<DirectionContext> {
+        double currentX, currentY;
+        int currentDegrees;
+
+        public DirectionContext() {
+            clearData();
         }
 
-        private void setNegativeAngle(@NonNull BigDecimal angle) {
-            BigDecimal result = angle;
+        DirectionContext(@NonNull DirectionContext from) {
+            super(from);
 
-            while (result.compareTo(MINUS_DOUBLE_PI) <= 0)
-                result = result.add(DOUBLE_PI);
+            this.currentX = from.currentX;
+            this.currentY = from.currentY;
+            this.currentDegrees = from.currentDegrees;
+        }
 
-            this.currentAngle = result;
+        DirectionContext(@NonNull PositionedItem item) {
+            this.currentX = item.getX();
+            this.currentY = item.getY();
+            this.currentDegrees = item.getDegrees();
         }
 
-        private void setAngle(@NonNull BigDecimal angle) {
-            if (angle.compareTo(ZERO) < 0)
-                setNegativeAngle(angle);
-            else
-                setPositiveAngle(angle);
+        @Override
+        @NonNull
+        public DirectionContext turn(int degrees) {
+            this.currentDegrees = Geometry.normalize(this.currentDegrees + degrees);
+            return this;
         }
 
+        @Override
         @NonNull
-        public DirectionContext rotate(@NonNull BigDecimal angle) {
-            setAngle(this.currentAngle.add(angle));
+        public DirectionContext move(int length) {
+            this.currentX += length * Geometry.cos(this.currentDegrees);
+            this.currentY += length * Geometry.sin(this.currentDegrees);
+
             return this;
         }
 
+        // The center is radius to the left of the heading (to the right for a negative angle), the point is
+        // rotated around it: p = c + rad * (sin(h + a), -cos(h + a)) with c = p0 - rad * (sin h, -cos h)
+        @Override
         @NonNull
-        public DirectionContext move(@NonNull BigDecimal dx, @NonNull BigDecimal dy) {
-            final PointE p = MathUtils.rotate(dx, dy, this.currentAngle);
+        public DirectionContext arc(int radius, int degrees) {
+            final int rad = degrees < 0 ? -radius : radius;
+            final int end = this.currentDegrees + degrees;
 
-            this.currentX = this.currentX.add(p.x());
-            this.currentY = this.currentY.add(p.y());
+            this.currentX += rad * (Geometry.sin(end) - Geometry.sin(this.currentDegrees));
+            this.currentY -= rad * (Geometry.cos(end) - Geometry.cos(this.currentDegrees));
 
-            return this;
+            return turn(degrees);
         }
 
+        // move() which adds the passed piece to the index
         @NonNull
-        public DirectionContext rotate(@NonNull BigDecimal radius, @NonNull BigDecimal angle) {
-            final BigDecimal rad = angle.compareTo(ZERO) < 0 ? radius.negate() : radius;
-            final PointE center = MathUtils.rotate(this.currentX, this.currentY,
-                                    this.currentX, this.currentY.add(rad), this.currentAngle);
-            final PointE p = MathUtils.rotate(center.x(), center.y(), this.currentX, this.currentY, angle);
-
-            this.currentX = p.x();
-            this.currentY = p.y();
-            setAngle(this.currentAngle.add(angle));
+        public DirectionContext move(int length, @NonNull TrackIndex.Builder<PositionedItem> builder,
+                                     @NonNull PositionedItem item) {
+            final double x = this.currentX, y = this.currentY;
+
+            move(length);
+            builder.segment(item, x, y, this.currentX, this.currentY);
+
             return this;
         }
 
+        // arc() which adds the passed piece to the index, the point starts at the angle of the heading - 90
+        // around the center (+ 90 for a negative angle)
+        @NonNull
+        public DirectionContext arc(int radius, int degrees, @NonNull TrackIndex.Builder<PositionedItem> builder,
+                                    @NonNull PositionedItem item) {
+            final int rad = degrees < 0 ? -radius : radius;
+
+            builder.arc(item, this.currentX - rad * Geometry.sin(this.currentDegrees),
+                    this.currentY + rad * Geometry.cos(this.currentDegrees), radius,
+                    Geometry.toRadians(this.currentDegrees + (degrees < 0 ? 90 : -90)), Geometry.toRadians(degrees));
+
+            return arc(radius, degrees);
+        }
+
+        @Override
         public void clearData() {
-            this.currentX = ZERO;
-            this.currentY = ZERO;
-            this.currentAngle = ZERO;
+            this.currentX = 0;
+            this.currentY = 0;
+            this.currentDegrees = 0;
         }
 
+        @Override
         @NonNull
         public DirectionContext copy() {
             return new DirectionContext(this);
         }
 
+        @Override
         @NonNull
         public PositionedItem toPosition(@NonNull SchemeItem item) {
-            return new PositionedItem(item, this.currentX, this.currentY, this.currentAngle);
+            return new PositionedItem(item, this.currentX, this.currentY,
+                    Geometry.toRadians(this.currentDegrees), this.currentDegrees);
         }
     }
 
+    // Heading of the first piece, half a turn plus 30 degrees
+    private static final int START_DEGREES = 210;
+
     private final SchemeItem rootItem;
 
     private final Mono<List<PositionedItem>> items = listAll().collectList().cache();
 
+    private final Mono<TrackIndex<PositionedItem>> index = items.map(SchemeController::buildIndex).cache();
+
     public SchemeController() {
         final R2R lastSegmentLeft1 = new R2R("1-5");
         final R2R segmentLeft1 = new R2R("1-1", new R2R("1-2", new G119("1-3", new R2R("1-4", lastSegmentLeft1))));
@@ -967,46 +1015,102 @@ public class SchemeController {
 
     @PostConstruct
     protected void init() {
-        findNearest(new PointE(ZERO, ZERO))
+        findNearest(new Point(0, 0))
                 .subscribeOn(Schedulers.boundedElastic())
                 .subscribe(p -> {
                     log.info("Found: {} - {}", p.getT1().getItem().getId(), p.getT2());
                 });
     }
 
+    // Lines are segments, curves arcs and switches a segment and an arc (two arcs for the R2 ones)
     @NonNull
-    private Mono<Tuple2<PositionedItem, BigDecimal>> findNearest(@NonNull MathUtils.PointE point) {
-        return items.flatMap(items -> {
-                PositionedItem result = null;
-                BigDecimal minDistance = MAX_VALUE;
-
-                for (PositionedItem item : items) {
-                    BigDecimal distance = minDistance;
-                    final PointE startPoint = MathUtils.rotate(item.getX(), item.getY(), item.getAngle());
-
-                    if (item.getItem() instanceof LineItem line) {
-                        final PointE endPoint = MathUtils.rotate(startPoint.x(), startPoint.y(),
-                                        startPoint.x().add(line.getLength()), startPoint.y(), item.getAngle());
-                        distance = MathUtils.getDistanceToLine(point, startPoint, endPoint);
-                    }
+    private static TrackIndex<PositionedItem> buildIndex(@NonNull List<PositionedItem> items) {
+        final TrackIndex.Builder<PositionedItem> builder = TrackIndex.builder();
+
+        for (PositionedItem item : items) {
+            if (item.getItem() instanceof LineItem line) {
+                new DirectionContext(item).move(line.getLength(), builder, item);
+            } else if (item.getItem() instanceof RadiusItem radius) {
+                new DirectionContext(item).arc(radius.getRadius(), radius.getDegrees(), builder, item);
+            } else if (item.getItem() instanceof SwitchR2Right || item.getItem() instanceof SwitchR2Left) {
+                final TreePointItem sw = (TreePointItem) item.getItem();
+
+                new DirectionContext(item).arc(sw.getRadius(), sw.getDegrees(), builder, item);
+                new DirectionContext(item).move(sw.getLineLength(), builder, item)
+                        .arc(sw.getRadius(), sw.getDegrees(), builder, item);
+            } else if (item.getItem() instanceof TreePointItem sw) {
+                new DirectionContext(item).move(sw.getLineLength(), builder, item);
+                new DirectionContext(item).arc(sw.getRadius(), sw.getDegrees(), builder, item);
+            }
+        }
 
-                    if (distance.compareTo(minDistance) < 0) {
-                        result = item;
-                        minDistance = distance;
-                    }
-                }
+        return builder.build();
+    }
 
-                return result == null ? Mono.empty() : Mono.just(Tuples.of(result, minDistance));
+    @NonNull
+    private Mono<Tuple2<PositionedItem, Double>> findNearest(@NonNull MathUtils.Point point) {
+        return index.flatMap(index -> {
+                final TrackIndex.Hit<PositionedItem> hit = index.nearest(point.x(), point.y());
+
+                return hit == null ? Mono.empty() : Mono.just(Tuples.of(hit.value(), hit.distance()));
             });
     }
 
+    public record NearestDto(
+        @NonNull String id,
+        @NonNull String type,
+        double distance
+    ) {}
+
+    // The limit nearest pieces, or all of them within the radius when it is set
+    @GetMapping(value = "nearest", produces = MediaType.APPLICATION_JSON_VALUE)
+    @NonNull
+    public Mono<List<NearestDto>> getNearest(@RequestParam double x, @RequestParam double y,
+                                             @RequestParam(defaultValue = "1") int limit,
+                                             @RequestParam(required = false) @Nullable Double radius) {
+        if (limit <= 0)
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive"));
+
+        if (radius != null && !(radius >= 0))
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "radius must not be negative"));
+
+        return index.map(index -> {
+            if (radius != null)
+                return toNearest(index.within(x, y, radius), Integer.MAX_VALUE);
+
+            // An item is any number of shapes (a switch is three, a long arc is split), so the nearest shapes are
+            // taken in growing numbers until they cover limit items or the whole index
+            for (int k = limit; ; k = (int)Math.min(2L * k, Integer.MAX_VALUE)) {
+                final List<TrackIndex.Hit<PositionedItem>> hits = index.nearest(x, y, k);
+                final List<NearestDto> result = toNearest(hits, limit);
+
+                if (result.size() >= limit || hits.size() < k || k == Integer.MAX_VALUE)
+                    return result;
+            }
+        });
+    }
+
+    // Every item once, at the distance of its nearest shape
+    @NonNull
+    private static List<NearestDto> toNearest(@NonNull List<TrackIndex.Hit<PositionedItem>> hits, int limit) {
+        final Set<SchemeItem> found = new HashSet<>();
+        final List<NearestDto> result = new ArrayList<>();
+
+        for (TrackIndex.Hit<PositionedItem> hit : hits)
+            if (result.size() < limit && found.add(hit.value().getItem()))
+                result.add(new NearestDto(hit.value().getItem().getId(), hit.value().getItem().getType().name(),
+                        Geometry.round(hit.distance())));
+
+        return result;
+    }
+
     public record AllResult(
-        @NonNull BigDecimal width,
-        @NonNull BigDecimal height,
+        double width,
+        double height,
 
-        @NonNull BigDecimal offsetX,
+        double offsetX,
 
-        @NonNull BigDecimal offsetY,
+        double offsetY,
         @NonNull List<ItemDto> items
     ) {}
 
@@ -1016,32 +1120,33 @@ public class SchemeController {
         return items
                 .map(items -> {
                     if (items.isEmpty())
-                        return new AllResult(ZERO, ZERO, ZERO, ZERO, Collections.emptyList());
+                        return new AllResult(0, 0, 0, 0, Collections.emptyList());
 
-                    BigDecimal minX = new BigDecimal(Long.MAX_VALUE),
-                               minY = new BigDecimal(Long.MAX_VALUE),
-                               maxX = new BigDecimal(Long.MIN_VALUE),
-                               maxY = new BigDecimal(Long.MIN_VALUE);
+                    double minX = Double.MAX_VALUE,
+                           minY = Double.MAX_VALUE,
+                           maxX = -Double.MAX_VALUE,
+                           maxY = -Double.MAX_VALUE;
 
                     for (PositionedItem item : items) {
-                        minX = minX.min(item.getX());
-                        maxX = maxX.max(item.getX());
-                        minY = minY.min(item.getY());
-                        maxY = maxY.max(item.getY());
+                        minX = Math.min(minX, item.getX());
+                        maxX = Math.max(maxX, item.getX());
+                        minY = Math.min(minY, item.getY());
+                        maxY = Math.max(maxY, item.getY());
                     }
 
-                    final BigDecimal width = maxX.subtract(minX).abs();
-                    final BigDecimal height = maxY.subtract(minY).abs();
-                    final BigDecimal offsetX = minX.negate();
-                    final BigDecimal offsetY = minY.negate();
+                    final double width = Geometry.round(Math.abs(maxX - minX));
+                    final double height = Geometry.round(Math.abs(maxY - minY));
+                    final double offsetX = Geometry.round(-minX);
+                    final double offsetY = Geometry.round(-minY);
 
                     return new AllResult(width, height, offsetX, offsetY,
                             items.stream().map(p -> new ItemDto(p.getItem().getId(), p.getItem().getType().name(),
-                                        round(p.getX()), round(p.getY()), round(p.getAngle()))).collect(Collectors.toList()));
+                                        Geometry.round(p.getX()), Geometry.round(p.getY()), Geometry.round(p.getAngle())))
+                                    .collect(Collectors.toList()));
                 });
     }
 
-    private static class ListVisitor implements SchemeItemVisitor<DirectionContext> {
+    private static class ListVisitor<C extends LayoutContext<C>> implements SchemeItemVisitor<C> {
         private final FluxSink<PositionedItem> sink;
 
         ListVisitor(FluxSink<PositionedItem> sink) {
@@ -1049,16 +1154,16 @@ public class SchemeController {
         }
 
         @Override
-        public void visit(@NonNull LineItem item, @NonNull DirectionContext context) {
+        public void visit(@NonNull LineItem item, @NonNull C context) {
             if (!context.visited(item)) {
                 final boolean isFirst = context.parent == null;
 
                 if (isFirst || context.parent == item.getRoot()) {
                     sink.next(context.toPosition(item));
-                    context.move(item.getLength(), ZERO);
+                    context.move(item.getLength());
                 } else {
-                    context.move(item.getLength(), ZERO);
-                    sink.next(context.copy().rotate(MINUS_PI).toPosition(item));
+                    context.move(item.getLength());
+                    sink.next(context.copy().turn(-180).toPosition(item));
                 }
 
                 context.setParent(item);
@@ -1072,16 +1177,16 @@ public class SchemeController {
         }
 
         @Override
-        public void visit(@NonNull RadiusItem item, @NonNull DirectionContext context) {
+        public void visit(@NonNull RadiusItem item, @NonNull C context) {
             if (!context.visited(item)) {
                 final boolean isFirst = context.parent == null;
 
                 if (isFirst || context.parent == item.getRoot()) {
                     sink.next(context.toPosition(item));
-                    context.rotate(item.getRadius(), item.getAngle());
+                    context.arc(item.getRadius(), item.getDegrees());
                 } else {
-                    context.rotate(item.getRadius(), item.getAngle().negate());
-                    sink.next(context.copy().rotate(MINUS_PI).toPosition(item));
+                    context.arc(item.getRadius(), -item.getDegrees());
+                    sink.next(context.copy().turn(-180).toPosition(item));
                 }
 
                 context.setParent(item);
@@ -1095,7 +1200,7 @@ public class SchemeController {
         }
 
         @Override
-        public void visit(@NonNull SwitchLineRight item, @NonNull DirectionContext context) {
+        public void visit(@NonNull SwitchLineRight item, @NonNull C context) {
             if (!context.visited(item)) {
                 final boolean isFirst = context.parent == null;
 
@@ -1104,36 +1209,36 @@ public class SchemeController {
                     context.setParent(item);
 
                     if (item.getRightChild() != null) {
-                        final DirectionContext context1 = context.copy().rotate(item.getRadius(), item.getAngle());
+                        final C context1 = context.copy().arc(item.getRadius(), item.getDegrees());
                         item.getRightChild().accept(this, context1);
                     }
 
                     if (item.getLeftChild() != null) {
-                        context.move(item.getLineLength(), ZERO);
+                        context.move(item.getLineLength());
                         item.getLeftChild().accept(this, context);
                     }
                 } else if (context.parent == item.getRightChild()) {
                     context.setParent(item);
-                    context.rotate(item.getRadius(), item.getAngle().negate());
-                    sink.next(context.copy().rotate(PI).toPosition(item));
+                    context.arc(item.getRadius(), -item.getDegrees());
+                    sink.next(context.copy().turn(180).toPosition(item));
 
                     if (item.getRoot() != null)
                         item.getRoot().accept(this, context.copy());
 
                     if (item.getLeftChild() != null) {
-                        context.rotate(PI).move(item.getLineLength(), ZERO);
+                        context.turn(180).move(item.getLineLength());
                         item.getLeftChild().accept(this, context);
                     }
                 } if (context.parent == item.getLeftChild()) {
                     context.setParent(item);
-                    context.move(item.getLineLength(), ZERO);
-                    sink.next(context.copy().rotate(PI).toPosition(item));
+                    context.move(item.getLineLength());
+                    sink.next(context.copy().turn(180).toPosition(item));
 
                     if (item.getRoot() != null)
                         item.getRoot().accept(this, context.copy());
 
                     if (item.getRightChild() != null) {
-                        context.rotate(PI).rotate(item.getRadius(), item.getAngle());
+                        context.turn(180).arc(item.getRadius(), item.getDegrees());
                         item.getLeftChild().accept(this, context);
                     }
                 }
@@ -1141,7 +1246,7 @@ public class SchemeController {
         }
 
         @Override
-        public void visit(@NonNull SwitchLineLeft item, @NonNull DirectionContext context) {
+        public void visit(@NonNull SwitchLineLeft item, @NonNull C context) {
             if (!context.visited(item)) {
                 final boolean isFirst = context.parent == null;
 
@@ -1150,38 +1255,38 @@ public class SchemeController {
                     context.setParent(item);
 
                     if (item.getRightChild() != null) {
-                        final DirectionContext context1 = context.copy().move(item.getLineLength(), ZERO);
+                        final C context1 = context.copy().move(item.getLineLength());
                         item.getRightChild().accept(this, context1);
                     }
 
                     if (item.getLeftChild() != null) {
-                        context.rotate(item.getRadius(), item.getAngle());
+                        context.arc(item.getRadius(), item.getDegrees());
                         item.getLeftChild().accept(this, context);
                     }
                 } else if (context.parent == item.getRightChild()) {
                     context.setParent(item);
 
-                    context.move(item.getLineLength(), ZERO);
-                    sink.next(context.copy().rotate(PI).toPosition(item));
+                    context.move(item.getLineLength());
+                    sink.next(context.copy().turn(180).toPosition(item));
 
                     if (item.getRoot() != null)
                         item.getRoot().accept(this, context.copy());
 
                     if (item.getRightChild() != null) {
-                        context.rotate(PI).rotate(item.getRadius(), item.getAngle());
+                        context.turn(180).arc(item.getRadius(), item.getDegrees());
                         item.getRightChild().accept(this, context);
                     }
                 } else if (context.parent == item.getLeftChild()) {
                     context.setParent(item);
 
-                    context.rotate(item.getRadius(), item.getAngle().negate());
-                    sink.next(context.copy().rotate(PI).toPosition(item));
+                    context.arc(item.getRadius(), -item.getDegrees());
+                    sink.next(context.copy().turn(180).toPosition(item));
 
                     if (item.getRoot() != null)
                         item.getRoot().accept(this, context.copy());
 
                     if (item.getLeftChild() != null) {
-                        context.rotate(PI).move(item.getLineLength(), ZERO);
+                        context.turn(180).move(item.getLineLength());
                         item.getLeftChild().accept(this, context);
                     }
                 }
@@ -1189,7 +1294,7 @@ public class SchemeController {
         }
 
         @Override
-        public void visit(@NonNull SwitchR2Right item, @NonNull DirectionContext context) {
+        public void visit(@NonNull SwitchR2Right item, @NonNull C context) {
             if (!context.visited(item)) {
                 final boolean isFirst = context.parent == null;
 
@@ -1198,14 +1303,14 @@ public class SchemeController {
                     context.setParent(item);
 
                     if (item.getLeftChild() != null) {
-                        final DirectionContext context1 = context.copy();
-                        context1.move(item.getLineLength(), ZERO);
-                        context1.rotate(item.getRadius(), item.getAngle());
+                        final C context1 = context.copy();
+                        context1.move(item.getLineLength());
+                        context1.arc(item.getRadius(), item.getDegrees());
                         item.getLeftChild().accept(this, context1);
                     }
 
                     if (item.getRightChild() != null) {
-                        context.rotate(item.getRadius(), item.getAngle());
+                        context.arc(item.getRadius(), item.getDegrees());
                         item.getRightChild().accept(this, context);
                     }
                 }
@@ -1213,7 +1318,7 @@ public class SchemeController {
         }
 
         @Override
-        public void visit(@NonNull SwitchR2Left item, @NonNull DirectionContext context) {
+        public void visit(@NonNull SwitchR2Left item, @NonNull C context) {
             if (!context.visited(item)) {
                 final boolean isFirst = context.parent == null;
 
@@ -1222,43 +1327,43 @@ public class SchemeController {
                     context.setParent(item);
 
                     if (item.getLeftChild() != null) {
-                        final DirectionContext context1 = context.copy();
-                        context.rotate(item.getRadius(), item.getAngle());
+                        final C context1 = context.copy();
+                        context.arc(item.getRadius(), item.getDegrees());
                         item.getRightChild().accept(this, context1);
                     }
 
                     if (item.getRightChild() != null) {
-                        context.move(item.getLineLength(), ZERO);
-                        context.rotate(item.getRadius(), item.getAngle());
+                        context.move(item.getLineLength());
+                        context.arc(item.getRadius(), item.getDegrees());
                         item.getLeftChild().accept(this, context);
                     }
                 } else if (context.parent == item.getLeftChild()) {
                     context.setParent(item);
 
-                    context.rotate(item.getRadius(), item.getAngle().negate());
-                    sink.next(context.copy().rotate(PI).toPosition(item));
+                    context.arc(item.getRadius(), -item.getDegrees());
+                    sink.next(context.copy().turn(180).toPosition(item));
 
                     if (item.getRoot() != null)
                         item.getRoot().accept(this, context.copy());
 
                     if (item.getRightChild() != null) {
-                        context.rotate(PI);
-                        context.move(item.getLineLength(), ZERO);
-                        context.rotate(item.getRadius(), item.getAngle());
+                        context.turn(180);
+                        context.move(item.getLineLength());
+                        context.arc(item.getRadius(), item.getDegrees());
                         item.getRightChild().accept(this, context);
                     }
                 } if (context.parent == item.getRightChild()) {
                     context.setParent(item);
-                    context.rotate(item.getRadius(), item.getAngle().negate());
-                    context.move(item.getLineLength(), ZERO);
-                    sink.next(context.copy().rotate(PI).toPosition(item));
+                    context.arc(item.getRadius(), -item.getDegrees());
+                    context.move(item.getLineLength());
+                    sink.next(context.copy().turn(180).toPosition(item));
 
                     if (item.getRoot() != null)
                         item.getRoot().accept(this, context.copy());
 
                     if (item.getLeftChild() != null) {
-                        context.rotate(PI);
-                        context.rotate(item.getRadius(), item.getAngle());
+                        context.turn(180);
+                        context.arc(item.getRadius(), item.getDegrees());
                         item.getLeftChild().accept(this, context);
                     }
                 }
@@ -1267,24 +1372,29 @@ public class SchemeController {
     }
 
     public Flux<PositionedItem> listAll() {
+        return layout(DirectionContext::new);
+    }
+
+    // Package private for SchemeLayoutTest, which walks the scheme with the former BigDecimal math
+    @NonNull
+    <C extends LayoutContext<C>> Flux<PositionedItem> layout(@NonNull Supplier<C> contextFactory) {
         return Flux.defer(() -> {
             if (rootItem == null)
                 return Flux.empty();
 
             return Flux.create(sink -> {
-                final DirectionContext context = new DirectionContext();
-                final BigDecimal startAngle = PI.add(PI.divide(SIX, PRECISION)); // 150
-                context.rotate(startAngle);
+                final C context = contextFactory.get();
+                context.turn(START_DEGREES);
 
-                rootItem.accept(new SchemeItemVisitor<>() {
+                rootItem.accept(new SchemeItemVisitor<C>() {
                     @Override
-                    public void visit(@NonNull AbstractItem item, @NonNull DirectionContext context) {
-                        final ListVisitor listVisitor = new ListVisitor(sink);
+                    public void visit(@NonNull AbstractItem item, @NonNull C context) {
+                        final ListVisitor<C> listVisitor = new ListVisitor<>(sink);
                         item.accept(listVisitor, context);
 
                         if (item.getRoot() != null) {
                             context.clearData();
-                            context.rotate(PI);
+                            context.turn(180);
                             context.setParent(item);
                             item.getRoot().accept(listVisitor, context);
                         }
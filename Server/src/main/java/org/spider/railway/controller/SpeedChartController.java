@@ -6,25 +6,30 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.spider.railway.item.SchemeItem;
 import org.spider.railway.messaging.MessageStoreService;
+import org.spider.railway.messaging.StatusMetric;
+import org.spider.railway.messaging.message.StatusMessage;
+import org.spider.railway.messaging.message.TrainStatusMessage;
 import org.spider.railway.statuses.StatusService;
+import org.spider.railway.utils.Utils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
 
-import java.time.OffsetDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/speed-chart")
 @Slf4j
 public class SpeedChartController {
-    private static final long MAX_MS_IN_CHARTS = 1L * 60_000L;
-
     @AllArgsConstructor
     @Getter
     public static class SpeedPoint {
@@ -33,6 +38,13 @@ public class SpeedChartController {
         private Integer y;
     }
 
+    @Nullable
+    private static SpeedPoint toPoint(@NonNull StatusMessage message) {
+        return message instanceof TrainStatusMessage train
+                ? new SpeedPoint(message.getCorrectedTimestampMillis(), train.getSpeed())
+                : null;
+    }
+
     private final StatusService statusService;
 
     private final MessageStoreService messageStoreService;
@@ -52,18 +64,36 @@ public class SpeedChartController {
     @GetMapping(value = "{trainId}", produces = MediaType.APPLICATION_JSON_VALUE)
     @NonNull
     public Flux<SpeedPoint> getChartData(@PathVariable @NonNull String trainId) {
-        return Flux.defer(() -> {
-            final OffsetDateTime now = OffsetDateTime.now();
+        return ChartUtils.getChartData(statusService, trainId, SpeedChartController::toPoint, x -> new SpeedPoint(x, null));
+    }
 
-            return Flux.concat(
-                    Flux.just(new SpeedPoint(now.toInstant().toEpochMilli() - MAX_MS_IN_CHARTS, null)),
-                    statusService.getMessages(trainId, now.minus(MAX_MS_IN_CHARTS, ChronoUnit.MILLIS), now)
-                        .filter(message -> message.getItemType() == SchemeItem.Type.TRAIN)
-                        .map(message -> {
-                            final int speed = (int) ((message.getCorrectedTimestampMillis() / 500) % 100);
-                            return new SpeedPoint(message.getCorrectedTimestampMillis(), speed);
-                        }),
-                    Flux.just(new SpeedPoint(now.toInstant().toEpochMilli(), null)));
-        });
+    @GetMapping(value = "{trainId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @NonNull
+    public Flux<ServerSentEvent<List<SpeedPoint>>> streamChartData(@PathVariable @NonNull String trainId,
+                                                                   @RequestParam(required = false) Long since,
+                                                                   @RequestParam(required = false) Long interval,
+                                                                   @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return ChartUtils.toEvents(streamChartDataNdjson(trainId, lastEventId != null ? lastEventId : since, interval),
+                SpeedPoint::getX);
+    }
+
+    @GetMapping(value = "{trainId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @NonNull
+    public Flux<List<SpeedPoint>> streamChartDataNdjson(@PathVariable @NonNull String trainId,
+                                                        @RequestParam(required = false) Long since,
+                                                        @RequestParam(required = false) Long interval) {
+        return ChartUtils.streamPoints(statusService, trainId, since, interval, SpeedChartController::toPoint);
+    }
+
+    // from and to are epoch millis
+    @GetMapping(value = "{trainId}/history", produces = MediaType.APPLICATION_JSON_VALUE)
+    @NonNull
+    public Flux<StatusService.SeriesPoint> getHistory(@PathVariable @NonNull String trainId,
+                                                      @RequestParam long from,
+                                                      @RequestParam long to,
+                                                      @RequestParam(defaultValue = "500") int points,
+                                                      @RequestParam(defaultValue = "LTTB") StatusService.SeriesMode mode) {
+        return statusService.getSeries(trainId, StatusMetric.SPEED, Utils.ofMillis(from), Utils.ofMillis(to),
+                ChartUtils.limitHistoryPoints(points), mode);
     }
 }
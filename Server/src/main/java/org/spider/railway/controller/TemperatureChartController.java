@@ -5,27 +5,30 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.spider.railway.messaging.MessageStoreService;
+import org.spider.railway.messaging.StatusMetric;
 import org.spider.railway.messaging.MessagingService;
+import org.spider.railway.messaging.message.StatusMessage;
 import org.spider.railway.statuses.StatusService;
+import org.spider.railway.utils.Utils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.annotation.NonNull;
 
-import java.time.OffsetDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/temperature-chart")
 @Slf4j
 public class TemperatureChartController {
-    private static final long MAX_MS_IN_CHARTS = 1L * 60_000L;
-
     @AllArgsConstructor
     @Getter
     public static class TemperaturePoint {
@@ -34,6 +37,11 @@ public class TemperatureChartController {
         private Double y;
     }
 
+    @NonNull
+    private static TemperaturePoint toPoint(@NonNull StatusMessage message) {
+        return new TemperaturePoint(message.getCorrectedTimestampMillis(), message.getInternalTemp());
+    }
+
     private final StatusService statusService;
 
     private final MessageStoreService messageStoreService;
@@ -61,15 +69,36 @@ public class TemperatureChartController {
     @GetMapping(value = "{itemId}", produces = MediaType.APPLICATION_JSON_VALUE)
     @NonNull
     public Flux<TemperaturePoint> getChartData(@PathVariable @NonNull String itemId) {
-        return Flux.defer(() -> {
-            final OffsetDateTime now = OffsetDateTime.now();
+        return ChartUtils.getChartData(statusService, itemId, TemperatureChartController::toPoint, x -> new TemperaturePoint(x, null));
+    }
+
+    @GetMapping(value = "{itemId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @NonNull
+    public Flux<ServerSentEvent<List<TemperaturePoint>>> streamChartData(@PathVariable @NonNull String itemId,
+                                                                         @RequestParam(required = false) Long since,
+                                                                         @RequestParam(required = false) Long interval,
+                                                                         @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return ChartUtils.toEvents(streamChartDataNdjson(itemId, lastEventId != null ? lastEventId : since, interval),
+                TemperaturePoint::getX);
+    }
+
+    @GetMapping(value = "{itemId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @NonNull
+    public Flux<List<TemperaturePoint>> streamChartDataNdjson(@PathVariable @NonNull String itemId,
+                                                              @RequestParam(required = false) Long since,
+                                                              @RequestParam(required = false) Long interval) {
+        return ChartUtils.streamPoints(statusService, itemId, since, interval, TemperatureChartController::toPoint);
+    }
 
-            return Flux.concat(
-                    Flux.just(new TemperaturePoint(now.toInstant().toEpochMilli() - MAX_MS_IN_CHARTS, null)),
-                    statusService.getMessages(itemId, now.minus(MAX_MS_IN_CHARTS, ChronoUnit.MILLIS), now).map(message -> {
-                        return new TemperaturePoint(message.getCorrectedTimestampMillis(), message.getInternalTemp());
-                    }),
-                    Flux.just(new TemperaturePoint(now.toInstant().toEpochMilli(), null)));
-        });
+    // from and to are epoch millis
+    @GetMapping(value = "{itemId}/history", produces = MediaType.APPLICATION_JSON_VALUE)
+    @NonNull
+    public Flux<StatusService.SeriesPoint> getHistory(@PathVariable @NonNull String itemId,
+                                                      @RequestParam long from,
+                                                      @RequestParam long to,
+                                                      @RequestParam(defaultValue = "500") int points,
+                                                      @RequestParam(defaultValue = "LTTB") StatusService.SeriesMode mode) {
+        return statusService.getSeries(itemId, StatusMetric.TEMPERATURE, Utils.ofMillis(from), Utils.ofMillis(to),
+                ChartUtils.limitHistoryPoints(points), mode);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,313 @@
+package org.spider.railway.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+// Simulates ESP32 devices against a running server, e.g.
+//   mvn -Ploadgen compile exec:java -Dexec.args="--trains=2000 --switches=500 --status-hz=10 --ramp-step=250"
+// Every device has its own socket, does the handshake and sends statuses (and logs) at the given rates.
+// Server side numbers are read from /api/messaging, the status latency from the live temperature stream of a few
+// trains. With --ramp-step devices are started in steps until the loss goes over --max-loss.
+@Slf4j
+public class LoadGenerator {
+    record Settings(InetSocketAddress server, @Nullable String http, int trains, int switches, int semaphoresPerSwitch,
+                    int semaphores, double statusHz, double logHz, int durationSeconds, int reportSeconds,
+                    int rampStep, int rampSeconds, double maxLoss, int latencyProbes, int threads) {
+        @NonNull
+        static Settings parse(@NonNull String[] args) {
+            final Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--"))
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+
+                final int index = arg.indexOf('=');
+                values.put(index < 0 ? arg.substring(2) : arg.substring(2, index), index < 0 ? "true" : arg.substring(index + 1));
+            }
+
+            final String[] server = values.getOrDefault("server", "127.0.0.1:10037").split(":");
+            final String http = values.getOrDefault("http", "http://127.0.0.1:8080");
+
+            return new Settings(
+                    new InetSocketAddress(server[0], Integer.parseInt(server[1])),
+                    http.isEmpty() || "none".equals(http) ? null : http,
+                    Integer.parseInt(values.getOrDefault("trains", "100")),
+                    Integer.parseInt(values.getOrDefault("switches", "50")),
+                    Integer.parseInt(values.getOrDefault("semaphores-per-switch", "2")),
+                    Integer.parseInt(values.getOrDefault("semaphores", "20")),
+                    Double.parseDouble(values.getOrDefault("status-hz", "5")),
+                    Double.parseDouble(values.getOrDefault("log-hz", "0")),
+                    Integer.parseInt(values.getOrDefault("duration", "60")),
+                    Integer.parseInt(values.getOrDefault("report", "5")),
+                    Integer.parseInt(values.getOrDefault("ramp-step", "0")),
+                    Integer.parseInt(values.getOrDefault("ramp-interval", "30")),
+                    Double.parseDouble(values.getOrDefault("max-loss", "0.01")),
+                    Integer.parseInt(values.getOrDefault("latency-probes", "4")),
+                    Integer.parseInt(values.getOrDefault("threads", Integer.toString(Runtime.getRuntime().availableProcessors()))));
+        }
+    }
+
+    // Totals of the server counters, the report shows their deltas
+    private record ServerCounters(long received, long socketDrops, long kernelDrops, long shardDrops, long queued) {
+        static final ServerCounters EMPTY = new ServerCounters(0, 0, 0, 0, 0);
+    }
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Settings settings;
+
+    private final LoadStatistics statistics = new LoadStatistics();
+
+    private final List<SimulatedDevice> devices = new ArrayList<>();
+
+    private final Disposable.Composite probes = Disposables.composite();
+
+    @Nullable
+    private final HttpClient httpClient;
+
+    private int started;
+
+    public static void main(String[] args) throws InterruptedException {
+        new LoadGenerator(Settings.parse(args)).run();
+    }
+
+    LoadGenerator(@NonNull Settings settings) {
+        this.settings = settings;
+        this.httpClient = settings.http() == null ? null : HttpClient.create().baseUrl(settings.http());
+
+        // Interleaved by the relative position within each kind, so every ramp step has the same mix of kinds
+        final Map<SimulatedDevice, Double> positions = new HashMap<>();
+        addDevices(SimulatedDevice.Kind.TRAIN, settings.trains(), positions);
+        addDevices(SimulatedDevice.Kind.SWITCH, settings.switches(), positions);
+        addDevices(SimulatedDevice.Kind.SEMAPHORE, settings.semaphores(), positions);
+        devices.sort((d1, d2) -> Double.compare(positions.get(d1), positions.get(d2)));
+    }
+
+    private void addDevices(@NonNull SimulatedDevice.Kind kind, int count, @NonNull Map<SimulatedDevice, Double> positions) {
+        for (int i = 0; i < count; i++) {
+            final SimulatedDevice device = device(kind, i);
+            devices.add(device);
+            positions.put(device, (i + 0.5) / count);
+        }
+    }
+
+    void run() throws InterruptedException {
+        final EventLoopGroup group = new NioEventLoopGroup(settings.threads());
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioDatagramChannel.class)
+                .option(ChannelOption.SO_SNDBUF, 64 * 1024);
+
+        log.info("Load: {} devices ({} trains, {} switches with {} semaphores, {} semaphores), {} statuses/s per device -> {}",
+                devices.size(), settings.trains(), settings.switches(), settings.semaphoresPerSwitch(), settings.semaphores(),
+                settings.statusHz(), settings.server());
+
+        try {
+            startDevices(settings.rampStep() > 0 ? settings.rampStep() : devices.size(), bootstrap);
+
+            final long startMillis = System.currentTimeMillis();
+            final long endMillis = startMillis + settings.durationSeconds() * 1000L;
+            long nextRampMillis = startMillis + settings.rampSeconds() * 1000L;
+            ServerCounters previous = readServerCounters();
+            long previousDatagrams = statistics.datagrams.sum();
+
+            while (System.currentTimeMillis() < endMillis || (settings.rampStep() > 0 && started < devices.size())) {
+                Thread.sleep(settings.reportSeconds() * 1000L);
+
+                if (probes.size() < settings.latencyProbes())
+                    startProbes(startMillis);
+
+                final ServerCounters current = readServerCounters();
+                final long datagrams = statistics.datagrams.sum();
+                final double loss = report(startMillis, datagrams - previousDatagrams, previous, current);
+
+                previous = current;
+                previousDatagrams = datagrams;
+
+                if (settings.rampStep() > 0) {
+                    if (loss > settings.maxLoss() && httpClient != null) {
+                        log.warn("Loss {} is over {} at {} devices, the pipeline is saturated",
+                                percent(loss), percent(settings.maxLoss()), started);
+                        break;
+                    }
+
+                    if (System.currentTimeMillis() >= nextRampMillis && started < devices.size()) {
+                        startDevices(Math.min(devices.size(), started + settings.rampStep()), bootstrap);
+                        nextRampMillis = System.currentTimeMillis() + settings.rampSeconds() * 1000L;
+                    }
+                }
+            }
+        } finally {
+            probes.dispose();
+            for (int i = 0; i < started; i++)
+                devices.get(i).stop();
+
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    private void startDevices(int count, @NonNull Bootstrap bootstrap) {
+        for (; started < count; started++)
+            devices.get(started).start(bootstrap);
+
+        log.info("Devices started: {}", started);
+    }
+
+    // Returns the loss of the window, 0 when the server counters are not available
+    private double report(long startMillis, long sentDatagrams, @NonNull ServerCounters previous, @NonNull ServerCounters current) {
+        final double seconds = settings.reportSeconds();
+        final long received = current.received() - previous.received();
+        final double loss = httpClient == null || sentDatagrams <= 0 ? 0.0 : Math.max(0.0, 1.0 - (double) received / sentDatagrams);
+
+        log.info(String.format(Locale.ROOT,
+                "t=%ds devices=%d acked=%d sent=%.0f/s received=%.0f/s loss=%s socket-drops=%d kernel-drops=%d " +
+                        "shard-drops=%d queued=%d send-errors=%d handshake[%s] latency[%s]",
+                (System.currentTimeMillis() - startMillis) / 1000, started, statistics.acked.sum(),
+                sentDatagrams / seconds, received / seconds, percent(loss),
+                current.socketDrops() - previous.socketDrops(), current.kernelDrops() - previous.kernelDrops(),
+                current.shardDrops() - previous.shardDrops(), current.queued(), statistics.sendErrors.sum(),
+                statistics.handshakeRtt.drain(), statistics.statusLatency.drain()));
+
+        return loss;
+    }
+
+    @NonNull
+    private ServerCounters readServerCounters() {
+        if (httpClient == null)
+            return ServerCounters.EMPTY;
+
+        try {
+            final JsonNode sockets = get("/api/messaging/sockets");
+            final JsonNode kernel = get("/api/messaging/sockets/kernel");
+            final JsonNode shards = get("/api/messaging/shards");
+
+            return new ServerCounters(sum(sockets, "received"), sum(sockets, "dropped"), sum(kernel, "drops"),
+                    sum(shards, "dropped"), sum(shards, "queued"));
+        } catch (Exception e) {
+            log.warn("Can't read server statistics: {}", e.toString());
+
+            return ServerCounters.EMPTY;
+        }
+    }
+
+    // The live stream of a train shows its statuses when the server has processed them
+    private void startProbes(long startMillis) {
+        if (httpClient == null)
+            return;
+
+        for (SimulatedDevice device : devices.subList(0, started)) {
+            if (probes.size() >= settings.latencyProbes())
+                break;
+
+            if (device.getKind() != SimulatedDevice.Kind.TRAIN || !device.isAcked())
+                continue;
+
+            probes.add(httpClient
+                    .headers(headers -> headers.add("Accept", "application/x-ndjson"))
+                    .get()
+                    .uri("/api/temperature-chart/" + device.getItemId() + "/stream?interval=50")
+                    .responseContent()
+                    .asString()
+                    .transform(LoadGenerator::lines)
+                    .doOnNext(line -> recordLatency(line, startMillis))
+                    .onErrorResume(th -> {
+                        log.warn("Latency probe of {} failed: {}", device.getItemId(), th.toString());
+
+                        return Mono.empty();
+                    })
+                    .subscribe());
+        }
+    }
+
+    private void recordLatency(@NonNull String line, long startMillis) {
+        try {
+            final long now = System.currentTimeMillis();
+
+            for (JsonNode point : mapper.readTree(line)) {
+                final JsonNode x = point.get("x");
+
+                if (x != null && x.asLong() >= startMillis && point.hasNonNull("y"))
+                    statistics.statusLatency.record(Math.max(0L, now - x.asLong()) * 1_000_000L);
+            }
+        } catch (Exception e) {
+            log.debug("Wrong stream line: {}", line, e);
+        }
+    }
+
+    @NonNull
+    private JsonNode get(@NonNull String uri) throws Exception {
+        final String body = Objects.requireNonNull(httpClient).get().uri(uri)
+                .responseContent()
+                .aggregate()
+                .asString()
+                .block(Duration.ofSeconds(5));
+
+        return mapper.readTree(body == null ? "[]" : body);
+    }
+
+    @NonNull
+    private SimulatedDevice device(@NonNull SimulatedDevice.Kind kind, int index) {
+        final String id = String.format(Locale.ROOT, "lg-%s-%05d", kind.name().toLowerCase(Locale.ROOT), index);
+
+        return new SimulatedDevice(id, kind, kind == SimulatedDevice.Kind.SWITCH ? settings.semaphoresPerSwitch() : 0,
+                settings.server(), statistics, settings.statusHz(), settings.logHz());
+    }
+
+    // Chunks of the response don't follow NDJSON lines
+    @NonNull
+    private static Flux<String> lines(@NonNull Flux<String> chunks) {
+        return Flux.defer(() -> {
+            final StringBuilder pending = new StringBuilder();
+
+            return chunks.concatMapIterable(chunk -> {
+                pending.append(chunk);
+
+                final List<String> lines = new ArrayList<>();
+                int index;
+                while ((index = pending.indexOf("\n")) >= 0) {
+                    final String line = pending.substring(0, index).trim();
+                    pending.delete(0, index + 1);
+
+                    if (!line.isEmpty())
+                        lines.add(line);
+                }
+
+                return lines;
+            });
+        });
+    }
+
+    private static long sum(@NonNull JsonNode array, @NonNull String field) {
+        long result = 0;
+        for (JsonNode node : array)
+            result += node.path(field).asLong();
+
+        return result;
+    }
+
+    @NonNull
+    private static String percent(double value) {
+        return String.format(Locale.ROOT, "%.2f%%", value * 100);
+    }
+}
@@ -0,0 +1,84 @@
+package org.spider.railway.loadgen;
+
+import reactor.util.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters of the generator side, read as deltas between reports
+final class LoadStatistics {
+    // Latencies of one report window, a fixed reservoir keeps the overhead flat at any rate
+    static final class Latencies {
+        private static final int RESERVOIR_SIZE = 8192;
+
+        private final long[] samples = new long[RESERVOIR_SIZE];
+
+        private long count;
+
+        private long max;
+
+        record Summary(long count, double p50Ms, double p99Ms, double maxMs) {
+            @Override
+            @NonNull
+            public String toString() {
+                return count == 0 ? "-" : String.format("p50=%.1fms p99=%.1fms max=%.1fms n=%d", p50Ms, p99Ms, maxMs, count);
+            }
+        }
+
+        synchronized void record(long nanos) {
+            if (count < RESERVOIR_SIZE)
+                samples[(int) count] = nanos;
+            else {
+                final long index = ThreadLocalRandom.current().nextLong(count + 1);
+
+                if (index < RESERVOIR_SIZE)
+                    samples[(int) index] = nanos;
+            }
+
+            count++;
+            max = Math.max(max, nanos);
+        }
+
+        @NonNull
+        synchronized Summary drain() {
+            final int size = (int) Math.min(count, RESERVOIR_SIZE);
+            final long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+
+            final Summary summary = size == 0
+                    ? new Summary(0, 0, 0, 0)
+                    : new Summary(count, toMillis(sorted[size / 2]), toMillis(sorted[Math.min(size - 1, (int) (size * 0.99))]), toMillis(max));
+
+            count = 0;
+            max = 0;
+
+            return summary;
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    final LongAdder handshakes = new LongAdder();
+
+    final LongAdder acked = new LongAdder();
+
+    final LongAdder datagrams = new LongAdder();
+
+    final LongAdder statuses = new LongAdder();
+
+    // Statuses the server makes of them: a switch brings its semaphores along
+    final LongAdder statusItems = new LongAdder();
+
+    final LongAdder logs = new LongAdder();
+
+    final LongAdder sendErrors = new LongAdder();
+
+    final Latencies handshakeRtt = new Latencies();
+
+    // From sending a status to seeing it in the live stream of the server
+    final Latencies statusLatency = new Latencies();
+}
@@ -0,0 +1,243 @@
+package org.spider.railway.loadgen;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.spider.railway.messaging.UdpMessagingServiceImpl;
+import org.spider.railway.messaging.parsers.BinarySerializer;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.net.InetSocketAddress;
+import java.time.OffsetDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// One ESP32 device: its own UDP socket (the server tells clients apart by address), the handshake repeated until
+// the server acks it, then statuses and logs at the configured rates
+final class SimulatedDevice {
+    enum Kind {
+        TRAIN((short) 0),
+        SWITCH((short) 3),
+        SEMAPHORE((short) 2);
+
+        final short typeCode;
+
+        Kind(short typeCode) {
+            this.typeCode = typeCode;
+        }
+    }
+
+    private static final byte LOG_CODE = 0;
+
+    private static final byte STATUS_CODE = 1;
+
+    private static final byte HANDSHAKE_CODE = 2;
+
+    private static final byte ACK_CODE = 3;
+
+    private static final long HANDSHAKE_RETRY_MS = 1000;
+
+    private static final BinarySerializer<UdpMessagingServiceImpl.HandshakeEntity> handshakeSerializer =
+            BinarySerializer.get(UdpMessagingServiceImpl.HandshakeEntity.class);
+
+    private static final BinarySerializer<UdpMessagingServiceImpl.LogEntity> logSerializer =
+            BinarySerializer.get(UdpMessagingServiceImpl.LogEntity.class);
+
+    private static final BinarySerializer<UdpMessagingServiceImpl.TrainStatusEntity> trainSerializer =
+            BinarySerializer.get(UdpMessagingServiceImpl.TrainStatusEntity.class);
+
+    private static final BinarySerializer<UdpMessagingServiceImpl.SemaphoreStatusEntity> semaphoreSerializer =
+            BinarySerializer.get(UdpMessagingServiceImpl.SemaphoreStatusEntity.class);
+
+    private static final BinarySerializer<UdpMessagingServiceImpl.SwitchWithSemaphoresStatusEntity> switchSerializer =
+            BinarySerializer.get(UdpMessagingServiceImpl.SwitchWithSemaphoresStatusEntity.class);
+
+    private final String id;
+
+    private final Kind kind;
+
+    private final int subItems;
+
+    private final InetSocketAddress server;
+
+    private final LoadStatistics statistics;
+
+    private final long statusPeriodMicros;
+
+    private final long logPeriodMicros;
+
+    private Channel channel;
+
+    private int version;
+
+    private volatile boolean acked;
+
+    private volatile long handshakeNanos;
+
+    @Nullable
+    private ScheduledFuture<?> handshakeTask;
+
+    @Nullable
+    private ScheduledFuture<?> statusTask;
+
+    @Nullable
+    private ScheduledFuture<?> logTask;
+
+    SimulatedDevice(@NonNull String id, @NonNull Kind kind, int subItems, @NonNull InetSocketAddress server,
+                    @NonNull LoadStatistics statistics, double statusHz, double logHz) {
+        this.id = id;
+        this.kind = kind;
+        this.subItems = subItems;
+        this.server = server;
+        this.statistics = statistics;
+        this.statusPeriodMicros = statusHz > 0 ? Math.max(1L, (long) (1_000_000 / statusHz)) : 0L;
+        this.logPeriodMicros = logHz > 0 ? Math.max(1L, (long) (1_000_000 / logHz)) : 0L;
+    }
+
+    @NonNull
+    String getItemId() {
+        return id;
+    }
+
+    @NonNull
+    Kind getKind() {
+        return kind;
+    }
+
+    boolean isAcked() {
+        return acked;
+    }
+
+    void start(@NonNull Bootstrap bootstrap) {
+        channel = bootstrap.clone()
+                .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+                        receive(packet.content());
+                    }
+                })
+                .bind(0)
+                .syncUninterruptibly()
+                .channel();
+
+        handshakeTask = channel.eventLoop().scheduleAtFixedRate(this::sendHandshake,
+                ThreadLocalRandom.current().nextLong(HANDSHAKE_RETRY_MS), HANDSHAKE_RETRY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        cancel(handshakeTask);
+        cancel(statusTask);
+        cancel(logTask);
+
+        if (channel != null)
+            channel.close().syncUninterruptibly();
+    }
+
+    private void receive(@NonNull ByteBuf buf) {
+        while (buf.readableBytes() >= 3) {
+            final int length = buf.readUnsignedShortLE();
+            final byte code = buf.readByte();
+
+            if (code == ACK_CODE)
+                onAck();
+
+            buf.skipBytes(Math.min(buf.readableBytes(), Math.max(0, length - 1)));
+        }
+    }
+
+    private void onAck() {
+        statistics.handshakeRtt.record(System.nanoTime() - handshakeNanos);
+
+        // Every retry is acked, the device is started by the first one
+        if (acked)
+            return;
+
+        acked = true;
+        statistics.acked.increment();
+        cancel(handshakeTask);
+
+        if (statusPeriodMicros > 0)
+            statusTask = channel.eventLoop().scheduleAtFixedRate(this::sendStatus,
+                    ThreadLocalRandom.current().nextLong(statusPeriodMicros), statusPeriodMicros, TimeUnit.MICROSECONDS);
+
+        if (logPeriodMicros > 0)
+            logTask = channel.eventLoop().scheduleAtFixedRate(this::sendLog,
+                    ThreadLocalRandom.current().nextLong(logPeriodMicros), logPeriodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void sendHandshake() {
+        handshakeNanos = System.nanoTime();
+
+        final ByteBuf buf = frame(HANDSHAKE_CODE);
+        handshakeSerializer.serialize(buf, new UdpMessagingServiceImpl.HandshakeEntity(
+                id, kind.typeCode, OffsetDateTime.now(), (byte) (kind == Kind.SWITCH ? subItems : 0)));
+
+        send(buf);
+        statistics.handshakes.increment();
+    }
+
+    private void sendStatus() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final OffsetDateTime now = OffsetDateTime.now();
+        final int temp = 3500 + random.nextInt(1000);
+
+        final ByteBuf buf = frame(STATUS_CODE);
+        switch (kind) {
+            case TRAIN -> trainSerializer.serialize(buf, new UdpMessagingServiceImpl.TrainStatusEntity(
+                    now, ++version, temp, (short) random.nextInt(-500, 500), random.nextInt(0, 100_000), null));
+            case SWITCH -> {
+                final int[] colors = new int[subItems];
+                for (int i = 0; i < subItems; i++)
+                    colors[i] = random.nextBoolean() ? 0xff0000 : 0x00ff00;
+
+                switchSerializer.serialize(buf, new UdpMessagingServiceImpl.SwitchWithSemaphoresStatusEntity(
+                        now, ++version, temp, random.nextBoolean(), colors));
+            }
+            case SEMAPHORE -> semaphoreSerializer.serialize(buf, new UdpMessagingServiceImpl.SemaphoreStatusEntity(
+                    now, ++version, temp, random.nextBoolean() ? 0xff0000 : 0x00ff00));
+        }
+
+        send(buf);
+        statistics.statuses.increment();
+        statistics.statusItems.add(kind == Kind.SWITCH ? subItems + 1 : 1);
+    }
+
+    private void sendLog() {
+        final ByteBuf buf = frame(LOG_CODE);
+        logSerializer.serialize(buf, new UdpMessagingServiceImpl.LogEntity(
+                id, OffsetDateTime.now(), (byte) 0, (byte) 3, "loadgen", "Status version " + version));
+
+        send(buf);
+        statistics.logs.increment();
+    }
+
+    // [u16 LE length][code][payload], the length is set in send()
+    @NonNull
+    private ByteBuf frame(byte code) {
+        final ByteBuf buf = channel.alloc().buffer(128);
+        buf.writeShortLE(0);
+        buf.writeByte(code);
+
+        return buf;
+    }
+
+    private void send(@NonNull ByteBuf buf) {
+        buf.setShortLE(0, buf.writerIndex() - 2);
+
+        channel.writeAndFlush(new DatagramPacket(buf, server)).addListener(future -> {
+            if (!future.isSuccess())
+                statistics.sendErrors.increment();
+        });
+        statistics.datagrams.increment();
+    }
+
+    private static void cancel(@Nullable ScheduledFuture<?> task) {
+        if (task != null)
+            task.cancel(false);
+    }
+}
@@ -1,33 +1,90 @@
 package org.spider.railway.logger;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.r2dbc.spi.Statement;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.stream.Streams;
+import org.spider.railway.messaging.EventTap;
 import org.spider.railway.messaging.MessagingService;
 import org.spider.railway.messaging.message.LogMessage;
+import org.spider.railway.utils.ReactorUtils;
 import org.spider.railway.utils.Utils;
+import org.spider.railway.utils.batch.BatchProcessor;
 import org.spider.railway.utils.batch.OrderedProcessor;
+import org.spider.railway.utils.batch.OverflowPolicy;
+import org.spider.railway.utils.spool.Spool;
+import org.spider.railway.utils.spool.SpoolDrainer;
+import org.spider.railway.utils.spool.SpoolService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.r2dbc.core.ConnectionAccessor;
 import org.springframework.stereotype.Service;
 import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
 import reactor.util.function.Tuple2;
 
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 
 import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
 @Slf4j
 @Service
 public class LoggerServiceImpl {
+    // Spool record of a log message, timestamps are epoch micros
+    @Getter
+    @AllArgsConstructor
+    public static class SpooledLog implements LogMessage {
+        private final String id;
+        private final long timestampMicros;
+        private final long receiveTimestampMicros;
+        private final int core;
+        private final int level;
+        private final String tag;
+        private final String message;
+        private final String host;
+        private final int port;
+
+        @NonNull
+        static SpooledLog of(@NonNull LogMessage message) {
+            return new SpooledLog(message.getId(), Utils.toMicros(message.getTimestamp()),
+                    Utils.toMicros(message.getReceiveTimestamp()), message.getCore(), message.getLevel(),
+                    message.getTag(), message.getMessage(), message.getAddress().getHostString(), message.getAddress().getPort());
+        }
+
+        @Override
+        @NonNull
+        public OffsetDateTime getTimestamp() {
+            return Utils.ofMicros(timestampMicros);
+        }
+
+        @Override
+        @NonNull
+        public OffsetDateTime getReceiveTimestamp() {
+            return Utils.ofMicros(receiveTimestampMicros);
+        }
+
+        @Override
+        @NonNull
+        public InetSocketAddress getAddress() {
+            return InetSocketAddress.createUnresolved(host, port);
+        }
+    }
+
     private static final String INSERT_SQL = "INSERT INTO scheme_items_log " +
                                              "(item_id, timestamp, receive_timestamp, core, level, tag, message) " +
                                              "VALUES($1, $2, $3, $4, $5, $6, $7)";
@@ -46,33 +103,58 @@ public class LoggerServiceImpl {
 
     private final ConnectionAccessor connectionAccessor;
 
+    private final SpoolService spoolService;
+
+    private final MeterRegistry registry;
+
+    private final EventTap eventTap;
+
+    private final Counter storedRows;
+
     private final OrderedProcessor<LogMessage, Void> processor;
 
     private Disposable disposable;
 
+    @Nullable
+    private Spool<SpooledLog> spool;
+
+    @Nullable
+    private SpoolDrainer<SpooledLog> spoolDrainer;
+
     @Autowired
-    public LoggerServiceImpl(MessagingService messagingService, ConnectionAccessor connectionAccessor) {
+    public LoggerServiceImpl(MessagingService messagingService, ConnectionAccessor connectionAccessor, SpoolService spoolService,
+                             MeterRegistry registry, EventTap eventTap,
+                             @Value("${messaging.log.queue.capacity:100000}") int queueCapacity,
+                             @Value("${messaging.log.queue.policy:DROP_OLDEST}") OverflowPolicy queuePolicy,
+                             @Value("${messaging.log.queue.max-batch-size:1000}") int maxBatchSize,
+                             @Value("${messaging.log.queue.linger-ms:10}") long lingerMs) {
         this.messagingService = messagingService;
         this.connectionAccessor = connectionAccessor;
+        this.spoolService = spoolService;
+        this.registry = registry;
+        this.eventTap = eventTap;
+        this.storedRows = Counter.builder("railway.store.rows").tag("table", "scheme_items_log").register(registry);
 
+        // Every log message goes through the bounded queue, its batches are spooled or stored one at a time
         this.processor = new OrderedProcessor<>(tuples -> {
                 List<LogMessage> messages = Streams.of(tuples).map(Tuple2::getT1).toList();
 
-                return (messages.size() > 1 ? saveAll(messages) : save(messages.get(0)))
-                        .then()
-                        .onErrorResume(th -> {
-                            log.error("save()", th);
-                            return Mono.empty();
-                        })
-                        .subscribeOn(Schedulers.boundedElastic());
-            });
+                return spool != null ? spool(messages) : write(messages);
+            }, new BatchProcessor.Options(queueCapacity, queuePolicy, maxBatchSize, Duration.ofMillis(lingerMs)), null, null);
+
+        this.processor.bindTo(registry, "log-store");
     }
 
     @PostConstruct
     public void init() {
+        this.spool = spoolService.open("log", SpooledLog.class);
+
+        if (spool != null)
+            this.spoolDrainer = spoolService.drain(spool, "log", this::store);
+
         this.disposable = messagingService.subscribeLog()
                 .subscribe(message -> {
-                    log.info("Receive log: {}", message);
+                    tap(message);
 
                     processor.process(message);
                 });
@@ -81,6 +163,58 @@ public class LoggerServiceImpl {
     @PreDestroy
     public void destroy() {
         this.disposable.dispose();
+
+        if (spoolDrainer != null)
+            spoolDrainer.dispose();
+    }
+
+    @NonNull
+    private Mono<Void> spool(@NonNull List<? extends LogMessage> messages) {
+        return Mono.<Void>fromRunnable(() -> {
+                    final Spool<SpooledLog> spool = Objects.requireNonNull(this.spool);
+                    final int stored = spool.append(messages.stream().map(SpooledLog::of).toList());
+
+                    if (stored < messages.size())
+                        log.error("Spool is full, log messages dropped: {}", messages.size() - stored);
+
+                    Objects.requireNonNull(spoolDrainer).signal();
+                })
+                // Without the spool the batch still has a chance to be stored directly
+                .onErrorResume(th -> {
+                    log.error("spool()", th);
+
+                    return write(messages);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @NonNull
+    private Mono<Void> write(@NonNull List<? extends LogMessage> messages) {
+        return store(messages)
+                .then()
+                .onErrorResume(th -> {
+                    log.error("write()", th);
+                    return Mono.empty();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // Device logs are stored anyway, the application log only gets a sample of them
+    private void tap(@NonNull LogMessage message) {
+        if (eventTap.sample(message.getId()))
+            eventTap.log("log", message.getId(), message);
+    }
+
+    @NonNull
+    public BatchProcessor.Statistics getProcessorStatistics() {
+        return processor.getStatistics();
+    }
+
+    @NonNull
+    private Mono<Long> store(@NonNull List<? extends LogMessage> messages) {
+        return ReactorUtils.timed(messages.size() > 1 ? saveAll(messages) : save(messages.get(0)),
+                        registry, "railway.store.write", "table", "scheme_items_log", "method", "insert")
+                .doOnNext(rows -> storedRows.increment(rows));
     }
 
     @NonNull
@@ -99,7 +233,7 @@ public class LoggerServiceImpl {
     }
 
     @NonNull
-    private Mono<Long> saveAll(@NonNull Collection<LogMessage> messages) {
+    private Mono<Long> saveAll(@NonNull Collection<? extends LogMessage> messages) {
         return Mono.defer(() -> {
             final Object[][] data = new Object[7][messages.size()];
 
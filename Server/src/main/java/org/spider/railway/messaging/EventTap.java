@@ -0,0 +1,198 @@
+package org.spider.railway.messaging;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sampled event log of the ingest path: every sampleEvery-th event of a device, at most maxPerSecond lines in total.
+// Besides that the last raw frames are kept in a ring per ingest shard, so the traffic can be looked at without logging
+// all of it and the shards don't share anything on the way.
+@Slf4j(topic = "org.spider.railway.events")
+@Service
+public class EventTap {
+    // Frame bytes kept per ring slot, the rest of a longer frame is cut off
+    private static final int MAX_FRAME_BYTES = 256;
+
+    private static final int WINDOW_BITS = 20;
+
+    private static final long WINDOW_MASK = (1L << WINDOW_BITS) - 1;
+
+    public record Frame(long timestamp, String sender, int code, int length, String data) {
+    }
+
+    // Event counter of one device
+    public static final class Sampler {
+        private final AtomicLong events = new AtomicLong();
+    }
+
+    private static final class Slot {
+        private final byte[] data = new byte[MAX_FRAME_BYTES];
+        private long sequence = -1;
+        private long timestamp;
+        private InetSocketAddress sender;
+        private byte code;
+        private int length;
+    }
+
+    // Last frames of one ingest shard. Only the shard thread writes it, so the monitor of a slot is only ever contended
+    // by a reader of the frames.
+    public static final class FrameRing {
+        private final Slot[] slots;
+
+        // Frames written so far, published after the slot of the last one is filled
+        private final AtomicLong written = new AtomicLong();
+
+        private FrameRing(int size) {
+            this.slots = new Slot[size];
+            for (int i = 0; i < size; i++)
+                slots[i] = new Slot();
+        }
+
+        public void record(byte code, @NonNull InetSocketAddress sender, @NonNull ByteBuf frame) {
+            if (slots.length == 0)
+                return;
+
+            final long sequence = written.get();
+            final Slot slot = slots[(int) (sequence & (slots.length - 1))];
+
+            synchronized (slot) {
+                slot.sequence = sequence;
+                slot.timestamp = System.currentTimeMillis();
+                slot.sender = sender;
+                slot.code = code;
+                slot.length = frame.readableBytes();
+                frame.getBytes(frame.readerIndex(), slot.data, 0, Math.min(slot.length, MAX_FRAME_BYTES));
+            }
+
+            written.lazySet(sequence + 1);
+        }
+
+        private void collect(@NonNull List<Frame> result, int limit, @Nullable InetSocketAddress sender) {
+            final long last = written.get();
+            int found = 0;
+
+            for (long sequence = last - 1; sequence >= Math.max(0L, last - slots.length) && found < limit; sequence--) {
+                final Slot slot = slots[(int) (sequence & (slots.length - 1))];
+
+                synchronized (slot) {
+                    // Overwritten by the writer meanwhile, so all the older ones are too
+                    if (slot.sequence != sequence)
+                        break;
+
+                    if (sender != null && !sender.equals(slot.sender))
+                        continue;
+
+                    result.add(new Frame(slot.timestamp,
+                            slot.sender.getAddress().getHostAddress() + ":" + slot.sender.getPort(),
+                            slot.code, slot.length,
+                            ByteBufUtil.hexDump(slot.data, 0, Math.min(slot.length, MAX_FRAME_BYTES))));
+                    found++;
+                }
+            }
+        }
+    }
+
+    private final long sampleEvery;
+
+    private final long maxPerSecond;
+
+    private final int ringSize;
+
+    private final List<FrameRing> rings = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Sampler> samplers = new ConcurrentHashMap<>();
+
+    // Second of the current rate window in the high bits, lines logged in it in the low WINDOW_BITS
+    private final AtomicLong window = new AtomicLong();
+
+    private final AtomicLong suppressed = new AtomicLong();
+
+    @Autowired
+    public EventTap(@Value("${messaging.tap.sample-every:100}") long sampleEvery,
+                    @Value("${messaging.tap.max-per-second:50}") long maxPerSecond,
+                    @Value("${messaging.tap.ring-size:4096}") int ringSize) {
+        this.sampleEvery = sampleEvery;
+        this.maxPerSecond = Math.min(maxPerSecond, WINDOW_MASK - 1);
+
+        this.ringSize = ringSize <= 0 ? 0 : Integer.highestOneBit(Math.min(ringSize, 1 << 20) * 2 - 1);
+    }
+
+    // A ring of the frames of one writer thread, see FrameRing
+    @NonNull
+    public FrameRing newRing() {
+        final FrameRing ring = new FrameRing(ringSize);
+
+        if (ringSize > 0)
+            rings.add(ring);
+
+        return ring;
+    }
+
+    // True when the event is to be logged, sampleEvery <= 0 turns the event log off
+    public boolean sample(@NonNull Sampler sampler) {
+        return sampleEvery > 0 && log.isInfoEnabled() && sampler.events.getAndIncrement() % sampleEvery == 0 && acquire();
+    }
+
+    public boolean sample(@NonNull String device) {
+        return sampleEvery > 0 && sample(samplers.computeIfAbsent(device, __ -> new Sampler()));
+    }
+
+    public void log(@NonNull String event, @NonNull String device, @Nullable Object details) {
+        final long skipped = suppressed.getAndSet(0);
+
+        if (skipped > 0)
+            log.info("event={} device={} sampled=1/{} suppressed={} details={}", event, device, sampleEvery, skipped, details);
+        else
+            log.info("event={} device={} sampled=1/{} details={}", event, device, sampleEvery, details);
+    }
+
+    // The newest frames of all the rings first, of one sender only when it is set
+    @NonNull
+    public List<Frame> getFrames(int limit, @Nullable InetSocketAddress sender) {
+        if (limit <= 0)
+            return List.of();
+
+        final List<Frame> result = new ArrayList<>();
+        for (FrameRing ring : rings)
+            ring.collect(result, limit, sender);
+
+        result.sort(Comparator.comparingLong(Frame::timestamp).reversed());
+
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    private boolean acquire() {
+        if (maxPerSecond <= 0)
+            return true;
+
+        final long second = System.currentTimeMillis() / 1000;
+        long state, next;
+
+        do {
+            state = window.get();
+            next = (state >>> WINDOW_BITS) == second ? state + 1 : (second << WINDOW_BITS) | 1;
+
+            if ((next & WINDOW_MASK) > maxPerSecond) {
+                suppressed.incrementAndGet();
+
+                return false;
+            }
+        } while (!window.compareAndSet(state, next));
+
+        return true;
+    }
+}
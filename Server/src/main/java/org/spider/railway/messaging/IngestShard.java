@@ -0,0 +1,110 @@
+package org.spider.railway.messaging;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+@Slf4j
+public class IngestShard implements MeterBinder {
+    private static final int PREFETCH = 32;
+
+    public record Statistics(int index, long received, long processed, long dropped, long errors, long queued) {
+    }
+
+    @Getter
+    private final int index;
+
+    private final String name;
+
+    private final int queueSize;
+
+    private final Scheduler scheduler;
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    public IngestShard(@NonNull String name, int index, int queueSize) {
+        this.index = index;
+        this.name = name;
+        this.queueSize = queueSize;
+        this.scheduler = Schedulers.newSingle(name + "-" + index, true);
+    }
+
+    // Frames of one shard are decoded sequentially on its own thread, so the order of messages from one device is kept.
+    @NonNull
+    public <T, R> Flux<R> process(@NonNull Flux<T> frames,
+                                  @NonNull Function<T, ? extends Publisher<? extends R>> decoder,
+                                  @NonNull Consumer<T> onDrop) {
+        return frames
+                .doOnNext(__ -> received.incrementAndGet())
+                .onBackpressureBuffer(queueSize, frame -> {
+                    dropped.incrementAndGet();
+                    onDrop.accept(frame);
+                }, BufferOverflowStrategy.DROP_LATEST)
+                .publishOn(scheduler, PREFETCH)
+                .concatMap(frame -> {
+                    try {
+                        return decoder.apply(frame);
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                        log.warn("Can't decode frame on shard {}.", index, e);
+
+                        return Flux.<R>empty();
+                    } finally {
+                        processed.incrementAndGet();
+                    }
+                });
+    }
+
+    public long getQueued() {
+        return Math.max(0L, received.get() - processed.get() - dropped.get());
+    }
+
+    @NonNull
+    public Statistics getStatistics() {
+        return new Statistics(index, received.get(), processed.get(), dropped.get(), errors.get(), getQueued());
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        final String shard = Integer.toString(index);
+
+        FunctionCounter.builder("railway.ingest.received", received, AtomicLong::get)
+                .tags("ingest", name, "shard", shard)
+                .register(registry);
+        FunctionCounter.builder("railway.ingest.processed", processed, AtomicLong::get)
+                .tags("ingest", name, "shard", shard)
+                .register(registry);
+        FunctionCounter.builder("railway.ingest.dropped", dropped, AtomicLong::get)
+                .tags("ingest", name, "shard", shard)
+                .register(registry);
+        FunctionCounter.builder("railway.ingest.errors", errors, AtomicLong::get)
+                .tags("ingest", name, "shard", shard)
+                .register(registry);
+        Gauge.builder("railway.ingest.queued", this, IngestShard::getQueued)
+                .tags("ingest", name, "shard", shard)
+                .register(registry);
+    }
+
+    public void dispose() {
+        scheduler.dispose();
+    }
+}
@@ -1,5 +1,9 @@
 package org.spider.railway.messaging;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBufAllocator;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
 import io.r2dbc.spi.Row;
 import io.r2dbc.spi.Statement;
 import jakarta.annotation.PostConstruct;
@@ -13,13 +17,22 @@ import org.spider.railway.messaging.message.SemaphoreStatusMessage;
 import org.spider.railway.messaging.message.StatusMessage;
 import org.spider.railway.messaging.message.SwitchStatusMessage;
 import org.spider.railway.messaging.message.TrainStatusMessage;
+import org.spider.railway.utils.IntervalIndex;
 import org.spider.railway.utils.ReactorUtils;
 import org.spider.railway.utils.Utils;
+import org.spider.railway.utils.batch.BatchProcessor;
 import org.spider.railway.utils.batch.OrderedProcessor;
+import org.spider.railway.utils.batch.OverflowPolicy;
+import org.spider.railway.utils.spool.Spool;
+import org.spider.railway.utils.spool.SpoolDrainer;
+import org.spider.railway.utils.spool.SpoolService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.Disposable;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.FluxSink;
 import reactor.core.publisher.Mono;
@@ -29,11 +42,12 @@ import reactor.util.annotation.Nullable;
 import reactor.util.function.Tuple2;
 import reactor.util.function.Tuple3;
 import reactor.util.function.Tuples;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 @Slf4j
 @Service
@@ -55,6 +69,59 @@ public class MessageStoreService {
         private final Boolean switchOn;
     }
 
+    // Spool record of a status, timestamps are epoch micros and doubles are raw bits to keep them exact
+    @Getter
+    @AllArgsConstructor
+    public static class SpooledStatus {
+        private final String itemId;
+        private final SchemeItem.Type type;
+        private final long timestamp;
+        private final long receiveTimestamp;
+        private final long correctedTimestamp;
+        private final long internalTemp;
+        private final long version;
+        private final long markerTimestamp;
+        private final int speed;
+        private final long power;
+        private final int semaphoreColor;
+        private final byte switchState;
+
+        @NonNull
+        static SpooledStatus of(@NonNull StatusMessage message) {
+            long markerTimestamp = Long.MIN_VALUE, power = 0L;
+            int speed = 0, semaphoreColor = 0;
+            byte switchState = 0;
+
+            if (message instanceof TrainStatusMessage train) {
+                markerTimestamp = train.getSchemeMarkerTime() == null ? Long.MIN_VALUE : Utils.toMicros(train.getSchemeMarkerTime());
+                speed = train.getSpeed();
+                power = Double.doubleToRawLongBits(train.getPower());
+            } else if (message instanceof SemaphoreStatusMessage semaphore)
+                semaphoreColor = semaphore.getColor();
+            else if (message instanceof SwitchStatusMessage switchStatus)
+                switchState = (byte) (switchStatus.getState() ? 1 : 0);
+
+            return new SpooledStatus(message.getId(), message.getItemType(), Utils.toMicros(message.getTimestamp()),
+                    Utils.toMicros(message.getReceiveTimestamp()), Utils.toMicros(message.getCorrectedTimestamp()),
+                    Double.doubleToRawLongBits(message.getInternalTemp()), message.getVersion(), markerTimestamp,
+                    speed, power, semaphoreColor, switchState);
+        }
+
+        @NonNull
+        StatusEntity toEntity() {
+            final boolean train = type == SchemeItem.Type.TRAIN;
+
+            return new StatusEntity(type, itemId, Utils.ofMicros(timestamp), Utils.ofMicros(receiveTimestamp),
+                    Utils.ofMicros(correctedTimestamp),
+                    train ? speed : null,
+                    train ? Double.longBitsToDouble(power) : null,
+                    train && markerTimestamp != Long.MIN_VALUE ? Utils.ofMicros(markerTimestamp) : null,
+                    Double.longBitsToDouble(internalTemp), version,
+                    type == SchemeItem.Type.SEMAPHORE ? semaphoreColor : null,
+                    type == SchemeItem.Type.SWITCH ? switchState != 0 : null);
+        }
+    }
+
     private static abstract class StatusMessageImpl implements StatusMessage {
         protected final StatusEntity entity;
 
@@ -147,45 +214,68 @@ public class MessageStoreService {
         }
     }
 
+    // Ranges of one load statement
+    private static final int MAX_LOAD_BATCH_SIZE = 256;
+
+    private static final int LOAD_LAST_RETRIES = 5;
+
+    private static final Duration LOAD_LAST_BACKOFF = Duration.ofSeconds(1);
+
+    // Mono.cache() treats this one as no expiry
+    private static final Duration CACHE_FOREVER = Duration.ofMillis(Long.MAX_VALUE);
+
     private static final String INSERT_SQL = "INSERT INTO status_log " +
             "(item_id, timestamp, receive_timestamp, corrected_timestamp, item_type, internal_temp, version, " +
                     "marker_timestamp, speed, power, semaphore_color, switch_state) " +
             "VALUES($1, $2, $3, $4, $5, $6, $7, $8, $9, $10, $11, $12)";
 
-    private static final String BATCH_LOAD_SQL = "SELECT " +
+    // Rows of every (item, from, to) range, ranges of one item don't overlap. The lateral subquery makes one index
+    // range scan per range instead of a scan from the earliest to the latest time over all items.
+    private static final String RANGES_LOAD_SQL = """
+        SELECT s.*
+        FROM unnest($1::varchar[], $2::timestamptz[], $3::timestamptz[]) AS r(item_id, from_ts, to_ts)
+            CROSS JOIN LATERAL (
+                SELECT item_id, timestamp, receive_timestamp, corrected_timestamp, item_type, speed, power,
+                    marker_timestamp, internal_temp, version, semaphore_color, switch_state
+                FROM status_log
+                WHERE status_log.item_id = r.item_id
+                    AND status_log.corrected_timestamp >= r.from_ts
+                    AND status_log.corrected_timestamp <= r.to_ts
+                ORDER BY status_log.corrected_timestamp
+            ) s
+        """;
+
+    private static final String LAST_MESSAGES_SQL = "SELECT DISTINCT ON (item_id) " +
             "item_id, timestamp, receive_timestamp, corrected_timestamp, item_type, speed, power, marker_timestamp, " +
             "internal_temp, version, semaphore_color, switch_state " +
             "FROM status_log " +
-            "WHERE corrected_timestamp >= $1 AND corrected_timestamp <= $2 AND item_id in (select * from unnest(array[$3]::varchar[])) " +
-            "ORDER BY corrected_timestamp";
-
-    private static final String LOAD_MESSAGE_SQL = "SELECT " +
-            "item_id, timestamp, receive_timestamp, corrected_timestamp, item_type, speed, power, marker_timestamp, " +
-            "internal_temp, version, semaphore_color, switch_state " +
-            "FROM status_log " +
-            "WHERE item_id = $1 AND corrected_timestamp = $2";
-
-    private static final String ALL_ITEMS_LOAD_SQL = "SELECT DISTINCT item_id FROM status_log " +
-                                                     "ORDER BY item_id";
-
-    private static final String ITEMS_IDS_LOAD_SQL = "SELECT item_id, item_type, max(corrected_timestamp) as stamp FROM status_log " +
-            "GROUP BY item_id, item_type";
-
-    private static final String LAST_MESSAGES_SQL = "SELECT item_id, max(corrected_timestamp) FROM status_log " +
-            "GROUP BY item_id " +
-            "ORDER BY item_id";
+            "ORDER BY item_id, corrected_timestamp DESC";
+
+    // time_bucket-like aggregation: $2 is the grid origin and $3 the bucket width, both in epoch millis
+    private static final String BUCKETS_SQL = """
+        SELECT floor((extract(epoch FROM corrected_timestamp) * 1000 - $2) / $3)::bigint AS bucket,
+            count(*),
+            sum(extract(epoch FROM corrected_timestamp) * 1000)::float8,
+            min(%1$s)::float8,
+            max(%1$s)::float8,
+            sum(%1$s)::float8
+        FROM status_log
+        WHERE item_id = $1 AND corrected_timestamp >= $4 AND corrected_timestamp <= $5 AND %1$s IS NOT NULL
+        GROUP BY bucket
+        ORDER BY bucket
+        """;
 
     private static final String BATCH_INSERT_SQL = """
         INSERT INTO status_log
-            "(item_id, timestamp, receive_timestamp, corrected_timestamp, item_type, internal_temp, version,
-                    "marker_timestamp, speed, power, semaphore_color, switch_state)
+            (item_id, timestamp, receive_timestamp, corrected_timestamp, item_type, internal_temp, version,
+                    marker_timestamp, speed, power, semaphore_color, switch_state)
             select unnest(array[$1]::varchar[]),
                 unnest(array[$2]::timestamptz[]),
                 unnest(array[$3]::timestamptz[]),
                 unnest(array[$4]::timestamptz[]),
                 unnest(array[$5]::varchar[]),
                 unnest(array[$6]::decimal[]),
-                unnest(array[$7]::smallint[]),
+                unnest(array[$7]::bigint[]),
                 unnest(array[$8]::timestamptz[]),
                 unnest(array[$9]::integer[]),
                 unnest(array[$10]::decimal[]),
@@ -193,7 +283,7 @@ public class MessageStoreService {
                 unnest(array[$12]::boolean[])
             """;
 
-    private static void fillDataArray(@NonNull StatusMessage message, @NonNull Object[] array) {
+    static void fillDataArray(@NonNull StatusMessage message, @NonNull Object[] array) {
         array[0] = message.getId();
         array[1] = message.getTimestamp();
         array[2] = message.getReceiveTimestamp();
@@ -213,7 +303,7 @@ public class MessageStoreService {
         }
     }
 
-    private static void fillDataArray(@NonNull StatusMessage message, int index, @NonNull Object[][] array) {
+    static void fillDataArray(@NonNull StatusMessage message, int index, @NonNull Object[][] array) {
         array[0][index] = message.getId();
         array[1][index] = Utils.odtFormatter.format(message.getTimestamp());
         array[2][index] = Utils.odtFormatter.format(message.getReceiveTimestamp());
@@ -286,40 +376,100 @@ public class MessageStoreService {
 
     private final DatabaseClient databaseClient;
 
+    private final SpoolService spoolService;
+
+    private final StatusRollupService statusRollupService;
+
+    private final TransactionalOperator transactionalOperator;
+
+    private final MeterRegistry registry;
+
+    private final Counter storedRows;
+
     private final OrderedProcessor<StatusMessage, Void> processor;
 
     private final OrderedProcessor<Tuple3<String, OffsetDateTime, OffsetDateTime>, FluxSink<StatusEntity>> loadProcessor;
 
+    // Last known status of every item, sorted by id
+    private final ConcurrentSkipListMap<String, StatusMessage> lastMessages = new ConcurrentSkipListMap<>();
+
+    private final Mono<Void> lastMessagesLoaded;
+
+    private final boolean copyEnabled;
+
+    // Cleared as soon as the connection turns out not to be a PostgreSQL one, then only the INSERT statement is used
+    private volatile boolean copyAvailable = true;
+
     private Disposable disposable;
 
+    private Disposable lastMessagesDisposable;
+
+    @Nullable
+    private Spool<SpooledStatus> spool;
+
+    @Nullable
+    private SpoolDrainer<SpooledStatus> spoolDrainer;
+
     @Autowired
-    public MessageStoreService(MessagingService messagingService, DatabaseClient databaseClient) {
+    public MessageStoreService(MessagingService messagingService,
+                               DatabaseClient databaseClient,
+                               SpoolService spoolService,
+                               StatusRollupService statusRollupService,
+                               TransactionalOperator transactionalOperator,
+                               MeterRegistry registry,
+                               @Value("${messaging.store.copy.enabled:true}") boolean copyEnabled,
+                               @Value("${messaging.store.queue.capacity:100000}") int queueCapacity,
+                               @Value("${messaging.store.queue.policy:DROP_OLDEST}") OverflowPolicy queuePolicy,
+                               @Value("${messaging.store.queue.max-batch-size:1000}") int maxBatchSize,
+                               @Value("${messaging.store.queue.linger-ms:10}") long lingerMs,
+                               @Value("${messaging.store.load-queue.capacity:10000}") int loadQueueCapacity) {
         this.messagingService = messagingService;
         this.databaseClient = databaseClient;
-
+        this.spoolService = spoolService;
+        this.statusRollupService = statusRollupService;
+        this.transactionalOperator = transactionalOperator;
+        this.registry = registry;
+        this.storedRows = Counter.builder("railway.store.rows").tag("table", "status_log").register(registry);
+        this.copyEnabled = copyEnabled;
+
+        // Every status goes through the bounded queue, its batches are spooled or stored one at a time
         this.processor = new OrderedProcessor<>(tuples -> {
             final List<StatusMessage> messages = Streams.of(tuples).map(Tuple2::getT1).toList();
 
-            return (messages.size() > 1 ? saveAll(messages) : save(messages.get(0)))
-                    .then()
-                    .onErrorResume(th -> {
-                        log.error("save()", th);
+            return spool != null ? spool(messages) : copyAll(messages).then();
+        }, new BatchProcessor.Options(queueCapacity, queuePolicy, maxBatchSize, Duration.ofMillis(lingerMs)),
+                StatusMessage::getId, null);
 
-                        return Mono.empty();
-                    })
-                    .subscribeOn(Schedulers.boundedElastic());
-        });
+        // Only a successful load is kept, after a failed one the next caller loads again
+        this.lastMessagesLoaded = loadLastMessages()
+                .retryWhen(Retry.backoff(LOAD_LAST_RETRIES, LOAD_LAST_BACKOFF)
+                        .doBeforeRetry(signal -> log.warn("loadLastMessages() retry {}", signal.totalRetries() + 1, signal.failure())))
+                .doOnError(th -> log.error("loadLastMessages()", th))
+                .cache(__ -> CACHE_FOREVER, th -> Duration.ZERO, () -> CACHE_FOREVER);
+
+        this.loadProcessor = new OrderedProcessor<>(this::loadRanges,
+                new BatchProcessor.Options(loadQueueCapacity, OverflowPolicy.DROP_NEWEST, MAX_LOAD_BATCH_SIZE, Duration.ZERO), null,
+                (__, sink) -> sink.error(Exceptions.failWithOverflow("Too many history requests")));
 
-        this.loadProcessor = new OrderedProcessor<>(tuples ->
-            ReactorUtils.handleResult(getMessages(Streams.of(tuples).map(Tuple2::getT1)), tuples, (tuple, message) ->
-                    tuple.getT1().equals(message.getItemId())
-                        && Utils.isAfterOrEquals(message.getCorrectedTimestamp(), tuple.getT2())
-                        && Utils.isBeforeOrEquals(message.getCorrectedTimestamp(), tuple.getT3())
-                ));
+        this.processor.bindTo(registry, "status-store");
+        this.loadProcessor.bindTo(registry, "status-load");
     }
 
     @PostConstruct
     private void init() {
+        this.lastMessagesDisposable = messagingService
+                .subscribeStatus()
+                .subscribe(this::updateLastMessage);
+
+        awaitLastMessages().subscribe();
+
+        this.spool = spoolService.open("status", SpooledStatus.class);
+
+        // Statuses go to the spool first, the drainer stores them when the database is available
+        if (spool != null)
+            this.spoolDrainer = spoolService.drain(spool, "status", statuses ->
+                    store(statuses.stream().map(status -> toMessage(status.toEntity())).filter(Objects::nonNull).toList()));
+
         this.disposable = messagingService
                 .subscribeStatus()
                 .subscribe(processor::process);
@@ -328,6 +478,57 @@ public class MessageStoreService {
     @PreDestroy
     private void destroy() {
         this.disposable.dispose();
+        this.lastMessagesDisposable.dispose();
+
+        if (spoolDrainer != null)
+            spoolDrainer.dispose();
+    }
+
+    @NonNull
+    private Mono<Void> spool(@NonNull List<? extends StatusMessage> messages) {
+        return Mono.<Void>fromRunnable(() -> {
+                    final Spool<SpooledStatus> spool = Objects.requireNonNull(this.spool);
+                    final int stored = spool.append(messages.stream().map(SpooledStatus::of).toList());
+
+                    if (stored < messages.size())
+                        log.error("Spool is full, statuses dropped: {}", messages.size() - stored);
+
+                    Objects.requireNonNull(spoolDrainer).signal();
+                })
+                // Without the spool the batch still has a chance to be stored directly
+                .onErrorResume(th -> {
+                    log.error("spool()", th);
+
+                    return copyAll(messages).then();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private void updateLastMessage(@NonNull StatusMessage message) {
+        lastMessages.merge(message.getId(), message, (current, next) ->
+                next.getCorrectedTimestamp().isBefore(current.getCorrectedTimestamp()) ? current : next);
+    }
+
+    // Live statuses may come before the history is loaded, updateLastMessage() keeps the newest one anyway
+    @NonNull
+    private Mono<Void> loadLastMessages() {
+        return databaseClient.sql(LAST_MESSAGES_SQL)
+                .map((row, meta) -> convert(row))
+                .all()
+                .doOnNext(entity -> {
+                    final StatusMessage message = toMessage(entity);
+
+                    if (message != null)
+                        updateLastMessage(message);
+                })
+                .then()
+                .doOnSuccess(__ -> log.info("Last messages loaded: {}", lastMessages.size()));
+    }
+
+    // Without the history only the items heard from since the start are known
+    @NonNull
+    private Mono<Void> awaitLastMessages() {
+        return lastMessagesLoaded.onErrorResume(th -> Mono.empty());
     }
 
     @NonNull
@@ -337,92 +538,127 @@ public class MessageStoreService {
     }
 
     @NonNull
-    public Flux<String> getAllItemIds() {
-        return databaseClient.sql(ALL_ITEMS_LOAD_SQL)
-                .map((row, meta) -> row.get(0, String.class))
-                .all();
+    public Map<String, BatchProcessor.Statistics> getProcessorStatistics() {
+        return Map.of("status-store", processor.getStatistics(), "status-load", loadProcessor.getStatistics());
     }
 
     @NonNull
-    public Flux<StatusMessage> getAllItems() {
-        return databaseClient.sql(LAST_MESSAGES_SQL)
-                .map((row, meta) -> Tuples.of(
-                        Objects.requireNonNull(row.get(0, String.class)),
-                        Objects.requireNonNull(row.get(1, OffsetDateTime.class)))
-                )
-                .all()
-                .flatMapSequential(tuple -> loadMessage(tuple.getT1(), tuple.getT2()), 10);
+    public Flux<String> getAllItemIds() {
+        return awaitLastMessages().thenMany(Flux.defer(() -> Flux.fromIterable(lastMessages.keySet())));
     }
 
     @NonNull
-    private Mono<StatusMessage> loadMessage(@NonNull String itemId, @NonNull OffsetDateTime correctedTime) {
-        return databaseClient.sql(LOAD_MESSAGE_SQL)
-                .bind(0, itemId)
-                .bind(1, correctedTime)
-                .map((row, meta) -> toMessage(convert(row)))
-                .one();
+    public Flux<StatusMessage> getAllItems() {
+        return awaitLastMessages().thenMany(Flux.defer(() -> Flux.fromIterable(lastMessages.values())));
     }
 
     @NonNull
     public Flux<String> getItemIdsForTypes(@NonNull SchemeItem.Type ... types) {
-        return Flux.defer(() -> {
+        return awaitLastMessages().thenMany(Flux.defer(() -> {
             if (types.length == 0)
                 return Flux.empty();
 
-            return databaseClient.sql(ITEMS_IDS_LOAD_SQL)
-                    .map((row, meta) -> Tuples.of(
-                            Objects.requireNonNull(row.get(0, String.class)),
-                            Objects.requireNonNull(row.get(1, String.class)),
-                            Objects.requireNonNull(row.get(2, OffsetDateTime.class)))
-                    )
-                    .all()
-                    .collectMultimap(Tuple2::getT1, tuple -> Tuples.of(tuple.getT2(), tuple.getT3()))
-                    .flatMapMany(map -> {
-                        final Set<String> strTypes = Stream.of(types).map(Enum::name).collect(Collectors.toSet());
-                        return Flux.fromStream(map.entrySet().stream()
-                                .filter(en -> {
-                                    Tuple2<String, OffsetDateTime> max = null;
-
-                                    for (var tuple : en.getValue())
-                                        if (max == null || max.getT2().isBefore(tuple.getT2()))
-                                            max = tuple;
-
-                                    return strTypes.contains(Objects.requireNonNull(max).getT1());
-                                })
-                                .map(Map.Entry::getKey));
-                    });
-        });
+            final Set<SchemeItem.Type> typeSet = EnumSet.copyOf(Arrays.asList(types));
+
+            return Flux.fromStream(lastMessages.values().stream()
+                    .filter(message -> typeSet.contains(message.getItemType()))
+                    .map(StatusMessage::getId));
+        }));
     }
 
     @NonNull
-    private Flux<StatusEntity> getMessages(@NonNull Collection<String> ids, @NonNull OffsetDateTime from, @NonNull OffsetDateTime to) {
-        return databaseClient.sql(BATCH_LOAD_SQL)
-                    .bind(0, from)
-                    .bind(1, to)
-                    .bind(2, ids.toArray())
-                .map((row, meta) -> convert(row))
+    public Flux<StatusBucket> getBuckets(@NonNull String itemId,
+                                         @NonNull StatusMetric metric,
+                                         @NonNull OffsetDateTime from,
+                                         @NonNull OffsetDateTime to,
+                                         long originMillis,
+                                         long widthMillis) {
+        return databaseClient.sql(String.format(BUCKETS_SQL, metric.getColumn()))
+                .bind(0, itemId)
+                .bind(1, originMillis)
+                .bind(2, widthMillis)
+                .bind(3, from)
+                .bind(4, to)
+                .map((row, meta) -> new StatusBucket(
+                        Objects.requireNonNull(row.get(0, Long.class)),
+                        Objects.requireNonNull(row.get(1, Long.class)),
+                        Objects.requireNonNull(row.get(2, Double.class)),
+                        Objects.requireNonNull(row.get(3, Double.class)),
+                        Objects.requireNonNull(row.get(4, Double.class)),
+                        Objects.requireNonNull(row.get(5, Double.class))))
                 .all();
     }
 
-    // id, from, to
+    // Requests of one item are merged into disjoint ranges, so nobody's short range is widened by another caller's
+    // long one, and every row is routed only to the requests containing its time.
     @NonNull
-    private Flux<StatusEntity> getMessages(@NonNull Stream<Tuple3<String, OffsetDateTime, OffsetDateTime>> params) {
-        return Flux.defer(() -> {
-            final HashSet<String> ids = new HashSet<>(10);
-            OffsetDateTime min = OffsetDateTime.now(), max = min.minusYears(10L);
-
-            for (var iterator = params.iterator(); iterator.hasNext(); ) {
-                final var tuple = iterator.next();
-
-                ids.add(tuple.getT1());
-
-                min = Utils.min(min, tuple.getT2());
-                max = Utils.max(max, tuple.getT3());
+    private Mono<Void> loadRanges(@NonNull Iterable<Tuple2<Tuple3<String, OffsetDateTime, OffsetDateTime>, FluxSink<StatusEntity>>> tuples) {
+        return Mono.defer(() -> {
+            final Map<String, List<Tuple2<Tuple3<String, OffsetDateTime, OffsetDateTime>, FluxSink<StatusEntity>>>> byItem = new HashMap<>();
+            for (var tuple : tuples)
+                byItem.computeIfAbsent(tuple.getT1().getT1(), __ -> new ArrayList<>()).add(tuple);
+
+            final List<String> ids = new ArrayList<>();
+            final List<String> froms = new ArrayList<>();
+            final List<String> tos = new ArrayList<>();
+            final Map<String, IntervalIndex<Tuple2<Tuple3<String, OffsetDateTime, OffsetDateTime>, FluxSink<StatusEntity>>>> routes =
+                    new HashMap<>();
+
+            for (var entry : byItem.entrySet()) {
+                final var requests = entry.getValue();
+                requests.sort((a, b) -> a.getT1().getT2().compareTo(b.getT1().getT2()));
+
+                OffsetDateTime from = null, to = null;
+                for (var request : requests) {
+                    if (from != null && request.getT1().getT2().isAfter(to)) {
+                        ids.add(entry.getKey());
+                        froms.add(Utils.odtFormatter.format(from));
+                        tos.add(Utils.odtFormatter.format(to));
+                        from = null;
+                    }
+
+                    if (from == null) {
+                        from = request.getT1().getT2();
+                        to = request.getT1().getT3();
+                    } else
+                        to = Utils.max(to, request.getT1().getT3());
+                }
+
+                ids.add(entry.getKey());
+                froms.add(Utils.odtFormatter.format(Objects.requireNonNull(from)));
+                tos.add(Utils.odtFormatter.format(Objects.requireNonNull(to)));
+
+                routes.put(entry.getKey(), new IntervalIndex<>(requests,
+                        tuple -> Utils.toMicros(tuple.getT1().getT2()),
+                        tuple -> Utils.toMicros(tuple.getT1().getT3())));
             }
 
-            return getMessages(ids, min, max);
-        });
+            return ReactorUtils.timed(databaseClient.sql(RANGES_LOAD_SQL)
+                            .bind(0, ids.toArray(new String[0]))
+                            .bind(1, froms.toArray(new String[0]))
+                            .bind(2, tos.toArray(new String[0]))
+                            .map((row, meta) -> convert(row))
+                            .all()
+                            .doOnNext(entity -> {
+                                final var index = routes.get(entity.getItemId());
+
+                                if (index != null)
+                                    index.forEachContaining(Utils.toMicros(entity.getCorrectedTimestamp()), tuple -> tuple.getT2().next(entity));
+                            })
+                            .then(), registry, "railway.store.load", "table", "status_log")
+                    .doOnSuccess(__ -> {
+                        for (var tuple : tuples)
+                            tuple.getT2().complete();
+                    })
+                    .onErrorResume(th -> {
+                        for (var tuple : tuples)
+                            tuple.getT2().error(th);
+
+                        return Mono.empty();
+                    });
+        }).subscribeOn(Schedulers.boundedElastic());
     }
+
     @NonNull
     private Mono<Long> save(@NonNull StatusMessage message) {
         return Mono.defer(() -> {
@@ -436,7 +672,70 @@ public class MessageStoreService {
     }
 
     @NonNull
-    private Mono<Long> saveAll(@NonNull Collection<StatusMessage> messages) {
+    private Mono<Long> copyAll(@NonNull List<? extends StatusMessage> messages) {
+        return store(messages)
+                .onErrorResume(th -> {
+                    log.error("save()", th);
+
+                    return Mono.empty();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // Errors are passed to the caller, the spool drainer repeats the batch later. The rollups of the batch are written
+    // in the same transaction, so they are stored or lost together with the rows.
+    @NonNull
+    private Mono<Long> store(@NonNull List<? extends StatusMessage> messages) {
+        if (messages.isEmpty())
+            return Mono.just(0L);
+
+        return Mono.defer(() -> {
+                    if (!copyEnabled || !copyAvailable)
+                        return inTransaction(insertAll(messages), messages);
+
+                    // COPY is atomic and the transaction is rolled back, nothing is stored after a failure, so the
+                    // batch can be repeated with INSERT
+                    return inTransaction(copyIn(messages), messages)
+                            .onErrorResume(th -> {
+                                log.warn("copyAll() failed, fall back to INSERT", th);
+
+                                return inTransaction(insertAll(messages), messages);
+                            });
+                })
+                .doOnNext(rows -> storedRows.increment(rows));
+    }
+
+    @NonNull
+    private Mono<Long> inTransaction(@NonNull Mono<Long> write, @NonNull List<? extends StatusMessage> messages) {
+        return transactionalOperator.transactional(write.flatMap(rows -> statusRollupService.write(messages).thenReturn(rows)));
+    }
+
+    @NonNull
+    private Mono<Long> copyIn(@NonNull List<? extends StatusMessage> messages) {
+        return ReactorUtils.timed(databaseClient.inConnection(connection -> {
+                    final PostgresqlConnection postgresqlConnection = StatusLogCopyEncoder.unwrap(connection);
+
+                    if (postgresqlConnection == null) {
+                        log.warn("COPY is not supported by {}, use INSERT for status_log", connection.getClass().getName());
+                        copyAvailable = false;
+
+                        return Mono.empty();
+                    }
+
+                    return postgresqlConnection.copyIn(StatusLogCopyEncoder.COPY_SQL,
+                            Mono.fromSupplier(() -> StatusLogCopyEncoder.encode(ByteBufAllocator.DEFAULT, messages)));
+                }), registry, "railway.store.write", "table", "status_log", "method", "copy")
+                .switchIfEmpty(Mono.defer(() -> insertAll(messages)));
+    }
+
+    @NonNull
+    private Mono<Long> insertAll(@NonNull List<? extends StatusMessage> messages) {
+        return ReactorUtils.timed(messages.size() > 1 ? saveAll(messages) : save(messages.get(0)),
+                registry, "railway.store.write", "table", "status_log", "method", "insert");
+    }
+
+    @NonNull
+    private Mono<Long> saveAll(@NonNull Collection<? extends StatusMessage> messages) {
         return Mono.defer(() -> {
             final Object[][] data = new Object[12][messages.size()];
 
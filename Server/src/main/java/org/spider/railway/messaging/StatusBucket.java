@@ -0,0 +1,35 @@
+package org.spider.railway.messaging;
+
+import reactor.util.annotation.NonNull;
+
+// Aggregate of the samples falling into [origin + index * width, origin + (index + 1) * width)
+public record StatusBucket(long index, long count, double timeSum, double min, double max, double sum) {
+    @NonNull
+    public static StatusBucket of(long index, long millis, double value) {
+        return new StatusBucket(index, 1L, millis, value, value, value);
+    }
+
+    @NonNull
+    public StatusBucket add(long millis, double value) {
+        return merge(of(index, millis, value));
+    }
+
+    @NonNull
+    public StatusBucket merge(@NonNull StatusBucket other) {
+        return new StatusBucket(index,
+                count + other.count,
+                timeSum + other.timeSum,
+                Math.min(min, other.min),
+                Math.max(max, other.max),
+                sum + other.sum);
+    }
+
+    // Mean time of the samples
+    public long getX() {
+        return Math.round(timeSum / count);
+    }
+
+    public double getAvg() {
+        return sum / count;
+    }
+}
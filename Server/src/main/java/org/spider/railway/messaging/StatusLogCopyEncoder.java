@@ -0,0 +1,186 @@
+package org.spider.railway.messaging;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Wrapped;
+import org.spider.railway.messaging.message.SemaphoreStatusMessage;
+import org.spider.railway.messaging.message.StatusMessage;
+import org.spider.railway.messaging.message.SwitchStatusMessage;
+import org.spider.railway.messaging.message.TrainStatusMessage;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+
+// Encodes status_log rows in the PostgreSQL binary COPY format, see https://www.postgresql.org/docs/current/sql-copy.html
+final class StatusLogCopyEncoder {
+    static final String COPY_SQL = "COPY status_log " +
+            "(item_id, timestamp, receive_timestamp, corrected_timestamp, item_type, internal_temp, version, " +
+                    "marker_timestamp, speed, power, semaphore_color, switch_state) " +
+            "FROM STDIN WITH (FORMAT binary)";
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    private static final short FIELD_COUNT = 12;
+
+    // Seconds between 1970-01-01 and 2000-01-01, the epoch of PostgreSQL timestamps
+    private static final long PG_EPOCH_SECONDS = 946_684_800L;
+
+    private static final int NUMERIC_POS = 0x0000;
+
+    private static final int NUMERIC_NEG = 0x4000;
+
+    private static final int NUMERIC_NAN = 0xC000;
+
+    // Rough size of one row, only used to size the buffer
+    private static final int ROW_SIZE = 160;
+
+    private StatusLogCopyEncoder() {
+    }
+
+    @Nullable
+    static PostgresqlConnection unwrap(@NonNull Connection connection) {
+        Object current = connection;
+
+        while (true) {
+            if (current instanceof PostgresqlConnection postgresqlConnection)
+                return postgresqlConnection;
+
+            if (!(current instanceof Wrapped<?> wrapped))
+                return null;
+
+            final Object unwrapped = wrapped.unwrap();
+            if (unwrapped == null || unwrapped == current)
+                return null;
+
+            current = unwrapped;
+        }
+    }
+
+    @NonNull
+    static ByteBuf encode(@NonNull ByteBufAllocator allocator, @NonNull Collection<? extends StatusMessage> messages) {
+        final ByteBuf buf = allocator.buffer(SIGNATURE.length + 10 + messages.size() * ROW_SIZE);
+
+        try {
+            buf.writeBytes(SIGNATURE);
+            buf.writeInt(0); // flags
+            buf.writeInt(0); // header extension length
+
+            for (StatusMessage message : messages)
+                writeRow(buf, message);
+
+            buf.writeShort(-1);
+
+            return buf;
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    private static void writeRow(@NonNull ByteBuf buf, @NonNull StatusMessage message) {
+        buf.writeShort(FIELD_COUNT);
+
+        writeString(buf, message.getId());
+        writeTimestamp(buf, message.getTimestamp());
+        writeTimestamp(buf, message.getReceiveTimestamp());
+        writeTimestamp(buf, message.getCorrectedTimestamp());
+        writeString(buf, message.getItemType().name());
+        writeNumeric(buf, message.getInternalTemp());
+        buf.writeInt(8).writeLong(message.getVersion());
+
+        if (message instanceof TrainStatusMessage trainStatusMessage) {
+            writeTimestamp(buf, trainStatusMessage.getSchemeMarkerTime());
+            buf.writeInt(2).writeShort(trainStatusMessage.getSpeed());
+            writeNumeric(buf, trainStatusMessage.getPower());
+        } else
+            writeNull(buf, 3);
+
+        if (message instanceof SemaphoreStatusMessage semaphoreStatusMessage)
+            buf.writeInt(4).writeInt(semaphoreStatusMessage.getColor());
+        else
+            writeNull(buf, 1);
+
+        if (message instanceof SwitchStatusMessage switchStatusMessage)
+            buf.writeInt(1).writeByte(switchStatusMessage.getState() ? 1 : 0);
+        else
+            writeNull(buf, 1);
+    }
+
+    private static void writeNull(@NonNull ByteBuf buf, int count) {
+        for (int i = 0; i < count; i++)
+            buf.writeInt(-1);
+    }
+
+    private static void writeString(@NonNull ByteBuf buf, @NonNull String value) {
+        final int lengthIndex = buf.writerIndex();
+
+        buf.writeInt(0);
+        final int length = buf.writeCharSequence(value, StandardCharsets.UTF_8);
+        buf.setInt(lengthIndex, length);
+    }
+
+    static void writeTimestamp(@NonNull ByteBuf buf, @Nullable OffsetDateTime value) {
+        if (value == null) {
+            writeNull(buf, 1);
+            return;
+        }
+
+        buf.writeInt(8).writeLong((value.toEpochSecond() - PG_EPOCH_SECONDS) * 1_000_000L + value.getNano() / 1_000);
+    }
+
+    // numeric is sent as base 10000 digits: ndigits, weight of the first digit, sign, display scale, digits
+    static void writeNumeric(@NonNull ByteBuf buf, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            buf.writeInt(8).writeShort(0).writeShort(0).writeShort(NUMERIC_NAN).writeShort(0);
+            return;
+        }
+
+        final BigDecimal decimal = BigDecimal.valueOf(value);
+        final String plain = decimal.abs().toPlainString();
+        final int point = plain.indexOf('.');
+        final String intPart = point < 0 ? plain : plain.substring(0, point);
+        final String fracPart = point < 0 ? "" : plain.substring(point + 1);
+
+        final int intGroups = (intPart.length() + 3) / 4;
+        final int fracGroups = (fracPart.length() + 3) / 4;
+        final short[] digits = new short[intGroups + fracGroups];
+
+        final int intPad = intGroups * 4 - intPart.length();
+        for (int i = 0; i < intPart.length(); i++) {
+            final int pos = intPad + i;
+            digits[pos / 4] = (short) (digits[pos / 4] * 10 + (intPart.charAt(i) - '0'));
+        }
+
+        for (int i = 0; i < fracGroups * 4; i++) {
+            final int group = intGroups + i / 4;
+            digits[group] = (short) (digits[group] * 10 + (i < fracPart.length() ? fracPart.charAt(i) - '0' : 0));
+        }
+
+        int first = 0;
+        while (first < digits.length && digits[first] == 0)
+            first++;
+
+        int last = digits.length - 1;
+        while (last >= first && digits[last] == 0)
+            last--;
+
+        final int ndigits = last - first + 1;
+        final int weight = ndigits == 0 ? 0 : intGroups - 1 - first;
+        final int sign = decimal.signum() < 0 ? NUMERIC_NEG : NUMERIC_POS;
+
+        buf.writeInt(8 + ndigits * 2)
+                .writeShort(ndigits)
+                .writeShort(weight)
+                .writeShort(sign)
+                .writeShort(Math.max(0, decimal.scale()));
+
+        for (int i = first; i <= last; i++)
+            buf.writeShort(digits[i]);
+    }
+}
@@ -0,0 +1,278 @@
+package org.spider.railway.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.spider.railway.utils.Utils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+import reactor.util.function.Tuple3;
+import reactor.util.function.Tuples;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps status_log partitions (see V1_0003__status_log_partitions.sql) ahead of time and removes expired ones along
+// with the expired rollup rows
+@Slf4j
+@Service
+public class StatusLogPartitionService {
+    public enum Period {
+        DAY,
+        WEEK
+    }
+
+    private static final String PARTITION_PREFIX = "status_log_p";
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd", Locale.ROOT);
+
+    // name, lower bound, upper bound; the default partition has no bounds
+    private static final String PARTITIONS_SQL = """
+            SELECT c.relname,
+                substring(pg_get_expr(c.relpartbound, c.oid) FROM 'FROM \\(''([^'']+)''\\)')::timestamptz,
+                substring(pg_get_expr(c.relpartbound, c.oid) FROM 'TO \\(''([^'']+)''\\)')::timestamptz
+            FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'status_log'::regclass
+            ORDER BY 3
+            """;
+
+    private static final String DEFAULT_ROWS_SQL =
+            "SELECT EXISTS (SELECT 1 FROM %s WHERE corrected_timestamp >= $1 AND corrected_timestamp < $2)";
+
+    private final DatabaseClient databaseClient;
+
+    private final TransactionalOperator transactionalOperator;
+
+    private final StatusRollupService statusRollupService;
+
+    private final Period period;
+
+    private final int premake;
+
+    private final int retentionDays;
+
+    private final boolean detachOnly;
+
+    private final Duration checkInterval;
+
+    private final Counter createFailures;
+
+    private final Counter removeFailures;
+
+    // Upper bound of the last partition in epoch millis, newer rows go to the default partition
+    private final AtomicLong coveredUntil = new AtomicLong();
+
+    private Disposable disposable;
+
+    @Autowired
+    public StatusLogPartitionService(DatabaseClient databaseClient,
+                                     TransactionalOperator transactionalOperator,
+                                     StatusRollupService statusRollupService,
+                                     MeterRegistry registry,
+                                     @Value("${messaging.store.partitions.period:DAY}") Period period,
+                                     @Value("${messaging.store.partitions.premake:7}") int premake,
+                                     @Value("${messaging.store.partitions.retention-days:0}") int retentionDays,
+                                     @Value("${messaging.store.partitions.detach-only:false}") boolean detachOnly,
+                                     @Value("${messaging.store.partitions.check-interval-minutes:60}") long checkIntervalMinutes) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+        this.statusRollupService = statusRollupService;
+        this.period = period;
+        this.premake = Math.max(1, premake);
+        this.retentionDays = retentionDays;
+        this.detachOnly = detachOnly;
+        this.checkInterval = Duration.ofMinutes(Math.max(1L, checkIntervalMinutes));
+        this.createFailures = Counter.builder("railway.partitions.failures").tag("operation", "create").register(registry);
+        this.removeFailures = Counter.builder("railway.partitions.failures").tag("operation", "remove").register(registry);
+
+        // Hours of the future covered by partitions, 0 or less when new rows go to the default partition
+        Gauge.builder("railway.partitions.ahead", coveredUntil,
+                        until -> (until.get() - System.currentTimeMillis()) / 3_600_000.0)
+                .baseUnit("hours")
+                .register(registry);
+    }
+
+    @PostConstruct
+    private void init() {
+        this.disposable = Flux.interval(Duration.ZERO, checkInterval, Schedulers.boundedElastic())
+                .concatMap(__ -> maintain()
+                        .onErrorResume(th -> {
+                            log.error("maintain()", th);
+
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    private void destroy() {
+        this.disposable.dispose();
+    }
+
+    @NonNull
+    public Mono<Void> maintain() {
+        return loadPartitions()
+                .collectList()
+                .flatMap(partitions -> createPartitions(partitions)
+                        .then(removeExpired(partitions))
+                        .then(statusRollupService.removeExpired().doOnError(__ -> removeFailures.increment())));
+    }
+
+    @NonNull
+    private Flux<Tuple3<String, OffsetDateTime, OffsetDateTime>> loadPartitions() {
+        return databaseClient.sql(PARTITIONS_SQL)
+                .map((row, meta) -> Tuples.of(
+                        String.valueOf(row.get(0, String.class)),
+                        // the default partition, it's never dropped
+                        nullToMin(row.get(1, OffsetDateTime.class)),
+                        nullToMin(row.get(2, OffsetDateTime.class))))
+                .all();
+    }
+
+    @NonNull
+    private Mono<Void> createPartitions(@NonNull List<Tuple3<String, OffsetDateTime, OffsetDateTime>> partitions) {
+        return Mono.defer(() -> {
+            final OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+
+            String defaultPartition = null;
+            OffsetDateTime last = OffsetDateTime.MIN;
+            for (var partition : partitions) {
+                if (partition.getT3().isAfter(last))
+                    last = partition.getT3();
+
+                if (partition.getT2().equals(OffsetDateTime.MIN) && partition.getT3().equals(OffsetDateTime.MIN))
+                    defaultPartition = partition.getT1();
+            }
+
+            coveredUntil.set(last.equals(OffsetDateTime.MIN) ? 0L : last.toInstant().toEpochMilli());
+
+            OffsetDateTime from = last.isAfter(align(now)) ? last.withOffsetSameInstant(ZoneOffset.UTC) : align(now);
+            final OffsetDateTime until = align(now).plus(premake, unit());
+
+            final List<Tuple3<String, OffsetDateTime, OffsetDateTime>> created = new ArrayList<>();
+            while (from.isBefore(until)) {
+                final OffsetDateTime to = align(from).plus(1, unit());
+
+                created.add(Tuples.of(PARTITION_PREFIX + PARTITION_SUFFIX.format(from), from, to));
+                from = to;
+            }
+
+            final String defaultName = defaultPartition;
+
+            return Flux.fromIterable(created)
+                    .concatMap(partition -> createPartition(defaultName, partition)
+                            .doOnSuccess(__ -> {
+                                log.info("Partition created: {}", partition.getT1());
+                                coveredUntil.accumulateAndGet(partition.getT3().toInstant().toEpochMilli(), Math::max);
+                            })
+                            .onErrorResume(th -> {
+                                log.error("Can't create partition: {}", partition.getT1(), th);
+                                createFailures.increment();
+
+                                return Mono.empty();
+                            }))
+                    .then();
+        });
+    }
+
+    // Postgres refuses a partition for the rows already in the default partition, these are moved to it then: the
+    // default partition is detached for the time and attached back in the same transaction
+    @NonNull
+    private Mono<Void> createPartition(@Nullable String defaultPartition,
+                                       @NonNull Tuple3<String, OffsetDateTime, OffsetDateTime> partition) {
+        final String from = Utils.odtFormatter.format(partition.getT2()), to = Utils.odtFormatter.format(partition.getT3());
+        final String create = String.format(Locale.ROOT,
+                "CREATE TABLE IF NOT EXISTS %s PARTITION OF status_log FOR VALUES FROM ('%s') TO ('%s')",
+                partition.getT1(), from, to);
+
+        if (defaultPartition == null)
+            return databaseClient.sql(create).then();
+
+        return databaseClient.sql(String.format(DEFAULT_ROWS_SQL, defaultPartition))
+                .bind(0, partition.getT2())
+                .bind(1, partition.getT3())
+                .map((row, meta) -> Boolean.TRUE.equals(row.get(0, Boolean.class)))
+                .one()
+                .flatMap(conflict -> {
+                    if (!conflict)
+                        return databaseClient.sql(create).then();
+
+                    final String range = String.format(Locale.ROOT,
+                            "WHERE corrected_timestamp >= '%s' AND corrected_timestamp < '%s'", from, to);
+
+                    log.warn("Rows of {} are in {}, moving them", partition.getT1(), defaultPartition);
+
+                    return transactionalOperator.transactional(Flux.just(
+                                    "ALTER TABLE status_log DETACH PARTITION " + defaultPartition,
+                                    create,
+                                    "INSERT INTO " + partition.getT1() + " SELECT * FROM " + defaultPartition + " " + range,
+                                    "DELETE FROM " + defaultPartition + " " + range,
+                                    "ALTER TABLE status_log ATTACH PARTITION " + defaultPartition + " DEFAULT")
+                            .concatMap(sql -> databaseClient.sql(sql).then())
+                            .then());
+                });
+    }
+
+    @NonNull
+    private Mono<Void> removeExpired(@NonNull List<Tuple3<String, OffsetDateTime, OffsetDateTime>> partitions) {
+        if (retentionDays <= 0)
+            return Mono.empty();
+
+        final OffsetDateTime expired = OffsetDateTime.now(ZoneOffset.UTC).minusDays(retentionDays);
+
+        return Flux.fromIterable(partitions)
+                .filter(partition -> partition.getT1().startsWith(PARTITION_PREFIX)
+                        && !partition.getT3().equals(OffsetDateTime.MIN)
+                        && !partition.getT3().isAfter(expired))
+                .concatMap(partition -> {
+                    final String sql = detachOnly
+                            ? "ALTER TABLE status_log DETACH PARTITION " + partition.getT1()
+                            : "DROP TABLE " + partition.getT1();
+
+                    return databaseClient.sql(sql)
+                            .then()
+                            .doOnSuccess(__ -> log.info("Partition removed: {}", sql))
+                            .doOnError(__ -> removeFailures.increment());
+                })
+                .then();
+    }
+
+    @NonNull
+    private ChronoUnit unit() {
+        return period == Period.WEEK ? ChronoUnit.WEEKS : ChronoUnit.DAYS;
+    }
+
+    @NonNull
+    private OffsetDateTime align(@NonNull OffsetDateTime time) {
+        final OffsetDateTime day = time.withOffsetSameInstant(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS);
+
+        return period == Period.WEEK ? day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : day;
+    }
+
+    @NonNull
+    private static OffsetDateTime nullToMin(@Nullable OffsetDateTime time) {
+        return time == null ? OffsetDateTime.MIN : time;
+    }
+}
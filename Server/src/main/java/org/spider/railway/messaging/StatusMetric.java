@@ -0,0 +1,58 @@
+package org.spider.railway.messaging;
+
+import org.spider.railway.messaging.message.StatusMessage;
+import org.spider.railway.messaging.message.TrainStatusMessage;
+import reactor.util.annotation.NonNull;
+
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+public enum StatusMetric {
+    SPEED("speed", "speed",
+            message -> message instanceof TrainStatusMessage,
+            message -> ((TrainStatusMessage) message).getSpeed()),
+    POWER("power", "power",
+            message -> message instanceof TrainStatusMessage,
+            message -> ((TrainStatusMessage) message).getPower()),
+    TEMPERATURE("internal_temp", "temp",
+            message -> true,
+            StatusMessage::getInternalTemp);
+
+    // status_log column holding the metric
+    private final String column;
+
+    // prefix of the _min, _max and _sum columns in status_rollup tables
+    private final String rollupPrefix;
+
+    private final Predicate<StatusMessage> filter;
+
+    private final ToDoubleFunction<StatusMessage> extractor;
+
+    StatusMetric(@NonNull String column,
+                 @NonNull String rollupPrefix,
+                 @NonNull Predicate<StatusMessage> filter,
+                 @NonNull ToDoubleFunction<StatusMessage> extractor) {
+        this.column = column;
+        this.rollupPrefix = rollupPrefix;
+        this.filter = filter;
+        this.extractor = extractor;
+    }
+
+    @NonNull
+    public String getColumn() {
+        return column;
+    }
+
+    @NonNull
+    public String getRollupPrefix() {
+        return rollupPrefix;
+    }
+
+    public boolean appliesTo(@NonNull StatusMessage message) {
+        return filter.test(message);
+    }
+
+    public double getValue(@NonNull StatusMessage message) {
+        return extractor.applyAsDouble(message);
+    }
+}
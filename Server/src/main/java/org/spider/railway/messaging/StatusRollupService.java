@@ -0,0 +1,320 @@
+package org.spider.railway.messaging;
+
+import io.r2dbc.spi.Statement;
+import lombok.extern.slf4j.Slf4j;
+import org.spider.railway.messaging.message.SemaphoreStatusMessage;
+import org.spider.railway.messaging.message.StatusMessage;
+import org.spider.railway.messaging.message.SwitchStatusMessage;
+import org.spider.railway.messaging.message.TrainStatusMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+// Per item aggregates of status_log at fixed resolutions (see V1_0004__status_rollup.sql). Every batch stored to
+// status_log is pre-aggregated here and merged into the existing rollup rows by the database, in the transaction of
+// MessageStoreService which stores the batch. Rows older than the retention of their resolution are deleted by
+// removeExpired(), which StatusLogPartitionService runs with the removal of expired partitions.
+@Slf4j
+@Service
+public class StatusRollupService {
+    public enum Resolution {
+        SECOND(1_000L, "status_rollup_1s"),
+        MINUTE(60_000L, "status_rollup_1m"),
+        HOUR(3_600_000L, "status_rollup_1h");
+
+        private final long millis;
+
+        private final String table;
+
+        Resolution(long millis, @NonNull String table) {
+            this.millis = millis;
+            this.table = table;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    private static final String UPSERT_SQL = """
+        INSERT INTO %1$s AS r
+            (item_id, bucket, item_type, sample_count, time_sum, temp_min, temp_max, temp_sum,
+                speed_min, speed_max, speed_sum, power_min, power_max, power_sum,
+                last_corrected, semaphore_color, switch_state)
+        SELECT item_id, to_timestamp(bucket / 1000.0), item_type, sample_count, time_sum, temp_min, temp_max, temp_sum,
+                speed_min, speed_max, speed_sum, power_min, power_max, power_sum,
+                to_timestamp(last_corrected / 1000.0), semaphore_color, switch_state
+        FROM unnest($1::varchar[], $2::bigint[], $3::varchar[], $4::bigint[], $5::float8[], $6::float8[], $7::float8[],
+                $8::float8[], $9::float8[], $10::float8[], $11::float8[], $12::float8[], $13::float8[], $14::float8[],
+                $15::bigint[], $16::integer[], $17::boolean[])
+            AS t(item_id, bucket, item_type, sample_count, time_sum, temp_min, temp_max, temp_sum,
+                speed_min, speed_max, speed_sum, power_min, power_max, power_sum,
+                last_corrected, semaphore_color, switch_state)
+        ON CONFLICT (item_id, bucket) DO UPDATE SET
+            item_type = CASE WHEN excluded.last_corrected >= r.last_corrected THEN excluded.item_type ELSE r.item_type END,
+            sample_count = r.sample_count + excluded.sample_count,
+            time_sum = r.time_sum + excluded.time_sum,
+            temp_min = LEAST(r.temp_min, excluded.temp_min),
+            temp_max = GREATEST(r.temp_max, excluded.temp_max),
+            temp_sum = r.temp_sum + excluded.temp_sum,
+            speed_min = LEAST(r.speed_min, excluded.speed_min),
+            speed_max = GREATEST(r.speed_max, excluded.speed_max),
+            speed_sum = COALESCE(r.speed_sum + excluded.speed_sum, r.speed_sum, excluded.speed_sum),
+            power_min = LEAST(r.power_min, excluded.power_min),
+            power_max = GREATEST(r.power_max, excluded.power_max),
+            power_sum = COALESCE(r.power_sum + excluded.power_sum, r.power_sum, excluded.power_sum),
+            last_corrected = GREATEST(r.last_corrected, excluded.last_corrected),
+            semaphore_color = CASE WHEN excluded.last_corrected >= r.last_corrected
+                THEN COALESCE(excluded.semaphore_color, r.semaphore_color)
+                ELSE COALESCE(r.semaphore_color, excluded.semaphore_color) END,
+            switch_state = CASE WHEN excluded.last_corrected >= r.last_corrected
+                THEN COALESCE(excluded.switch_state, r.switch_state)
+                ELSE COALESCE(r.switch_state, excluded.switch_state) END
+        """;
+
+    // Same grid as MessageStoreService.BUCKETS_SQL: $2 is the origin and $3 the bucket width in epoch millis. Only
+    // the rows starting in [$4, $5) are read, the caller puts both on the period boundaries.
+    private static final String BUCKETS_SQL = """
+        SELECT floor((extract(epoch FROM bucket) * 1000 - $2) / $3)::bigint AS grid,
+            sum(sample_count)::bigint,
+            sum(time_sum),
+            min(%2$s_min),
+            max(%2$s_max),
+            sum(%2$s_sum)
+        FROM %1$s
+        WHERE item_id = $1 AND bucket >= $4 AND bucket < $5 AND %2$s_sum IS NOT NULL
+        GROUP BY grid
+        ORDER BY grid
+        """;
+
+    private static final String DELETE_EXPIRED_SQL = "DELETE FROM %s WHERE bucket < $1";
+
+    private static class Aggregate {
+        private final String itemId;
+
+        private final long bucket;
+
+        private String itemType;
+
+        private long count;
+
+        private double timeSum;
+
+        private double tempMin = Double.POSITIVE_INFINITY, tempMax = Double.NEGATIVE_INFINITY, tempSum;
+
+        private double speedMin = Double.POSITIVE_INFINITY, speedMax = Double.NEGATIVE_INFINITY, speedSum;
+
+        private double powerMin = Double.POSITIVE_INFINITY, powerMax = Double.NEGATIVE_INFINITY, powerSum;
+
+        private long speedCount;
+
+        private long lastCorrected = Long.MIN_VALUE;
+
+        private Integer semaphoreColor;
+
+        private Boolean switchState;
+
+        Aggregate(@NonNull String itemId, long bucket) {
+            this.itemId = itemId;
+            this.bucket = bucket;
+        }
+
+        void add(@NonNull StatusMessage message) {
+            final long corrected = message.getCorrectedTimestampMillis();
+            final boolean last = corrected >= lastCorrected;
+
+            count++;
+            timeSum += corrected;
+
+            final double temp = message.getInternalTemp();
+            tempMin = Math.min(tempMin, temp);
+            tempMax = Math.max(tempMax, temp);
+            tempSum += temp;
+
+            if (message instanceof TrainStatusMessage train) {
+                speedCount++;
+                speedMin = Math.min(speedMin, train.getSpeed());
+                speedMax = Math.max(speedMax, train.getSpeed());
+                speedSum += train.getSpeed();
+                powerMin = Math.min(powerMin, train.getPower());
+                powerMax = Math.max(powerMax, train.getPower());
+                powerSum += train.getPower();
+            } else if (message instanceof SemaphoreStatusMessage semaphore && (last || semaphoreColor == null))
+                semaphoreColor = semaphore.getColor();
+            else if (message instanceof SwitchStatusMessage switchStatus && (last || switchState == null))
+                switchState = switchStatus.getState();
+
+            if (last) {
+                lastCorrected = corrected;
+                itemType = message.getItemType().name();
+            }
+        }
+    }
+
+    private final DatabaseClient databaseClient;
+
+    private final boolean enabled;
+
+    // Days of rows kept per resolution, 0 keeps them all
+    private final int[] retentionDays;
+
+    @Autowired
+    public StatusRollupService(DatabaseClient databaseClient,
+                               @Value("${messaging.store.rollup.enabled:true}") boolean enabled,
+                               @Value("${messaging.store.rollup.retention-days.second:3}") int secondRetentionDays,
+                               @Value("${messaging.store.rollup.retention-days.minute:90}") int minuteRetentionDays,
+                               @Value("${messaging.store.rollup.retention-days.hour:0}") int hourRetentionDays) {
+        this.databaseClient = databaseClient;
+        this.enabled = enabled;
+        this.retentionDays = new int[] {
+                Math.max(0, secondRetentionDays), Math.max(0, minuteRetentionDays), Math.max(0, hourRetentionDays)
+        };
+    }
+
+    // The coarsest resolution still finer than the requested bucket width and still kept at fromMillis, null when
+    // only raw rows are fine enough
+    @Nullable
+    public Resolution plan(long widthMillis, long fromMillis) {
+        if (!enabled)
+            return null;
+
+        Resolution result = null;
+        for (Resolution resolution : Resolution.values())
+            if (resolution.millis <= widthMillis && fromMillis >= expiredBefore(resolution))
+                result = resolution;
+
+        return result;
+    }
+
+    // Rows of the buckets before this time in epoch millis may be deleted already
+    private long expiredBefore(@NonNull Resolution resolution) {
+        final int days = retentionDays[resolution.ordinal()];
+
+        return days == 0 ? Long.MIN_VALUE : System.currentTimeMillis() - days * 86_400_000L;
+    }
+
+    @NonNull
+    public Mono<Void> removeExpired() {
+        if (!enabled)
+            return Mono.empty();
+
+        return Flux.fromArray(Resolution.values())
+                .filter(resolution -> retentionDays[resolution.ordinal()] > 0)
+                .concatMap(resolution -> databaseClient.sql(String.format(DELETE_EXPIRED_SQL, resolution.table))
+                        .bind(0, OffsetDateTime.now(ZoneOffset.UTC).minusDays(retentionDays[resolution.ordinal()]))
+                        .fetch()
+                        .rowsUpdated()
+                        .doOnNext(count -> {
+                            if (count > 0)
+                                log.info("Rollup rows removed: {} from {}", count, resolution.table);
+                        }))
+                .then();
+    }
+
+    @NonNull
+    public Flux<StatusBucket> getBuckets(@NonNull String itemId,
+                                         @NonNull StatusMetric metric,
+                                         @NonNull Resolution resolution,
+                                         @NonNull OffsetDateTime from,
+                                         @NonNull OffsetDateTime to,
+                                         long originMillis,
+                                         long widthMillis) {
+        return databaseClient.sql(String.format(BUCKETS_SQL, resolution.table, metric.getRollupPrefix()))
+                .bind(0, itemId)
+                .bind(1, originMillis)
+                .bind(2, widthMillis)
+                .bind(3, from)
+                .bind(4, to)
+                .map((row, meta) -> new StatusBucket(
+                        Objects.requireNonNull(row.get(0, Long.class)),
+                        Objects.requireNonNull(row.get(1, Long.class)),
+                        Objects.requireNonNull(row.get(2, Double.class)),
+                        Objects.requireNonNull(row.get(3, Double.class)),
+                        Objects.requireNonNull(row.get(4, Double.class)),
+                        Objects.requireNonNull(row.get(5, Double.class))))
+                .all();
+    }
+
+    // Errors are passed to the caller, a batch not stored in status_log must not be in the rollups either
+    @NonNull
+    public Mono<Void> write(@NonNull List<? extends StatusMessage> messages) {
+        if (!enabled || messages.isEmpty())
+            return Mono.empty();
+
+        return Flux.fromArray(Resolution.values())
+                .concatMap(resolution -> upsert(resolution, aggregate(resolution, messages)))
+                .then();
+    }
+
+    @NonNull
+    private static Collection<Aggregate> aggregate(@NonNull Resolution resolution, @NonNull List<? extends StatusMessage> messages) {
+        // One row per item and bucket, INSERT ... ON CONFLICT can't update the same row twice
+        final Map<String, Aggregate> result = new LinkedHashMap<>();
+
+        for (StatusMessage message : messages) {
+            final long bucket = Math.floorDiv(message.getCorrectedTimestampMillis(), resolution.millis) * resolution.millis;
+
+            result.computeIfAbsent(message.getId() + '@' + bucket, __ -> new Aggregate(message.getId(), bucket))
+                    .add(message);
+        }
+
+        return result.values();
+    }
+
+    @NonNull
+    private Mono<Long> upsert(@NonNull Resolution resolution, @NonNull Collection<Aggregate> aggregates) {
+        if (aggregates.isEmpty())
+            return Mono.empty();
+
+        final int size = aggregates.size();
+        final Object[][] data = {
+                new String[size], new Long[size], new String[size], new Long[size], new Double[size],
+                new Double[size], new Double[size], new Double[size],
+                new Double[size], new Double[size], new Double[size],
+                new Double[size], new Double[size], new Double[size],
+                new Long[size], new Integer[size], new Boolean[size]
+        };
+
+        int index = 0;
+        for (Aggregate aggregate : aggregates) {
+            final boolean train = aggregate.speedCount > 0;
+
+            data[0][index] = aggregate.itemId;
+            data[1][index] = aggregate.bucket;
+            data[2][index] = aggregate.itemType;
+            data[3][index] = aggregate.count;
+            data[4][index] = aggregate.timeSum;
+            data[5][index] = aggregate.tempMin;
+            data[6][index] = aggregate.tempMax;
+            data[7][index] = aggregate.tempSum;
+            data[8][index] = train ? aggregate.speedMin : null;
+            data[9][index] = train ? aggregate.speedMax : null;
+            data[10][index] = train ? aggregate.speedSum : null;
+            data[11][index] = train ? aggregate.powerMin : null;
+            data[12][index] = train ? aggregate.powerMax : null;
+            data[13][index] = train ? aggregate.powerSum : null;
+            data[14][index] = aggregate.lastCorrected;
+            data[15][index] = aggregate.semaphoreColor;
+            data[16][index] = aggregate.switchState;
+            index++;
+        }
+
+        return databaseClient.inConnection(connection -> {
+            Statement statement = connection.createStatement(String.format(UPSERT_SQL, resolution.table));
+
+            for (int i = 0; i < data.length; i++)
+                statement = statement.bind(i, data[i]);
+
+            return Mono.from(statement.execute()).flatMap(result -> Mono.from(result.getRowsUpdated()));
+        });
+    }
+}
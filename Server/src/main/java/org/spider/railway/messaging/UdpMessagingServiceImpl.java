@@ -1,5 +1,9 @@
 package org.spider.railway.messaging;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.netty.buffer.ByteBuf;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -9,10 +13,12 @@ import lombok.Getter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.SerializationException;
+import org.reactivestreams.Publisher;
 import org.spider.railway.exception.NotFoundException;
 import org.spider.railway.item.SchemeItem;
 import org.spider.railway.messaging.message.*;
 import org.spider.railway.messaging.parsers.BinarySerializer;
+import org.spider.railway.messaging.parsers.FrameBatch;
 import org.spider.railway.utils.ReactorUtils;
 import org.spider.railway.utils.Utils;
 import org.spider.railway.utils.udp.UdpClient;
@@ -29,7 +35,6 @@ import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.annotation.NonNull;
 import reactor.util.annotation.Nullable;
-import reactor.util.function.Tuple3;
 
 import java.net.InetSocketAddress;
 import java.time.OffsetDateTime;
@@ -37,14 +42,16 @@ import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicStampedReference;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import static org.spider.railway.messaging.parsers.ParserUtils.parsePackets;
+import static org.spider.railway.messaging.parsers.ParserUtils.parseBatches;
 
 @Slf4j
 @Service
@@ -60,6 +67,11 @@ public class UdpMessagingServiceImpl implements MessagingService {
 
     private static final String SUBITEMS_DELIMETER = "-";
 
+    // Metric tags by client type code and by frame code, the last one is for unknown codes
+    private static final String[] DEVICE_TAGS = { "train", "switch", "semaphore", "switch-with-semaphores" };
+
+    private static final String[] FRAME_TAGS = { "log", "status", "handshake", "unknown" };
+
     @NonNull
     private static String createClientId(@NonNull String clientId) {
         return clientId.intern();
@@ -251,13 +263,17 @@ public class UdpMessagingServiceImpl implements MessagingService {
         private final int subItems;
         private final AtomicLong version = new AtomicLong();
         private final AtomicStampedReference<Long> correctionMillis = new AtomicStampedReference<>(0L, 0);
+        @Nullable
+        private final Counter statuses;
+        private final EventTap.Sampler sampler = new EventTap.Sampler();
 
-        ClientInfo(String id, short clientTypeCode, InetSocketAddress address, int subItems) {
+        ClientInfo(String id, short clientTypeCode, InetSocketAddress address, int subItems, @Nullable Counter statuses) {
             this.id = id;
             this.clientTypeCode = clientTypeCode;
             this.address = address;
             this.udpClient = new UdpClient(address);
             this.subItems = subItems;
+            this.statuses = statuses;
         }
 
         public void setVersion(long newVersion) {
@@ -286,6 +302,21 @@ public class UdpMessagingServiceImpl implements MessagingService {
 
             return result.isAfter(received) ? received : result;
         }
+
+        public long correctTimestampMillis(long fromItem, long received) {
+            final long millis = received - fromItem;
+
+            int oldNumber, newNumber;
+            Long oldSum;
+            long newSum;
+
+            do {
+                oldNumber = correctionMillis.getStamp();
+                oldSum = correctionMillis.getReference();
+            } while (!correctionMillis.compareAndSet(oldSum, newSum = oldSum + millis, oldNumber, newNumber = oldNumber + 1));
+
+            return Math.min(fromItem + newSum / newNumber, received);
+        }
     }
 
     @ToString
@@ -502,6 +533,155 @@ public class UdpMessagingServiceImpl implements MessagingService {
         }
     }
 
+    // Statuses read straight from the frame into primitive fields, timestamps are kept as epoch millis until
+    // OffsetDateTime is requested. Nothing refers to the pooled datagram buffer once the record is built.
+    @ToString
+    private static abstract class StatusRecord implements StatusMessage {
+        // Entity wire format: timestamp (8 bytes), version (4 bytes), internal temp (4 bytes), then the item fields
+        static final int TIMESTAMP_OFFSET = 0;
+        static final int VERSION_OFFSET = 8;
+        static final int INTERNAL_TEMP_OFFSET = 12;
+        static final int HEADER_SIZE = 16;
+
+        private final String id;
+        private final long receiveMillis;
+        private final long timestampMillis;
+        private final long correctedMillis;
+        private final long version;
+        private final int internalTemp;
+
+        StatusRecord(@NonNull String id, long receiveMillis, long timestampMillis, long correctedMillis,
+                     long version, int internalTemp) {
+            this.id = id;
+            this.receiveMillis = receiveMillis;
+            this.timestampMillis = timestampMillis;
+            this.correctedMillis = correctedMillis;
+            this.version = version;
+            this.internalTemp = internalTemp;
+        }
+
+        @Override
+        @NonNull
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        @NonNull
+        public OffsetDateTime getReceiveTimestamp() {
+            return Utils.ofMillis(receiveMillis);
+        }
+
+        @Override
+        @NonNull
+        public OffsetDateTime getTimestamp() {
+            return Utils.ofMillis(timestampMillis);
+        }
+
+        @Override
+        public double getInternalTemp() {
+            return internalTemp / 1000.0;
+        }
+
+        @Override
+        public long getVersion() {
+            return version;
+        }
+
+        @Override
+        @NonNull
+        public OffsetDateTime getCorrectedTimestamp() {
+            return Utils.ofMillis(correctedMillis);
+        }
+
+        @Override
+        public long getCorrectedTimestampMillis() {
+            return correctedMillis;
+        }
+    }
+
+    @ToString(callSuper = true)
+    private static class TrainStatusRecord extends StatusRecord implements TrainStatusMessage {
+        static final int SPEED_OFFSET = HEADER_SIZE;
+        static final int POWER_OFFSET = SPEED_OFFSET + 2;
+        static final int MARKER_OFFSET = POWER_OFFSET + 4;
+        static final int SIZE = MARKER_OFFSET + 8;
+
+        private final short speed;
+        private final int power;
+        private final long markerMillis;
+
+        TrainStatusRecord(@NonNull String id, long receiveMillis, long timestampMillis, long correctedMillis,
+                          long version, int internalTemp, short speed, int power, long markerMillis) {
+            super(id, receiveMillis, timestampMillis, correctedMillis, version, internalTemp);
+
+            this.speed = speed;
+            this.power = power;
+            this.markerMillis = markerMillis;
+        }
+
+        @Override
+        public int getSpeed() {
+            return speed;
+        }
+
+        @Override
+        public double getPower() {
+            return power / 1000.0;
+        }
+
+        @Override
+        @Nullable
+        public OffsetDateTime getSchemeMarkerTime() {
+            return markerMillis <= 0 ? null : Utils.ofMillis(markerMillis);
+        }
+    }
+
+    @ToString(callSuper = true)
+    private static class SwitchStatusRecord extends StatusRecord implements SwitchStatusMessage {
+        static final int STATE_OFFSET = HEADER_SIZE;
+        static final int SIZE = STATE_OFFSET + 1;
+
+        private final boolean state;
+
+        SwitchStatusRecord(@NonNull String id, long receiveMillis, long timestampMillis, long correctedMillis,
+                           long version, int internalTemp, boolean state) {
+            super(id, receiveMillis, timestampMillis, correctedMillis, version, internalTemp);
+
+            this.state = state;
+        }
+
+        @Override
+        public boolean getState() {
+            return state;
+        }
+    }
+
+    @ToString(callSuper = true)
+    private static class SemaphoreStatusRecord extends StatusRecord implements SemaphoreStatusMessage {
+        static final int COLOR_OFFSET = HEADER_SIZE;
+        static final int SIZE = COLOR_OFFSET + 4;
+
+        private final int color;
+
+        SemaphoreStatusRecord(@NonNull String id, long receiveMillis, long timestampMillis, long correctedMillis,
+                              long version, int internalTemp, int color) {
+            super(id, receiveMillis, timestampMillis, correctedMillis, version, internalTemp);
+
+            this.color = color;
+        }
+
+        @Override
+        public int getColor() {
+            return color;
+        }
+    }
+
+    // SwitchWithSemaphoresStatusEntity: the switch status, colors count (2 bytes), colors (4 bytes each)
+    private static final int SWITCH_M_COUNT_OFFSET = SwitchStatusRecord.SIZE;
+
+    private static final int SWITCH_M_COLORS_OFFSET = SWITCH_M_COUNT_OFFSET + 2;
+
     private static final BinarySerializer<HandshakeEntity> handshakeSerializer = BinarySerializer.get(HandshakeEntity.class);
 
     private static final BinarySerializer<LogEntity> logSerializer = BinarySerializer.get(LogEntity.class);
@@ -517,6 +697,13 @@ public class UdpMessagingServiceImpl implements MessagingService {
 
     private final UdpServer udpServer;
 
+    private final boolean flyweightStatus;
+
+    private final IngestShard[] shards;
+
+    // Raw frames of every shard, written by its thread only
+    private final EventTap.FrameRing[] frameRings;
+
     private final Flux<? extends HandshakeMessage> handshakesSrc;
 
     private final Flux<? extends LogMessage> logsSrc;
@@ -527,108 +714,244 @@ public class UdpMessagingServiceImpl implements MessagingService {
 
     private final ConcurrentHashMap<InetSocketAddress, ClientInfo> clientByAddress = new ConcurrentHashMap<>();
 
+    private final MeterRegistry registry;
+
+    private final EventTap eventTap;
+
+    private final boolean perClientMetrics;
+
+    private final Timer[] decodeTimers = new Timer[FRAME_TAGS.length];
+
+    private final Counter[] statusCounters = new Counter[DEVICE_TAGS.length];
+
+    private final Counter unknownClientStatuses;
+
+    private final Counter unknownClientLogs;
+
+    private final Counter rejectedStatuses;
+
     private Disposable handshakes;
 
     private Disposable statuses;
 
     @Autowired
-    public UdpMessagingServiceImpl(@Value("${messaging.udp.port}") int port) {
-        this.udpServer = new UdpServer(port);
-        final Flux<Tuple3<Byte, InetSocketAddress, ByteBuf>> src = parsePackets(udpServer.subscribe());
+    public UdpMessagingServiceImpl(@Value("${messaging.udp.port}") int port,
+                                   @Value("${messaging.udp.flyweight-status:false}") boolean flyweightStatus,
+                                   @Value("${messaging.udp.ingest.shards:4}") int shards,
+                                   @Value("${messaging.udp.ingest.queue-size:4096}") int shardQueueSize,
+                                   @Value("${messaging.udp.receive.sockets:1}") int receiveSockets,
+                                   @Value("${messaging.udp.receive.buffer-size:0}") int receiveBufferSize,
+                                   @Value("${messaging.udp.receive.batch-size:16}") int receiveBatchSize,
+                                   @Value("${messaging.udp.receive.native:true}") boolean receiveNative,
+                                   @Value("${messaging.metrics.per-client:false}") boolean perClientMetrics,
+                                   MeterRegistry registry,
+                                   EventTap eventTap) {
+        this.registry = registry;
+        this.eventTap = eventTap;
+        this.perClientMetrics = perClientMetrics;
+        this.udpServer = new UdpServer(port,
+                new UdpServer.Options(Math.max(1, receiveSockets), receiveBufferSize, receiveBatchSize, receiveNative), registry);
+        this.flyweightStatus = flyweightStatus;
+        this.shards = new IngestShard[Math.max(1, shards)];
+        this.frameRings = new EventTap.FrameRing[this.shards.length];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new IngestShard("udp-ingest", i, shardQueueSize);
+            this.shards[i].bindTo(registry);
+            this.frameRings[i] = eventTap.newRing();
+        }
+
+        for (int i = 0; i < FRAME_TAGS.length; i++)
+            decodeTimers[i] = Timer.builder("railway.udp.decode").tag("frame", FRAME_TAGS[i]).register(registry);
+
+        for (int i = 0; i < DEVICE_TAGS.length; i++)
+            statusCounters[i] = Counter.builder("railway.udp.statuses").tag("device", DEVICE_TAGS[i]).register(registry);
+
+        this.unknownClientStatuses = Counter.builder("railway.udp.unknown.client").tag("frame", "status").register(registry);
+        this.unknownClientLogs = Counter.builder("railway.udp.unknown.client").tag("frame", "log").register(registry);
+        this.rejectedStatuses = Counter.builder("railway.udp.statuses.rejected").register(registry);
+
+        Gauge.builder("railway.udp.clients", clientByAddress, Map::size).register(registry);
 
-        this.handshakesSrc = src.concatMap(t -> {
+        final Flux<? extends MessageBase> messages = parseBatches(udpServer.subscribeBatches(), Object::hashCode,
+                        this.shards.length, registry)
+                .groupBy(FrameBatch::getPartition)
+                .flatMap(group -> this.shards[group.key()].process(group, this::decode, FrameBatch::release),
+                        this.shards.length)
+                .share();
+
+        this.handshakesSrc = messages.ofType(HandshakeMessage.class).share();
+
+        this.logsSrc = messages.ofType(LogMessage.class).share();
+
+        this.statusSrc = messages.ofType(StatusMessage.class).share();
+    }
+
+    @NonNull
+    private Publisher<? extends MessageBase> decode(@NonNull FrameBatch batch) {
+        try {
+            final EventTap.FrameRing frameRing = frameRings[batch.getPartition()];
+
+            if (batch.size() == 1)
+                return decode(frameRing, batch.code(0), batch.sender(0), batch.frame(0));
+
+            final List<Publisher<? extends MessageBase>> result = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
                 try {
-                    if (t.getT1() != 2)
-                        return Mono.empty();
-                    final OffsetDateTime now = OffsetDateTime.now();
-
-                    final HandshakeEntity handshakeEntity = handshakeSerializer.deserialize(t.getT3().duplicate());
-                    log.info("Handshake: address: {}, {}", t.getT2(), handshakeEntity);
-
-                    final String clientId = createClientId(handshakeEntity.getDeviceId());
-                    final List<? extends HandshakeMessage> result = processHandshakeMessage(clientId, handshakeEntity);
-
-                    if (result == null)
-                        return Mono.empty();
-
-                    ClientInfo client = clientById.get(clientId);
-                    if (client == null
-                            || !client.getAddress().equals(t.getT2())
-                            || client.getClientTypeCode() != handshakeEntity.getTypeCode()) {
-                        if (client != null)
-                            clientByAddress.remove(client.getAddress());
-
-                        client = new ClientInfo(clientId, handshakeEntity.getTypeCode(), t.getT2(), result.size());
-                        clientByAddress.put(client.getAddress(), client);
-                        for (HandshakeMessage message : result)
-                            clientById.put(message.getId(), client);
-                    }
+                    result.add(decode(frameRing, batch.code(i), batch.sender(i), batch.frame(i)));
+                } catch (RuntimeException e) {
+                    log.warn("Can't decode frame code={}, address={}.", batch.code(i), batch.sender(i), e);
+                }
+            }
+
+            return Flux.concat(result);
+        } finally {
+            batch.release();
+        }
+    }
 
-                    client.correctTimestamp(handshakeEntity.getTimestamp(), now);
-                    client.getUdpClient().send(buf -> {
-                                if (buf.writableBytes() < 1)
-                                    return false;
-                                buf.writeByte(3);
-                                return true;
-                            })
-                            .subscribeOn(Schedulers.boundedElastic())
-                            .doOnError(th -> log.error("send()", th))
-                            .subscribe();
+    @NonNull
+    private Publisher<? extends MessageBase> decode(@NonNull EventTap.FrameRing frameRing,
+                                                    byte code, @NonNull InetSocketAddress address, @NonNull ByteBuf buf) {
+        final long start = System.nanoTime();
+
+        frameRing.record(code, address, buf);
+
+        try {
+            return switch (code) {
+                case 0 -> decodeLog(address, buf);
+                case 1 -> decodeStatus(address, buf);
+                case 2 -> decodeHandshake(address, buf);
+                default -> Mono.empty();
+            };
+        } finally {
+            decodeTimers[code >= 0 && code < FRAME_TAGS.length - 1 ? code : FRAME_TAGS.length - 1]
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
 
-                    return Flux.fromIterable(result);
-                } finally {
-                    t.getT3().release();
+    @NonNull
+    private Publisher<? extends HandshakeMessage> decodeHandshake(@NonNull InetSocketAddress address, @NonNull ByteBuf buf) {
+        final OffsetDateTime now = OffsetDateTime.now();
+
+        final HandshakeEntity handshakeEntity = handshakeSerializer.deserialize(buf.duplicate());
+        log.info("Handshake: address: {}, {}", address, handshakeEntity);
+
+        final String clientId = createClientId(handshakeEntity.getDeviceId());
+        final List<? extends HandshakeMessage> result = processHandshakeMessage(clientId, handshakeEntity);
+
+        if (result == null)
+            return Mono.empty();
+
+        ClientInfo client = clientById.get(clientId);
+        if (client == null
+                || !client.getAddress().equals(address)
+                || client.getClientTypeCode() != handshakeEntity.getTypeCode()) {
+            if (client != null)
+                clientByAddress.remove(client.getAddress());
+
+            client = new ClientInfo(clientId, handshakeEntity.getTypeCode(), address, result.size(),
+                    perClientMetrics ? Counter.builder("railway.udp.client.statuses").tag("client", clientId).register(registry) : null);
+            clientByAddress.put(client.getAddress(), client);
+            for (HandshakeMessage message : result)
+                clientById.put(message.getId(), client);
+        }
+
+        client.correctTimestamp(handshakeEntity.getTimestamp(), now);
+        client.getUdpClient().send(ackBuf -> {
+                    if (ackBuf.writableBytes() < 1)
+                        return false;
+                    ackBuf.writeByte(3);
+                    return true;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnError(th -> log.error("send()", th))
+                .subscribe();
+
+        return Flux.fromIterable(result);
+    }
+
+    @NonNull
+    private Publisher<? extends LogMessage> decodeLog(@NonNull InetSocketAddress address, @NonNull ByteBuf buf) {
+        final ClientInfo client = clientByAddress.get(address);
+
+        if (client == null) {
+            unknownClientLogs.increment();
+            log.warn("Log from unknown client addr={}.", address);
+
+            return Mono.empty();
+        }
+        final LogEntity logEntity = logSerializer.deserialize(buf.duplicate());
+
+        return Mono.just(new LogMessageImpl(client.getId(), client.getAddress(), logEntity));
+    }
+
+    @NonNull
+    private Publisher<? extends StatusMessage> decodeStatus(@NonNull InetSocketAddress address, @NonNull ByteBuf buf) {
+        final ClientInfo client = clientByAddress.get(address);
+
+        if (client != null) {
+            if (flyweightStatus) {
+                final StatusRecord status = processStatusRecord(client, buf);
+
+                if (status != null) {
+                    accepted(client, status);
+
+                    return client.getClientTypeCode() == SWITCH_WITH_SEMAPHORE_CODE
+                            ? processSemaphoreRecords(client, buf, status)
+                            : Mono.just(status);
                 }
-            })
-            .share();
+            } else {
+                List<? extends StatusMessage> result = processStatusMessage(client, buf);
 
-        this.logsSrc = src.concatMap(t -> {
-                    try {
-                        if (t.getT1() != 0)
-                            return Mono.empty();
+                if (result != null) {
+                    accepted(client, result.isEmpty() ? null : result.get(0));
 
-                        final ClientInfo client = clientByAddress.get(t.getT2());
+                    return Flux.fromIterable(result);
+                }
+            }
 
-                        if (client == null) {
-                            log.warn("Log from unknown client addr={}.", t.getT2());
+            rejectedStatuses.increment();
+            log.warn("Unprocessed status message. address={}.", address);
+        } else {
+            unknownClientStatuses.increment();
+            log.warn("Status from unknown client addr={}.", address);
+        }
 
-                            return Mono.empty();
-                        }
-                        final LogEntity logEntity = logSerializer.deserialize(t.getT3().duplicate());
+        return Mono.empty();
+    }
 
-                        return Mono.just(new LogMessageImpl(client.getId(), client.getAddress(), logEntity));
-                    } finally {
-                        t.getT3().release();
-                    }
-                })
-                .share();
+    private void accepted(@NonNull ClientInfo client, @Nullable StatusMessage first) {
+        if (first != null)
+            client.setVersion(first.getVersion());
 
-        this.statusSrc = src.concatMap(t -> {
-                    try {
-                        if (t.getT1() == 1) {
-                            final ClientInfo client = clientByAddress.get(t.getT2());
+        statusCounters[client.getClientTypeCode()].increment();
+        if (client.getStatuses() != null)
+            client.getStatuses().increment();
 
-                            if (client != null) {
-                                List<? extends StatusMessage> result = processStatusMessage(client, t.getT3());
+        if (first != null && eventTap.sample(client.getSampler()))
+            eventTap.log("status", client.getId(), first);
+    }
 
-                                if (result != null) {
-                                    if (!result.isEmpty())
-                                        client.setVersion(result.get(0).getVersion());
+    @NonNull
+    public List<IngestShard.Statistics> getShardStatistics() {
+        return Arrays.stream(shards).map(IngestShard::getStatistics).toList();
+    }
 
-                                    return Flux.fromIterable(result);
-                                }
+    @NonNull
+    public List<UdpServer.SocketStatistics> getSocketStatistics() {
+        return udpServer.getSocketStatistics();
+    }
 
-                                log.warn("Unprocessed status message. address={}.", t.getT2());
-                            } else
-                                log.warn("Status from unknown client addr={}.", t.getT2());
-                        }
+    @NonNull
+    public List<UdpServer.KernelStatistics> getKernelStatistics() {
+        return udpServer.getKernelStatistics();
+    }
 
-                        return Mono.empty();
-                    } finally {
-                        t.getT3().release();
-                    }
-                })
-                .share();
+    @Nullable
+    public InetSocketAddress getClientAddress(@NonNull String itemId) {
+        final ClientInfo client = clientById.get(itemId);
+
+        return client == null ? null : client.getAddress();
     }
 
     @Nullable
@@ -662,26 +985,22 @@ public class UdpMessagingServiceImpl implements MessagingService {
         switch (client.getClientTypeCode()) {
             case TRAIN_CODE:
                 final TrainStatusEntity trainStatusEntity = trainStatusSerializer.deserialize(buf.duplicate());
-                log.info("Receive status from {}: {}", client.getId(), trainStatusEntity);
 
                 return List.of(new TrainStatusMessageImpl(client.getId(), trainStatusEntity, client));
 
             case SWITCH_CODE:
                 final SwitchStatusEntity switchStatusEntity = switchStatusSerializer.deserialize(buf.duplicate());
-                log.info("Receive status from {}: {}", client.getId(), switchStatusEntity);
 
                 return List.of(new SwitchStatusMessageImpl(client.getId(), switchStatusEntity, client));
 
             case SEMAPHORE_CODE:
                 final SemaphoreStatusEntity semaphoreStatusEntity = semaphoreStatusSerializer.deserialize(buf.duplicate());
-                log.info("Receive status from {}: {}", client.getId(), semaphoreStatusEntity);
 
                 return List.of(new SemaphoreStatusMessageImpl(client.getId(), semaphoreStatusEntity, client));
 
             case SWITCH_WITH_SEMAPHORE_CODE:
                 final SwitchWithSemaphoresStatusEntity switchWithSemaphoresStatusEntity =
                         switchWithSemaphoresStatusSerializer.deserialize(buf.duplicate());
-                log.info("Receive status from {}: {}", client.getId(), switchWithSemaphoresStatusEntity);
 
                 final int numSemaphores = switchWithSemaphoresStatusEntity.getSemaphoreColors().length;
                 final ArrayList<StatusMessage> result = new ArrayList<>(numSemaphores + 1);
@@ -696,6 +1015,71 @@ public class UdpMessagingServiceImpl implements MessagingService {
         }
     }
 
+    // The status of a single item, or the switch of a switch with semaphores; null for a short or unknown frame
+    @Nullable
+    private StatusRecord processStatusRecord(@NonNull ClientInfo client, @NonNull ByteBuf buf) {
+        final int start = buf.readerIndex();
+        final int size = buf.readableBytes();
+
+        if (size < StatusRecord.HEADER_SIZE)
+            return null;
+
+        final long receiveMillis = System.currentTimeMillis();
+        final long timestampMillis = buf.getLongLE(start + StatusRecord.TIMESTAMP_OFFSET);
+        final long correctedMillis = client.correctTimestampMillis(timestampMillis, receiveMillis);
+        final int version = buf.getIntLE(start + StatusRecord.VERSION_OFFSET);
+        final int internalTemp = buf.getIntLE(start + StatusRecord.INTERNAL_TEMP_OFFSET);
+
+        switch (client.getClientTypeCode()) {
+            case TRAIN_CODE:
+                return size < TrainStatusRecord.SIZE ? null : new TrainStatusRecord(client.getId(), receiveMillis,
+                        timestampMillis, correctedMillis, version, internalTemp,
+                        buf.getShortLE(start + TrainStatusRecord.SPEED_OFFSET),
+                        buf.getIntLE(start + TrainStatusRecord.POWER_OFFSET),
+                        buf.getLongLE(start + TrainStatusRecord.MARKER_OFFSET));
+
+            case SWITCH_CODE:
+                return size < SwitchStatusRecord.SIZE ? null : new SwitchStatusRecord(client.getId(), receiveMillis,
+                        timestampMillis, correctedMillis, Utils.toUnsignedLong(version), internalTemp,
+                        buf.getByte(start + SwitchStatusRecord.STATE_OFFSET) != 0);
+
+            case SEMAPHORE_CODE:
+                return size < SemaphoreStatusRecord.SIZE ? null : new SemaphoreStatusRecord(client.getId(), receiveMillis,
+                        timestampMillis, correctedMillis, Utils.toUnsignedLong(version), internalTemp,
+                        buf.getIntLE(start + SemaphoreStatusRecord.COLOR_OFFSET));
+
+            case SWITCH_WITH_SEMAPHORE_CODE:
+                if (size < SWITCH_M_COLORS_OFFSET || size < SWITCH_M_COLORS_OFFSET + 4 * semaphoreCount(buf))
+                    return null;
+
+                return new SwitchStatusRecord(client.getId(), receiveMillis, timestampMillis, correctedMillis,
+                        Utils.toUnsignedLong(version), internalTemp, buf.getByte(start + SwitchStatusRecord.STATE_OFFSET) != 0);
+
+            default:
+                return null;
+        }
+    }
+
+    private static int semaphoreCount(@NonNull ByteBuf buf) {
+        return Math.max(0, buf.getShortLE(buf.readerIndex() + SWITCH_M_COUNT_OFFSET));
+    }
+
+    // The switch followed by its semaphores, sharing its timestamps and version
+    @NonNull
+    private Publisher<? extends StatusMessage> processSemaphoreRecords(@NonNull ClientInfo client, @NonNull ByteBuf buf,
+                                                                       @NonNull StatusRecord status) {
+        final int count = semaphoreCount(buf);
+        final StatusRecord[] result = new StatusRecord[count + 1];
+
+        result[0] = status;
+        for (int i = 0; i < count; i++)
+            result[i + 1] = new SemaphoreStatusRecord(createSemaphoreId(client.getId(), i), status.receiveMillis,
+                    status.timestampMillis, status.correctedMillis, status.version, status.internalTemp,
+                    buf.getIntLE(buf.readerIndex() + SWITCH_M_COLORS_OFFSET + 4 * i));
+
+        return Flux.fromArray(result);
+    }
+
     @PostConstruct
     public void init() {
         udpServer.start();
@@ -712,6 +1096,9 @@ public class UdpMessagingServiceImpl implements MessagingService {
         statuses.dispose();
 
         udpServer.destroy();
+
+        for (IngestShard shard : shards)
+            shard.dispose();
     }
 
     @Override
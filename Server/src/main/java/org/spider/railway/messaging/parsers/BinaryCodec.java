@@ -0,0 +1,12 @@
+package org.spider.railway.messaging.parsers;
+
+import io.netty.buffer.ByteBuf;
+import reactor.util.annotation.NonNull;
+
+public interface BinaryCodec<T> {
+    @NonNull
+    T read(@NonNull ByteBuf buffer);
+
+    @NonNull
+    ByteBuf write(@NonNull ByteBuf buffer, @NonNull T obj);
+}
@@ -0,0 +1,300 @@
+package org.spider.railway.messaging.parsers;
+
+import io.netty.buffer.ByteBuf;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// Builds a hidden class per entity which reads/writes fields straight from/to ByteBuf without reflection and boxing.
+// Wire format is the same as in the reflective path of BinarySerializer.
+@Slf4j
+final class BinaryCodecGenerator implements Opcodes {
+    private record Primitive(@NonNull String readName, @NonNull String readDesc,
+                             @NonNull String writeName, @NonNull String writeDesc, boolean isStatic) {
+    }
+
+    private static final String BYTE_BUF = Type.getInternalName(ByteBuf.class);
+    private static final String BYTE_BUF_DESC = Type.getDescriptor(ByteBuf.class);
+    private static final String FUNCTION = Type.getInternalName(Function.class);
+    private static final String BI_FUNCTION = Type.getInternalName(BiFunction.class);
+    private static final String HELPER = Type.getInternalName(BinaryCodecGenerator.class);
+
+    private static final Map<Class<?>, Primitive> PRIMITIVES = Map.of(
+            byte.class, new Primitive("readByte", "()B", "writeByte", "(I)" + BYTE_BUF_DESC, false),
+            short.class, new Primitive("readShortLE", "()S", "writeShortLE", "(I)" + BYTE_BUF_DESC, false),
+            int.class, new Primitive("readIntLE", "()I", "writeIntLE", "(I)" + BYTE_BUF_DESC, false),
+            long.class, new Primitive("readLongLE", "()J", "writeLongLE", "(J)" + BYTE_BUF_DESC, false),
+            boolean.class, new Primitive("readBoolean", "(" + BYTE_BUF_DESC + ")Z",
+                                        "writeBoolean", "(" + BYTE_BUF_DESC + "Z)" + BYTE_BUF_DESC, true),
+            short[].class, new Primitive("readShortArray", "(" + BYTE_BUF_DESC + ")[S",
+                                        "writeShortArray", "(" + BYTE_BUF_DESC + "[S)" + BYTE_BUF_DESC, true),
+            int[].class, new Primitive("readIntArray", "(" + BYTE_BUF_DESC + ")[I",
+                                        "writeIntArray", "(" + BYTE_BUF_DESC + "[I)" + BYTE_BUF_DESC, true),
+            long[].class, new Primitive("readLongArray", "(" + BYTE_BUF_DESC + ")[J",
+                                        "writeLongArray", "(" + BYTE_BUF_DESC + "[J)" + BYTE_BUF_DESC, true)
+    );
+
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    private BinaryCodecGenerator() {
+    }
+
+    static boolean isAccessible(@NonNull Class<?> clazz, @NonNull Constructor<?> constructor, @NonNull Method[] getters) {
+        for (Class<?> c = clazz; c != null; c = c.getEnclosingClass())
+            if (!Modifier.isPublic(c.getModifiers()))
+                return false;
+
+        if (!Modifier.isPublic(constructor.getModifiers()))
+            return false;
+
+        for (Method getter : getters)
+            if (!Modifier.isPublic(getter.getModifiers()))
+                return false;
+
+        return true;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    static <T> BinaryCodec<T> generate(@NonNull Class<T> clazz, @NonNull Constructor<T> constructor, @NonNull Method[] getters,
+                                       @NonNull Function<ByteBuf, Object>[] readers,
+                                       @NonNull BiFunction<ByteBuf, Object, ByteBuf>[] writers) {
+        if (!isAccessible(clazz, constructor, getters))
+            return null;
+
+        try {
+            final byte[] bytes = generateClass(clazz, constructor, getters);
+            final Class<?> codecClass = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+
+            return (BinaryCodec<T>) codecClass
+                    .getDeclaredConstructor(Function[].class, BiFunction[].class)
+                    .newInstance(readers, writers);
+        } catch (Throwable t) {
+            log.warn("Can't generate codec for class {}, reflective serializer will be used.", clazz.getName(), t);
+
+            return null;
+        }
+    }
+
+    @NonNull
+    private static byte[] generateClass(@NonNull Class<?> clazz, @NonNull Constructor<?> constructor, @NonNull Method[] getters) {
+        final String className = HELPER + "$" + clazz.getSimpleName() + "Codec" + counter.incrementAndGet();
+        final String entity = Type.getInternalName(clazz);
+        final Class<?>[] argTypes = constructor.getParameterTypes();
+
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V17, ACC_FINAL | ACC_SUPER, className, null, "java/lang/Object",
+                new String[] { Type.getInternalName(BinaryCodec.class) });
+
+        cw.visitField(ACC_PRIVATE | ACC_FINAL, "readers", "[L" + FUNCTION + ";", null, null).visitEnd();
+        cw.visitField(ACC_PRIVATE | ACC_FINAL, "writers", "[L" + BI_FUNCTION + ";", null, null).visitEnd();
+
+        // constructor
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "([L" + FUNCTION + ";[L" + BI_FUNCTION + ";)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(PUTFIELD, className, "readers", "[L" + FUNCTION + ";");
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitFieldInsn(PUTFIELD, className, "writers", "[L" + BI_FUNCTION + ";");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // Object read(ByteBuf)
+        mv = cw.visitMethod(ACC_PUBLIC, "read", "(" + BYTE_BUF_DESC + ")Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(NEW, entity);
+        mv.visitInsn(DUP);
+
+        for (int i = 0; i < argTypes.length; i++) {
+            final Primitive primitive = PRIMITIVES.get(argTypes[i]);
+
+            if (primitive == null) {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitFieldInsn(GETFIELD, className, "readers", "[L" + FUNCTION + ";");
+                pushInt(mv, i);
+                mv.visitInsn(AALOAD);
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitMethodInsn(INVOKEINTERFACE, FUNCTION, "apply", "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+                mv.visitTypeInsn(CHECKCAST, Type.getInternalName(argTypes[i]));
+            } else if (primitive.isStatic()) {
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitMethodInsn(INVOKESTATIC, HELPER, primitive.readName(), primitive.readDesc(), false);
+            } else {
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF, primitive.readName(), primitive.readDesc(), false);
+            }
+        }
+
+        mv.visitMethodInsn(INVOKESPECIAL, entity, "<init>", Type.getConstructorDescriptor(constructor), false);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // ByteBuf write(ByteBuf, Object)
+        mv = cw.visitMethod(ACC_PUBLIC, "write", "(" + BYTE_BUF_DESC + "Ljava/lang/Object;)" + BYTE_BUF_DESC, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitTypeInsn(CHECKCAST, entity);
+        mv.visitVarInsn(ASTORE, 3);
+
+        for (int i = 0; i < getters.length; i++) {
+            final Method getter = getters[i];
+            final Primitive primitive = PRIMITIVES.get(getter.getReturnType());
+
+            if (primitive == null) {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitFieldInsn(GETFIELD, className, "writers", "[L" + BI_FUNCTION + ";");
+                pushInt(mv, i);
+                mv.visitInsn(AALOAD);
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitVarInsn(ALOAD, 3);
+                mv.visitMethodInsn(INVOKEVIRTUAL, entity, getter.getName(), Type.getMethodDescriptor(getter), false);
+                mv.visitMethodInsn(INVOKEINTERFACE, BI_FUNCTION, "apply",
+                        "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", true);
+                mv.visitTypeInsn(CHECKCAST, BYTE_BUF);
+            } else {
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitVarInsn(ALOAD, 3);
+                mv.visitMethodInsn(INVOKEVIRTUAL, entity, getter.getName(), Type.getMethodDescriptor(getter), false);
+
+                if (primitive.isStatic())
+                    mv.visitMethodInsn(INVOKESTATIC, HELPER, primitive.writeName(), primitive.writeDesc(), false);
+                else
+                    mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF, primitive.writeName(), primitive.writeDesc(), false);
+            }
+
+            mv.visitVarInsn(ASTORE, 1);
+        }
+
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+
+        return cw.toByteArray();
+    }
+
+    private static void pushInt(@NonNull MethodVisitor mv, int value) {
+        if (value <= 5)
+            mv.visitInsn(ICONST_0 + value);
+        else if (value <= Byte.MAX_VALUE)
+            mv.visitIntInsn(BIPUSH, value);
+        else
+            mv.visitIntInsn(SIPUSH, value);
+    }
+
+    // helpers called from generated code
+
+    static boolean readBoolean(@NonNull ByteBuf buf) {
+        return buf.readByte() != 0;
+    }
+
+    @NonNull
+    static ByteBuf writeBoolean(@NonNull ByteBuf buf, boolean value) {
+        return buf.writeByte(value ? 1 : 0);
+    }
+
+    @Nullable
+    static short[] readShortArray(@NonNull ByteBuf buf) {
+        final short length = buf.readShortLE();
+
+        if (length < 0)
+            return null;
+
+        final short[] result = new short[length];
+        for (int i = 0; i < length; i++)
+            result[i] = buf.readShortLE();
+
+        return result;
+    }
+
+    @NonNull
+    static ByteBuf writeShortArray(@NonNull ByteBuf buf, @Nullable short[] array) {
+        if (array == null)
+            return buf.writeShortLE(-1);
+
+        final short length = (short) array.length;
+        buf.writeShortLE(length);
+
+        for (int i = 0; i < length; i++)
+            buf.writeShortLE(array[i]);
+
+        return buf;
+    }
+
+    @Nullable
+    static int[] readIntArray(@NonNull ByteBuf buf) {
+        final short length = buf.readShortLE();
+
+        if (length < 0)
+            return null;
+
+        final int[] result = new int[length];
+        for (int i = 0; i < length; i++)
+            result[i] = buf.readIntLE();
+
+        return result;
+    }
+
+    @NonNull
+    static ByteBuf writeIntArray(@NonNull ByteBuf buf, @Nullable int[] array) {
+        if (array == null)
+            return buf.writeShortLE(-1);
+
+        final short length = (short) array.length;
+        buf.writeShortLE(length);
+
+        for (int i = 0; i < length; i++)
+            buf.writeIntLE(array[i]);
+
+        return buf;
+    }
+
+    @Nullable
+    static long[] readLongArray(@NonNull ByteBuf buf) {
+        final short length = buf.readShortLE();
+
+        if (length < 0)
+            return null;
+
+        final long[] result = new long[length];
+        for (int i = 0; i < length; i++)
+            result[i] = buf.readLongLE();
+
+        return result;
+    }
+
+    @NonNull
+    static ByteBuf writeLongArray(@NonNull ByteBuf buf, @Nullable long[] array) {
+        if (array == null)
+            return buf.writeShortLE(-1);
+
+        final short length = (short) array.length;
+        buf.writeShortLE(length);
+
+        for (int i = 0; i < length; i++)
+            buf.writeLongLE(array[i]);
+
+        return buf;
+    }
+}
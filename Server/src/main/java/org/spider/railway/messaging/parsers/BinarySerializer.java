@@ -69,6 +69,8 @@ public class BinarySerializer<T> {
 
     private static final ConcurrentHashMap<Class<?>, BinarySerializer<?>> serializers = new ConcurrentHashMap<>();
 
+    private static final boolean CODEGEN_ENABLED = !Boolean.getBoolean("railway.serializer.reflective");
+
     private static class DeserializerInfo<T> {
         private static class SetterInfo {
             @NonNull
@@ -106,11 +108,32 @@ public class BinarySerializer<T> {
             this.setters = setters;
             this.getters = getters;
         }
+
+        @Nullable
+        @SuppressWarnings("unchecked")
+        BinaryCodec<T> generateCodec(@NonNull Class<T> clazz) {
+            final Method[] methods = new Method[getters.length];
+            final Function<ByteBuf, Object>[] readers = new Function[setters.length];
+            final BiFunction<ByteBuf, Object, ByteBuf>[] writers = new BiFunction[getters.length];
+
+            for (int i = 0; i < setters.length; i++)
+                readers[i] = setters[i].reader;
+
+            for (int i = 0; i < getters.length; i++) {
+                methods[i] = getters[i].method;
+                writers[i] = getters[i].writer;
+            }
+
+            return BinaryCodecGenerator.generate(clazz, constructor, methods, readers, writers);
+        }
     }
 
     @NonNull
     private final DeserializerInfo<T> deserializerInfo;
 
+    @Nullable
+    private final BinaryCodec<T> codec;
+
     @NonNull
     private final Charset charset;
 
@@ -126,20 +149,34 @@ public class BinarySerializer<T> {
         return (BinarySerializer<T>)serializers.computeIfAbsent(clazz, BinarySerializer::new);
     }
 
+    // Not cached, whatever railway.serializer.reflective is: both paths side by side in the same JVM
+    @NonNull
+    static <T> BinarySerializer<T> create(@NonNull Class<T> clazz, boolean codegen) {
+        return new BinarySerializer<>(clazz, StandardCharsets.UTF_8, ZoneId.systemDefault(), codegen);
+    }
+
     private BinarySerializer(@NonNull Class<T> clazz) {
-        this(clazz, StandardCharsets.UTF_8, ZoneId.systemDefault());
+        this(clazz, StandardCharsets.UTF_8, ZoneId.systemDefault(), CODEGEN_ENABLED);
     }
 
-    private BinarySerializer(@NonNull Class<T> clazz, @NonNull Charset charset, @NonNull ZoneId zoneId) {
-        this.deserializerInfo = analyze(clazz);
+    private BinarySerializer(@NonNull Class<T> clazz, @NonNull Charset charset, @NonNull ZoneId zoneId, boolean codegen) {
         this.charset = charset;
         this.zoneId = zoneId;
         this.clazz = clazz;
+        this.deserializerInfo = analyze(clazz);
+        this.codec = codegen ? deserializerInfo.generateCodec(clazz) : null;
+    }
+
+    boolean isGenerated() {
+        return codec != null;
     }
 
     @NonNull
     public T deserialize(@NonNull ByteBuf buffer) {
         try {
+            if (codec != null)
+                return codec.read(buffer);
+
             Object[] params = new Object[deserializerInfo.setters.length];
 
             for (int i = 0; i < params.length; i++)
@@ -153,6 +190,9 @@ public class BinarySerializer<T> {
 
     @NonNull
     public ByteBuf serialize(@NonNull ByteBuf buffer, @NonNull T obj) {
+        if (codec != null)
+            return codec.write(buffer, obj);
+
         try {
             for (DeserializerInfo.GetterInfo getter : deserializerInfo.getters)
                 buffer = getter.writer.apply(buffer, getter.method.invoke(obj));
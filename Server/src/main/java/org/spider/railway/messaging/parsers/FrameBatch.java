@@ -0,0 +1,81 @@
+package org.spider.railway.messaging.parsers;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.socket.DatagramPacket;
+import reactor.util.annotation.NonNull;
+
+import java.net.InetSocketAddress;
+
+public final class FrameBatch {
+    private final int partition;
+
+    private final DatagramPacket[] packets;
+
+    private final byte[] codes;
+
+    private final int[] packetIndexes;
+
+    private final int[] offsets;
+
+    private final int[] lengths;
+
+    private int packetCount;
+
+    private int size;
+
+    FrameBatch(int partition, int packets, int frames) {
+        this.partition = partition;
+        this.packets = new DatagramPacket[packets];
+        this.codes = new byte[frames];
+        this.packetIndexes = new int[frames];
+        this.offsets = new int[frames];
+        this.lengths = new int[frames];
+    }
+
+    int addPacket(@NonNull DatagramPacket packet) {
+        packets[packetCount] = packet;
+        return packetCount++;
+    }
+
+    void addFrame(int packetIndex, byte code, int offset, int length) {
+        codes[size] = code;
+        packetIndexes[size] = packetIndex;
+        offsets[size] = offset;
+        lengths[size] = length;
+        size++;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte code(int index) {
+        return codes[index];
+    }
+
+    @NonNull
+    public InetSocketAddress sender(int index) {
+        return packets[packetIndexes[index]].sender();
+    }
+
+    // No slice is allocated: the datagram content itself is positioned on the frame, so it stays valid only until the
+    // next frame of the same datagram is requested or the batch is released.
+    @NonNull
+    public ByteBuf frame(int index) {
+        return packets[packetIndexes[index]].content().setIndex(offsets[index], offsets[index] + lengths[index]);
+    }
+
+    public void release() {
+        for (int i = 0; i < packetCount; i++) {
+            packets[i].release();
+            packets[i] = null;
+        }
+
+        packetCount = 0;
+        size = 0;
+    }
+}
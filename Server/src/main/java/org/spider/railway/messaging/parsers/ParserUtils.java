@@ -1,16 +1,24 @@
 package org.spider.railway.messaging.parsers;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.socket.DatagramPacket;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
+import reactor.util.annotation.NonNull;
 import reactor.util.function.Tuple3;
 import reactor.util.function.Tuples;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
 
 @Slf4j
 public class ParserUtils {
@@ -38,7 +46,7 @@ public class ParserUtils {
                     packet.release();
 
                     if (result.size() > 1)
-                        log.info("Receive > 1 messages from one packet - {}", result.size());
+                        log.debug("Receive > 1 messages from one packet - {}", result.size());
 
                     return Flux.fromIterable(result);
                 })
@@ -49,4 +57,151 @@ public class ParserUtils {
                 })
                 .doFinally(__ -> subscribers.decrementAndGet());
     }
+
+    // Splits every received batch of datagrams into frames in one pass and regroups them into one FrameBatch per
+    // partition. All frames of a datagram go to the same partition, so the order of frames of one sender is kept.
+    public static Flux<FrameBatch> parseBatches(@NonNull Flux<? extends List<DatagramPacket>> src,
+                                                @NonNull ToIntFunction<InetSocketAddress> partitioner,
+                                                int partitions) {
+        return parseBatches(src, partitioner, partitions, Metrics.globalRegistry);
+    }
+
+    public static Flux<FrameBatch> parseBatches(@NonNull Flux<? extends List<DatagramPacket>> src,
+                                                @NonNull ToIntFunction<InetSocketAddress> partitioner,
+                                                int partitions,
+                                                @NonNull MeterRegistry registry) {
+        return Flux.defer(() -> {
+            final BatchParser parser = new BatchParser(partitioner, partitions, registry);
+
+            return src.concatMapIterable(parser::parse);
+        });
+    }
+
+    // Descriptor arrays are reused between batches, parse() is always called sequentially for one subscription
+    private static class BatchParser {
+        private static final int INITIAL_SIZE = 64;
+
+        private final ToIntFunction<InetSocketAddress> partitioner;
+
+        private final int[] packetsPerPartition;
+
+        private final int[] framesPerPartition;
+
+        private final FrameBatch[] batches;
+
+        private final DistributionSummary framesPerDatagram;
+
+        private final Counter wrongHeaders;
+
+        private final Counter wrongLengths;
+
+        private int[] packetPartitions = new int[INITIAL_SIZE];
+
+        private int[] packetFrameStarts = new int[INITIAL_SIZE];
+
+        private byte[] codes = new byte[INITIAL_SIZE];
+
+        private int[] offsets = new int[INITIAL_SIZE];
+
+        private int[] lengths = new int[INITIAL_SIZE];
+
+        BatchParser(ToIntFunction<InetSocketAddress> partitioner, int partitions, MeterRegistry registry) {
+            this.partitioner = partitioner;
+            this.packetsPerPartition = new int[partitions];
+            this.framesPerPartition = new int[partitions];
+            this.batches = new FrameBatch[partitions];
+            this.framesPerDatagram = DistributionSummary.builder("railway.udp.datagram.frames")
+                    .description("Frames (sub-messages) per datagram")
+                    .register(registry);
+            this.wrongHeaders = Counter.builder("railway.udp.frames.malformed").tag("reason", "header").register(registry);
+            this.wrongLengths = Counter.builder("railway.udp.frames.malformed").tag("reason", "length").register(registry);
+        }
+
+        List<FrameBatch> parse(List<DatagramPacket> packets) {
+            final int packetCount = packets.size();
+            if (packetPartitions.length < packetCount + 1) {
+                packetPartitions = Arrays.copyOf(packetPartitions, packetCount + 1);
+                packetFrameStarts = Arrays.copyOf(packetFrameStarts, packetCount + 1);
+            }
+
+            Arrays.fill(packetsPerPartition, 0);
+            Arrays.fill(framesPerPartition, 0);
+
+            int frames = 0;
+            for (int i = 0; i < packetCount; i++) {
+                final DatagramPacket packet = packets.get(i);
+                final ByteBuf buf = packet.content();
+
+                packetFrameStarts[i] = frames;
+
+                while (buf.readableBytes() > 0) {
+                    if (buf.readableBytes() < 3) {
+                        wrongHeaders.increment();
+                        log.warn("Unknown header length=" + buf.readableBytes());
+                        break;
+                    }
+
+                    final int packetLength = buf.readUnsignedShortLE();
+                    final byte code = buf.readByte();
+
+                    if (packetLength < 1 || packetLength - 1 > buf.readableBytes()) {
+                        wrongLengths.increment();
+                        log.warn("Wrong frame length={}, available={}", packetLength, buf.readableBytes());
+                        break;
+                    }
+
+                    if (frames == codes.length) {
+                        codes = Arrays.copyOf(codes, frames * 2);
+                        offsets = Arrays.copyOf(offsets, frames * 2);
+                        lengths = Arrays.copyOf(lengths, frames * 2);
+                    }
+
+                    codes[frames] = code;
+                    offsets[frames] = buf.readerIndex();
+                    lengths[frames] = packetLength - 1;
+                    frames++;
+
+                    buf.skipBytes(packetLength - 1);
+                }
+
+                framesPerDatagram.record(frames - packetFrameStarts[i]);
+
+                if (frames == packetFrameStarts[i]) {
+                    packetPartitions[i] = -1;
+                    packet.release();
+                } else {
+                    final int partition = Math.floorMod(partitioner.applyAsInt(packet.sender()), batches.length);
+
+                    packetPartitions[i] = partition;
+                    packetsPerPartition[partition]++;
+                    framesPerPartition[partition] += frames - packetFrameStarts[i];
+                }
+            }
+            packetFrameStarts[packetCount] = frames;
+
+            for (int i = 0; i < packetCount; i++) {
+                final int partition = packetPartitions[i];
+                if (partition < 0)
+                    continue;
+
+                FrameBatch batch = batches[partition];
+                if (batch == null)
+                    batches[partition] = batch = new FrameBatch(partition, packetsPerPartition[partition], framesPerPartition[partition]);
+
+                final int packetIndex = batch.addPacket(packets.get(i));
+                for (int frame = packetFrameStarts[i]; frame < packetFrameStarts[i + 1]; frame++)
+                    batch.addFrame(packetIndex, codes[frame], offsets[frame], lengths[frame]);
+            }
+
+            final ArrayList<FrameBatch> result = new ArrayList<>(batches.length);
+            for (int i = 0; i < batches.length; i++) {
+                if (batches[i] != null) {
+                    result.add(batches[i]);
+                    batches[i] = null;
+                }
+            }
+
+            return result;
+        }
+    }
 }
@@ -0,0 +1,540 @@
+package org.spider.railway.scheme;
+
+import org.spider.railway.utils.TrackIndex;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Compiled scheme: connectors and internal links numbered by ints and kept in arrays, the links from and to every
+// connector in CSR form (the ids of connector c are in links[start[c]] .. links[start[c + 1] - 1]). Built once
+// from the nodes and never changed, an edit builds a new one. Only the switch states are updated in place.
+public final class SchemeGraph {
+    private final long version;
+
+    private final SchemeNode[] nodes;
+
+    // Switch number of the node or -1
+    private final int[] nodeSwitches;
+
+    // x, y per connector
+    private final double[] coords;
+
+    private final int[] connectorNodes;
+
+    // Connector of the neighbour node joined by an external link or -1
+    private final int[] joints;
+
+    private final int[] outStarts;
+
+    private final int[] outLinks;
+
+    private final int[] inStarts;
+
+    private final int[] inLinks;
+
+    private final int[] linkFrom;
+
+    private final int[] linkTo;
+
+    private final float[] linkLengths;
+
+    // Intermediate points of link l: x, y pairs from pointStarts[l] to pointStarts[l + 1]
+    private final int[] pointStarts;
+
+    private final double[] points;
+
+    private final String[] switchIds;
+
+    private final int[] switchRoots;
+
+    private final int[] switchStraights;
+
+    private final int[] switchDivergings;
+
+    private final Map<String, Integer> switchesById;
+
+    // Bit s is set when switch s is diverging
+    private final AtomicLongArray switchStates;
+
+    // One direction of every link pair, the value is the link id
+    private final TrackIndex<Integer> linkIndex;
+
+    private final TrackIndex<SchemeMarker> markerIndex;
+
+    // The least ratio of the length of a link to the length of its path, routes scale distances by it
+    private final double lengthScale;
+
+    private SchemeGraph(long version, @NonNull List<SchemeNode> nodes, @NonNull List<SchemeMarker> markers) {
+        this.version = version;
+        this.nodes = nodes.toArray(new SchemeNode[0]);
+        this.nodeSwitches = new int[nodes.size()];
+
+        final Map<SchemeConnector, Integer> connectorIds = new IdentityHashMap<>();
+        final List<SchemeConnector> connectors = new ArrayList<>();
+        final List<SchemeLink> links = new ArrayList<>();
+        final List<SchemeSwitch> switches = new ArrayList<>();
+
+        for (SchemeNode node : nodes) {
+            for (SchemeConnector connector : node.getConnectors()) {
+                connectorIds.put(connector, connectors.size());
+                connectors.add(connector);
+            }
+
+            links.addAll(node.getInternalLinks());
+        }
+
+        this.coords = new double[connectors.size() * 2];
+        this.connectorNodes = new int[connectors.size()];
+        this.joints = new int[connectors.size()];
+        Arrays.fill(joints, -1);
+
+        for (int n = 0; n < nodes.size(); n++) {
+            final SchemeNode node = nodes.get(n);
+
+            for (SchemeConnector connector : node.getConnectors()) {
+                final int c = connectorIds.get(connector);
+
+                coords[c * 2] = connector.getCoords().getX();
+                coords[c * 2 + 1] = connector.getCoords().getY();
+                connectorNodes[c] = n;
+            }
+
+            for (SchemeLink link : node.getExternalLinks()) {
+                final Integer from = connectorIds.get(link.getFrom()), to = connectorIds.get(link.getTo());
+
+                if (from != null && to != null)
+                    joints[from] = to;
+            }
+
+            if (node instanceof SchemeSwitch sw) {
+                nodeSwitches[n] = switches.size();
+                switches.add(sw);
+            } else {
+                nodeSwitches[n] = -1;
+            }
+        }
+
+        this.linkFrom = new int[links.size()];
+        this.linkTo = new int[links.size()];
+        this.linkLengths = new float[links.size()];
+        this.pointStarts = new int[links.size() + 1];
+
+        int pointCount = 0;
+        for (int l = 0; l < links.size(); l++) {
+            linkFrom[l] = connectorIds.get(links.get(l).getFrom());
+            linkTo[l] = connectorIds.get(links.get(l).getTo());
+            linkLengths[l] = (float) links.get(l).getLength();
+            pointStarts[l] = pointCount;
+            pointCount += links.get(l).getIntermediatePoints().size() * 2;
+        }
+        pointStarts[links.size()] = pointCount;
+
+        this.points = new double[pointCount];
+        for (int l = 0; l < links.size(); l++) {
+            int i = pointStarts[l];
+
+            for (SchemeCoords point : links.get(l).getIntermediatePoints()) {
+                points[i++] = point.getX();
+                points[i++] = point.getY();
+            }
+        }
+
+        this.outStarts = new int[connectors.size() + 1];
+        this.inStarts = new int[connectors.size() + 1];
+        this.outLinks = new int[links.size()];
+        this.inLinks = new int[links.size()];
+        adjacency(linkFrom, outStarts, outLinks);
+        adjacency(linkTo, inStarts, inLinks);
+
+        this.switchIds = new String[switches.size()];
+        this.switchRoots = new int[switches.size()];
+        this.switchStraights = new int[switches.size()];
+        this.switchDivergings = new int[switches.size()];
+        this.switchesById = new HashMap<>();
+        this.switchStates = new AtomicLongArray((switches.size() + 63) / 64);
+
+        for (int s = 0; s < switches.size(); s++) {
+            final SchemeSwitch sw = switches.get(s);
+
+            switchIds[s] = sw.getId();
+            switchRoots[s] = connectorIds.get(sw.getRoot());
+            switchStraights[s] = connectorIds.get(sw.getStraight());
+            switchDivergings[s] = connectorIds.get(sw.getDiverging());
+            switchesById.put(sw.getId(), s);
+        }
+
+        final TrackIndex.Builder<Integer> linkIndex = TrackIndex.builder();
+        for (int l = 0; l < links.size(); l++) {
+            if (linkFrom[l] > linkTo[l])
+                continue;
+
+            double ax = coords[linkFrom[l] * 2], ay = coords[linkFrom[l] * 2 + 1];
+            for (int i = pointStarts[l]; i < pointStarts[l + 1]; i += 2) {
+                linkIndex.segment(l, ax, ay, points[i], points[i + 1]);
+                ax = points[i];
+                ay = points[i + 1];
+            }
+
+            linkIndex.segment(l, ax, ay, coords[linkTo[l] * 2], coords[linkTo[l] * 2 + 1]);
+        }
+        this.linkIndex = linkIndex.build();
+
+        final TrackIndex.Builder<SchemeMarker> markerIndex = TrackIndex.builder();
+        for (SchemeMarker marker : markers)
+            markerIndex.segment(marker, marker.getCoords().getX(), marker.getCoords().getY(),
+                    marker.getCoords().getX(), marker.getCoords().getY());
+        this.markerIndex = markerIndex.build();
+
+        double lengthScale = 1.0;
+        for (int l = 0; l < links.size(); l++) {
+            final double path = getPathLength(l);
+
+            if (path > 0)
+                lengthScale = Math.min(lengthScale, linkLengths[l] / path);
+        }
+        this.lengthScale = lengthScale;
+    }
+
+    @NonNull
+    public static SchemeGraph compile(long version, @NonNull List<SchemeNode> nodes, @NonNull List<SchemeMarker> markers) {
+        return new SchemeGraph(version, nodes, markers);
+    }
+
+    // Counting sort of the link ids by their connector
+    private static void adjacency(@NonNull int[] connectors, @NonNull int[] starts, @NonNull int[] result) {
+        for (int connector : connectors)
+            starts[connector + 1]++;
+
+        for (int c = 1; c < starts.length; c++)
+            starts[c] += starts[c - 1];
+
+        final int[] next = Arrays.copyOf(starts, starts.length - 1);
+        for (int l = 0; l < connectors.length; l++)
+            result[next[connectors[l]]++] = l;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getConnectorCount() {
+        return connectorNodes.length;
+    }
+
+    public int getLinkCount() {
+        return linkFrom.length;
+    }
+
+    public int getSwitchCount() {
+        return switchIds.length;
+    }
+
+    @NonNull
+    public SchemeNode getNode(int link) {
+        return nodes[connectorNodes[linkFrom[link]]];
+    }
+
+    public int getFrom(int link) {
+        return linkFrom[link];
+    }
+
+    public int getTo(int link) {
+        return linkTo[link];
+    }
+
+    public double getLength(int link) {
+        return linkLengths[link];
+    }
+
+    public double getX(int connector) {
+        return coords[connector * 2];
+    }
+
+    public double getY(int connector) {
+        return coords[connector * 2 + 1];
+    }
+
+    public double getLengthScale() {
+        return lengthScale;
+    }
+
+    // Connector of the neighbour node joined to the given one or -1
+    public int getJoint(int connector) {
+        return joints[connector];
+    }
+
+    // The links from the connector are getOutLink(getOutStart(c)) .. getOutLink(getOutStart(c + 1) - 1)
+    public int getOutStart(int connector) {
+        return outStarts[connector];
+    }
+
+    public int getOutLink(int i) {
+        return outLinks[i];
+    }
+
+    // Switch number of a link inside a switch or -1
+    public int getSwitch(int link) {
+        return nodeSwitches[connectorNodes[linkFrom[link]]];
+    }
+
+    // Whether a link inside a switch goes along its diverging branch
+    public boolean isDiverging(int link) {
+        final int sw = getSwitch(link);
+
+        return sw >= 0 && (linkFrom[link] == switchDivergings[sw] || linkTo[link] == switchDivergings[sw]);
+    }
+
+    @NonNull
+    public String getSwitchId(int sw) {
+        return switchIds[sw];
+    }
+
+    // Copy of the switch state bits, a route is looked for against one state of all the switches
+    @NonNull
+    public long[] getSwitchStates() {
+        final long[] result = new long[switchStates.length()];
+
+        for (int i = 0; i < result.length; i++)
+            result[i] = switchStates.get(i);
+
+        return result;
+    }
+
+    public boolean getSwitchState(int sw) {
+        return (switchStates.get(sw >>> 6) & (1L << sw)) != 0;
+    }
+
+    public void setSwitchState(@NonNull String id, boolean state) {
+        final Integer sw = switchesById.get(id);
+
+        if (sw == null)
+            return;
+
+        final long bit = 1L << sw;
+        long old;
+
+        do {
+            old = switchStates.get(sw >>> 6);
+        } while (!switchStates.compareAndSet(sw >>> 6, old, state ? old | bit : old & ~bit));
+    }
+
+    @NonNull
+    public SchemePosition getStart() {
+        if (nodes.length == 0 || outStarts[1] == 0)
+            throw new IllegalStateException("Scheme has no link from the start");
+
+        return new SchemePosition(this, outLinks[outStarts[0]], 0.0);
+    }
+
+    // Link after the end of the given one: over the joint to the neighbour node and on from there, -1 at the end
+    public int getNext(int link) {
+        final int connector = joints[linkTo[link]];
+
+        if (connector < 0)
+            return -1;
+
+        final int sw = nodeSwitches[connectorNodes[connector]];
+        final int to = sw >= 0 && switchRoots[sw] == connector
+                ? (getSwitchState(sw) ? switchDivergings[sw] : switchStraights[sw])
+                : -1;
+
+        for (int i = outStarts[connector]; i < outStarts[connector + 1]; i++)
+            if (to < 0 || linkTo[outLinks[i]] == to)
+                return outLinks[i];
+
+        return -1;
+    }
+
+    // Link before the start of the given one, the same way backwards
+    public int getPrevious(int link) {
+        final int connector = joints[linkFrom[link]];
+
+        if (connector < 0)
+            return -1;
+
+        final int sw = nodeSwitches[connectorNodes[connector]];
+        final int from = sw >= 0 && switchRoots[sw] == connector
+                ? (getSwitchState(sw) ? switchDivergings[sw] : switchStraights[sw])
+                : -1;
+
+        for (int i = inStarts[connector]; i < inStarts[connector + 1]; i++)
+            if (from < 0 || linkFrom[inLinks[i]] == from)
+                return inLinks[i];
+
+        return -1;
+    }
+
+    // The link from the end of the given one back to its start, -1 when there is none
+    public int getReverse(int link) {
+        final int to = linkTo[link];
+
+        for (int i = outStarts[to]; i < outStarts[to + 1]; i++)
+            if (linkTo[outLinks[i]] == linkFrom[link])
+                return outLinks[i];
+
+        return -1;
+    }
+
+    // Moves the position by the distance along the links, backwards for a negative one. Switches are passed by
+    // their current state, at the end of the track the position stops.
+    @NonNull
+    public SchemePosition advance(@NonNull SchemePosition position, double distance) {
+        int link = position.getLink();
+        double offset = position.getOffset() + distance;
+
+        while (offset > linkLengths[link]) {
+            final int next = getNext(link);
+
+            if (next < 0)
+                return new SchemePosition(this, link, linkLengths[link]);
+
+            offset -= linkLengths[link];
+            link = next;
+        }
+
+        while (offset < 0) {
+            final int previous = getPrevious(link);
+
+            if (previous < 0)
+                return new SchemePosition(this, link, 0.0);
+
+            offset += linkLengths[previous];
+            link = previous;
+        }
+
+        return new SchemePosition(this, link, offset);
+    }
+
+    // Position of the point on the nearest link, in the direction nearest to dx, dy; null when no link is that near
+    @Nullable
+    public SchemePosition locate(@NonNull SchemeCoords point, double dx, double dy, double maxDistance) {
+        final int found = linkIndex.nearestShape(point.getX(), point.getY(), maxDistance);
+
+        if (found < 0)
+            return null;
+
+        int link = linkIndex.getValue(found);
+        final int reverse = getReverse(link);
+
+        if (reverse >= 0 && direction(reverse, dx, dy) > direction(link, dx, dy))
+            link = reverse;
+
+        return new SchemePosition(this, link, getOffset(link, point.getX(), point.getY()));
+    }
+
+    // locate() in the direction of the position, which may come from an earlier graph
+    @Nullable
+    public SchemePosition locate(@NonNull SchemePosition position, @NonNull SchemeCoords point, double maxDistance) {
+        final SchemeGraph graph = position.getGraph();
+        final int link = position.getLink();
+
+        return locate(point, graph.getX(graph.linkTo[link]) - graph.getX(graph.linkFrom[link]),
+                graph.getY(graph.linkTo[link]) - graph.getY(graph.linkFrom[link]), maxDistance);
+    }
+
+    @Nullable
+    public SchemeNode findNode(@NonNull SchemeCoords point, double maxDistance) {
+        final int found = linkIndex.nearestShape(point.getX(), point.getY(), maxDistance);
+
+        return found < 0 ? null : getNode(linkIndex.getValue(found));
+    }
+
+    @NonNull
+    public List<TrackIndex.Hit<Integer>> findLinks(@NonNull SchemeCoords point, int limit) {
+        return linkIndex.nearest(point.getX(), point.getY(), limit);
+    }
+
+    @Nullable
+    public SchemeMarker findMarker(@NonNull SchemeCoords point, double maxDistance) {
+        final int found = markerIndex.nearestShape(point.getX(), point.getY(), maxDistance);
+
+        return found < 0 ? null : markerIndex.getValue(found);
+    }
+
+    // Point at the offset from the start of the link, the length is spread over its path proportionally
+    @NonNull
+    public SchemeCoords getCoords(int link, double offset) {
+        final double length = linkLengths[link];
+        final double fraction = length > 0 ? Math.max(0.0, Math.min(1.0, offset / length)) : 0.0;
+        final int first = pointStarts[link], last = pointStarts[link + 1];
+
+        double ax = coords[linkFrom[link] * 2], ay = coords[linkFrom[link] * 2 + 1];
+        final double bx = coords[linkTo[link] * 2], by = coords[linkTo[link] * 2 + 1];
+
+        if (first == last)
+            return new SchemeCoords(ax + fraction * (bx - ax), ay + fraction * (by - ay));
+
+        double remaining = fraction * getPathLength(link);
+        for (int i = first; i <= last; i += 2) {
+            final double px = i < last ? points[i] : bx, py = i < last ? points[i + 1] : by;
+            final double part = Math.hypot(px - ax, py - ay);
+
+            if (remaining <= part) {
+                final double t = part > 0 ? remaining / part : 0.0;
+
+                return new SchemeCoords(ax + t * (px - ax), ay + t * (py - ay));
+            }
+
+            remaining -= part;
+            ax = px;
+            ay = py;
+        }
+
+        return new SchemeCoords(bx, by);
+    }
+
+    // Offset of the point of the link nearest to the given one
+    public double getOffset(int link, double x, double y) {
+        final int first = pointStarts[link], last = pointStarts[link + 1];
+        final double bx = coords[linkTo[link] * 2], by = coords[linkTo[link] * 2 + 1];
+        double ax = coords[linkFrom[link] * 2], ay = coords[linkFrom[link] * 2 + 1];
+        double along = 0, best = 0, bestDistance = Double.MAX_VALUE;
+
+        for (int i = first; i <= last; i += 2) {
+            final double px = i < last ? points[i] : bx, py = i < last ? points[i + 1] : by;
+            final double dx = px - ax, dy = py - ay;
+            final double part = Math.sqrt(dx * dx + dy * dy);
+            final double t = part > 0 ? Math.max(0.0, Math.min(1.0, ((x - ax) * dx + (y - ay) * dy) / (part * part))) : 0.0;
+            final double ex = ax + t * dx - x, ey = ay + t * dy - y;
+
+            if (ex * ex + ey * ey < bestDistance) {
+                bestDistance = ex * ex + ey * ey;
+                best = along + t * part;
+            }
+
+            along += part;
+            ax = px;
+            ay = py;
+        }
+
+        return along > 0 ? best * linkLengths[link] / along : 0.0;
+    }
+
+    private double getPathLength(int link) {
+        final int first = pointStarts[link], last = pointStarts[link + 1];
+        final double bx = coords[linkTo[link] * 2], by = coords[linkTo[link] * 2 + 1];
+        double ax = coords[linkFrom[link] * 2], ay = coords[linkFrom[link] * 2 + 1];
+        double result = 0;
+
+        for (int i = first; i <= last; i += 2) {
+            final double px = i < last ? points[i] : bx, py = i < last ? points[i + 1] : by;
+
+            result += Math.hypot(px - ax, py - ay);
+            ax = px;
+            ay = py;
+        }
+
+        return result;
+    }
+
+    private double direction(int link, double dx, double dy) {
+        return dx * (getX(linkTo[link]) - getX(linkFrom[link])) + dy * (getY(linkTo[link]) - getY(linkFrom[link]));
+    }
+}
@@ -2,6 +2,7 @@ package org.spider.railway.scheme;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.spider.railway.utils.Geometry;
 import reactor.util.annotation.NonNull;
 
 import java.util.ArrayList;
@@ -22,4 +23,26 @@ public class SchemeLink {
     public void addIntermediatePoint(@NonNull SchemeCoords point) {
         intermediatePoints.add(point);
     }
+
+    // Point i of the path: from, the intermediate points, to
+    @NonNull
+    private SchemeCoords getPoint(int i) {
+        if (i == 0)
+            return from.getCoords();
+
+        return i <= intermediatePoints.size() ? intermediatePoints.get(i - 1) : to.getCoords();
+    }
+
+    public double getDistance(@NonNull SchemeCoords point) {
+        double result = Double.MAX_VALUE;
+
+        for (int i = 0; i <= intermediatePoints.size(); i++) {
+            final SchemeCoords a = getPoint(i), b = getPoint(i + 1);
+
+            result = Math.min(result, Geometry.distanceToSegmentSquared(point.getX(), point.getY(),
+                    a.getX(), a.getY(), b.getX(), b.getY()));
+        }
+
+        return Math.sqrt(result);
+    }
 }
@@ -1,21 +1,86 @@
 package org.spider.railway.scheme;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import reactor.util.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-@AllArgsConstructor
-@Getter
+// Route over the graph: the links from the one of the start to the one of the end, the start offset on the first
+// and the end offset on the last one. Built once from the links found and never changed.
 public class SchemePath {
-    private final List<SchemeCoords> path;
+    // Switch and the state it has to be in for the route
+    public record Setting(String switchId, boolean state) {
+    }
+
+    @Getter
+    private final SchemeGraph graph;
+
+    private final int[] links;
+
+    @Getter
+    private final double startOffset;
+
+    @Getter
+    private final double endOffset;
+
+    @Getter
+    private final double length;
+
+    @Getter
+    private final List<Setting> settings;
+
+    public SchemePath(@NonNull SchemeGraph graph, @NonNull int[] links, double startOffset, double endOffset) {
+        this.graph = graph;
+        this.links = links;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+
+        double length = endOffset - startOffset;
+        for (int i = 0; i < links.length - 1; i++)
+            length += graph.getLength(links[i]);
+        this.length = length;
+
+        // The train is on the first link already, a switch under it is not thrown
+        final List<Setting> settings = new ArrayList<>();
+        for (int i = 1; i < links.length; i++) {
+            final int sw = graph.getSwitch(links[i]);
+
+            if (sw >= 0)
+                settings.add(new Setting(graph.getSwitchId(sw), graph.isDiverging(links[i])));
+        }
+        this.settings = Collections.unmodifiableList(settings);
+    }
 
+    public int size() {
+        return links.length;
+    }
+
+    public int getLink(int i) {
+        return links[i];
+    }
+
+    @NonNull
+    public SchemePosition getStart() {
+        return new SchemePosition(graph, links[0], startOffset);
+    }
+
+    @NonNull
+    public SchemePosition getEnd() {
+        return new SchemePosition(graph, links[links.length - 1], endOffset);
+    }
+
+    // Start, the connectors passed on the way and the end
     @NonNull
-    public SchemePath add(@NonNull SchemeCoords coords) {
-        final ArrayList<SchemeCoords> copy = new ArrayList<>(path);
-        copy.add(coords);
-        return new SchemePath(copy);
+    public List<SchemeCoords> getPath() {
+        final List<SchemeCoords> result = new ArrayList<>();
+
+        result.add(getStart().getCoords());
+        for (int i = 1; i < links.length; i++)
+            result.add(new SchemeCoords(graph.getX(graph.getFrom(links[i])), graph.getY(graph.getFrom(links[i]))));
+        result.add(getEnd().getCoords());
+
+        return result;
     }
 }
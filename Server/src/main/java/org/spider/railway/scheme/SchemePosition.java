@@ -0,0 +1,26 @@
+package org.spider.railway.scheme;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import reactor.util.annotation.NonNull;
+
+// Place on the scheme: a link of the graph in the direction of travel and the distance from its start
+@AllArgsConstructor
+@Getter
+public class SchemePosition {
+    private final SchemeGraph graph;
+
+    private final int link;
+
+    private final double offset;
+
+    @NonNull
+    public SchemeCoords getCoords() {
+        return graph.getCoords(link, offset);
+    }
+
+    @Override
+    public String toString() {
+        return "Position={node=" + graph.getNode(link).getId() + ", link=" + link + ", offset=" + offset + "}";
+    }
+}
@@ -0,0 +1,168 @@
+package org.spider.railway.scheme;
+
+import lombok.extern.slf4j.Slf4j;
+import org.spider.railway.messaging.MessagingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Routes of the trains over the current graph and the nodes held by them. The links of a route depend on the
+// graph and the switch states only, so they are cached by these and the start and end links.
+@Slf4j
+@Service
+public class SchemeRouteService {
+    private static final long[] NO_STATES = new long[0];
+
+    private static final int[] NO_ROUTE = new int[0];
+
+    private record Key(SchemeGraph graph, int from, int to, long[] states) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && graph == key.graph && from == key.from && to == key.to
+                    && Arrays.equals(states, key.states);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(graph) * 31 + from) * 31 + to) * 31 + Arrays.hashCode(states);
+        }
+    }
+
+    private final SchemeService schemeService;
+
+    private final SchemeSwitchService switchService;
+
+    private final MessagingService messagingService;
+
+    private final double switchCost;
+
+    private final int cacheSize;
+
+    private final ThreadLocal<SchemeRouter> routers = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<Key, int[]> routes = new ConcurrentHashMap<>();
+
+    // Train holding the node, by node id
+    private final ConcurrentHashMap<String, String> reservations = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SchemeRouteService(SchemeService schemeService, SchemeSwitchService switchService,
+                              MessagingService messagingService,
+                              @Value("${scheme.route.switch-cost:100}") double switchCost,
+                              @Value("${scheme.route.cache-size:4096}") int cacheSize) {
+        this.schemeService = schemeService;
+        this.switchService = switchService;
+        this.messagingService = messagingService;
+        this.switchCost = switchCost;
+        this.cacheSize = cacheSize;
+    }
+
+    // The shortest route from the position to the point of the end position in either direction, null when there is
+    // none. Both positions have to be on the current graph.
+    @Nullable
+    public SchemePath findRoute(@NonNull SchemePosition from, @NonNull SchemePosition to) {
+        final SchemeGraph graph = schemeService.getGraph();
+
+        if (from.getGraph() != graph || to.getGraph() != graph)
+            throw new IllegalArgumentException("Positions are not on the current scheme");
+
+        // Both directions are searched with the same switch states
+        final long[] states = graph.getSwitchStates();
+        final SchemePath forward = findRoute(graph, states, from, to.getLink(), to.getOffset());
+        final int reverse = graph.getReverse(to.getLink());
+
+        if (reverse < 0)
+            return forward;
+
+        final SchemePath backward = findRoute(graph, states, from, reverse, graph.getLength(reverse) - to.getOffset());
+
+        return forward == null || backward != null && backward.getLength() < forward.getLength() ? backward : forward;
+    }
+
+    @Nullable
+    private SchemePath findRoute(@NonNull SchemeGraph graph, @NonNull long[] states, @NonNull SchemePosition from,
+                                 int to, double offset) {
+        if (from.getLink() == to && offset >= from.getOffset())
+            return new SchemePath(graph, new int[] {to}, from.getOffset(), offset);
+
+        // With free switches the states do not change the route and are left out of the key
+        final Key key = new Key(graph, from.getLink(), to, switchCost > 0 ? states : NO_STATES);
+        int[] links = routes.get(key);
+
+        if (links == null) {
+            SchemeRouter router = routers.get();
+
+            if (router == null || router.getGraph() != graph) {
+                router = new SchemeRouter(graph, switchCost);
+                routers.set(router);
+            }
+
+            links = router.route(from.getLink(), to, states);
+
+            // Routes of the graphs replaced and of old switch states are dropped all at once
+            if (routes.size() >= cacheSize)
+                routes.clear();
+
+            routes.put(key, links == null ? NO_ROUTE : links);
+        }
+
+        return links == null || links.length == 0 ? null : new SchemePath(graph, links, from.getOffset(), offset);
+    }
+
+    // Holds the nodes of the route for the train and throws the switches which are not in the state of the route.
+    // False when a node is held by another train, nothing is held then. The nodes are held on subscription and the
+    // ones held by it are let go when a switch can not be thrown.
+    @NonNull
+    public Mono<Boolean> reserve(@NonNull String trainId, @NonNull SchemePath path) {
+        return Mono.defer(() -> {
+            final List<String> held = new ArrayList<>();
+
+            for (int i = 0; i < path.size(); i++) {
+                final String nodeId = path.getGraph().getNode(path.getLink(i)).getId();
+                final String owner = reservations.putIfAbsent(nodeId, trainId);
+
+                if (owner == null) {
+                    held.add(nodeId);
+                } else if (!owner.equals(trainId)) {
+                    release(trainId, held);
+
+                    return Mono.just(false);
+                }
+            }
+
+            return Flux.fromIterable(path.getSettings())
+                    .filter(setting -> switchService.getState(setting.switchId()) != setting.state())
+                    .concatMap(setting -> messagingService.sendSwitch(setting.switchId(), setting.state())
+                            .doOnError(th -> log.warn("Switch {} not lined for {}.", setting.switchId(), trainId, th)))
+                    .then(Mono.just(true))
+                    .onErrorResume(th -> {
+                        release(trainId, held);
+
+                        return Mono.just(false);
+                    });
+        });
+    }
+
+    private void release(@NonNull String trainId, @NonNull List<String> nodeIds) {
+        for (String id : nodeIds)
+            reservations.remove(id, trainId);
+    }
+
+    public void release(@NonNull String trainId) {
+        reservations.values().removeIf(trainId::equals);
+    }
+
+    @Nullable
+    public String getReservation(@NonNull String nodeId) {
+        return reservations.get(nodeId);
+    }
+}
@@ -0,0 +1,179 @@
+package org.spider.railway.scheme;
+
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.util.Arrays;
+
+// A* over the links of one graph. A link is entered at its start and left at its end, from there only the links
+// out of the joined connector follow, so a switch is passed root to branch or branch to root and never branch to
+// branch. Both branches may be taken whatever the state of the switch, every switch to be thrown costs switchCost
+// more. The distances to the end are the straight ones scaled down to the shortest links, never more than the
+// real ones. The arrays are reused by the searches, an instance is for one thread.
+public final class SchemeRouter {
+    private final SchemeGraph graph;
+
+    private final double switchCost;
+
+    // Cost from the start to the start of the link, valid when its stamp is the current one
+    private final double[] costs;
+
+    private final int[] previous;
+
+    private final int[] stamps;
+
+    private int stamp;
+
+    // Binary heap of the links by the cost with the estimate to the end, the cost is kept to skip the stale ones
+    private int[] heap = new int[64];
+
+    private double[] heapKeys = new double[64];
+
+    private double[] heapCosts = new double[64];
+
+    private int size;
+
+    public SchemeRouter(@NonNull SchemeGraph graph, double switchCost) {
+        this.graph = graph;
+        this.switchCost = switchCost;
+        this.costs = new double[graph.getLinkCount()];
+        this.previous = new int[graph.getLinkCount()];
+        this.stamps = new int[graph.getLinkCount()];
+    }
+
+    @NonNull
+    public SchemeGraph getGraph() {
+        return graph;
+    }
+
+    // Links from the start one to the end one, both included, with the switches in the given states; null when the
+    // end can not be reached. For the same link the route goes round back to it.
+    @Nullable
+    public int[] route(int from, int to, @NonNull long[] states) {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+
+        size = 0;
+
+        final double toX = graph.getX(graph.getFrom(to)), toY = graph.getY(graph.getFrom(to));
+        final double scale = graph.getLengthScale();
+
+        // The start link itself gets no cost, a way round back to it is a route like any other
+        relax(from, 0.0, states, toX, toY, scale);
+
+        while (size > 0) {
+            final int link = heap[0];
+            final double cost = heapCosts[0];
+
+            pop();
+
+            if (cost > costs[link])
+                continue;
+
+            if (link == to)
+                return path(from, to);
+
+            relax(link, cost + graph.getLength(link), states, toX, toY, scale);
+        }
+
+        return null;
+    }
+
+    private void relax(int link, double cost, @NonNull long[] states, double toX, double toY, double scale) {
+        final int connector = graph.getJoint(graph.getTo(link));
+
+        if (connector < 0)
+            return;
+
+        for (int i = graph.getOutStart(connector); i < graph.getOutStart(connector + 1); i++) {
+            final int next = graph.getOutLink(i);
+            final int sw = graph.getSwitch(next);
+            final double nextCost = sw >= 0 && graph.isDiverging(next) != ((states[sw >>> 6] & (1L << sw)) != 0)
+                    ? cost + switchCost
+                    : cost;
+
+            if (stamps[next] == stamp && costs[next] <= nextCost)
+                continue;
+
+            stamps[next] = stamp;
+            costs[next] = nextCost;
+            previous[next] = link;
+
+            final int start = graph.getFrom(next);
+            final double dx = graph.getX(start) - toX, dy = graph.getY(start) - toY;
+
+            push(next, nextCost + scale * Math.sqrt(dx * dx + dy * dy), nextCost);
+        }
+    }
+
+    @NonNull
+    private int[] path(int from, int to) {
+        int count = 1;
+        for (int link = to; link != from || count == 1; link = previous[link])
+            count++;
+
+        final int[] result = new int[count];
+        int link = to;
+
+        for (int i = count - 1; i > 0; i--) {
+            result[i] = link;
+            link = previous[link];
+        }
+        result[0] = from;
+
+        return result;
+    }
+
+    private void push(int link, double key, double cost) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+            heapKeys = Arrays.copyOf(heapKeys, size * 2);
+            heapCosts = Arrays.copyOf(heapCosts, size * 2);
+        }
+
+        int i = size++;
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+
+            if (heapKeys[parent] <= key)
+                break;
+
+            set(i, heap[parent], heapKeys[parent], heapCosts[parent]);
+            i = parent;
+        }
+
+        set(i, link, key, cost);
+    }
+
+    private void pop() {
+        final int link = heap[--size];
+        final double key = heapKeys[size], cost = heapCosts[size];
+        int i = 0;
+
+        while (true) {
+            int child = i * 2 + 1;
+
+            if (child >= size)
+                break;
+
+            if (child + 1 < size && heapKeys[child + 1] < heapKeys[child])
+                child++;
+
+            if (heapKeys[child] >= key)
+                break;
+
+            set(i, heap[child], heapKeys[child], heapCosts[child]);
+            i = child;
+        }
+
+        set(i, link, key, cost);
+    }
+
+    private void set(int i, int link, double key, double cost) {
+        heap[i] = link;
+        heapKeys[i] = key;
+        heapCosts[i] = cost;
+    }
+}
@@ -1,12 +1,17 @@
 package org.spider.railway.scheme;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.spider.railway.utils.TrackIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Slf4j
@@ -40,22 +45,84 @@ public class SchemeService {
         return List.of(G1, G2, G3, G4, G5);
     }
 
-    private final List<SchemeNode> nodes;
+    @NonNull
+    private static List<SchemeMarker> testMarkers() {
+        return List.of(new SchemeMarker(new SchemeCoords(462.0, 0.0)), new SchemeMarker(new SchemeCoords(924.0, 0.0)));
+    }
+
+    private final SchemeSwitchService switchService;
+
+    private final AtomicReference<SchemeGraph> graph = new AtomicReference<>();
 
-    public SchemeService() {
-        this.nodes = testScheme();
+    private Disposable disposable;
+
+    @Autowired
+    public SchemeService(SchemeSwitchService switchService) {
+        this.switchService = switchService;
+
+        update(testScheme(), testMarkers());
     }
 
     @PostConstruct
     private void init() {
+        this.disposable = switchService.subscribe()
+                .subscribe(id -> graph.get().setSwitchState(id, switchService.getState(id)));
+
         final SchemeCoords point = new SchemeCoords(600, 10);
 
+        for (TrackIndex.Hit<Integer> hit : getGraph().findLinks(point, 2))
+            log.info("Distance for {} is {}.", getGraph().getNode(hit.value()), hit.distance());
+    }
+
+    @PreDestroy
+    private void destroy() {
+        this.disposable.dispose();
+    }
+
+    // Compiles the edited scheme and puts it in place of the current one. Readers keep the graph they have got,
+    // train positions on it are moved to the new one by their coordinates.
+    public void update(@NonNull List<SchemeNode> nodes, @NonNull List<SchemeMarker> markers) {
+        final SchemeGraph current = graph.get();
+        final SchemeGraph next = SchemeGraph.compile(current == null ? 0 : current.getVersion() + 1, nodes, markers);
+
+        for (SchemeNode node : nodes)
+            if (node instanceof SchemeSwitch)
+                next.setSwitchState(node.getId(), switchService.getState(node.getId()));
+
+        graph.set(next);
+
+        // A switch change between the copy above and set() went to the old graph only
         for (SchemeNode node : nodes)
-            log.info("Distance for {} is {}.", node, node.getDistance(point));
+            if (node instanceof SchemeSwitch)
+                next.setSwitchState(node.getId(), switchService.getState(node.getId()));
+
+        log.info("Scheme {}: {} nodes, {} connectors, {} links, {} switches.", next.getVersion(), nodes.size(),
+                next.getConnectorCount(), next.getLinkCount(), next.getSwitchCount());
+    }
+
+    @NonNull
+    public SchemeGraph getGraph() {
+        return graph.get();
+    }
+
+    // The nearest node not farther than maxDistance
+    @Nullable
+    public SchemeNode findNearest(@NonNull SchemeCoords point, double maxDistance) {
+        return getGraph().findNode(point, maxDistance);
+    }
+
+    @Nullable
+    public SchemeMarker findMarker(@NonNull SchemeCoords point, double maxDistance) {
+        return getGraph().findMarker(point, maxDistance);
     }
 
     @NonNull
     public SchemeCoords getStartPosition() {
-        return nodes.get(0).getConnectors().get(0).getCoords();
+        return getStartLocation().getCoords();
+    }
+
+    @NonNull
+    public SchemePosition getStartLocation() {
+        return getGraph().getStart();
     }
 }
@@ -0,0 +1,70 @@
+package org.spider.railway.scheme;
+
+import reactor.util.annotation.NonNull;
+
+import java.util.List;
+
+// Switch node: the root connector and the straight and diverging branches, the id is the one of the switch item.
+// The diverging branch may have intermediate points along its curve.
+public class SchemeSwitch extends SchemeNode {
+    protected final double LINE_WIDTH = 30.0;
+
+    public SchemeSwitch(@NonNull String id, @NonNull SchemeCoords rootCoords, @NonNull SchemeCoords straightCoords,
+                        double straightLength, @NonNull SchemeCoords divergingCoords, double divergingLength,
+                        @NonNull List<SchemeCoords> divergingPoints) {
+        super(id);
+
+        final SchemeConnector root = new SchemeConnector(this, rootCoords);
+        final SchemeConnector straight = new SchemeConnector(this, straightCoords);
+        final SchemeConnector diverging = new SchemeConnector(this, divergingCoords);
+
+        addConnectors(root, straight, diverging);
+
+        final SchemeLink toDiverging = new SchemeLink(root, diverging, divergingLength);
+        final SchemeLink fromDiverging = new SchemeLink(diverging, root, divergingLength);
+
+        for (SchemeCoords point : divergingPoints)
+            toDiverging.addIntermediatePoint(point);
+
+        for (int i = divergingPoints.size() - 1; i >= 0; i--)
+            fromDiverging.addIntermediatePoint(divergingPoints.get(i));
+
+        addInternalLinks(new SchemeLink(root, straight, straightLength), new SchemeLink(straight, root, straightLength),
+                toDiverging, fromDiverging);
+    }
+
+    @NonNull
+    public SchemeConnector getRoot() {
+        return getConnectors().get(0);
+    }
+
+    @NonNull
+    public SchemeConnector getStraight() {
+        return getConnectors().get(1);
+    }
+
+    @NonNull
+    public SchemeConnector getDiverging() {
+        return getConnectors().get(2);
+    }
+
+    // The branch connector used by the state, true is the diverging one
+    @NonNull
+    public SchemeConnector getBranch(boolean state) {
+        return state ? getDiverging() : getStraight();
+    }
+
+    @Override
+    public boolean inBounds(@NonNull SchemeCoords point) {
+        return getDistance(point) <= LINE_WIDTH / 2;
+    }
+
+    @Override
+    public double getDistance(@NonNull SchemeCoords point) {
+        double result = Double.MAX_VALUE;
+        for (SchemeLink link : getInternalLinks())
+            result = Math.min(result, link.getDistance(point));
+
+        return result;
+    }
+}
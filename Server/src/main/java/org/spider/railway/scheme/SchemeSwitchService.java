@@ -0,0 +1,67 @@
+package org.spider.railway.scheme;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.spider.railway.messaging.MessagingService;
+import org.spider.railway.messaging.message.SwitchStatusMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.annotation.NonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Last reported state of every switch, only its value and version are kept rather than the whole message.
+@Slf4j
+@Service
+public class SchemeSwitchService {
+    private record State(long version, boolean value) {
+    }
+
+    private final MessagingService messagingService;
+
+    private final ConcurrentHashMap<String, State> states = new ConcurrentHashMap<>();
+
+    // Ids of the switches whose state has been updated
+    private final Sinks.Many<String> changes = Sinks.many().multicast().directBestEffort();
+
+    private Disposable disposable;
+
+    @Autowired
+    public SchemeSwitchService(MessagingService messagingService) {
+        this.messagingService = messagingService;
+    }
+
+    @PostConstruct
+    private void init() {
+        this.disposable = this.messagingService
+                .subscribeStatus(SwitchStatusMessage.class)
+                .subscribe(msg -> {
+                    final State state = new State(msg.getVersion(), msg.getState());
+
+                    // An older status coming late does not undo a newer one
+                    if (states.merge(msg.getId(), state, (old, current) -> current.version() >= old.version() ? current : old) == state)
+                        changes.tryEmitNext(msg.getId());
+                }, th -> log.error("Switch states stopped", th));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        this.disposable.dispose();
+    }
+
+    @NonNull
+    public Flux<String> subscribe() {
+        return changes.asFlux();
+    }
+
+    // Switches which have not reported yet are taken as straight
+    public boolean getState(@NonNull String switchId) {
+        final State state = states.get(switchId);
+
+        return state != null && state.value();
+    }
+}
@@ -0,0 +1,318 @@
+package org.spider.railway.statuses;
+
+import org.spider.railway.item.SchemeItem;
+import org.spider.railway.messaging.message.SemaphoreStatusMessage;
+import org.spider.railway.messaging.message.StatusMessage;
+import org.spider.railway.messaging.message.SwitchStatusMessage;
+import org.spider.railway.messaging.message.TrainStatusMessage;
+import org.spider.railway.utils.Utils;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.lang.invoke.VarHandle;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Fixed capacity history of one item in struct-of-arrays form. Only one thread may call add(), any thread may read:
+// readers copy samples optimistically and retry when the writer has overwritten slots they were reading.
+final class StatusRing {
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final int MAX_READ_ATTEMPTS = 8;
+
+    record Snapshot(@NonNull List<StatusMessage> messages, long firstMillis, long lastMillis) {
+    }
+
+    private final String id;
+
+    private final SchemeItem.Type type;
+
+    private final int capacity;
+
+    private final long[] correctedMillis;
+
+    private final long[] timestampMillis;
+
+    private final long[] receiveMillis;
+
+    private final long[] versions;
+
+    private final float[] internalTemps;
+
+    @Nullable
+    private final short[] speeds;
+
+    @Nullable
+    private final float[] powers;
+
+    @Nullable
+    private final long[] markerMillis;
+
+    @Nullable
+    private final int[] colors;
+
+    @Nullable
+    private final boolean[] states;
+
+    // Number of samples ever added, the sample N lives in the slot N % capacity
+    private volatile long count;
+
+    StatusRing(@NonNull String id, @NonNull SchemeItem.Type type, int capacity) {
+        this.id = id;
+        this.type = type;
+        this.capacity = capacity;
+        this.correctedMillis = new long[capacity];
+        this.timestampMillis = new long[capacity];
+        this.receiveMillis = new long[capacity];
+        this.versions = new long[capacity];
+        this.internalTemps = new float[capacity];
+        this.speeds = type == SchemeItem.Type.TRAIN ? new short[capacity] : null;
+        this.powers = type == SchemeItem.Type.TRAIN ? new float[capacity] : null;
+        this.markerMillis = type == SchemeItem.Type.TRAIN ? new long[capacity] : null;
+        this.colors = type == SchemeItem.Type.SEMAPHORE ? new int[capacity] : null;
+        this.states = type == SchemeItem.Type.SWITCH ? new boolean[capacity] : null;
+    }
+
+    @NonNull
+    SchemeItem.Type getType() {
+        return type;
+    }
+
+    void add(@NonNull StatusMessage message) {
+        final long index = count;
+        final int slot = (int) (index % capacity);
+
+        // Binary search needs a sorted column, a late correction of the device clock must not move time back
+        long corrected = message.getCorrectedTimestampMillis();
+        if (index > 0)
+            corrected = Math.max(corrected, correctedMillis[(int) ((index - 1) % capacity)]);
+
+        correctedMillis[slot] = corrected;
+        timestampMillis[slot] = message.getTimestamp().toInstant().toEpochMilli();
+        receiveMillis[slot] = message.getReceiveTimestamp().toInstant().toEpochMilli();
+        versions[slot] = message.getVersion();
+        internalTemps[slot] = (float) message.getInternalTemp();
+
+        if (message instanceof TrainStatusMessage train && speeds != null && powers != null && markerMillis != null) {
+            speeds[slot] = (short) train.getSpeed();
+            powers[slot] = (float) train.getPower();
+            markerMillis[slot] = train.getSchemeMarkerTime() == null ? NO_TIME : train.getSchemeMarkerTime().toInstant().toEpochMilli();
+        } else if (message instanceof SemaphoreStatusMessage semaphore && colors != null)
+            colors[slot] = semaphore.getColor();
+        else if (message instanceof SwitchStatusMessage switchStatus && states != null)
+            states[slot] = switchStatus.getState();
+
+        count = index + 1;
+    }
+
+    // Samples with the corrected time in [fromMillis, toMillis], null when the ring is empty or the writer kept
+    // overwriting the samples being read, the caller reads the store then
+    @Nullable
+    Snapshot read(long fromMillis, long toMillis) {
+        final ArrayList<StatusMessage> messages = new ArrayList<>();
+
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            final long end = count;
+
+            // The next add() overwrites the sample end - capacity, a full ring leaves that one out
+            final long start = end < capacity ? 0L : end - capacity + 1;
+
+            if (start >= end)
+                return null;
+
+            final long from = lowerBound(start, end, fromMillis);
+            final long to = lowerBound(from, end, toMillis + 1);
+
+            messages.clear();
+            for (long i = from; i < to; i++)
+                messages.add(sample((int) (i % capacity)));
+
+            final long firstMillis = correctedMillis[(int) (start % capacity)];
+            final long lastMillis = correctedMillis[(int) ((end - 1) % capacity)];
+
+            // Everything above has to be read before the counter is checked again
+            VarHandle.acquireFence();
+
+            // The sample being written now is count, it overwrites count - capacity: nothing read may be that old
+            if (count - capacity < start)
+                return new Snapshot(messages, firstMillis, lastMillis);
+        }
+
+        return null;
+    }
+
+    private long lowerBound(long from, long to, long millis) {
+        while (from < to) {
+            final long mid = (from + to) >>> 1;
+
+            if (correctedMillis[(int) (mid % capacity)] < millis)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+
+        return from;
+    }
+
+    @NonNull
+    private StatusMessage sample(int slot) {
+        return switch (type) {
+            case TRAIN -> new TrainSample(this, slot);
+            case SEMAPHORE -> new SemaphoreSample(this, slot);
+            case SWITCH -> new SwitchSample(this, slot);
+            default -> new Sample(this, slot);
+        };
+    }
+
+    private static class Sample implements StatusMessage {
+        private final String id;
+
+        private final SchemeItem.Type type;
+
+        private final long correctedMillis;
+
+        private final long timestampMillis;
+
+        private final long receiveMillis;
+
+        private final long version;
+
+        private final float internalTemp;
+
+        Sample(@NonNull StatusRing ring, int slot) {
+            this.id = ring.id;
+            this.type = ring.type;
+            this.correctedMillis = ring.correctedMillis[slot];
+            this.timestampMillis = ring.timestampMillis[slot];
+            this.receiveMillis = ring.receiveMillis[slot];
+            this.version = ring.versions[slot];
+            this.internalTemp = ring.internalTemps[slot];
+        }
+
+        @Override
+        @NonNull
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        @NonNull
+        public SchemeItem.Type getItemType() {
+            return type;
+        }
+
+        @Override
+        @NonNull
+        public OffsetDateTime getTimestamp() {
+            return Utils.ofMillis(timestampMillis);
+        }
+
+        @Override
+        @NonNull
+        public OffsetDateTime getReceiveTimestamp() {
+            return Utils.ofMillis(receiveMillis);
+        }
+
+        @Override
+        @NonNull
+        public OffsetDateTime getCorrectedTimestamp() {
+            return Utils.ofMillis(correctedMillis);
+        }
+
+        @Override
+        public long getCorrectedTimestampMillis() {
+            return correctedMillis;
+        }
+
+        @Override
+        public double getInternalTemp() {
+            return internalTemp;
+        }
+
+        @Override
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    private static class TrainSample extends Sample implements TrainStatusMessage {
+        private final int speed;
+
+        private final float power;
+
+        private final long markerMillis;
+
+        @SuppressWarnings("DataFlowIssue")
+        TrainSample(@NonNull StatusRing ring, int slot) {
+            super(ring, slot);
+            this.speed = ring.speeds[slot];
+            this.power = ring.powers[slot];
+            this.markerMillis = ring.markerMillis[slot];
+        }
+
+        @Override
+        @NonNull
+        public SchemeItem.Type getItemType() {
+            return SchemeItem.Type.TRAIN;
+        }
+
+        @Override
+        public int getSpeed() {
+            return speed;
+        }
+
+        @Override
+        public double getPower() {
+            return power;
+        }
+
+        @Override
+        @Nullable
+        public OffsetDateTime getSchemeMarkerTime() {
+            return markerMillis == NO_TIME ? null : Utils.ofMillis(markerMillis);
+        }
+    }
+
+    private static class SemaphoreSample extends Sample implements SemaphoreStatusMessage {
+        private final int color;
+
+        @SuppressWarnings("DataFlowIssue")
+        SemaphoreSample(@NonNull StatusRing ring, int slot) {
+            super(ring, slot);
+            this.color = ring.colors[slot];
+        }
+
+        @Override
+        @NonNull
+        public SchemeItem.Type getItemType() {
+            return SchemeItem.Type.SEMAPHORE;
+        }
+
+        @Override
+        public int getColor() {
+            return color;
+        }
+    }
+
+    private static class SwitchSample extends Sample implements SwitchStatusMessage {
+        private final boolean state;
+
+        @SuppressWarnings("DataFlowIssue")
+        SwitchSample(@NonNull StatusRing ring, int slot) {
+            super(ring, slot);
+            this.state = ring.states[slot];
+        }
+
+        @Override
+        @NonNull
+        public SchemeItem.Type getItemType() {
+            return SchemeItem.Type.SWITCH;
+        }
+
+        @Override
+        public boolean getState() {
+            return state;
+        }
+    }
+}
@@ -5,38 +5,73 @@ import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.spider.railway.messaging.MessageStoreService;
 import org.spider.railway.messaging.MessagingService;
+import org.spider.railway.messaging.StatusBucket;
+import org.spider.railway.messaging.StatusMetric;
+import org.spider.railway.messaging.StatusRollupService;
 import org.spider.railway.messaging.message.StatusMessage;
+import org.spider.railway.utils.Downsampling;
+import org.spider.railway.utils.Utils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+import reactor.util.function.Tuple2;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
 public class StatusService {
-    private static final long MAX_IN_MEMORY_MS = 10 * 60_000L; // 15 min
-
     private static final int MAX_IN_MEMORY_COUNT = 1_000;
 
+    // LTTB over stored history runs on buckets this many times finer than the requested point count
+    private static final int LTTB_OVERSAMPLING = 4;
+
+    public enum SeriesMode {
+        LTTB,
+        BUCKETS
+    }
+
+    // For LTTB min, max and y are the same sample value
+    public record SeriesPoint(long x, double y, double min, double max, long count) {
+    }
+
+    // Sink of the live statuses of an item, kept while it has subscribers. The count is only changed inside
+    // compute() of the map, so a sink is never dropped between a subscriber getting it and subscribing to it.
+    private static final class LiveStatuses {
+        private final Sinks.Many<StatusMessage> sink = Sinks.many().multicast().directBestEffort();
+
+        private int subscribers;
+    }
+
     private final MessagingService messagingService;
 
     private final MessageStoreService messageStoreService;
 
-    private final ConcurrentHashMap<String, LinkedList<StatusMessage>> statuses = new ConcurrentHashMap<>();
+    private final StatusRollupService statusRollupService;
+
+    private final ConcurrentHashMap<String, StatusRing> statuses = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, LiveStatuses> liveStatuses = new ConcurrentHashMap<>();
 
     private Disposable disposable;
 
     @Autowired
-    public StatusService(MessagingService messagingService, MessageStoreService messageStoreService) {
+    public StatusService(MessagingService messagingService,
+                         MessageStoreService messageStoreService,
+                         StatusRollupService statusRollupService) {
         this.messagingService = messagingService;
         this.messageStoreService = messageStoreService;
+        this.statusRollupService = statusRollupService;
     }
 
     @PostConstruct
@@ -44,17 +79,19 @@ public class StatusService {
         this.disposable = messagingService
                 .subscribeStatus(StatusMessage.class)
                 .subscribe(message -> {
-                    final LinkedList<StatusMessage> messages = statuses.computeIfAbsent(message.getId(), __ -> new LinkedList<>());
-
-                    synchronized (messages) {
-                        if (!messages.isEmpty()
-                                && (messages.size() > MAX_IN_MEMORY_COUNT
-                                    || (System.currentTimeMillis() - messages.getFirst().getCorrectedTimestampMillis()) > MAX_IN_MEMORY_MS)) {
-                            messages.removeFirst();
-                        }
+                    // Statuses come one by one from a single subscription, so every ring has a single writer
+                    StatusRing ring = statuses.get(message.getId());
 
-                        messages.add(message);
+                    if (ring == null || ring.getType() != message.getItemType()) {
+                        ring = new StatusRing(message.getId(), message.getItemType(), MAX_IN_MEMORY_COUNT);
+                        statuses.put(message.getId(), ring);
                     }
+
+                    ring.add(message);
+
+                    final LiveStatuses live = liveStatuses.get(message.getId());
+                    if (live != null)
+                        live.sink.tryEmitNext(message);
                 });
     }
 
@@ -68,36 +105,279 @@ public class StatusService {
         return messageStoreService.getMessages(trainId, from, to).cast(StatusMessage.class);
     }
 
+    // Slow subscribers miss messages instead of holding others, streamMessages() coalesces them anyway
     @NonNull
-    public Flux<StatusMessage> getMessages(@NonNull String trainId, @NonNull OffsetDateTime from, @NonNull OffsetDateTime to) {
+    public Flux<StatusMessage> subscribeMessages(@NonNull String itemId) {
         return Flux.defer(() -> {
-            final LinkedList<StatusMessage> messages = statuses.get(trainId);
+            final LiveStatuses live = liveStatuses.compute(itemId, (__, current) -> {
+                final LiveStatuses result = current != null ? current : new LiveStatuses();
 
-            if (messages == null)
-                return getStoredMessages(trainId, from, to);
+                result.subscribers++;
+                return result;
+            });
+
+            return live.sink.asFlux()
+                    .doFinally(__ -> liveStatuses.computeIfPresent(itemId, (___, current) ->
+                            --current.subscribers == 0 ? null : current));
+        });
+    }
+
+    // The first element holds the history since sinceMillis (but not older than windowMs), then new messages are
+    // emitted in chunks at most once per interval. Messages never go back in time, so a client can resume from the
+    // last timestamp it got.
+    @NonNull
+    public Flux<List<StatusMessage>> streamMessages(@NonNull String itemId,
+                                                    @Nullable Long sinceMillis,
+                                                    long windowMs,
+                                                    @NonNull Duration interval) {
+        return Flux.defer(() -> {
+            final OffsetDateTime now = OffsetDateTime.now();
+            final long windowStart = now.toInstant().toEpochMilli() - windowMs;
+            final long from = sinceMillis == null ? windowStart : Math.max(sinceMillis + 1, windowStart);
+            final long[] lastMillis = {from - 1};
+
+            final Flux<List<StatusMessage>> snapshot = getMessages(itemId, Utils.ofMillis(from), now)
+                    .collectList()
+                    .flux();
+
+            final Flux<List<StatusMessage>> live = subscribeMessages(itemId)
+                    .onBackpressureLatest()
+                    .buffer(interval)
+                    .filter(list -> !list.isEmpty());
+
+            // mergeSequential subscribes to the live source at once, so nothing is lost while history is loaded
+            return Flux.mergeSequential(snapshot, live)
+                    .map(messages -> {
+                        final List<StatusMessage> result = new ArrayList<>(messages.size());
+
+                        for (StatusMessage message : messages) {
+                            final long millis = message.getCorrectedTimestampMillis();
+
+                            if (millis > lastMillis[0]) {
+                                lastMillis[0] = millis;
+                                result.add(message);
+                            }
+                        }
+
+                        return result;
+                    })
+                    .index()
+                    .filter(tuple -> tuple.getT1() == 0 || !tuple.getT2().isEmpty())
+                    .map(Tuple2::getT2);
+        });
+    }
+
+    // Downsamples the metric of an item in [from, to] to about the given number of points. The in-memory tail is
+    // processed here, older history is aggregated by the database on the same bucket grid.
+    @NonNull
+    public Flux<SeriesPoint> getSeries(@NonNull String itemId,
+                                       @NonNull StatusMetric metric,
+                                       @NonNull OffsetDateTime from,
+                                       @NonNull OffsetDateTime to,
+                                       int points,
+                                       @NonNull SeriesMode mode) {
+        return Flux.defer(() -> {
+            final long fromMillis = from.toInstant().toEpochMilli();
+            final long toMillis = to.toInstant().toEpochMilli();
+
+            if (toMillis < fromMillis || points < 1)
+                return Flux.empty();
+
+            final StatusRing ring = statuses.get(itemId);
+            final StatusRing.Snapshot snapshot = ring == null ? null : ring.read(fromMillis, toMillis);
+
+            final List<StatusMessage> memory = snapshot == null
+                    ? List.of()
+                    : snapshot.messages().stream().filter(metric::appliesTo).toList();
+
+            if (snapshot != null && snapshot.firstMillis() <= fromMillis && mode == SeriesMode.LTTB)
+                return Flux.fromIterable(lttb(memory, metric, points));
+
+            long width = Math.max(1L, (toMillis - fromMillis + points) / points);
+            if (mode == SeriesMode.LTTB)
+                width = Math.max(1L, width / LTTB_OVERSAMPLING);
+            final long bucketWidth = width;
+
+            final List<StatusBucket> memoryBuckets = toBuckets(memory, metric, fromMillis, bucketWidth);
+
+            final Mono<List<StatusBucket>> storedBuckets = snapshot != null && snapshot.firstMillis() <= fromMillis
+                    ? Mono.just(List.of())
+                    : getStoredBuckets(itemId, metric, from,
+                                snapshot == null ? to : Utils.ofMillis(Math.min(toMillis, snapshot.firstMillis() - 1)),
+                                fromMillis, bucketWidth)
+                            .collectList();
+
+            return storedBuckets
+                    .map(stored -> {
+                        final List<StatusBucket> buckets = mergeBuckets(stored, memoryBuckets);
+
+                        return mode == SeriesMode.LTTB ? lttb(buckets, points) : toPoints(buckets);
+                    })
+                    .flatMapIterable(list -> list);
+        });
+    }
+
+    // Rollups are used when their resolution fits into a bucket, raw rows are aggregated otherwise. A rollup row holds
+    // its whole period, so rollups serve only the periods inside [from, to] and the partial ones at the edges come
+    // from raw rows.
+    @NonNull
+    private Flux<StatusBucket> getStoredBuckets(@NonNull String itemId,
+                                                @NonNull StatusMetric metric,
+                                                @NonNull OffsetDateTime from,
+                                                @NonNull OffsetDateTime to,
+                                                long originMillis,
+                                                long widthMillis) {
+        final StatusRollupService.Resolution resolution = statusRollupService.plan(widthMillis, from.toInstant().toEpochMilli());
+
+        if (resolution == null)
+            return messageStoreService.getBuckets(itemId, metric, from, to, originMillis, widthMillis);
+
+        final long period = resolution.getMillis();
+        final long rollupFrom = Math.floorDiv(from.toInstant().toEpochMilli() + period - 1, period) * period;
+        final long rollupTo = Math.floorDiv(to.toInstant().toEpochMilli() + 1, period) * period;
+
+        if (rollupFrom >= rollupTo)
+            return messageStoreService.getBuckets(itemId, metric, from, to, originMillis, widthMillis);
+
+        final OffsetDateTime rollupStart = Utils.ofMillis(rollupFrom), rollupEnd = Utils.ofMillis(rollupTo);
+
+        final Mono<List<StatusBucket>> head = rollupStart.isAfter(from)
+                ? messageStoreService.getBuckets(itemId, metric, from, rollupStart.minus(1L, ChronoUnit.MICROS),
+                        originMillis, widthMillis).collectList()
+                : Mono.just(List.of());
+
+        final Mono<List<StatusBucket>> rollups = statusRollupService
+                .getBuckets(itemId, metric, resolution, rollupStart, rollupEnd, originMillis, widthMillis)
+                .collectList();
+
+        final Mono<List<StatusBucket>> tail = rollupEnd.isAfter(to)
+                ? Mono.just(List.of())
+                : messageStoreService.getBuckets(itemId, metric, rollupEnd, to, originMillis, widthMillis).collectList();
+
+        return Mono.zip(head, rollups, tail)
+                .flatMapIterable(tuple -> mergeBuckets(mergeBuckets(tuple.getT1(), tuple.getT2()), tuple.getT3()));
+    }
+
+    @NonNull
+    private static List<SeriesPoint> lttb(@NonNull List<StatusMessage> messages, @NonNull StatusMetric metric, int points) {
+        final int size = messages.size();
+        final long[] xs = new long[size];
+        final double[] ys = new double[size];
 
-            final ArrayList<StatusMessage> result;
-            final OffsetDateTime firstMessageTime;
-            final OffsetDateTime lastMessageTime;
+        for (int i = 0; i < size; i++) {
+            xs[i] = messages.get(i).getCorrectedTimestampMillis();
+            ys[i] = metric.getValue(messages.get(i));
+        }
 
-            synchronized (messages) {
-                result = new ArrayList<>(messages.size());
+        final int[] indexes = Downsampling.lttb(xs, ys, size, points);
+        final List<SeriesPoint> result = new ArrayList<>(indexes.length);
+        for (int index : indexes)
+            result.add(new SeriesPoint(xs[index], ys[index], ys[index], ys[index], 1L));
 
-                for (StatusMessage message : messages) {
-                    final OffsetDateTime time = message.getCorrectedTimestamp();
+        return result;
+    }
+
+    @NonNull
+    private static List<SeriesPoint> lttb(@NonNull List<StatusBucket> buckets, int points) {
+        final int size = buckets.size();
+        final long[] xs = new long[size];
+        final double[] ys = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            xs[i] = buckets.get(i).getX();
+            ys[i] = buckets.get(i).getAvg();
+        }
+
+        final int[] indexes = Downsampling.lttb(xs, ys, size, points);
+        final List<SeriesPoint> result = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            final StatusBucket bucket = buckets.get(index);
+            result.add(new SeriesPoint(xs[index], ys[index], bucket.min(), bucket.max(), bucket.count()));
+        }
+
+        return result;
+    }
+
+    @NonNull
+    private static List<SeriesPoint> toPoints(@NonNull List<StatusBucket> buckets) {
+        final List<SeriesPoint> result = new ArrayList<>(buckets.size());
 
-                    if (time.isAfter(from) || time.isEqual(from))
-                        result.add(message);
-                    else if (time.isAfter(to))
-                        break;
-                }
+        for (StatusBucket bucket : buckets)
+            result.add(new SeriesPoint(bucket.getX(), bucket.getAvg(), bucket.min(), bucket.max(), bucket.count()));
 
-                firstMessageTime = messages.getFirst().getCorrectedTimestamp();
-                lastMessageTime = messages.getLast().getCorrectedTimestamp();
+        return result;
+    }
+
+    @NonNull
+    private static List<StatusBucket> toBuckets(@NonNull List<StatusMessage> messages,
+                                                @NonNull StatusMetric metric,
+                                                long originMillis,
+                                                long widthMillis) {
+        final List<StatusBucket> result = new ArrayList<>();
+        StatusBucket current = null;
+
+        for (StatusMessage message : messages) {
+            final long millis = message.getCorrectedTimestampMillis();
+            final long index = Math.floorDiv(millis - originMillis, widthMillis);
+            final double value = metric.getValue(message);
+
+            if (current != null && current.index() == index)
+                current = current.add(millis, value);
+            else {
+                if (current != null)
+                    result.add(current);
+                current = StatusBucket.of(index, millis, value);
             }
+        }
+
+        if (current != null)
+            result.add(current);
+
+        return result;
+    }
+
+    // Both lists are sorted and cover adjacent time ranges, only the bucket on their border may be in both
+    @NonNull
+    private static List<StatusBucket> mergeBuckets(@NonNull List<StatusBucket> stored, @NonNull List<StatusBucket> memory) {
+        if (stored.isEmpty())
+            return memory;
+
+        if (memory.isEmpty())
+            return stored;
+
+        final List<StatusBucket> result = new ArrayList<>(stored.size() + memory.size());
+        result.addAll(stored);
+
+        int first = 0;
+        final StatusBucket last = result.get(result.size() - 1);
+        if (last.index() == memory.get(0).index()) {
+            result.set(result.size() - 1, last.merge(memory.get(0)));
+            first = 1;
+        }
+
+        result.addAll(memory.subList(first, memory.size()));
+
+        return result;
+    }
+
+    @NonNull
+    public Flux<StatusMessage> getMessages(@NonNull String trainId, @NonNull OffsetDateTime from, @NonNull OffsetDateTime to) {
+        return Flux.defer(() -> {
+            final StatusRing ring = statuses.get(trainId);
+
+            if (ring == null)
+                return getStoredMessages(trainId, from, to);
+
+            final StatusRing.Snapshot snapshot = ring.read(from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli());
+
+            if (snapshot == null)
+                return getStoredMessages(trainId, from, to);
+
+            final OffsetDateTime firstMessageTime = Utils.ofMillis(snapshot.firstMillis());
+            final OffsetDateTime lastMessageTime = Utils.ofMillis(snapshot.lastMillis());
 
             Flux<StatusMessage> resultFlux;
-            final Flux<StatusMessage> fromArrayFlux = Flux.fromIterable(result);
+            final Flux<StatusMessage> fromArrayFlux = Flux.fromIterable(snapshot.messages());
 
             if (from.isBefore(firstMessageTime))
                 resultFlux = Flux.concat(getStoredMessages(trainId, from, firstMessageTime.minus(1L, ChronoUnit.MILLIS)), fromArrayFlux);
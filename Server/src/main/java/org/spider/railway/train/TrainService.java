@@ -9,39 +9,54 @@ import org.spider.railway.exception.NotFoundException;
 import org.spider.railway.messaging.MessagingService;
 import org.spider.railway.messaging.message.TrainStatusMessage;
 import org.spider.railway.scheme.SchemeCoords;
+import org.spider.railway.scheme.SchemeGraph;
 import org.spider.railway.scheme.SchemeMarker;
+import org.spider.railway.scheme.SchemePosition;
 import org.spider.railway.scheme.SchemeService;
 import org.spider.railway.utils.Utils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
 import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
 
+import java.time.OffsetDateTime;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Service
 public class TrainService {
+    // Dead reckoning: every status moves the train along the scheme by its average speed since the previous one,
+    // a newly passed marker puts it on the marker. The status is replaced as a whole, so concurrent updates of a
+    // train are retried instead of locked.
     @Getter
     private class Train {
         @Getter
         @ToString
         private static class Status {
-            private final TrainStatusMessage lastMessage;
+            private final int speed;
+            private final long timestampMillis;
+            @Nullable
+            private final OffsetDateTime markerTime;
+            private final SchemePosition position;
             private final SchemeCoords coords;
 
-            Status(@NonNull TrainStatusMessage message, @NonNull SchemeCoords coords) {
-                this.lastMessage = message;
-                this.coords = coords;
+            Status(@NonNull TrainStatusMessage message, @NonNull SchemePosition position) {
+                this.speed = message.getSpeed();
+                this.timestampMillis = message.getCorrectedTimestampMillis();
+                this.markerTime = message.getSchemeMarkerTime();
+                this.position = position;
+                this.coords = position.getCoords();
             }
         }
 
         private final AtomicReference<Status> status;
 
         Train(@NonNull TrainStatusMessage message) {
-            this.status = new AtomicReference<>(new Status(message, schemeService.getStartPosition()));
+            this.status = new AtomicReference<>(new Status(message, schemeService.getStartLocation()));
         }
 
         public void updateStatus(@NonNull TrainStatusMessage message) {
@@ -50,36 +65,47 @@ public class TrainService {
             do {
                 oldStatus = this.status.get();
 
-                final TrainStatusMessage lastMessage = oldStatus.getLastMessage();
-                final double avgSpeed = (message.getSpeed() + lastMessage.getSpeed()) / 2.0;
-                final int distance = (int) (avgSpeed *
-                        (message.getCorrectedTimestampMillis() - lastMessage.getCorrectedTimestampMillis()) / 1000.0);
-
-                final SchemeCoords newCoords = null;
-                final SchemeCoords resultCoords;
-                if (newCoords != null) {
-                    if (message.getSchemeMarkerTime() == null
-                            || (lastMessage.getSchemeMarkerTime() != null
-                                && Utils.isAfterOrEquals(lastMessage.getSchemeMarkerTime(), message.getSchemeMarkerTime()))) {
-                        // no new marker reached
-                        resultCoords = newCoords;
-                    } else {
-                        // new marker reached
-                        final SchemeMarker marker = null;
-
-                        if (marker != null)
-                            resultCoords = marker.getCoords();
-                        else {
-                            log.warn("Can't find marker: coords={}", newCoords);
-                            resultCoords = newCoords;
-                        }
-                    }
-                } else {
-                    log.warn("Can't find new position: coords={}, distance={}", oldStatus.getCoords(), distance);
-                    resultCoords = oldStatus.getCoords();
+                // A status coming late would move the train back
+                if (message.getCorrectedTimestampMillis() < oldStatus.getTimestampMillis())
+                    return;
+
+                final double avgSpeed = (message.getSpeed() + oldStatus.getSpeed()) / 2.0;
+                final double distance = avgSpeed * (message.getCorrectedTimestampMillis() - oldStatus.getTimestampMillis()) / 1000.0;
+                final SchemeGraph graph = schemeService.getGraph();
+
+                SchemePosition position = oldStatus.getPosition();
+
+                // The scheme has been edited, the train is put on the new one where it was
+                if (position.getGraph() != graph) {
+                    final SchemePosition moved = graph.locate(position, position.getCoords(), markerDistance);
+
+                    if (moved == null)
+                        log.warn("Train is off the edited scheme, moved to the start: train={}, coords={}",
+                                message.getId(), position.getCoords());
+
+                    position = moved != null ? moved : graph.getStart();
+                }
+
+                position = graph.advance(position, distance);
+
+                if (message.getSchemeMarkerTime() != null
+                        && (oldStatus.getMarkerTime() == null
+                            || !Utils.isAfterOrEquals(oldStatus.getMarkerTime(), message.getSchemeMarkerTime()))) {
+                    // new marker reached
+                    final SchemeCoords coords = position.getCoords();
+                    final SchemeMarker marker = graph.findMarker(coords, markerDistance);
+
+                    final SchemePosition snapped = marker != null
+                            ? graph.locate(position, marker.getCoords(), markerDistance)
+                            : null;
+
+                    if (snapped != null)
+                        position = snapped;
+                    else
+                        log.warn("Can't find marker: train={}, coords={}", message.getId(), coords);
                 }
 
-                newStatus = new Status(message, resultCoords);
+                newStatus = new Status(message, position);
             } while (!this.status.compareAndSet(oldStatus, newStatus));
         }
     }
@@ -88,14 +114,19 @@ public class TrainService {
 
     private final SchemeService schemeService;
 
+    // How far from the reckoned position a passed marker is looked for
+    private final double markerDistance;
+
     private Disposable disposable;
 
     private final ConcurrentHashMap<String, Train> trainsById = new ConcurrentHashMap<>();
 
     @Autowired
-    public TrainService(MessagingService messagingService, SchemeService schemeService) {
+    public TrainService(MessagingService messagingService, SchemeService schemeService,
+                        @Value("${scheme.marker.max-distance:300}") double markerDistance) {
         this.messagingService = messagingService;
         this.schemeService = schemeService;
+        this.markerDistance = markerDistance;
     }
 
     @PostConstruct
@@ -103,26 +134,41 @@ public class TrainService {
         this.disposable = this.messagingService
                 .subscribeStatus(TrainStatusMessage.class)
                 .concatMap(msg -> {
-                    Train train = trainsById.get(msg.getId());
-
-                    if (train == null)
-                        train = trainsById.putIfAbsent(msg.getId(), new Train(msg));
-
-                    if (train != null) {
-                        train.updateStatus(msg);
-                        // log.info("Update train status: {} {}", msg.getId(), train.getStatus());
-                    }
+                    updateStatus(msg);
 
                     return Mono.empty();
                 })
                 .subscribe();
     }
 
+    // The first status of a train puts it on the start of the scheme, the next ones move it
+    void updateStatus(@NonNull TrainStatusMessage msg) {
+        Train train = trainsById.get(msg.getId());
+
+        if (train == null)
+            train = trainsById.putIfAbsent(msg.getId(), new Train(msg));
+
+        if (train != null) {
+            train.updateStatus(msg);
+            // log.info("Update train status: {} {}", msg.getId(), train.getStatus());
+        }
+    }
+
     @PreDestroy
     private void destroy() {
         this.disposable.dispose();
     }
 
+    @NonNull
+    public Mono<SchemeCoords> getCoords(@NonNull String id) {
+        final Train train = trainsById.get(id);
+
+        if (train == null)
+            return Mono.error(new NotFoundException("Train with id " + id + " not found"));
+
+        return Mono.just(train.getStatus().get().getCoords());
+    }
+
     @NonNull
     public Mono<Void> setSpeed(@NonNull String id, @NonNull double speed) {
         if (!trainsById.containsKey(id))
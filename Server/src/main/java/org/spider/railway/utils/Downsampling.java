@@ -0,0 +1,72 @@
+package org.spider.railway.utils;
+
+import reactor.util.annotation.NonNull;
+
+public class Downsampling {
+    // Largest-Triangle-Three-Buckets (Steinarsson, 2013). Keeps the first and the last point and from every bucket
+    // in between the point forming the largest triangle with the previous selected point and the next bucket average.
+    // Returns indexes of the selected points in ascending order.
+    @NonNull
+    public static int[] lttb(@NonNull long[] xs, @NonNull double[] ys, int size, int threshold) {
+        if (threshold >= size) {
+            final int[] result = new int[size];
+            for (int i = 0; i < size; i++)
+                result[i] = i;
+
+            return result;
+        }
+
+        if (threshold <= 0)
+            return new int[0];
+
+        if (threshold == 1)
+            return new int[] {size - 1};
+
+        if (threshold == 2)
+            return new int[] {0, size - 1};
+
+        final int[] result = new int[threshold];
+        final double bucketSize = (double) (size - 2) / (threshold - 2);
+
+        int selected = 0;
+        result[0] = 0;
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            final int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            final int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, size);
+
+            double avgX = 0.0, avgY = 0.0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += xs[i];
+                avgY += ys[i];
+            }
+            final int nextCount = Math.max(1, nextEnd - nextStart);
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            final int start = (int) Math.floor(bucket * bucketSize) + 1;
+            final int end = nextStart;
+
+            final double ax = xs[selected];
+            final double ay = ys[selected];
+
+            double maxArea = -1.0;
+            int maxIndex = start;
+            for (int i = start; i < end; i++) {
+                final double area = Math.abs((ax - avgX) * (ys[i] - ay) - (ax - xs[i]) * (avgY - ay));
+
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+
+            result[bucket + 1] = maxIndex;
+            selected = maxIndex;
+        }
+
+        result[threshold - 1] = size - 1;
+
+        return result;
+    }
+}
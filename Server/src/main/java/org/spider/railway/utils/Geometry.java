@@ -0,0 +1,85 @@
+package org.spider.railway.utils;
+
+import reactor.util.annotation.NonNull;
+
+// Double geometry of the layout. All track angles are whole degrees (15, 30, 180 ...), so headings are kept in
+// degrees and sin/cos come from a table with exact 0, 1/2 and 1 values instead of being computed.
+public class Geometry {
+    private static final double[] SIN = new double[360];
+
+    private static final double[] COS = new double[360];
+
+    private static final double ROUND_SCALE = 1e10;
+
+    static {
+        for (int degrees = 0; degrees <= 90; degrees++) {
+            final double sin = switch (degrees) {
+                case 0 -> 0.0;
+                case 30 -> 0.5;
+                case 90 -> 1.0;
+                default -> Math.sin(Math.toRadians(degrees));
+            };
+
+            // Mirrored from the first quadrant, so sin(a) == -sin(-a) and sin(a) == cos(90 - a) hold exactly
+            SIN[degrees] = sin;
+            SIN[180 - degrees] = sin;
+            SIN[(180 + degrees) % 360] = -sin;
+            SIN[(360 - degrees) % 360] = -sin;
+        }
+
+        // Both got -0.0 from the mirroring of 0
+        SIN[0] = 0.0;
+        SIN[180] = 0.0;
+
+        for (int degrees = 0; degrees < 360; degrees++)
+            COS[degrees] = SIN[(degrees + 90) % 360];
+    }
+
+    public static double sin(int degrees) {
+        return SIN[Math.floorMod(degrees, 360)];
+    }
+
+    public static double cos(int degrees) {
+        return COS[Math.floorMod(degrees, 360)];
+    }
+
+    public static double toRadians(int degrees) {
+        return degrees * Math.PI / 180;
+    }
+
+    // Keeps the sign like the BigDecimal layout did: (-360, 0) for negative angles and [0, 360) for the rest
+    public static int normalize(int degrees) {
+        return degrees < 0 ? -(-degrees % 360) : degrees % 360;
+    }
+
+    public static double round(double value) {
+        final double result = Math.round(value * ROUND_SCALE) / ROUND_SCALE;
+
+        return result == 0.0 ? 0.0 : result;
+    }
+
+    public static double distanceSquared(double x1, double y1, double x2, double y2) {
+        final double dx = x2 - x1;
+        final double dy = y2 - y1;
+
+        return dx * dx + dy * dy;
+    }
+
+    // Squared distance from p to the segment a-b
+    public static double distanceToSegmentSquared(double pX, double pY, double aX, double aY, double bX, double bY) {
+        final double abX = bX - aX;
+        final double abY = bY - aY;
+        final double lengthSquared = abX * abX + abY * abY;
+
+        if (lengthSquared == 0.0)
+            return distanceSquared(pX, pY, aX, aY);
+
+        final double t = Math.max(0.0, Math.min(1.0, ((pX - aX) * abX + (pY - aY) * abY) / lengthSquared));
+
+        return distanceSquared(pX, pY, aX + t * abX, aY + t * abY);
+    }
+
+    public static double distanceToSegment(@NonNull MathUtils.Point p, @NonNull MathUtils.Point a, @NonNull MathUtils.Point b) {
+        return Math.sqrt(distanceToSegmentSquared(p.x(), p.y(), a.x(), a.y(), b.x(), b.y()));
+    }
+}
@@ -0,0 +1,57 @@
+package org.spider.railway.utils;
+
+import reactor.util.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+// Static set of closed intervals answering "which intervals contain the point" without testing all of them:
+// intervals are sorted by start and every position keeps the max end of the prefix, so the scan stops as soon as
+// no earlier interval can reach the point.
+public class IntervalIndex<T> {
+    private final long[] starts;
+
+    private final long[] ends;
+
+    private final long[] maxEnds;
+
+    private final List<T> values;
+
+    public IntervalIndex(@NonNull List<T> values, @NonNull ToLongFunction<T> start, @NonNull ToLongFunction<T> end) {
+        final List<T> sorted = new ArrayList<>(values);
+        sorted.sort(Comparator.comparingLong(start));
+
+        this.values = sorted;
+        this.starts = new long[sorted.size()];
+        this.ends = new long[sorted.size()];
+        this.maxEnds = new long[sorted.size()];
+
+        long maxEnd = Long.MIN_VALUE;
+        for (int i = 0; i < sorted.size(); i++) {
+            starts[i] = start.applyAsLong(sorted.get(i));
+            ends[i] = end.applyAsLong(sorted.get(i));
+            maxEnd = Math.max(maxEnd, ends[i]);
+            maxEnds[i] = maxEnd;
+        }
+    }
+
+    public void forEachContaining(long point, @NonNull Consumer<T> consumer) {
+        // the last interval starting at or before the point
+        int low = 0, high = starts.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+
+            if (starts[mid] <= point)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        for (int i = low - 1; i >= 0 && maxEnds[i] >= point; i--)
+            if (ends[i] >= point)
+                consumer.accept(values.get(i));
+    }
+}
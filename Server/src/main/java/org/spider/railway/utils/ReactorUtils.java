@@ -1,9 +1,13 @@
 package org.spider.railway.utils;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.FluxSink;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.SignalType;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.annotation.NonNull;
@@ -90,4 +94,16 @@ public class ReactorUtils {
                     return Mono.empty();
                 }).subscribeOn(Schedulers.boundedElastic());
     }
+
+    // Time from subscription to termination, tagged with outcome=success|error|cancel
+    @NonNull
+    public static <T> Mono<T> timed(@NonNull Mono<T> mono, @NonNull MeterRegistry registry, @NonNull String name,
+                                    @NonNull String... tags) {
+        return Mono.defer(() -> {
+            final Timer.Sample sample = Timer.start(registry);
+
+            return mono.doFinally(signal -> sample.stop(registry.timer(name, Tags.of(tags).and("outcome",
+                    signal == SignalType.ON_COMPLETE ? "success" : signal == SignalType.ON_ERROR ? "error" : "cancel"))));
+        });
+    }
 }
@@ -0,0 +1,473 @@
+package org.spider.railway.utils;
+
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Static R-tree over track pieces (segments and circular arcs) answering nearest and radius queries with exact
+// distances. The tree is STR packed (sort by x into slices, each slice by y) and stored in flat arrays, the
+// children of a node and the shapes of a leaf are contiguous, so a query walks arrays instead of node objects.
+public class TrackIndex<T> {
+    public record Hit<T>(@NonNull T value, int shape, double distance) {
+    }
+
+    private static final int NODE_SIZE = 8;
+
+    // Values per shape in the geometry array
+    private static final int STRIDE = 8;
+
+    private static final byte SEGMENT = 0;
+
+    private static final byte ARC = 1;
+
+    private final Object[] values;
+
+    private final byte[] kinds;
+
+    // segment: ax, ay, bx, by; arc: cx, cy, radius, start direction x, y, end direction x, y, sign of the sweep
+    private final double[] geometry;
+
+    // minX, minY, maxX, maxY per node, the root is node 0
+    private final double[] bounds;
+
+    private final int[] firsts;
+
+    private final int[] counts;
+
+    // Nodes from this one on are leaves, their children are shapes
+    private final int firstLeaf;
+
+    private TrackIndex(@NonNull Builder<T> builder) {
+        final int size = builder.values.size();
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+
+        // Leaf level, the shapes are stored in the order of the leaves
+        List<Node> level = new ArrayList<>();
+        pack(order, 0, size, i -> builder.bounds[i * 4] + builder.bounds[i * 4 + 2],
+                i -> builder.bounds[i * 4 + 1] + builder.bounds[i * 4 + 3],
+                (from, to) -> {
+                    final Node node = new Node(from, to - from, null);
+                    for (int i = from; i < to; i++)
+                        node.add(builder.bounds, order[i] * 4);
+                    level.add(node);
+                });
+
+        this.values = new Object[size];
+        this.kinds = new byte[size];
+        this.geometry = new double[size * STRIDE];
+        for (int i = 0; i < size; i++) {
+            values[i] = builder.values.get(order[i]);
+            kinds[i] = builder.kinds.get(order[i]);
+            System.arraycopy(builder.geometry, order[i] * STRIDE, geometry, i * STRIDE, STRIDE);
+        }
+
+        List<Node> nodes = level;
+        while (nodes.size() > 1) {
+            final List<Node> children = nodes;
+            final Node[] sorted = children.toArray(new Node[0]);
+            final List<Node> parents = new ArrayList<>();
+
+            pack(sorted, 0, sorted.length, n -> n.minX + n.maxX, n -> n.minY + n.maxY, (from, to) -> {
+                final Node node = new Node(0, to - from, Arrays.copyOfRange(sorted, from, to));
+                for (Node child : node.children)
+                    node.add(child);
+                parents.add(node);
+            });
+
+            nodes = parents;
+        }
+
+        // Breadth first, so the children of every node end up next to each other and the leaves at the end
+        final List<Node> flat = new ArrayList<>();
+        if (!nodes.isEmpty())
+            flat.add(nodes.get(0));
+
+        for (int i = 0; i < flat.size(); i++) {
+            final Node node = flat.get(i);
+
+            if (node.children != null) {
+                node.first = flat.size();
+                flat.addAll(Arrays.asList(node.children));
+            }
+        }
+
+        this.bounds = new double[flat.size() * 4];
+        this.firsts = new int[flat.size()];
+        this.counts = new int[flat.size()];
+        this.firstLeaf = flat.size() - level.size();
+
+        for (int i = 0; i < flat.size(); i++) {
+            final Node node = flat.get(i);
+            bounds[i * 4] = node.minX;
+            bounds[i * 4 + 1] = node.minY;
+            bounds[i * 4 + 2] = node.maxX;
+            bounds[i * 4 + 3] = node.maxY;
+            firsts[i] = node.first;
+            counts[i] = node.count;
+        }
+    }
+
+    @NonNull
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    @NonNull
+    public T getValue(int shape) {
+        return (T) values[shape];
+    }
+
+    public double getDistance(int shape, double x, double y) {
+        return Math.sqrt(distanceSquared(shape, x, y));
+    }
+
+    @Nullable
+    public Hit<T> nearest(double x, double y) {
+        final int shape = nearestShape(x, y, Double.POSITIVE_INFINITY);
+
+        return shape < 0 ? null : new Hit<>(getValue(shape), shape, getDistance(shape, x, y));
+    }
+
+    // The nearest shape not farther than maxDistance or -1, for the hot path which does not need a Hit
+    public int nearestShape(double x, double y, double maxDistance) {
+        if (bounds.length == 0)
+            return -1;
+
+        final Candidates candidates = new Candidates(1, maxDistance);
+        nearest(0, x, y, candidates);
+
+        return candidates.size == 0 ? -1 : candidates.shapes[0];
+    }
+
+    // The k nearest shapes, the nearest first
+    @NonNull
+    public List<Hit<T>> nearest(double x, double y, int k) {
+        if (k <= 0 || bounds.length == 0)
+            return List.of();
+
+        final Candidates candidates = new Candidates(Math.min(k, values.length), Double.POSITIVE_INFINITY);
+        nearest(0, x, y, candidates);
+
+        return candidates.toHits(this);
+    }
+
+    // All shapes not farther than radius, the nearest first
+    @NonNull
+    public List<Hit<T>> within(double x, double y, double radius) {
+        if (bounds.length == 0)
+            return List.of();
+
+        final List<Hit<T>> result = new ArrayList<>();
+        within(0, x, y, radius * radius, result);
+        result.sort(Comparator.comparingDouble(Hit::distance));
+
+        return result;
+    }
+
+    private void nearest(int node, double x, double y, @NonNull Candidates candidates) {
+        final int first = firsts[node], end = first + counts[node];
+
+        if (node >= firstLeaf) {
+            for (int shape = first; shape < end; shape++)
+                candidates.offer(shape, distanceSquared(shape, x, y));
+        } else {
+            // Nearest box first, the rest is cut off as soon as a box is farther than the k-th shape so far
+            final double[] distances = new double[end - first];
+            for (int child = first; child < end; child++)
+                distances[child - first] = boxDistanceSquared(child, x, y);
+
+            while (true) {
+                int next = -1;
+                double min = candidates.bound();
+
+                for (int i = 0; i < distances.length; i++) {
+                    if (distances[i] < min) {
+                        min = distances[i];
+                        next = i;
+                    }
+                }
+
+                if (next < 0)
+                    break;
+
+                distances[next] = Double.POSITIVE_INFINITY;
+                nearest(first + next, x, y, candidates);
+            }
+        }
+    }
+
+    private void within(int node, double x, double y, double radiusSquared, @NonNull List<Hit<T>> result) {
+        final int first = firsts[node], end = first + counts[node];
+
+        if (node >= firstLeaf) {
+            for (int shape = first; shape < end; shape++) {
+                final double distance = distanceSquared(shape, x, y);
+
+                if (distance <= radiusSquared)
+                    result.add(new Hit<>(getValue(shape), shape, Math.sqrt(distance)));
+            }
+        } else {
+            for (int child = first; child < end; child++)
+                if (boxDistanceSquared(child, x, y) <= radiusSquared)
+                    within(child, x, y, radiusSquared, result);
+        }
+    }
+
+    private double boxDistanceSquared(int node, double x, double y) {
+        final int i = node * 4;
+        final double dx = Math.max(0.0, Math.max(bounds[i] - x, x - bounds[i + 2]));
+        final double dy = Math.max(0.0, Math.max(bounds[i + 1] - y, y - bounds[i + 3]));
+
+        return dx * dx + dy * dy;
+    }
+
+    private double distanceSquared(int shape, double x, double y) {
+        final int i = shape * STRIDE;
+        final double[] g = geometry;
+
+        if (kinds[shape] == SEGMENT)
+            return Geometry.distanceToSegmentSquared(x, y, g[i], g[i + 1], g[i + 2], g[i + 3]);
+
+        final double dx = x - g[i], dy = y - g[i + 1];
+        final double radius = g[i + 2], sign = g[i + 7];
+
+        // Inside the sector between the start and end directions, arcs are at most half a turn
+        if (sign * (g[i + 3] * dy - g[i + 4] * dx) >= 0.0 && sign * (dx * g[i + 6] - dy * g[i + 5]) >= 0.0) {
+            final double distance = Math.sqrt(dx * dx + dy * dy) - radius;
+
+            return distance * distance;
+        }
+
+        return Math.min(Geometry.distanceSquared(dx, dy, radius * g[i + 3], radius * g[i + 4]),
+                Geometry.distanceSquared(dx, dy, radius * g[i + 5], radius * g[i + 6]));
+    }
+
+    public static class Builder<T> {
+        private final List<T> values = new ArrayList<>();
+
+        private final List<Byte> kinds = new ArrayList<>();
+
+        private double[] geometry = new double[64 * STRIDE];
+
+        private double[] bounds = new double[64 * 4];
+
+        @NonNull
+        public Builder<T> segment(@NonNull T value, double ax, double ay, double bx, double by) {
+            final int i = add(value, SEGMENT);
+
+            geometry[i * STRIDE] = ax;
+            geometry[i * STRIDE + 1] = ay;
+            geometry[i * STRIDE + 2] = bx;
+            geometry[i * STRIDE + 3] = by;
+
+            bounds[i * 4] = Math.min(ax, bx);
+            bounds[i * 4 + 1] = Math.min(ay, by);
+            bounds[i * 4 + 2] = Math.max(ax, bx);
+            bounds[i * 4 + 3] = Math.max(ay, by);
+
+            return this;
+        }
+
+        // Arc around the center from the start angle by the sweep (radians, positive counterclockwise). Arcs over
+        // half a turn are split, every part is a shape with the same value.
+        @NonNull
+        public Builder<T> arc(@NonNull T value, double centerX, double centerY, double radius, double startAngle, double sweep) {
+            if (Math.abs(sweep) > Math.PI) {
+                arc(value, centerX, centerY, radius, startAngle, sweep / 2);
+                return arc(value, centerX, centerY, radius, startAngle + sweep / 2, sweep / 2);
+            }
+
+            final int i = add(value, ARC);
+            final double endAngle = startAngle + sweep;
+            final double[] g = geometry;
+            final int j = i * STRIDE;
+
+            g[j] = centerX;
+            g[j + 1] = centerY;
+            g[j + 2] = radius;
+            g[j + 3] = Math.cos(startAngle);
+            g[j + 4] = Math.sin(startAngle);
+            g[j + 5] = Math.cos(endAngle);
+            g[j + 6] = Math.sin(endAngle);
+            g[j + 7] = sweep < 0 ? -1.0 : 1.0;
+
+            // The end points and every axis direction the arc passes
+            double minX = Math.min(g[j + 3], g[j + 5]), maxX = Math.max(g[j + 3], g[j + 5]);
+            double minY = Math.min(g[j + 4], g[j + 6]), maxY = Math.max(g[j + 4], g[j + 6]);
+            final double from = Math.min(startAngle, endAngle), to = Math.max(startAngle, endAngle);
+
+            for (double axis = Math.ceil(from / (Math.PI / 2)) * (Math.PI / 2); axis <= to; axis += Math.PI / 2) {
+                final long quadrant = Math.floorMod(Math.round(axis / (Math.PI / 2)), 4);
+
+                if (quadrant == 0)
+                    maxX = 1.0;
+                else if (quadrant == 1)
+                    maxY = 1.0;
+                else if (quadrant == 2)
+                    minX = -1.0;
+                else
+                    minY = -1.0;
+            }
+
+            bounds[i * 4] = centerX + radius * minX;
+            bounds[i * 4 + 1] = centerY + radius * minY;
+            bounds[i * 4 + 2] = centerX + radius * maxX;
+            bounds[i * 4 + 3] = centerY + radius * maxY;
+
+            return this;
+        }
+
+        @NonNull
+        public TrackIndex<T> build() {
+            return new TrackIndex<>(this);
+        }
+
+        private int add(@NonNull T value, byte kind) {
+            final int i = values.size();
+
+            if ((i + 1) * STRIDE > geometry.length) {
+                geometry = Arrays.copyOf(geometry, geometry.length * 2);
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+
+            values.add(value);
+            kinds.add(kind);
+
+            return i;
+        }
+    }
+
+    private static final class Node {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        int first;
+        final int count;
+        final Node[] children;
+
+        Node(int first, int count, @Nullable Node[] children) {
+            this.first = first;
+            this.count = count;
+            this.children = children;
+        }
+
+        void add(@NonNull double[] bounds, int i) {
+            minX = Math.min(minX, bounds[i]);
+            minY = Math.min(minY, bounds[i + 1]);
+            maxX = Math.max(maxX, bounds[i + 2]);
+            maxY = Math.max(maxY, bounds[i + 3]);
+        }
+
+        void add(@NonNull Node node) {
+            minX = Math.min(minX, node.minX);
+            minY = Math.min(minY, node.minY);
+            maxX = Math.max(maxX, node.maxX);
+            maxY = Math.max(maxY, node.maxY);
+        }
+    }
+
+    private interface Coordinate<E> {
+        double get(E entry);
+    }
+
+    private interface Group {
+        void add(int from, int to);
+    }
+
+    // Sort-Tile-Recursive: sqrt(n / NODE_SIZE) vertical slices by x, each sorted by y and cut into nodes
+    private static <E> void pack(@NonNull E[] entries, int from, int to, @NonNull Coordinate<E> x,
+                                 @NonNull Coordinate<E> y, @NonNull Group group) {
+        final int count = to - from;
+        final int nodes = (count + NODE_SIZE - 1) / NODE_SIZE;
+        final int sliceSize = (int) Math.ceil((double) count / Math.ceil(Math.sqrt(nodes)));
+        final int slice = (sliceSize + NODE_SIZE - 1) / NODE_SIZE * NODE_SIZE;
+
+        Arrays.sort(entries, from, to, Comparator.comparingDouble(x::get));
+
+        for (int start = from; start < to; start += slice) {
+            final int end = Math.min(start + slice, to);
+            Arrays.sort(entries, start, end, Comparator.comparingDouble(y::get));
+
+            for (int i = start; i < end; i += NODE_SIZE)
+                group.add(i, Math.min(i + NODE_SIZE, end));
+        }
+    }
+
+    // Max heap of the k best squared distances not over the limit
+    private static final class Candidates {
+        final int[] shapes;
+        final double[] distances;
+        final double limit;
+        int size;
+
+        Candidates(int k, double maxDistance) {
+            this.shapes = new int[k];
+            this.distances = new double[k];
+            this.limit = maxDistance * maxDistance;
+        }
+
+        double bound() {
+            return size < shapes.length ? limit : distances[0];
+        }
+
+        void offer(int shape, double distance) {
+            if (distance > limit)
+                return;
+
+            if (size < shapes.length) {
+                int i = size++;
+
+                while (i > 0 && distances[(i - 1) / 2] < distance) {
+                    shapes[i] = shapes[(i - 1) / 2];
+                    distances[i] = distances[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+
+                shapes[i] = shape;
+                distances[i] = distance;
+            } else if (distance < distances[0]) {
+                int i = 0;
+
+                while (true) {
+                    int child = i * 2 + 1;
+                    if (child >= size)
+                        break;
+
+                    if (child + 1 < size && distances[child + 1] > distances[child])
+                        child++;
+
+                    if (distances[child] <= distance)
+                        break;
+
+                    shapes[i] = shapes[child];
+                    distances[i] = distances[child];
+                    i = child;
+                }
+
+                shapes[i] = shape;
+                distances[i] = distance;
+            }
+        }
+
+        @NonNull
+        <T> List<Hit<T>> toHits(@NonNull TrackIndex<T> index) {
+            final List<Hit<T>> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                result.add(new Hit<>(index.getValue(shapes[i]), shapes[i], Math.sqrt(distances[i])));
+
+            result.sort(Comparator.comparingDouble(Hit::distance));
+
+            return result;
+        }
+    }
+}
@@ -91,6 +91,16 @@ public class Utils {
         return ofMillis(millis, zoneId);
     }
 
+    public static long toMicros(@NonNull OffsetDateTime time) {
+        return time.toEpochSecond() * 1_000_000L + time.getNano() / 1_000;
+    }
+
+    @NonNull
+    public static OffsetDateTime ofMicros(long micros) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                Math.floorMod(micros, 1_000_000L) * 1_000L), zoneId);
+    }
+
     public static double square(double value) {
         return value * value;
     }
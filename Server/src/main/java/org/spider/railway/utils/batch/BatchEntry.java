@@ -3,6 +3,8 @@ package org.spider.railway.utils.batch;
 public class BatchEntry {
     volatile BatchEntry next;
 
+    long enqueueNanos;
+
     @SuppressWarnings("unchecked")
     public <E extends BatchEntry> E getNext() {
         return (E)next;
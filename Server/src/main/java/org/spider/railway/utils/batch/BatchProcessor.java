@@ -1,9 +1,24 @@
 package org.spider.railway.utils.batch;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.scheduler.Schedulers;
 import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -11,12 +26,104 @@ public abstract class BatchProcessor<T extends BatchEntry> {
     private static final int INITIAL_ARRAY_SIZE = 128;
     private static final int MAX_DEPTH = 10_000;
 
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    // capacity <= 0 means unbounded, the policy is applied when the queue holds capacity entries.
+    // maxBatchSize <= 0 means unlimited batches, a longer chain is processed as several batches in order.
+    // A chain shorter than maxBatchSize waits up to linger to collect more entries.
+    public record Options(int capacity, @NonNull OverflowPolicy policy, int maxBatchSize, @NonNull Duration linger) {
+        public static final Options UNBOUNDED = new Options(0, OverflowPolicy.BLOCK);
+
+        public Options(int capacity, @NonNull OverflowPolicy policy) {
+            this(capacity, policy, 0, Duration.ZERO);
+        }
+
+        public boolean isBounded() {
+            return capacity > 0;
+        }
+
+        public boolean isLingering() {
+            return !linger.isZero() && !linger.isNegative();
+        }
+    }
+
+    public record Statistics(long depth, long processed, long batches, long dropped, long coalesced,
+                             int lastBatchSize, int maxBatchSize, long lastWaitMicros, long maxWaitMicros) {
+    }
+
     private static final AtomicReferenceFieldUpdater<BatchProcessor, BatchEntry> firstEntryUpdater =
             AtomicReferenceFieldUpdater.newUpdater(BatchProcessor.class, BatchEntry.class, "firstEntry");
 
     private volatile BatchEntry firstEntry;
 
+    protected final Options options;
+
+    // Entries put but not taken into a batch yet
+    private final AtomicLong depth = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    protected final AtomicLong coalesced = new AtomicLong();
+
+    // The first entry of the batch being processed, entries below it are not in the queue anymore.
+    // Guarded by this, as well as taking a batch and trimming the queue.
+    private BatchEntry inFlight;
+
+    // Set while a chain waits for the linger time, the one who clears it takes the chain
+    private final AtomicBoolean lingering = new AtomicBoolean();
+
+    private volatile T lingerLast;
+
+    private volatile long processed;
+
+    private volatile long batches;
+
+    private volatile int lastBatchSize;
+
+    private volatile int maxBatchSize;
+
+    private volatile long lastWaitNanos;
+
+    private volatile long maxWaitNanos;
+
+    @Nullable
+    private volatile DistributionSummary batchSizes;
+
+    @Nullable
+    private volatile Timer waits;
+
+    protected BatchProcessor() {
+        this(Options.UNBOUNDED);
+    }
+
+    protected BatchProcessor(@NonNull Options options) {
+        this.options = options;
+    }
+
     protected final T put(T entry) {
+        if (options.isBounded()) {
+            switch (options.policy()) {
+                // Parks the caller, never use it on a thread which must not block
+                case BLOCK -> {
+                    while (depth.get() >= options.capacity())
+                        LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                }
+                case DROP_NEWEST, COALESCE -> {
+                    if (depth.get() >= options.capacity()) {
+                        dropped.incrementAndGet();
+                        dropped(entry);
+
+                        return entry;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        entry.enqueueNanos = System.nanoTime();
+        depth.incrementAndGet();
+
         BatchEntry first;
 
         //noinspection StatementWithEmptyBody
@@ -24,25 +131,148 @@ public abstract class BatchProcessor<T extends BatchEntry> {
             ;
 
         if (first == null)
-            processChain(null);
+            startChain(null);
+        // A full batch doesn't wait for the rest of the linger time
+        else if (lingering.get() && options.maxBatchSize() > 0 && depth.get() >= options.maxBatchSize()
+                && lingering.compareAndSet(true, false))
+            processChain(lingerLast);
+        // A quarter of slack makes trimming walk amortized O(1) per entry
+        else if (options.isBounded() && options.policy() == OverflowPolicy.DROP_OLDEST
+                && depth.get() > options.capacity() + (options.capacity() >> 2))
+            trim();
 
         return entry;
     }
 
+    private void startChain(T last) {
+        if (!options.isLingering() || (options.maxBatchSize() > 0 && depth.get() >= options.maxBatchSize())) {
+            processChain(last);
+            return;
+        }
+
+        lingerLast = last;
+        lingering.set(true);
+
+        Schedulers.parallel().schedule(() -> {
+            if (lingering.compareAndSet(true, false))
+                processChain(last);
+        }, options.linger().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
     @SuppressWarnings("unchecked")
     private void processChain(T last) {
-        process((T)firstEntry, last);
+        final T first;
+        int size = 0;
+        long oldestNanos = Long.MAX_VALUE;
+
+        synchronized (this) {
+            first = (T) firstEntry;
+            inFlight = first;
+
+            for (BatchEntry entry = first; entry != last; entry = entry.next) {
+                size++;
+                oldestNanos = Math.min(oldestNanos, entry.enqueueNanos);
+                taken((T) entry);
+            }
+        }
+
+        depth.addAndGet(-size);
+
+        final long waitNanos = System.nanoTime() - oldestNanos;
+        processed += size;
+        batches++;
+        lastBatchSize = size;
+        maxBatchSize = Math.max(maxBatchSize, size);
+        lastWaitNanos = waitNanos;
+        maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+
+        final DistributionSummary batchSizes = this.batchSizes;
+        final Timer waits = this.waits;
+        if (batchSizes != null && waits != null) {
+            batchSizes.record(size);
+            waits.record(waitNanos, TimeUnit.NANOSECONDS);
+        }
+
+        process(first, last, size);
+    }
+
+    // Drops the oldest waiting entries leaving the capacity newest ones. The batch being processed is not touched:
+    // the walk stops at its first entry, or at the end when the chain was not taken yet.
+    @SuppressWarnings("unchecked")
+    private synchronized void trim() {
+        BatchEntry keep = firstEntry;
+        for (int i = 1; keep != null && keep != inFlight && i < options.capacity(); i++)
+            keep = keep.next;
+
+        if (keep == null || keep == inFlight)
+            return;
+
+        BatchEntry entry = keep.next;
+        int count = 0;
+        while (entry != null && entry != inFlight) {
+            final BatchEntry next = entry.next;
+            dropped((T) entry);
+            count++;
+            entry = next;
+        }
+
+        keep.next = entry;
+        depth.addAndGet(-count);
+        dropped.addAndGet(count);
+    }
+
+    // Called under the lock for every entry taken into a batch
+    protected void taken(T entry) {
+    }
+
+    // Called for every entry which is not going to be processed
+    protected void dropped(T entry) {
+    }
+
+    @NonNull
+    public Statistics getStatistics() {
+        return new Statistics(depth.get(), processed, batches, dropped.get(), coalesced.get(),
+                lastBatchSize, maxBatchSize,
+                TimeUnit.NANOSECONDS.toMicros(lastWaitNanos), TimeUnit.NANOSECONDS.toMicros(maxWaitNanos));
+    }
+
+    // The same numbers as getStatistics(), plus the distributions of batch sizes and of the wait of the oldest entry
+    public void bindTo(@NonNull MeterRegistry registry, @NonNull String name) {
+        Gauge.builder("railway.batch.depth", depth, AtomicLong::get)
+                .tag("processor", name)
+                .description("Entries waiting for a batch")
+                .register(registry);
+        FunctionCounter.builder("railway.batch.processed", this, processor -> processor.processed)
+                .tag("processor", name)
+                .register(registry);
+        FunctionCounter.builder("railway.batch.batches", this, processor -> processor.batches)
+                .tag("processor", name)
+                .register(registry);
+        FunctionCounter.builder("railway.batch.dropped", dropped, AtomicLong::get)
+                .tag("processor", name)
+                .register(registry);
+        FunctionCounter.builder("railway.batch.coalesced", coalesced, AtomicLong::get)
+                .tag("processor", name)
+                .register(registry);
+
+        this.batchSizes = DistributionSummary.builder("railway.batch.size")
+                .tag("processor", name)
+                .register(registry);
+        this.waits = Timer.builder("railway.batch.wait")
+                .tag("processor", name)
+                .description("Time the oldest entry of a batch waited in the queue")
+                .register(registry);
     }
 
     protected final void doFinal(T first) {
         if (!firstEntryUpdater.compareAndSet(this, first, null)) {
             first.next = null;
 
-            processChain(first);
+            startChain(first);
         }
     }
 
-    protected void process(T first, T last) {
+    protected void process(T first, T last, int size) {
         doFinal(first);
     }
 
@@ -190,6 +420,30 @@ public abstract class BatchProcessor<T extends BatchEntry> {
         return new CollectionImpl<>(array, offset);
     }
 
+    // The chain size is known, so the array is allocated once
+    protected static <T extends BatchEntry, R> List<R> asList(T first, T last, int size, Function<T, R> mapper) {
+        final Object[] array = new Object[size];
+
+        int offset = size;
+        for (T i = first; i != last && offset > 0; i = i.getNext())
+            array[--offset] = mapper.apply(i);
+
+        @SuppressWarnings("unchecked")
+        final List<R> list = (List<R>) Arrays.asList(array);
+
+        return offset == 0 ? list : list.subList(offset, size);
+    }
+
+    // Consecutive batches of at most maxBatchSize elements, oldest first
+    protected static <R> List<List<R>> split(List<R> list, int maxBatchSize) {
+        final List<List<R>> batches = new ArrayList<>((list.size() + maxBatchSize - 1) / maxBatchSize);
+
+        for (int from = 0; from < list.size(); from += maxBatchSize)
+            batches.add(list.subList(from, Math.min(list.size(), from + maxBatchSize)));
+
+        return batches;
+    }
+
     protected static <T extends BatchEntry> Iterator<T> asIterator(T first, T last) {
         return asIterator(first, last, INITIAL_ARRAY_SIZE);
     }
@@ -1,19 +1,30 @@
 package org.spider.railway.utils.batch;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
 import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 
 public class OrderedProcessor<T, R> extends BatchProcessor<OrderedProcessor.Entry<T, R>> {
     private static final Object NULL_OBJECT = new Object();
 
     protected static class Entry<T, R> extends BatchEntry {
-        final Tuple2<T, R> data;
+        volatile Tuple2<T, R> data;
 
-        Entry(T input, R output) {
+        @Nullable
+        final Object key;
+
+        Entry(T input, R output, @Nullable Object key) {
             this.data = Tuples.of(input, output);
+            this.key = key;
         }
     }
 
@@ -21,19 +32,76 @@ public class OrderedProcessor<T, R> extends BatchProcessor<OrderedProcessor.Entr
 
     private final Function<Entry<T, R>, Tuple2<T, R>> mapper = en -> en.data;
 
+    @Nullable
+    private final Function<T, ?> keyExtractor;
+
+    @Nullable
+    private final BiConsumer<T, R> dropHandler;
+
+    // Waiting entries by key, COALESCE policy only
+    private final Map<Object, Entry<T, R>> waiting = new ConcurrentHashMap<>();
+
     public OrderedProcessor(Function<Iterable<Tuple2<T, R>>, Mono<Void>> processor) {
+        this(processor, Options.UNBOUNDED, null, null);
+    }
+
+    public OrderedProcessor(@NonNull Function<Iterable<Tuple2<T, R>>, Mono<Void>> processor, @NonNull Options options,
+                            @Nullable Function<T, ?> keyExtractor, @Nullable BiConsumer<T, R> dropHandler) {
+        super(options);
         this.processor = processor;
+        this.keyExtractor = options.policy() == OverflowPolicy.COALESCE ? keyExtractor : null;
+        this.dropHandler = dropHandler;
     }
 
     @Override
-    protected void process(Entry<T, R> first, Entry<T, R> last) {
-        processor.apply(asIterable(first, last, mapper))
+    protected void process(Entry<T, R> first, Entry<T, R> last, int size) {
+        final List<Tuple2<T, R>> batch = asList(first, last, size, mapper);
+
+        (options.maxBatchSize() <= 0 || size <= options.maxBatchSize()
+                    ? processor.apply(batch)
+                    : Flux.fromIterable(split(batch, options.maxBatchSize())).concatMapDelayError(processor, 1).then())
                 .doFinally(__ -> doFinal(first))
                 .subscribe();
     }
 
+    @Override
+    protected void taken(Entry<T, R> entry) {
+        if (entry.key != null)
+            waiting.remove(entry.key, entry);
+    }
+
+    @Override
+    protected void dropped(Entry<T, R> entry) {
+        if (entry.key != null)
+            waiting.remove(entry.key, entry);
+
+        drop(entry.data);
+    }
+
     public R process(T value, R result) {
-        put(new Entry<>(value, result));
+        final Object key = keyExtractor == null || value == NULL_OBJECT ? null : keyExtractor.apply(value);
+
+        if (key != null) {
+            // The waiting entry keeps its place in the queue and gets the newest value
+            synchronized (this) {
+                final Entry<T, R> entry = waiting.get(key);
+
+                if (entry != null) {
+                    final Tuple2<T, R> replaced = entry.data;
+                    entry.data = Tuples.of(value, result);
+                    coalesced.incrementAndGet();
+                    drop(replaced);
+
+                    return result;
+                }
+            }
+        }
+
+        final Entry<T, R> entry = new Entry<>(value, result, key);
+        if (key != null)
+            waiting.put(key, entry);
+
+        put(entry);
 
         return result;
     }
@@ -47,4 +115,9 @@ public class OrderedProcessor<T, R> extends BatchProcessor<OrderedProcessor.Entr
     public void process() {
         process((T) NULL_OBJECT, (R) NULL_OBJECT);
     }
+
+    private void drop(@NonNull Tuple2<T, R> data) {
+        if (dropHandler != null && data.getT2() != NULL_OBJECT)
+            dropHandler.accept(data.getT1(), data.getT2());
+    }
 }
@@ -0,0 +1,13 @@
+package org.spider.railway.utils.batch;
+
+// What BatchProcessor does with a new entry when its queue is full
+public enum OverflowPolicy {
+    // The caller waits until a batch is taken from the queue
+    BLOCK,
+    // The new entry is accepted, the oldest waiting ones are dropped
+    DROP_OLDEST,
+    // The new entry is dropped
+    DROP_NEWEST,
+    // A waiting entry with the same key gets the new value (see OrderedProcessor), otherwise as DROP_NEWEST
+    COALESCE
+}
@@ -0,0 +1,349 @@
+package org.spider.railway.utils.spool;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
+import lombok.extern.slf4j.Slf4j;
+import org.spider.railway.messaging.parsers.BinarySerializer;
+import reactor.util.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Append-only queue of records in memory-mapped segment files of the fixed size. A record is [int LE length][payload]
+// written by BinarySerializer, the zero length marks the end of the written part of a segment (new files are zero
+// filled). The read position is stored in the checkpoint file by commit() only, so records which were read but not
+// committed are read again after rewind() or a restart: delivery is at-least-once.
+// Mapped pages survive a crash of the process, they are flushed to the disk by the OS.
+@Slf4j
+public class Spool<T> implements Closeable {
+    public record Statistics(long segments, long pendingBytes, long appended, long committed, long dropped,
+                             int failures, long skipped) {
+    }
+
+    private static final int HEADER_SIZE = Integer.BYTES;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    private static final class Segment {
+        final long sequence;
+
+        final MappedByteBuffer mapped;
+
+        final ByteBuf buf;
+
+        Segment(long sequence, @NonNull MappedByteBuffer mapped) {
+            this.sequence = sequence;
+            this.mapped = mapped;
+            this.buf = Unpooled.wrappedBuffer(mapped);
+        }
+    }
+
+    private final Path directory;
+
+    private final String name;
+
+    private final BinarySerializer<T> serializer;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    // Sequences of the segment files on the disk
+    private final TreeSet<Long> sequences = new TreeSet<>();
+
+    private final Map<Long, Segment> mapped = new HashMap<>();
+
+    private final ByteBuf scratch = Unpooled.buffer(1024);
+
+    private Segment writeSegment;
+
+    private int writePosition;
+
+    private Segment readSegment;
+
+    private int readPosition;
+
+    private long committedSequence;
+
+    private int committedPosition;
+
+    // Items read after the last commit
+    private int uncommitted;
+
+    private long appended;
+
+    private long committed;
+
+    private long dropped;
+
+    // Consecutive failures to store the items from the committed position
+    private int failures;
+
+    // Items committed without being stored
+    private long skipped;
+
+    public Spool(@NonNull Path directory, @NonNull String name, @NonNull BinarySerializer<T> serializer,
+                 int segmentSize, int maxSegments) {
+        this.directory = directory;
+        this.name = name;
+        this.serializer = serializer;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't open spool " + name + " in " + directory, e);
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(file -> file.startsWith(name + "-") && file.endsWith(SEGMENT_SUFFIX))
+                    .forEach(file -> sequences.add(Long.parseLong(
+                            file.substring(name.length() + 1, file.length() - SEGMENT_SUFFIX.length()))));
+        }
+
+        final Path checkpoint = checkpointPath();
+        if (Files.exists(checkpoint)) {
+            final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            committedSequence = data.getLong();
+            committedPosition = data.getInt();
+        } else {
+            committedSequence = sequences.isEmpty() ? 0L : sequences.first();
+            committedPosition = 0;
+        }
+
+        // Segments before the checkpoint were consumed but not deleted yet
+        for (Long sequence : new ArrayList<>(sequences.headSet(committedSequence)))
+            delete(sequence);
+
+        if (!sequences.contains(committedSequence)) {
+            committedSequence = sequences.isEmpty() ? committedSequence : sequences.first();
+            committedPosition = 0;
+        }
+
+        if (sequences.isEmpty())
+            sequences.add(committedSequence);
+
+        writeSegment = segment(sequences.last());
+        writePosition = 0;
+        while (writePosition + HEADER_SIZE <= segmentSize) {
+            final int length = writeSegment.buf.getIntLE(writePosition);
+
+            if (length <= 0 || writePosition + HEADER_SIZE + length > segmentSize)
+                break;
+
+            writePosition += HEADER_SIZE + length;
+        }
+
+        readSegment = segment(committedSequence);
+        readPosition = committedPosition;
+
+        log.info("Spool {} opened: {} segments, read {}:{}, write {}:{}", name, sequences.size(),
+                committedSequence, committedPosition, writeSegment.sequence, writePosition);
+    }
+
+    // Returns the number of stored items, the rest is dropped when the spool is full
+    public synchronized int append(@NonNull Collection<? extends T> items) {
+        int stored = 0;
+
+        for (T item : items) {
+            scratch.clear();
+            serializer.serialize(scratch, item);
+
+            final int length = scratch.readableBytes();
+            if (HEADER_SIZE + length > segmentSize) {
+                log.warn("Spool {}: record of {} bytes doesn't fit a segment", name, length);
+                dropped++;
+                continue;
+            }
+
+            if (writePosition + HEADER_SIZE + length > segmentSize && !roll()) {
+                dropped++;
+                continue;
+            }
+
+            // The length goes last, a reader never sees a partially written record
+            writeSegment.buf.setBytes(writePosition + HEADER_SIZE, scratch, scratch.readerIndex(), length);
+            writeSegment.buf.setIntLE(writePosition, length);
+            writePosition += HEADER_SIZE + length;
+            stored++;
+        }
+
+        appended += stored;
+
+        return stored;
+    }
+
+    @NonNull
+    public synchronized List<T> read(int maxItems) {
+        final List<T> result = new ArrayList<>(Math.min(maxItems, 1024));
+
+        while (result.size() < maxItems) {
+            if (readPosition + HEADER_SIZE <= segmentSize) {
+                final int length = readSegment.buf.getIntLE(readPosition);
+
+                if (length > 0) {
+                    result.add(serializer.deserialize(readSegment.buf.slice(readPosition + HEADER_SIZE, length)));
+                    readPosition += HEADER_SIZE + length;
+                    uncommitted++;
+                    continue;
+                }
+            }
+
+            // Caught up with the writer
+            if (readSegment.sequence >= writeSegment.sequence)
+                break;
+
+            final Long next = sequences.higher(readSegment.sequence);
+            if (next == null)
+                break;
+
+            readSegment = segment(next);
+            readPosition = 0;
+        }
+
+        return result;
+    }
+
+    // Everything read so far is stored, consumed segments are deleted
+    public synchronized void commit() {
+        final long sequence = readSegment.sequence;
+        final int position = readPosition;
+
+        try {
+            final Path temp = directory.resolve(name + CHECKPOINT_SUFFIX + ".tmp");
+            Files.write(temp, ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(sequence).putInt(position).array());
+            Files.move(temp, checkpointPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write checkpoint of spool " + name, e);
+        }
+
+        for (Long consumed : new ArrayList<>(sequences.headSet(sequence)))
+            delete(consumed);
+
+        committed += uncommitted;
+        uncommitted = 0;
+        committedSequence = sequence;
+        committedPosition = position;
+        failures = 0;
+    }
+
+    // Gives up the items read after the last commit: they are committed as skipped
+    public synchronized void skip() {
+        skipped += uncommitted;
+        commit();
+    }
+
+    // Everything read after the last commit will be read again
+    public synchronized void rewind() {
+        readSegment = segment(committedSequence);
+        readPosition = committedPosition;
+        uncommitted = 0;
+    }
+
+    // Rewinds after a failure to store the items, returns the number of consecutive failures since the last commit
+    public synchronized int fail() {
+        rewind();
+
+        return ++failures;
+    }
+
+    // The next failures are counted from zero, for the items which are now stored in smaller batches
+    public synchronized void resetFailures() {
+        failures = 0;
+    }
+
+    @NonNull
+    public synchronized Statistics getStatistics() {
+        final long pendingBytes = (writeSegment.sequence - committedSequence) * segmentSize + writePosition - committedPosition;
+
+        return new Statistics(sequences.size(), pendingBytes, appended, committed, dropped, failures, skipped);
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : mapped.values())
+            PlatformDependent.freeDirectBuffer(segment.mapped);
+
+        mapped.clear();
+        scratch.release();
+    }
+
+    private boolean roll() {
+        if (maxSegments > 0 && writeSegment.sequence - committedSequence + 1 >= maxSegments)
+            return false;
+
+        final Segment previous = writeSegment;
+        final long sequence = previous.sequence + 1;
+
+        sequences.add(sequence);
+        writeSegment = segment(sequence);
+        writePosition = 0;
+
+        // The reader will map it again when it gets there
+        if (previous.sequence > readSegment.sequence)
+            unmap(previous.sequence);
+
+        return true;
+    }
+
+    @NonNull
+    private Segment segment(long sequence) {
+        final Segment existing = mapped.get(sequence);
+        if (existing != null)
+            return existing;
+
+        try (FileChannel channel = FileChannel.open(segmentPath(sequence),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final Segment segment = new Segment(sequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+            mapped.put(sequence, segment);
+
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't map segment " + sequence + " of spool " + name, e);
+        }
+    }
+
+    private void unmap(long sequence) {
+        final Segment segment = mapped.remove(sequence);
+
+        if (segment != null)
+            PlatformDependent.freeDirectBuffer(segment.mapped);
+    }
+
+    private void delete(long sequence) {
+        unmap(sequence);
+        sequences.remove(sequence);
+
+        try {
+            Files.deleteIfExists(segmentPath(sequence));
+        } catch (IOException e) {
+            log.warn("Can't delete segment {} of spool {}", sequence, name, e);
+        }
+    }
+
+    @NonNull
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format(Locale.ROOT, "%s-%016d%s", name, sequence, SEGMENT_SUFFIX));
+    }
+
+    @NonNull
+    private Path checkpointPath() {
+        return directory.resolve(name + CHECKPOINT_SUFFIX);
+    }
+}
@@ -0,0 +1,128 @@
+package org.spider.railway.utils.spool;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.annotation.NonNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+// Replays a spool into the store in batches of batchSize: wakes up on signal() and every retryInterval, a failed
+// batch is rewound and repeated on the next wake up, so nothing is lost while the store is unavailable.
+// A batch which failed maxFailures times in a row is stored item by item, and an item which failed maxFailures times
+// on its own is logged and skipped, so one item the store never accepts doesn't hold back the ones behind it.
+@Slf4j
+public class SpoolDrainer<T> implements Disposable {
+    private final Spool<T> spool;
+
+    private final String name;
+
+    private final int batchSize;
+
+    private final int maxFailures;
+
+    private final Function<List<T>, Mono<?>> writer;
+
+    private final Sinks.Many<Boolean> signals = Sinks.many().unicast().onBackpressureBuffer();
+
+    private final Disposable disposable;
+
+    // Items left to store one by one, drain() runs one at a time
+    private int isolated;
+
+    public SpoolDrainer(@NonNull Spool<T> spool, @NonNull String name, int batchSize, int maxFailures,
+                        @NonNull Duration retryInterval, @NonNull Function<List<T>, Mono<?>> writer) {
+        this.spool = spool;
+        this.name = name;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxFailures = Math.max(1, maxFailures);
+        this.writer = writer;
+
+        this.disposable = Flux.merge(signals.asFlux(), Flux.interval(Duration.ZERO, retryInterval).map(__ -> Boolean.TRUE))
+                .onBackpressureLatest()
+                .concatMap(__ -> drain(), 1)
+                .subscribe();
+    }
+
+    public void signal() {
+        signals.tryEmitNext(Boolean.TRUE);
+    }
+
+    @Override
+    public void dispose() {
+        disposable.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposable.isDisposed();
+    }
+
+    @NonNull
+    private Mono<Void> drain() {
+        return Mono.defer(() -> {
+                    final int size = isolated > 0 ? 1 : batchSize;
+                    final List<T> items = spool.read(size);
+
+                    if (items.isEmpty()) {
+                        isolated = 0;
+
+                        return Mono.just(false);
+                    }
+
+                    return store(items, size);
+                })
+                .repeat()
+                .takeUntil(more -> !more)
+                .then()
+                .onErrorResume(th -> {
+                    spool.rewind();
+                    log.warn("Spool {} drain failed, pending: {}", name, spool.getStatistics(), th);
+
+                    return Mono.empty();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // True when there may be more items to store
+    @NonNull
+    private Mono<Boolean> store(@NonNull List<T> items, int size) {
+        return writer.apply(items)
+                .then(Mono.fromCallable(() -> {
+                    spool.commit();
+                    if (isolated > 0)
+                        isolated--;
+
+                    return items.size() == size;
+                }))
+                .onErrorResume(th -> {
+                    final int failures = spool.fail();
+
+                    if (failures < maxFailures)
+                        return Mono.error(th);
+
+                    if (items.size() > 1) {
+                        log.warn("Spool {}: batch of {} items failed {} times, storing them one by one",
+                                name, items.size(), failures, th);
+                        isolated = items.size();
+                        spool.resetFailures();
+
+                        return Mono.just(true);
+                    }
+
+                    // Read again after fail() and given up
+                    spool.read(1);
+                    spool.skip();
+                    if (isolated > 0)
+                        isolated--;
+                    log.error("Spool {}: item failed {} times, skipped: {}", name, failures, items.get(0), th);
+
+                    return Mono.just(true);
+                });
+    }
+}
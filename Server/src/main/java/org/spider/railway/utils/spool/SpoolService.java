@@ -0,0 +1,118 @@
+package org.spider.railway.utils.spool;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.spider.railway.messaging.parsers.BinarySerializer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+// Opens named spools with the common settings, every spool has its own files in the spool directory
+@Service
+public class SpoolService {
+    private final boolean enabled;
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    private final int drainBatchSize;
+
+    private final int maxFailures;
+
+    private final Duration retryInterval;
+
+    private final MeterRegistry registry;
+
+    private final Map<String, Spool<?>> spools = new ConcurrentSkipListMap<>();
+
+    @Autowired
+    public SpoolService(@Value("${messaging.store.spool.enabled:true}") boolean enabled,
+                        @Value("${messaging.store.spool.directory:spool}") String directory,
+                        @Value("${messaging.store.spool.segment-size-mb:64}") int segmentSizeMb,
+                        @Value("${messaging.store.spool.max-segments:64}") int maxSegments,
+                        @Value("${messaging.store.spool.drain-batch-size:5000}") int drainBatchSize,
+                        @Value("${messaging.store.spool.max-failures:5}") int maxFailures,
+                        @Value("${messaging.store.spool.retry-interval-ms:5000}") long retryIntervalMs,
+                        MeterRegistry registry) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentSize = Math.max(1, Math.min(segmentSizeMb, 1024)) << 20;
+        this.maxSegments = Math.max(0, maxSegments);
+        this.drainBatchSize = Math.max(1, drainBatchSize);
+        this.maxFailures = Math.max(1, maxFailures);
+        this.retryInterval = Duration.ofMillis(Math.max(100L, retryIntervalMs));
+        this.registry = registry;
+    }
+
+    @PreDestroy
+    private void destroy() {
+        spools.values().forEach(Spool::close);
+        spools.clear();
+    }
+
+    // Null when spooling is disabled
+    @Nullable
+    public <T> Spool<T> open(@NonNull String name, @NonNull Class<T> clazz) {
+        if (!enabled)
+            return null;
+
+        final Spool<T> spool = new Spool<>(directory, name, BinarySerializer.get(clazz), segmentSize, maxSegments);
+        spools.put(name, spool);
+        bindTo(spool, name);
+
+        return spool;
+    }
+
+    private void bindTo(@NonNull Spool<?> spool, @NonNull String name) {
+        Gauge.builder("railway.spool.pending", spool, s -> s.getStatistics().pendingBytes())
+                .tag("spool", name)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("railway.spool.segments", spool, s -> s.getStatistics().segments())
+                .tag("spool", name)
+                .register(registry);
+        FunctionCounter.builder("railway.spool.appended", spool, s -> s.getStatistics().appended())
+                .tag("spool", name)
+                .register(registry);
+        FunctionCounter.builder("railway.spool.committed", spool, s -> s.getStatistics().committed())
+                .tag("spool", name)
+                .register(registry);
+        FunctionCounter.builder("railway.spool.dropped", spool, s -> s.getStatistics().dropped())
+                .tag("spool", name)
+                .register(registry);
+        Gauge.builder("railway.spool.failures", spool, s -> s.getStatistics().failures())
+                .tag("spool", name)
+                .register(registry);
+        FunctionCounter.builder("railway.spool.skipped", spool, s -> s.getStatistics().skipped())
+                .tag("spool", name)
+                .register(registry);
+    }
+
+    @NonNull
+    public <T> SpoolDrainer<T> drain(@NonNull Spool<T> spool, @NonNull String name, @NonNull Function<List<T>, Mono<?>> writer) {
+        return new SpoolDrainer<>(spool, name, drainBatchSize, maxFailures, retryInterval, writer);
+    }
+
+    @NonNull
+    public Map<String, Spool.Statistics> getStatistics() {
+        final Map<String, Spool.Statistics> result = new ConcurrentSkipListMap<>();
+        spools.forEach((name, spool) -> result.put(name, spool.getStatistics()));
+
+        return result;
+    }
+}
@@ -5,7 +5,10 @@ import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang3.stream.Streams;
 import org.spider.railway.utils.ReactorUtils;
+import org.spider.railway.utils.batch.BatchProcessor;
 import org.spider.railway.utils.batch.OrderedProcessor;
+import org.spider.railway.utils.batch.OverflowPolicy;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.MonoSink;
@@ -27,6 +30,8 @@ import java.util.stream.Collectors;
 public class UdpClient {
     private static final int DEFAULT_BUFFER_SIZE = 1436;
 
+    private static final int MAX_QUEUED_WRITERS = 10_000;
+
     private final Mono<Void> src;
 
     private final Sinks.Many<Tuple2<MonoSink<Void>, Collection<Function<ByteBuf, Boolean>>>> sink =
@@ -49,7 +54,9 @@ public class UdpClient {
                     this.sink.tryEmitNext(Tuples.of(sink, Streams.of(tuples).map(Tuple2::getT1).collect(Collectors.toList())))
                 ))
                 .doOnSuccess(__ -> ReactorUtils.schedule(tuples, t -> () -> t.getT2().success()))
-                .doOnError(th -> ReactorUtils.error(tuples, th))
+                .doOnError(th -> ReactorUtils.error(tuples, th)),
+            new BatchProcessor.Options(MAX_QUEUED_WRITERS, OverflowPolicy.DROP_NEWEST), null,
+            (__, sink) -> sink.error(Exceptions.failWithOverflow("Too many datagrams queued for " + address))
         );
     }
 
@@ -93,6 +100,10 @@ public class UdpClient {
         return false;
     }
 
+    public BatchProcessor.Statistics getStatistics() {
+        return processor.getStatistics();
+    }
+
     public Mono<Void> send(Function<ByteBuf, Boolean> writer) {
         return Mono.create(sink -> processor.process(writer, sink));
     }
@@ -1,44 +1,151 @@
 package org.spider.railway.utils.udp;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.DatagramPacket;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.FluxSink;
 import reactor.core.publisher.Mono;
 import reactor.netty.Connection;
+import reactor.netty.resources.LoopResources;
 import reactor.netty.udp.UdpInbound;
 import reactor.netty.udp.UdpOutbound;
 import reactor.util.annotation.NonNull;
+import reactor.util.annotation.Nullable;
 
+import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 public class UdpServer {
+    private static final Path PROC_NET_UDP = Path.of("/proc/net/udp");
+
+    // Enough for one datagram of the device side (see UdpClient.DEFAULT_BUFFER_SIZE) with some headroom.
+    private static final int MAX_DATAGRAM_SIZE = 2048;
+
+    public record Options(int socketsPerAddress, int receiveBufferSize, int receiveBatchSize, boolean preferNative) {
+        public static final Options DEFAULT = new Options(1, 0, 1, false);
+    }
+
+    public record SocketStatistics(String host, int socket, long received, long dropped, long errors) {
+    }
+
+    public record KernelStatistics(String host, int port, long queued, long drops) {
+    }
+
+    private final int port;
+
+    private final Options options;
+
+    private final MeterRegistry registry;
+
+    @Nullable
+    private final LoopResources loops;
+
+    private final List<SocketCounters> counters = new CopyOnWriteArrayList<>();
+
     private final Mono<? extends List<? extends Connection>> connections;
 
-    private volatile FluxSink<DatagramPacket> sink;
+    private volatile FluxSink<List<DatagramPacket>> sink;
 
     public UdpServer(int port) {
-        this.connections =  listInetAddresses()
-                .flatMap(host -> Mono.defer(() -> {
-                    log.info("Listen {}", host);
-
-                    reactor.netty.udp.UdpServer server = reactor.netty.udp.UdpServer
-                            .create()
-                            .host(host)
-                            .port(port)
-                            .handle(this::handle);
-                    return server.warmup().then(server.bind());
-                }))
+        this(port, Options.DEFAULT);
+    }
+
+    public UdpServer(int port, @NonNull Options options) {
+        this(port, options, Metrics.globalRegistry);
+    }
+
+    public UdpServer(int port, @NonNull Options options, @NonNull MeterRegistry registry) {
+        this.port = port;
+        this.registry = registry;
+
+        final boolean nativeTransport = options.preferNative() && Epoll.isAvailable();
+        if (options.socketsPerAddress() > 1 && !nativeTransport) {
+            log.warn("SO_REUSEPORT requires native epoll transport{}, fall back to one socket per address",
+                    options.preferNative() ? " (" + Epoll.unavailabilityCause() + ")" : "");
+            options = new Options(1, options.receiveBufferSize(), options.receiveBatchSize(), options.preferNative());
+        }
+        this.options = options;
+
+        // Reading /proc/net/udp on every scrape is cheap enough, the file has a line per UDP socket
+        Gauge.builder("railway.udp.kernel.queued", this,
+                        server -> server.getKernelStatistics().stream().mapToLong(KernelStatistics::queued).sum())
+                .tag("port", Integer.toString(port))
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("railway.udp.kernel.drops", this,
+                        server -> server.getKernelStatistics().stream().mapToLong(KernelStatistics::drops).sum())
+                .tag("port", Integer.toString(port))
+                .register(registry);
+
+        // Own loops so that every socket of a port gets its own event loop thread instead of sharing the HTTP ones
+        this.loops = nativeTransport
+                ? LoopResources.create("udp-recv", Math.max(1, options.socketsPerAddress()), true)
+                : null;
+
+        this.connections = listInetAddresses()
+                .flatMap(host -> Flux.range(0, this.options.socketsPerAddress())
+                        .concatMap(socket -> Mono.defer(() -> bind(host, socket, nativeTransport))))
                 .collectList()
                 .share();
     }
 
+    @NonNull
+    private Mono<? extends Connection> bind(@NonNull String host, int socket, boolean nativeTransport) {
+        log.info("Listen {}:{} (socket {}, native: {})", host, port, socket, nativeTransport);
+
+        final SocketCounters socketCounters = new SocketCounters(host, socket);
+        counters.add(socketCounters);
+        socketCounters.bindTo(registry, port);
+
+        reactor.netty.udp.UdpServer server = reactor.netty.udp.UdpServer
+                .create()
+                .host(host)
+                .port(port)
+                .doOnBound(connection -> connection.addHandlerFirst(BatchHandler.NAME, new BatchHandler(socketCounters)))
+                .handle((in, out) -> handle(in, out, socketCounters));
+
+        if (loops != null)
+            server = server
+                    .runOn(loops, true)
+                    .option(EpollChannelOption.SO_REUSEPORT, true);
+
+        if (options.receiveBufferSize() > 0)
+            server = server.option(ChannelOption.SO_RCVBUF, options.receiveBufferSize());
+
+        // With a payload size set epoll fills the buffer with several datagrams in one recvmmsg call
+        if (loops != null && options.receiveBatchSize() > 1)
+            server = server
+                    .option(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE, MAX_DATAGRAM_SIZE)
+                    .option(ChannelOption.RCVBUF_ALLOCATOR,
+                            new FixedRecvByteBufAllocator(MAX_DATAGRAM_SIZE * options.receiveBatchSize()));
+        else if (options.receiveBufferSize() > 0)
+            server = server.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(MAX_DATAGRAM_SIZE));
+
+        return server.warmup().then(server.bind());
+    }
+
     private static Flux<String> listInetAddresses() {
         return Flux.create(sink -> {
                 try {
@@ -63,16 +170,12 @@ public class UdpServer {
             });
     }
 
-    private Mono<Void> handle(UdpInbound in, UdpOutbound out) {
+    // Datagrams are taken by BatchHandler, only unexpected objects get here
+    private Mono<Void> handle(UdpInbound in, UdpOutbound out, SocketCounters socketCounters) {
         return Mono.defer(() -> in.receiveObject()
                 .concatMap(obj -> {
-                    if (obj instanceof DatagramPacket packet) {
-                        final FluxSink<DatagramPacket> sink = this.sink;
-
-                        if (sink != null)
-                            sink.next(packet.retain());
-                    } else
-                        log.warn("Unknown packet: {}", obj.getClass().getName());
+                    socketCounters.errors.incrementAndGet();
+                    log.warn("Unknown packet: {}", obj.getClass().getName());
 
                     return Mono.empty();
                 }).then());
@@ -82,10 +185,62 @@ public class UdpServer {
     }
 
     public void destroy() {
+        if (loops != null)
+            loops.disposeLater().subscribe();
+    }
+
+    @NonNull
+    public List<SocketStatistics> getSocketStatistics() {
+        return counters.stream().map(SocketCounters::toStatistics).toList();
+    }
+
+    // Receive buffer overruns are only visible to the kernel, on Linux they are exposed per socket in /proc/net/udp
+    @NonNull
+    public List<KernelStatistics> getKernelStatistics() {
+        if (!Files.isReadable(PROC_NET_UDP))
+            return List.of();
+
+        final String portHex = String.format(Locale.ROOT, ":%04X", port);
+        final List<KernelStatistics> result = new ArrayList<>();
+
+        try {
+            for (String line : Files.readAllLines(PROC_NET_UDP)) {
+                // sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode ref pointer drops
+                final String[] fields = line.trim().split("\\s+");
+
+                if (fields.length < 13 || !fields[1].endsWith(portHex))
+                    continue;
+
+                final String queues = fields[4];
+                result.add(new KernelStatistics(
+                        toHostAddress(fields[1].substring(0, fields[1].indexOf(':'))),
+                        port,
+                        Long.parseLong(queues.substring(queues.indexOf(':') + 1), 16),
+                        Long.parseLong(fields[12])));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Can't read {}", PROC_NET_UDP, e);
+        }
+
+        return result;
+    }
+
+    // Addresses in /proc/net/udp are in host byte order, i.e. little endian on all platforms we run on
+    @NonNull
+    private static String toHostAddress(@NonNull String hex) {
+        final long address = Long.parseLong(hex, 16);
+
+        return (address & 0xFF) + "." + ((address >> 8) & 0xFF) + "." + ((address >> 16) & 0xFF) + "." + ((address >> 24) & 0xFF);
     }
 
     @NonNull
     public Flux<DatagramPacket> subscribe() {
+        return subscribeBatches().concatMapIterable(packets -> packets);
+    }
+
+    // One element per event loop read, i.e. everything a socket got from the kernel in one wakeup
+    @NonNull
+    public Flux<List<DatagramPacket>> subscribeBatches() {
         return Flux.usingWhen(this.connections, __ -> Flux.create(sink -> {
                 if (this.sink == null)
                     this.sink = sink;
@@ -101,4 +256,82 @@ public class UdpServer {
                             }));
                 });
     }
+
+    private class BatchHandler extends ChannelInboundHandlerAdapter {
+        static final String NAME = "udp-batch";
+
+        private final SocketCounters socketCounters;
+
+        private ArrayList<DatagramPacket> packets = new ArrayList<>();
+
+        BatchHandler(SocketCounters socketCounters) {
+            this.socketCounters = socketCounters;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof DatagramPacket packet) {
+                socketCounters.received.incrementAndGet();
+                packets.add(packet);
+            } else
+                ctx.fireChannelRead(msg);
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            if (!packets.isEmpty()) {
+                final FluxSink<List<DatagramPacket>> sink = UdpServer.this.sink;
+
+                if (sink != null) {
+                    sink.next(packets);
+                    packets = new ArrayList<>(packets.size());
+                } else {
+                    socketCounters.dropped.addAndGet(packets.size());
+                    packets.forEach(DatagramPacket::release);
+                    packets.clear();
+                }
+            }
+
+            ctx.fireChannelReadComplete();
+        }
+
+        @Override
+        public void handlerRemoved(ChannelHandlerContext ctx) {
+            packets.forEach(DatagramPacket::release);
+            packets.clear();
+        }
+    }
+
+    private static class SocketCounters {
+        private final String host;
+
+        private final int socket;
+
+        private final AtomicLong received = new AtomicLong();
+
+        private final AtomicLong dropped = new AtomicLong();
+
+        private final AtomicLong errors = new AtomicLong();
+
+        SocketCounters(String host, int socket) {
+            this.host = host;
+            this.socket = socket;
+        }
+
+        void bindTo(MeterRegistry registry, int port) {
+            FunctionCounter.builder("railway.udp.packets.received", received, AtomicLong::get)
+                    .tags("host", host, "port", Integer.toString(port), "socket", Integer.toString(socket))
+                    .register(registry);
+            FunctionCounter.builder("railway.udp.packets.dropped", dropped, AtomicLong::get)
+                    .tags("host", host, "port", Integer.toString(port), "socket", Integer.toString(socket))
+                    .register(registry);
+            FunctionCounter.builder("railway.udp.packets.errors", errors, AtomicLong::get)
+                    .tags("host", host, "port", Integer.toString(port), "socket", Integer.toString(socket))
+                    .register(registry);
+        }
+
+        SocketStatistics toStatistics() {
+            return new SocketStatistics(host, socket, received.get(), dropped.get(), errors.get());
+        }
+    }
 }
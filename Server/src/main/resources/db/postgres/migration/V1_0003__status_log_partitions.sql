@@ -0,0 +1,50 @@
+ALTER TABLE status_log RENAME TO status_log_old;
+DROP INDEX status_log__corrected__item_id_idx;
+
+CREATE TABLE status_log
+(
+    item_id     VARCHAR(21) NOT NULL,
+    timestamp   TIMESTAMPTZ NOT NULL,
+    receive_timestamp TIMESTAMPTZ NOT NULL,
+    corrected_timestamp TIMESTAMPTZ NOT NULL,
+    item_type   VARCHAR(20) NOT NULL,
+    internal_temp DECIMAL NOT NULL,
+    version     BIGINT NOT NULL,
+
+    marker_timestamp TIMESTAMPTZ,
+    speed       SMALLINT,
+    power       DECIMAL,
+
+    semaphore_color INTEGER,
+
+    switch_state BOOLEAN
+) PARTITION BY RANGE (corrected_timestamp);
+
+-- Rows are appended in time order, so a BRIN index on time stays tiny and still prunes pages of a partition
+CREATE INDEX status_log__corrected_brin_idx ON status_log USING BRIN (corrected_timestamp) WITH (pages_per_range = 32);
+CREATE INDEX status_log__item_id__corrected_idx ON status_log (item_id, corrected_timestamp);
+
+-- Catches rows outside of the partitions created by StatusLogPartitionService
+CREATE TABLE status_log_default PARTITION OF status_log DEFAULT;
+
+-- Daily partitions (UTC days) for the existing history and the next week, later ones are created by the application
+DO $$
+DECLARE
+    day DATE;
+BEGIN
+    FOR day IN
+        SELECT generate_series(
+                   (COALESCE((SELECT min(corrected_timestamp) FROM status_log_old), now()) AT TIME ZONE 'UTC')::DATE,
+                   (now() AT TIME ZONE 'UTC')::DATE + 7,
+                   INTERVAL '1 day')::DATE
+    LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF status_log FOR VALUES FROM (%L) TO (%L)',
+                       'status_log_p' || to_char(day, 'YYYYMMDD'),
+                       day::TIMESTAMP AT TIME ZONE 'UTC',
+                       (day + 1)::TIMESTAMP AT TIME ZONE 'UTC');
+    END LOOP;
+END $$;
+
+INSERT INTO status_log SELECT * FROM status_log_old;
+
+DROP TABLE status_log_old;
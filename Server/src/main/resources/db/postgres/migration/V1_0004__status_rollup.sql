@@ -0,0 +1,127 @@
+CREATE TABLE status_rollup_1s
+(
+    item_id     VARCHAR(21) NOT NULL,
+    bucket      TIMESTAMPTZ NOT NULL,
+    item_type   VARCHAR(20) NOT NULL,
+    sample_count BIGINT NOT NULL,
+    time_sum    DOUBLE PRECISION NOT NULL,
+
+    temp_min    DOUBLE PRECISION NOT NULL,
+    temp_max    DOUBLE PRECISION NOT NULL,
+    temp_sum    DOUBLE PRECISION NOT NULL,
+
+    speed_min   DOUBLE PRECISION,
+    speed_max   DOUBLE PRECISION,
+    speed_sum   DOUBLE PRECISION,
+
+    power_min   DOUBLE PRECISION,
+    power_max   DOUBLE PRECISION,
+    power_sum   DOUBLE PRECISION,
+
+    last_corrected TIMESTAMPTZ NOT NULL,
+    semaphore_color INTEGER,
+    switch_state BOOLEAN,
+
+    PRIMARY KEY (item_id, bucket)
+);
+
+CREATE TABLE status_rollup_1m
+(
+    item_id     VARCHAR(21) NOT NULL,
+    bucket      TIMESTAMPTZ NOT NULL,
+    item_type   VARCHAR(20) NOT NULL,
+    sample_count BIGINT NOT NULL,
+    time_sum    DOUBLE PRECISION NOT NULL,
+
+    temp_min    DOUBLE PRECISION NOT NULL,
+    temp_max    DOUBLE PRECISION NOT NULL,
+    temp_sum    DOUBLE PRECISION NOT NULL,
+
+    speed_min   DOUBLE PRECISION,
+    speed_max   DOUBLE PRECISION,
+    speed_sum   DOUBLE PRECISION,
+
+    power_min   DOUBLE PRECISION,
+    power_max   DOUBLE PRECISION,
+    power_sum   DOUBLE PRECISION,
+
+    last_corrected TIMESTAMPTZ NOT NULL,
+    semaphore_color INTEGER,
+    switch_state BOOLEAN,
+
+    PRIMARY KEY (item_id, bucket)
+);
+
+CREATE TABLE status_rollup_1h
+(
+    item_id     VARCHAR(21) NOT NULL,
+    bucket      TIMESTAMPTZ NOT NULL,
+    item_type   VARCHAR(20) NOT NULL,
+    sample_count BIGINT NOT NULL,
+    time_sum    DOUBLE PRECISION NOT NULL,
+
+    temp_min    DOUBLE PRECISION NOT NULL,
+    temp_max    DOUBLE PRECISION NOT NULL,
+    temp_sum    DOUBLE PRECISION NOT NULL,
+
+    speed_min   DOUBLE PRECISION,
+    speed_max   DOUBLE PRECISION,
+    speed_sum   DOUBLE PRECISION,
+
+    power_min   DOUBLE PRECISION,
+    power_max   DOUBLE PRECISION,
+    power_sum   DOUBLE PRECISION,
+
+    last_corrected TIMESTAMPTZ NOT NULL,
+    semaphore_color INTEGER,
+    switch_state BOOLEAN,
+
+    PRIMARY KEY (item_id, bucket)
+);
+
+-- Backfill from the existing history, later the application keeps the rollups up to date
+
+INSERT INTO status_rollup_1s
+SELECT item_id,
+    date_trunc('second', corrected_timestamp AT TIME ZONE 'UTC') AT TIME ZONE 'UTC',
+    (array_agg(item_type ORDER BY corrected_timestamp DESC))[1],
+    count(*),
+    sum(extract(epoch FROM corrected_timestamp) * 1000),
+    min(internal_temp), max(internal_temp), sum(internal_temp),
+    min(speed), max(speed), sum(speed),
+    min(power), max(power), sum(power),
+    max(corrected_timestamp),
+    (array_agg(semaphore_color ORDER BY corrected_timestamp DESC) FILTER (WHERE semaphore_color IS NOT NULL))[1],
+    (array_agg(switch_state ORDER BY corrected_timestamp DESC) FILTER (WHERE switch_state IS NOT NULL))[1]
+FROM status_log
+GROUP BY item_id, date_trunc('second', corrected_timestamp AT TIME ZONE 'UTC') AT TIME ZONE 'UTC';
+
+INSERT INTO status_rollup_1m
+SELECT item_id,
+    date_trunc('minute', corrected_timestamp AT TIME ZONE 'UTC') AT TIME ZONE 'UTC',
+    (array_agg(item_type ORDER BY corrected_timestamp DESC))[1],
+    count(*),
+    sum(extract(epoch FROM corrected_timestamp) * 1000),
+    min(internal_temp), max(internal_temp), sum(internal_temp),
+    min(speed), max(speed), sum(speed),
+    min(power), max(power), sum(power),
+    max(corrected_timestamp),
+    (array_agg(semaphore_color ORDER BY corrected_timestamp DESC) FILTER (WHERE semaphore_color IS NOT NULL))[1],
+    (array_agg(switch_state ORDER BY corrected_timestamp DESC) FILTER (WHERE switch_state IS NOT NULL))[1]
+FROM status_log
+GROUP BY item_id, date_trunc('minute', corrected_timestamp AT TIME ZONE 'UTC') AT TIME ZONE 'UTC';
+
+INSERT INTO status_rollup_1h
+SELECT item_id,
+    date_trunc('hour', corrected_timestamp AT TIME ZONE 'UTC') AT TIME ZONE 'UTC',
+    (array_agg(item_type ORDER BY corrected_timestamp DESC))[1],
+    count(*),
+    sum(extract(epoch FROM corrected_timestamp) * 1000),
+    min(internal_temp), max(internal_temp), sum(internal_temp),
+    min(speed), max(speed), sum(speed),
+    min(power), max(power), sum(power),
+    max(corrected_timestamp),
+    (array_agg(semaphore_color ORDER BY corrected_timestamp DESC) FILTER (WHERE semaphore_color IS NOT NULL))[1],
+    (array_agg(switch_state ORDER BY corrected_timestamp DESC) FILTER (WHERE switch_state IS NOT NULL))[1]
+FROM status_log
+GROUP BY item_id, date_trunc('hour', corrected_timestamp AT TIME ZONE 'UTC') AT TIME ZONE 'UTC';
@@ -0,0 +1,5 @@
+-- Expired rollup rows are deleted by StatusRollupService.removeExpired(). Buckets come in roughly in time order, so a
+-- BRIN index finds the old ones without scanning the tables.
+CREATE INDEX status_rollup_1s__bucket_brin_idx ON status_rollup_1s USING BRIN (bucket) WITH (pages_per_range = 32);
+CREATE INDEX status_rollup_1m__bucket_brin_idx ON status_rollup_1m USING BRIN (bucket) WITH (pages_per_range = 32);
+CREATE INDEX status_rollup_1h__bucket_brin_idx ON status_rollup_1h USING BRIN (bucket) WITH (pages_per_range = 32);
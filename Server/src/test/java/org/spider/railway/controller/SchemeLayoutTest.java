@@ -0,0 +1,153 @@
+package org.spider.railway.controller;
+
+import org.junit.jupiter.api.Test;
+import org.spider.railway.utils.Geometry;
+import org.spider.railway.utils.MathUtils;
+import reactor.util.annotation.NonNull;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.spider.railway.utils.MathUtils.*;
+
+// The double layout of the scheme against the BigDecimal one it replaced
+class SchemeLayoutTest {
+    // Largest difference which is still taken for a rounding error, in mm and radians
+    private static final double TOLERANCE = 1e-6;
+
+    private static final BigDecimal DEGREE_180 = toBigDecimal(180);
+
+    @NonNull
+    private static BigDecimal fromDegree(int degree) {
+        return toBigDecimal(degree).multiply(PI).divide(DEGREE_180, PRECISION);
+    }
+
+    // The former BigDecimal layout walk
+    private static class ReferenceContext extends SchemeController.LayoutContext<ReferenceContext> {
+        BigDecimal currentX, currentY, currentAngle;
+        int currentDegrees;
+
+        public ReferenceContext() {
+            clearData();
+        }
+
+        ReferenceContext(@NonNull ReferenceContext from) {
+            super(from);
+
+            this.currentX = from.currentX;
+            this.currentY = from.currentY;
+            this.currentAngle = from.currentAngle;
+            this.currentDegrees = from.currentDegrees;
+        }
+
+        private void setPositiveAngle(@NonNull BigDecimal angle) {
+            BigDecimal result = angle;
+
+            while (result.compareTo(DOUBLE_PI) >= 0)
+                result = result.subtract(DOUBLE_PI);
+
+            this.currentAngle = result;
+        }
+
+        private void setNegativeAngle(@NonNull BigDecimal angle) {
+            BigDecimal result = angle;
+
+            while (result.compareTo(MINUS_DOUBLE_PI) <= 0)
+                result = result.add(DOUBLE_PI);
+
+            this.currentAngle = result;
+        }
+
+        private void setAngle(@NonNull BigDecimal angle, int degrees) {
+            if (angle.compareTo(ZERO) < 0)
+                setNegativeAngle(angle);
+            else
+                setPositiveAngle(angle);
+
+            this.currentDegrees = Geometry.normalize(this.currentDegrees + degrees);
+        }
+
+        @Override
+        @NonNull
+        public ReferenceContext turn(int degrees) {
+            setAngle(this.currentAngle.add(fromDegree(degrees)), degrees);
+            return this;
+        }
+
+        @Override
+        @NonNull
+        public ReferenceContext move(int length) {
+            final PointE p = MathUtils.rotate(toBigDecimal(length), ZERO, this.currentAngle);
+
+            this.currentX = this.currentX.add(p.x());
+            this.currentY = this.currentY.add(p.y());
+
+            return this;
+        }
+
+        @Override
+        @NonNull
+        public ReferenceContext arc(int radius, int degrees) {
+            final BigDecimal angle = fromDegree(degrees);
+            final BigDecimal rad = toBigDecimal(degrees < 0 ? -radius : radius);
+            final PointE center = MathUtils.rotate(this.currentX, this.currentY,
+                                    this.currentX, this.currentY.add(rad), this.currentAngle);
+            final PointE p = MathUtils.rotate(center.x(), center.y(), this.currentX, this.currentY, angle);
+
+            this.currentX = p.x();
+            this.currentY = p.y();
+            setAngle(this.currentAngle.add(angle), degrees);
+            return this;
+        }
+
+        @Override
+        public void clearData() {
+            this.currentX = ZERO;
+            this.currentY = ZERO;
+            this.currentAngle = ZERO;
+            this.currentDegrees = 0;
+        }
+
+        @Override
+        @NonNull
+        public ReferenceContext copy() {
+            return new ReferenceContext(this);
+        }
+
+        @Override
+        @NonNull
+        public SchemeController.PositionedItem toPosition(@NonNull SchemeItem item) {
+            return new SchemeController.PositionedItem(item, this.currentX.doubleValue(), this.currentY.doubleValue(),
+                    this.currentAngle.doubleValue(), this.currentDegrees);
+        }
+    }
+
+    @Test
+    void matchesBigDecimalLayout() {
+        final SchemeController controller = new SchemeController();
+        final List<SchemeController.PositionedItem> layout = controller.listAll().collectList().block();
+        final List<SchemeController.PositionedItem> reference = controller.layout(ReferenceContext::new).collectList().block();
+
+        assertNotNull(layout);
+        assertNotNull(reference);
+        assertFalse(layout.isEmpty());
+        assertEquals(reference.size(), layout.size());
+
+        for (int i = 0; i < layout.size(); i++) {
+            final SchemeController.PositionedItem item = layout.get(i);
+            final SchemeController.PositionedItem expected = reference.get(i);
+            final SchemeController.SchemeItem piece = item.getItem();
+
+            assertSame(expected.getItem(), piece, "piece " + i);
+            assertEquals(expected.getDegrees(), item.getDegrees(), piece.getId());
+            assertTrue(Math.sqrt(Geometry.distanceSquared(item.getX(), item.getY(), expected.getX(), expected.getY())) <= TOLERANCE,
+                    () -> piece.getId() + ": " + item.getX() + ", " + item.getY() + " instead of " + expected.getX() + ", " + expected.getY());
+
+            // Both keep the sign of the angle the same way, a difference of a full turn only comes from rounding at 0
+            final double angle = Math.abs(item.getAngle() - expected.getAngle());
+            assertTrue(Math.min(angle, Math.abs(angle - 2 * Math.PI)) <= TOLERANCE,
+                    () -> piece.getId() + ": angle " + item.getAngle() + " instead of " + expected.getAngle());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.spider.railway.messaging;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The expected values are what PostgreSQL itself sends, e.g. SELECT numeric_send(12345.678) or
+// SELECT timestamptz_send('1900-01-01 00:00:00.000001Z')
+class StatusLogCopyEncoderTest {
+    // The field without its length: ndigits, weight, sign, dscale, then base 10000 digits, all 16 bit
+    private static String numeric(double value) {
+        final ByteBuf buf = Unpooled.buffer();
+        StatusLogCopyEncoder.writeNumeric(buf, value);
+
+        assertEquals(buf.readableBytes() - 4, buf.readInt(), "length of " + value);
+
+        return ByteBufUtil.hexDump(buf);
+    }
+
+    private static long timestamp(OffsetDateTime value) {
+        final ByteBuf buf = Unpooled.buffer();
+        StatusLogCopyEncoder.writeTimestamp(buf, value);
+
+        assertEquals(8, buf.readInt());
+        assertEquals(8, buf.readableBytes());
+
+        return buf.readLong();
+    }
+
+    @Test
+    void encodesZero() {
+        // A double always has a fractional digit, so 0.0: no digits, display scale 1
+        assertEquals("0000" + "0000" + "0000" + "0001", numeric(0.0));
+        // No negative zero in numeric
+        assertEquals("0000" + "0000" + "0000" + "0001", numeric(-0.0));
+    }
+
+    @Test
+    void encodesWholeAndFractionalValues() {
+        assertEquals("0001" + "0000" + "0000" + "0001" + "0014", numeric(20.0));
+        // 1 2345 . 6780
+        assertEquals("0003" + "0001" + "0000" + "0003" + "0001" + "0929" + "1a7c", numeric(12345.678));
+    }
+
+    @Test
+    void encodesNegativeValues() {
+        assertEquals("0002" + "0000" + "4000" + "0001" + "0001" + "1388", numeric(-1.5));
+        // 7 5000, the trailing zero digit of .0 is dropped but still counts in the display scale
+        assertEquals("0002" + "0001" + "4000" + "0001" + "0007" + "1388", numeric(-75_000.0));
+    }
+
+    @Test
+    void skipsLeadingZeroDigitsOfFractions() {
+        // .0001 2340: weight -1
+        assertEquals("0002" + "ffff" + "4000" + "0007" + "0001" + "0924", numeric(-0.0001234));
+        // .0000 1000: the first digit has weight -2
+        assertEquals("0001" + "fffe" + "0000" + "0006" + "03e8", numeric(0.00001));
+    }
+
+    @Test
+    void encodesLargeExponents() {
+        // 1.0E-20 is .0000 0000 0000 0000 0001 0 with display scale 21
+        assertEquals("0001" + "fffb" + "0000" + "0015" + "0001", numeric(1e-20));
+        // 123 4500 followed by six zero digits
+        assertEquals("0002" + "0007" + "0000" + "0000" + "007b" + "1194", numeric(1.2345e30));
+        assertEquals("0001" + "0005" + "4000" + "0000" + "0001", numeric(-1e20));
+    }
+
+    @Test
+    void encodesNaN() {
+        assertEquals("0000" + "0000" + "c000" + "0000", numeric(Double.NaN));
+    }
+
+    @Test
+    void encodesMicrosSince2000() {
+        assertEquals(0L, timestamp(OffsetDateTime.of(2000, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC)));
+        assertEquals(0L, timestamp(OffsetDateTime.of(2000, 1, 1, 3, 0, 0, 0, ZoneOffset.ofHours(3))));
+        assertEquals(762_525_296_789_012L, timestamp(OffsetDateTime.of(2024, 2, 29, 12, 34, 56, 789_012_345, ZoneOffset.UTC)));
+    }
+
+    @Test
+    void encodesTimestampsBefore2000() {
+        assertEquals(-1L, timestamp(OffsetDateTime.of(1999, 12, 31, 23, 59, 59, 999_999_000, ZoneOffset.UTC)));
+        assertEquals(-946_684_800_000_000L, timestamp(OffsetDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC)));
+        // Negative seconds, positive micros
+        assertEquals(-3_155_673_599_999_999L, timestamp(OffsetDateTime.of(1900, 1, 1, 0, 0, 0, 1_000, ZoneOffset.UTC)));
+    }
+
+    @Test
+    void encodesNullTimestamp() {
+        final ByteBuf buf = Unpooled.buffer();
+        StatusLogCopyEncoder.writeTimestamp(buf, null);
+
+        assertEquals("ffffffff", ByteBufUtil.hexDump(buf));
+    }
+
+    @Test
+    void writesHeaderAndTrailer() {
+        final ByteBuf buf = StatusLogCopyEncoder.encode(UnpooledByteBufAllocator.DEFAULT, List.of());
+
+        try {
+            assertEquals("5047434f50590aff0d0a00" + "00000000" + "00000000" + "ffff", ByteBufUtil.hexDump(buf));
+        } finally {
+            buf.release();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.spider.railway.messaging.parsers;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.junit.jupiter.api.Test;
+import org.spider.railway.messaging.UdpMessagingServiceImpl.*;
+
+import java.lang.reflect.Field;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Public, as the generated codec needs the entity and every class enclosing it public
+public class BinarySerializerTest {
+    private static final OffsetDateTime TIMESTAMP = OffsetDateTime.ofInstant(Instant.ofEpochMilli(1_700_000_123_456L), ZoneId.systemDefault());
+
+    @Getter
+    @AllArgsConstructor
+    public static class ArraysEntity {
+        private final boolean flag;
+        private final boolean[] flags;
+        private final short[] shorts;
+        private final int[] ints;
+        private final long[] longs;
+        private final String name;
+        private final String note;
+        private final OffsetDateTime timestamp;
+    }
+
+    // Writes the object with both paths, checks the bytes are the same and reads them back with both paths
+    private static <T> void assertRoundTrip(Class<T> clazz, List<T> objects) {
+        final BinarySerializer<T> generated = BinarySerializer.create(clazz, true);
+        final BinarySerializer<T> reflective = BinarySerializer.create(clazz, false);
+
+        assertTrue(generated.isGenerated(), clazz.getName());
+        assertFalse(reflective.isGenerated(), clazz.getName());
+
+        for (T object : objects) {
+            final byte[] bytes = ByteBufUtil.getBytes(generated.serialize(Unpooled.buffer(), object));
+            assertArrayEquals(bytes, ByteBufUtil.getBytes(reflective.serialize(Unpooled.buffer(), object)), object.toString());
+
+            for (BinarySerializer<T> serializer : List.of(generated, reflective)) {
+                final ByteBuf buffer = Unpooled.wrappedBuffer(bytes);
+
+                assertFieldsEqual(object, serializer.deserialize(buffer));
+                assertEquals(0, buffer.readableBytes(), object.toString());
+            }
+        }
+    }
+
+    // The entities have no equals(), so field by field
+    private static void assertFieldsEqual(Object expected, Object actual) {
+        assertSame(expected.getClass(), actual.getClass());
+
+        for (Field field : expected.getClass().getDeclaredFields()) {
+            field.setAccessible(true);
+
+            try {
+                assertTrue(Objects.deepEquals(field.get(expected), field.get(actual)),
+                        expected.getClass().getSimpleName() + "." + field.getName());
+            } catch (IllegalAccessException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    @Test
+    void writesCommandsTheSameWay() {
+        assertRoundTrip(PowerEntity.class, List.of(new PowerEntity((byte) 1, 0), new PowerEntity((byte) -1, -75_000)));
+        assertRoundTrip(SpeedEntity.class, List.of(new SpeedEntity((byte) 2, 350), new SpeedEntity((byte) 2, Integer.MIN_VALUE)));
+        assertRoundTrip(SwitchEntity.class, List.of(new SwitchEntity((byte) 3, (byte) 0), new SwitchEntity((byte) 3, (byte) 1)));
+        assertRoundTrip(SemaphoreEntity.class, List.of(new SemaphoreEntity((byte) 4, (short) 0, 0),
+                new SemaphoreEntity((byte) 4, Short.MAX_VALUE, 0xff00ff)));
+    }
+
+    @Test
+    void readsDeviceMessagesTheSameWay() {
+        assertRoundTrip(HandshakeEntity.class, List.of(
+                new HandshakeEntity("train-1", (short) 1, TIMESTAMP, (byte) 0),
+                new HandshakeEntity("", (short) -1, null, (byte) 8),
+                new HandshakeEntity(null, Short.MAX_VALUE, TIMESTAMP, Byte.MIN_VALUE)));
+
+        assertRoundTrip(LogEntity.class, List.of(
+                new LogEntity("switch-2", TIMESTAMP, (byte) 1, (byte) 3, "wifi", "Связь восстановлена"),
+                new LogEntity("", null, (byte) 0, (byte) 0, "", ""),
+                new LogEntity(null, TIMESTAMP, (byte) -1, (byte) -1, null, null)));
+
+        assertRoundTrip(TrainStatusEntity.class, List.of(
+                new TrainStatusEntity(TIMESTAMP, 3, 45, (short) 350, 80_000, TIMESTAMP.minusSeconds(1)),
+                new TrainStatusEntity(null, 0, -10, (short) -350, -80_000, null)));
+
+        assertRoundTrip(SwitchStatusEntity.class, List.of(
+                new SwitchStatusEntity(TIMESTAMP, 1, 30, true),
+                new SwitchStatusEntity(null, -1, 0, false)));
+
+        assertRoundTrip(SemaphoreStatusEntity.class, List.of(
+                new SemaphoreStatusEntity(TIMESTAMP, 1, 30, 0x00ff00),
+                new SemaphoreStatusEntity(null, 0, 0, -1)));
+
+        assertRoundTrip(SwitchWithSemaphoresStatusEntity.class, List.of(
+                new SwitchWithSemaphoresStatusEntity(TIMESTAMP, 2, 31, true, new int[] {0xff0000, 0, -1}),
+                new SwitchWithSemaphoresStatusEntity(TIMESTAMP, 2, 31, false, new int[0]),
+                new SwitchWithSemaphoresStatusEntity(null, 0, 0, false, null)));
+    }
+
+    @Test
+    void writesArraysAndStringsTheSameWay() {
+        assertRoundTrip(ArraysEntity.class, List.of(
+                new ArraysEntity(true, new boolean[] {true, false, true}, new short[] {Short.MIN_VALUE, 0, Short.MAX_VALUE},
+                        new int[] {Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE}, new long[] {Long.MIN_VALUE, 0, Long.MAX_VALUE},
+                        "name", "ünïcödé", TIMESTAMP),
+                new ArraysEntity(false, new boolean[0], new short[0], new int[0], new long[0], "", "", null),
+                new ArraysEntity(false, null, null, null, null, null, null, null)));
+    }
+}
@@ -0,0 +1,292 @@
+package org.spider.railway.scheme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemeGraphTest {
+    private static final double EPSILON = 1e-6;
+
+    private static SchemeCoords at(double x, double y) {
+        return new SchemeCoords(x, y);
+    }
+
+    // The link of the node from one of its connectors to another
+    private static int link(SchemeGraph graph, SchemeConnector from, SchemeConnector to) {
+        for (int l = 0; l < graph.getLinkCount(); l++)
+            if (graph.getNode(l) == from.getNode()
+                    && graph.getX(graph.getFrom(l)) == from.getCoords().getX() && graph.getY(graph.getFrom(l)) == from.getCoords().getY()
+                    && graph.getX(graph.getTo(l)) == to.getCoords().getX() && graph.getY(graph.getTo(l)) == to.getCoords().getY())
+                return l;
+
+        throw new IllegalArgumentException("No link of " + from.getNode().getId());
+    }
+
+    private static int link(SchemeGraph graph, SchemeLine line, boolean forward) {
+        return forward
+                ? link(graph, line.getConnector1(), line.getConnector2())
+                : link(graph, line.getConnector2(), line.getConnector1());
+    }
+
+    private static void assertPosition(int link, double offset, SchemePosition position) {
+        assertEquals(link, position.getLink());
+        assertEquals(offset, position.getOffset(), EPSILON);
+    }
+
+    // The line In joins the root of the switch S, Low goes on from its straight branch and Top from its diverging one
+    private final SchemeLine in = new SchemeLine("In", at(-100, 0), at(0, 0), 100);
+    private final SchemeSwitch s = new SchemeSwitch("S", at(0, 0), at(100, 0), 100, at(100, 50), 120, List.of());
+    private final SchemeLine low = new SchemeLine("Low", at(100, 0), at(300, 0), 200);
+    private final SchemeLine top = new SchemeLine("Top", at(100, 50), at(300, 50), 200);
+
+    private SchemeGraph junction() {
+        s.addBidirectionalExternalLink(in.getConnector2(), s.getRoot());
+        s.addBidirectionalExternalLink(s.getStraight(), low.getConnector1());
+        s.addBidirectionalExternalLink(s.getDiverging(), top.getConnector1());
+
+        return SchemeGraph.compile(0, List.of(in, s, low, top), List.of());
+    }
+
+    @Test
+    void movesAcrossJoints() {
+        final SchemeLine a = new SchemeLine("A", at(0, 0), at(100, 0), 100);
+        final SchemeLine b = new SchemeLine("B", at(100, 0), at(200, 0), 100);
+        a.addBidirectionalExternalLink(a.getConnector2(), b.getConnector1());
+
+        final SchemeGraph graph = SchemeGraph.compile(0, List.of(a, b), List.of());
+        final int af = link(graph, a, true), ab = link(graph, a, false);
+        final int bf = link(graph, b, true), bb = link(graph, b, false);
+
+        assertEquals(bf, graph.getNext(af));
+        assertEquals(ab, graph.getNext(bb));
+        assertEquals(af, graph.getPrevious(bf));
+        assertEquals(bb, graph.getPrevious(ab));
+
+        assertPosition(bf, 50, graph.advance(new SchemePosition(graph, af, 50), 100));
+        assertPosition(af, 70, graph.advance(new SchemePosition(graph, bf, 20), -50));
+        assertPosition(ab, 30, graph.advance(new SchemePosition(graph, bb, 80), 50));
+        // Within the link and right onto its end
+        assertPosition(af, 60, graph.advance(new SchemePosition(graph, af, 50), 10));
+        assertPosition(af, 100, graph.advance(new SchemePosition(graph, af, 50), 50));
+        assertPosition(bf, 0, graph.advance(new SchemePosition(graph, bf, 50), -50));
+    }
+
+    @Test
+    void stopsAtTrackEnds() {
+        final SchemeLine a = new SchemeLine("A", at(0, 0), at(100, 0), 100);
+        final SchemeLine b = new SchemeLine("B", at(100, 0), at(200, 0), 100);
+        a.addBidirectionalExternalLink(a.getConnector2(), b.getConnector1());
+
+        final SchemeGraph graph = SchemeGraph.compile(0, List.of(a, b), List.of());
+        final int af = link(graph, a, true), bf = link(graph, b, true), bb = link(graph, b, false);
+
+        assertEquals(-1, graph.getNext(bf));
+        assertEquals(-1, graph.getPrevious(af));
+        assertEquals(-1, graph.getPrevious(bb));
+
+        assertPosition(bf, 100, graph.advance(new SchemePosition(graph, af, 50), 1000));
+        assertPosition(af, 0, graph.advance(new SchemePosition(graph, bf, 50), -1000));
+        assertPosition(link(graph, a, false), 100, graph.advance(new SchemePosition(graph, bb, 0), 1000));
+    }
+
+    @Test
+    void takesBranchOfSwitchState() {
+        final SchemeGraph graph = junction();
+        final int forward = link(graph, in, true), back = link(graph, in, false);
+        final int toStraight = link(graph, s.getRoot(), s.getStraight()), fromStraight = link(graph, s.getStraight(), s.getRoot());
+        final int toDiverging = link(graph, s.getRoot(), s.getDiverging()), fromDiverging = link(graph, s.getDiverging(), s.getRoot());
+
+        assertEquals(toStraight, graph.getNext(forward));
+        assertEquals(fromStraight, graph.getPrevious(back));
+        assertPosition(link(graph, low, true), 50, graph.advance(new SchemePosition(graph, forward, 50), 200));
+        assertPosition(fromStraight, 50, graph.advance(new SchemePosition(graph, back, 50), -100));
+
+        graph.setSwitchState("S", true);
+
+        assertEquals(toDiverging, graph.getNext(forward));
+        assertEquals(fromDiverging, graph.getPrevious(back));
+        assertPosition(link(graph, top, true), 30, graph.advance(new SchemePosition(graph, forward, 50), 200));
+        assertPosition(fromDiverging, 70, graph.advance(new SchemePosition(graph, back, 50), -100));
+
+        // Towards the root every branch goes on whatever the state
+        assertEquals(fromStraight, graph.getNext(link(graph, low, false)));
+        assertEquals(fromDiverging, graph.getNext(link(graph, top, false)));
+        assertPosition(back, 50, graph.advance(new SchemePosition(graph, link(graph, low, false), 150), 200));
+        assertPosition(back, 30, graph.advance(new SchemePosition(graph, link(graph, top, false), 150), 200));
+        assertEquals(toStraight, graph.getPrevious(link(graph, low, true)));
+        assertEquals(toDiverging, graph.getPrevious(link(graph, top, true)));
+
+        graph.setSwitchState("S", false);
+
+        assertEquals(toStraight, graph.getNext(forward));
+    }
+
+    @Test
+    void groupsLinksByConnector() {
+        final SchemeGraph graph = junction();
+
+        assertEquals(0, graph.getOutStart(0));
+        assertEquals(graph.getLinkCount(), graph.getOutStart(graph.getConnectorCount()));
+
+        for (int c = 0; c < graph.getConnectorCount(); c++) {
+            final List<Integer> expected = new ArrayList<>();
+            for (int l = 0; l < graph.getLinkCount(); l++)
+                if (graph.getFrom(l) == c)
+                    expected.add(l);
+
+            final List<Integer> actual = new ArrayList<>();
+            for (int i = graph.getOutStart(c); i < graph.getOutStart(c + 1); i++)
+                actual.add(graph.getOutLink(i));
+
+            assertEquals(expected, actual, "connector " + c);
+        }
+
+        // The root of the switch leads to both branches, a branch only back to the root
+        final int root = graph.getFrom(link(graph, s.getRoot(), s.getStraight()));
+        assertEquals(2, graph.getOutStart(root + 1) - graph.getOutStart(root));
+        final int straight = graph.getFrom(link(graph, s.getStraight(), s.getRoot()));
+        assertEquals(1, graph.getOutStart(straight + 1) - graph.getOutStart(straight));
+    }
+
+    @Test
+    void reversesEveryLink() {
+        final SchemeGraph graph = junction();
+
+        for (int l = 0; l < graph.getLinkCount(); l++) {
+            final int reverse = graph.getReverse(l);
+
+            assertTrue(reverse >= 0 && reverse != l);
+            assertEquals(graph.getFrom(l), graph.getTo(reverse));
+            assertEquals(graph.getTo(l), graph.getFrom(reverse));
+            assertSame(graph.getNode(l), graph.getNode(reverse));
+            assertEquals(l, graph.getReverse(reverse));
+        }
+
+        assertEquals(link(graph, in, false), graph.getReverse(link(graph, in, true)));
+        assertEquals(link(graph, s.getDiverging(), s.getRoot()), graph.getReverse(link(graph, s.getRoot(), s.getDiverging())));
+    }
+
+    @Test
+    void locatesPointInDirection() {
+        final SchemeGraph graph = junction();
+        final int forward = link(graph, low, true), back = link(graph, low, false);
+
+        assertPosition(forward, 50, graph.locate(at(150, 5), 1, 0, 20));
+        assertPosition(back, 150, graph.locate(at(150, 5), -1, 0, 20));
+        // Across the line the direction is a tie, the nearest link is taken as it is
+        assertEquals(link(graph, top, true), graph.locate(at(250, 45), 0.1, 1, 20).getLink());
+        assertNull(graph.locate(at(150, 25), 1, 0, 20));
+
+        // The direction of a position, also one on an earlier graph
+        final SchemeGraph edited = junction();
+        assertPosition(link(edited, low, false), 150,
+                edited.locate(new SchemePosition(graph, back, 10), at(150, -5), 20));
+        assertPosition(link(edited, in, true), 70,
+                edited.locate(new SchemePosition(graph, forward, 10), at(-30, 0), 20));
+    }
+
+    // The diverging branch goes up to (0, 100) and right to (100, 100): a path of 200 mm for a link of 100 mm
+    @Test
+    void spreadsLengthOverIntermediatePoints() {
+        final SchemeSwitch sw = new SchemeSwitch("S", at(0, 0), at(100, 0), 100, at(100, 100), 100, List.of(at(0, 100)));
+        final SchemeGraph graph = SchemeGraph.compile(0, List.of(sw), List.of());
+        final int to = link(graph, sw.getRoot(), sw.getDiverging()), from = link(graph, sw.getDiverging(), sw.getRoot());
+
+        assertEquals(0.5, graph.getLengthScale(), EPSILON);
+
+        assertCoords(0, 50, graph.getCoords(to, 25));
+        assertCoords(0, 100, graph.getCoords(to, 50));
+        assertCoords(50, 100, graph.getCoords(to, 75));
+        assertCoords(50, 100, graph.getCoords(from, 25));
+        assertCoords(0, 50, graph.getCoords(from, 75));
+        // Offsets out of the link stop at its ends
+        assertCoords(0, 0, graph.getCoords(to, -10));
+        assertCoords(100, 100, graph.getCoords(to, 110));
+
+        assertEquals(25, graph.getOffset(to, -10, 50), EPSILON);
+        assertEquals(75, graph.getOffset(to, 50, 110), EPSILON);
+        assertEquals(50, graph.getOffset(to, -10, 110), EPSILON);
+        assertEquals(25, graph.getOffset(from, 50, 90), EPSILON);
+        assertEquals(100, graph.getOffset(to, 200, 100), EPSILON);
+
+        for (double offset = 0; offset <= 100; offset += 5) {
+            final SchemeCoords coords = graph.getCoords(to, offset);
+
+            assertEquals(offset, graph.getOffset(to, coords.getX(), coords.getY()), EPSILON);
+            assertEquals(100 - offset, graph.getOffset(from, coords.getX(), coords.getY()), EPSILON);
+        }
+
+        // The straight branch has no points
+        assertCoords(40, 0, graph.getCoords(link(graph, sw.getRoot(), sw.getStraight()), 40));
+        assertEquals(60, graph.getOffset(link(graph, sw.getStraight(), sw.getRoot()), 40, 30), EPSILON);
+    }
+
+    private static void assertCoords(double x, double y, SchemeCoords coords) {
+        assertEquals(x, coords.getX(), EPSILON);
+        assertEquals(y, coords.getY(), EPSILON);
+    }
+
+    // Three words of state bits, every thread throws its own switches spread over all the words
+    @Test
+    void keepsStatesOfManySwitches() throws InterruptedException {
+        final int count = 150, threads = 6;
+        final List<SchemeNode> nodes = new ArrayList<>();
+
+        for (int i = 0; i < count; i++)
+            nodes.add(new SchemeSwitch("S" + i, at(i * 1000, 0), at(i * 1000 + 100, 0), 100, at(i * 1000 + 100, 50), 120, List.of()));
+
+        final SchemeGraph graph = SchemeGraph.compile(0, nodes, List.of());
+        assertEquals(count, graph.getSwitchCount());
+        assertEquals(3, graph.getSwitchStates().length);
+
+        for (int sw = 0; sw < count; sw++)
+            if (sw % 3 == 0)
+                graph.setSwitchState(graph.getSwitchId(sw), true);
+
+        for (int sw = 0; sw < count; sw++)
+            assertEquals(sw % 3 == 0, graph.getSwitchState(sw), "switch " + sw);
+
+        final long[] states = graph.getSwitchStates();
+        for (int sw = 0; sw < count; sw++)
+            assertEquals(sw % 3 == 0, (states[sw >>> 6] & (1L << sw)) != 0, "bit " + sw);
+
+        graph.setSwitchState(graph.getSwitchId(128), true);
+        graph.setSwitchState(graph.getSwitchId(63), false);
+        graph.setSwitchState("Unknown", true);
+        assertTrue(graph.getSwitchState(128));
+        assertFalse(graph.getSwitchState(63));
+        assertTrue(graph.getSwitchState(66));
+        assertFalse(graph.getSwitchState(64));
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int own = t;
+
+            workers.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                for (int round = 0; round < 20_000; round++)
+                    for (int sw = own; sw < count; sw += threads)
+                        graph.setSwitchState(graph.getSwitchId(sw), round % 2 == 0);
+            }));
+        }
+
+        workers.forEach(Thread::start);
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+
+        // The last round was odd, every switch is straight
+        for (int sw = 0; sw < count; sw++)
+            assertFalse(graph.getSwitchState(sw), "switch " + sw);
+    }
+}
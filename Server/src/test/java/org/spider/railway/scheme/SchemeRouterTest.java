@@ -0,0 +1,154 @@
+package org.spider.railway.scheme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemeRouterTest {
+    private static SchemeCoords at(double x, double y) {
+        return new SchemeCoords(x, y);
+    }
+
+    // The link of the node from one of its connectors to another
+    private static int link(SchemeGraph graph, SchemeConnector from, SchemeConnector to) {
+        for (int l = 0; l < graph.getLinkCount(); l++)
+            if (graph.getNode(l) == from.getNode()
+                    && graph.getX(graph.getFrom(l)) == from.getCoords().getX() && graph.getY(graph.getFrom(l)) == from.getCoords().getY()
+                    && graph.getX(graph.getTo(l)) == to.getCoords().getX() && graph.getY(graph.getTo(l)) == to.getCoords().getY())
+                return l;
+
+        throw new IllegalArgumentException("No link of " + from.getNode().getId());
+    }
+
+    private static int link(SchemeGraph graph, SchemeLine line, boolean forward) {
+        return forward
+                ? link(graph, line.getConnector1(), line.getConnector2())
+                : link(graph, line.getConnector2(), line.getConnector1());
+    }
+
+    // A balloon loop: the line A joins the root of the switch S, the line B goes from its straight branch round to its
+    // diverging one. B can only be left through the root, never from one branch to the other.
+    @Test
+    void neverPassesBranchToBranch() {
+        final SchemeLine a = new SchemeLine("A", at(0, 0), at(100, 0), 100);
+        final SchemeSwitch s = new SchemeSwitch("S", at(100, 0), at(200, 0), 100, at(200, 50), 120, List.of());
+        final SchemeLine b = new SchemeLine("B", at(200, 0), at(200, 50), 50);
+
+        s.addBidirectionalExternalLink(a.getConnector2(), s.getRoot());
+        s.addBidirectionalExternalLink(s.getStraight(), b.getConnector1());
+        s.addBidirectionalExternalLink(s.getDiverging(), b.getConnector2());
+
+        final SchemeGraph graph = SchemeGraph.compile(0, List.of(a, s, b), List.of());
+        final SchemeRouter router = new SchemeRouter(graph, 100);
+
+        assertArrayEquals(new int[] {
+                link(graph, a, true),
+                link(graph, s.getRoot(), s.getStraight()),
+                link(graph, b, true),
+                link(graph, s.getDiverging(), s.getRoot()),
+                link(graph, a, false)
+        }, router.route(link(graph, a, true), link(graph, a, false), graph.getSwitchStates()));
+
+        // Back on B would need the switch passed from the diverging branch to the straight one
+        assertNull(router.route(link(graph, b, true), link(graph, b, false), graph.getSwitchStates()));
+    }
+
+    // Two ways between the switches S1 and S2: the straight branches over Low, 400 mm, and the diverging ones over
+    // Top, 440 mm
+    @Test
+    void chargesSwitchesToThrow() {
+        final SchemeLine in = new SchemeLine("In", at(-100, 0), at(0, 0), 100);
+        final SchemeSwitch s1 = new SchemeSwitch("S1", at(0, 0), at(100, 0), 100, at(100, 50), 120, List.of());
+        final SchemeLine low = new SchemeLine("Low", at(100, 0), at(300, 0), 200);
+        final SchemeLine top = new SchemeLine("Top", at(100, 50), at(300, 50), 200);
+        final SchemeSwitch s2 = new SchemeSwitch("S2", at(400, 0), at(300, 0), 100, at(300, 50), 120, List.of());
+        final SchemeLine out = new SchemeLine("Out", at(400, 0), at(500, 0), 100);
+
+        s1.addBidirectionalExternalLink(in.getConnector2(), s1.getRoot());
+        s1.addBidirectionalExternalLink(s1.getStraight(), low.getConnector1());
+        s1.addBidirectionalExternalLink(s1.getDiverging(), top.getConnector1());
+        s2.addBidirectionalExternalLink(low.getConnector2(), s2.getStraight());
+        s2.addBidirectionalExternalLink(top.getConnector2(), s2.getDiverging());
+        s2.addBidirectionalExternalLink(s2.getRoot(), out.getConnector1());
+
+        final SchemeGraph graph = SchemeGraph.compile(0, List.of(in, s1, low, top, s2, out), List.of());
+        final int from = link(graph, in, true), to = link(graph, out, true);
+
+        assertArrayEquals(new int[] {
+                from,
+                link(graph, s1.getRoot(), s1.getStraight()),
+                link(graph, low, true),
+                link(graph, s2.getStraight(), s2.getRoot()),
+                to
+        }, new SchemeRouter(graph, 100).route(from, to, graph.getSwitchStates()));
+
+        graph.setSwitchState("S1", true);
+        graph.setSwitchState("S2", true);
+
+        // Low costs 400 + 2 * 100 now, more than Top
+        assertArrayEquals(new int[] {
+                from,
+                link(graph, s1.getRoot(), s1.getDiverging()),
+                link(graph, top, true),
+                link(graph, s2.getDiverging(), s2.getRoot()),
+                to
+        }, new SchemeRouter(graph, 100).route(from, to, graph.getSwitchStates()));
+
+        // Free switches, the shortest way whatever the states
+        assertEquals(link(graph, low, true), new SchemeRouter(graph, 0).route(from, to, graph.getSwitchStates())[2]);
+
+        // Only a large enough cost outweighs the 40 mm
+        assertEquals(link(graph, top, true), new SchemeRouter(graph, 21).route(from, to, graph.getSwitchStates())[2]);
+        assertEquals(link(graph, low, true), new SchemeRouter(graph, 19).route(from, to, graph.getSwitchStates())[2]);
+    }
+
+    @Test
+    void goesRoundToTheSameLink() {
+        final SchemeLine l0 = new SchemeLine("L0", at(0, 0), at(100, 0), 100);
+        final SchemeLine l1 = new SchemeLine("L1", at(100, 0), at(100, 100), 100);
+        final SchemeLine l2 = new SchemeLine("L2", at(100, 100), at(0, 100), 100);
+        final SchemeLine l3 = new SchemeLine("L3", at(0, 100), at(0, 0), 100);
+
+        l0.addBidirectionalExternalLink(l0.getConnector2(), l1.getConnector1());
+        l1.addBidirectionalExternalLink(l1.getConnector2(), l2.getConnector1());
+        l2.addBidirectionalExternalLink(l2.getConnector2(), l3.getConnector1());
+        l3.addBidirectionalExternalLink(l3.getConnector2(), l0.getConnector1());
+
+        final SchemeGraph graph = SchemeGraph.compile(0, List.of(l0, l1, l2, l3), List.of());
+        final SchemeRouter router = new SchemeRouter(graph, 100);
+        final int start = link(graph, l0, true);
+
+        assertArrayEquals(new int[] {start, link(graph, l1, true), link(graph, l2, true), link(graph, l3, true), start},
+                router.route(start, start, graph.getSwitchStates()));
+
+        final int back = link(graph, l0, false);
+
+        assertArrayEquals(new int[] {back, link(graph, l3, false), link(graph, l2, false), link(graph, l1, false), back},
+                router.route(back, back, graph.getSwitchStates()));
+    }
+
+    @Test
+    void findsNoRouteToUnreachableLink() {
+        final SchemeLine a = new SchemeLine("A", at(0, 0), at(100, 0), 100);
+        final SchemeLine b = new SchemeLine("B", at(100, 0), at(200, 0), 100);
+        final SchemeLine c = new SchemeLine("C", at(300, 0), at(400, 0), 100);
+
+        a.addBidirectionalExternalLink(a.getConnector2(), b.getConnector1());
+
+        final SchemeGraph graph = SchemeGraph.compile(0, List.of(a, b, c), List.of());
+        final SchemeRouter router = new SchemeRouter(graph, 100);
+
+        assertArrayEquals(new int[] {link(graph, a, true), link(graph, b, true)},
+                router.route(link(graph, a, true), link(graph, b, true), graph.getSwitchStates()));
+
+        // Not joined at all
+        assertNull(router.route(link(graph, a, true), link(graph, c, true), graph.getSwitchStates()));
+        // Joined, but behind the start: the route can't turn back at the dead end
+        assertNull(router.route(link(graph, b, true), link(graph, a, true), graph.getSwitchStates()));
+        assertNull(router.route(link(graph, a, true), link(graph, a, false), graph.getSwitchStates()));
+        // A dead end has no way round to itself
+        assertNull(router.route(link(graph, b, true), link(graph, b, true), graph.getSwitchStates()));
+    }
+}
@@ -0,0 +1,160 @@
+package org.spider.railway.statuses;
+
+import org.junit.jupiter.api.Test;
+import org.spider.railway.item.SchemeItem;
+import org.spider.railway.messaging.message.StatusMessage;
+import org.spider.railway.messaging.message.TrainStatusMessage;
+import org.spider.railway.utils.Utils;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusRingTest {
+    private static final int CAPACITY = 64;
+
+    private static final long FOREVER = Long.MAX_VALUE / 2;
+
+    // Sample N has the time, version and speed derived from N, so a torn sample does not match itself
+    private record Status(long n) implements TrainStatusMessage {
+        @Override
+        public String getId() {
+            return "T1";
+        }
+
+        @Override
+        public OffsetDateTime getTimestamp() {
+            return Utils.ofMillis(n * 10);
+        }
+
+        @Override
+        public OffsetDateTime getReceiveTimestamp() {
+            return Utils.ofMillis(n * 10);
+        }
+
+        @Override
+        public OffsetDateTime getCorrectedTimestamp() {
+            return Utils.ofMillis(n * 10);
+        }
+
+        @Override
+        public double getInternalTemp() {
+            return n % 50;
+        }
+
+        @Override
+        public long getVersion() {
+            return n;
+        }
+
+        @Override
+        public int getSpeed() {
+            return (int) (n % 1000);
+        }
+
+        @Override
+        public double getPower() {
+            return n % 7;
+        }
+
+        @Override
+        public OffsetDateTime getSchemeMarkerTime() {
+            return null;
+        }
+    }
+
+    private static void check(StatusRing.Snapshot snapshot, long fromMillis, long toMillis) {
+        final List<StatusMessage> messages = snapshot.messages();
+
+        for (int i = 0; i < messages.size(); i++) {
+            final TrainStatusMessage message = (TrainStatusMessage) messages.get(i);
+            final long n = message.getVersion();
+
+            assertEquals(n * 10, message.getCorrectedTimestampMillis());
+            assertEquals(n * 10, message.getTimestamp().toInstant().toEpochMilli());
+            assertEquals(n % 1000, message.getSpeed());
+            assertEquals(n % 7, message.getPower());
+            assertTrue(message.getCorrectedTimestampMillis() >= fromMillis && message.getCorrectedTimestampMillis() <= toMillis);
+
+            if (i > 0)
+                assertEquals(messages.get(i - 1).getVersion() + 1, n);
+        }
+
+        if (!messages.isEmpty()) {
+            assertTrue(snapshot.firstMillis() <= messages.get(0).getCorrectedTimestampMillis());
+            assertTrue(snapshot.lastMillis() >= messages.get(messages.size() - 1).getCorrectedTimestampMillis());
+        }
+    }
+
+    @Test
+    void readsFullRing() {
+        final StatusRing ring = new StatusRing("T1", SchemeItem.Type.TRAIN, CAPACITY);
+
+        assertNull(ring.read(0, FOREVER));
+
+        for (long n = 0; n < CAPACITY * 3 + 5; n++)
+            ring.add(new Status(n));
+
+        final StatusRing.Snapshot snapshot = ring.read(0, FOREVER);
+
+        assertNotNull(snapshot);
+        check(snapshot, 0, FOREVER);
+        // The oldest slot is the one the next add() overwrites and is left out
+        assertEquals(CAPACITY - 1, snapshot.messages().size());
+        assertEquals(snapshot.messages().get(0).getCorrectedTimestampMillis(), snapshot.firstMillis());
+        assertEquals((CAPACITY * 3 + 4) * 10L, snapshot.lastMillis());
+    }
+
+    @Test
+    void readsFullRingWhileWriting() throws InterruptedException {
+        final StatusRing ring = new StatusRing("T1", SchemeItem.Type.TRAIN, CAPACITY);
+        final long total = 2_000_000;
+
+        for (long n = 0; n < CAPACITY; n++)
+            ring.add(new Status(n));
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread writer = new Thread(() -> {
+            for (long n = CAPACITY; n < total; n++)
+                ring.add(new Status(n));
+        });
+
+        final Thread reader = new Thread(() -> {
+            try {
+                while (writer.isAlive()) {
+                    final StatusRing.Snapshot all = ring.read(0, FOREVER);
+
+                    if (all != null)
+                        check(all, 0, FOREVER);
+
+                    // A window around the tail, its start is about to be overwritten
+                    if (all != null && !all.messages().isEmpty()) {
+                        final long fromMillis = all.messages().get(0).getCorrectedTimestampMillis();
+                        final long toMillis = fromMillis + CAPACITY * 5L;
+                        final StatusRing.Snapshot window = ring.read(fromMillis, toMillis);
+
+                        if (window != null)
+                            check(window, fromMillis, toMillis);
+                    }
+                }
+            } catch (Throwable th) {
+                failure.set(th);
+            }
+        });
+
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+
+        if (failure.get() != null)
+            fail(failure.get());
+
+        final StatusRing.Snapshot snapshot = ring.read(0, FOREVER);
+        assertNotNull(snapshot);
+        check(snapshot, 0, FOREVER);
+        assertEquals(total - 1, snapshot.messages().get(snapshot.messages().size() - 1).getVersion());
+    }
+}
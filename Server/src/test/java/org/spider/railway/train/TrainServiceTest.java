@@ -0,0 +1,113 @@
+package org.spider.railway.train;
+
+import org.junit.jupiter.api.Test;
+import org.spider.railway.messaging.message.TrainStatusMessage;
+import org.spider.railway.scheme.SchemeCoords;
+import org.spider.railway.scheme.SchemeLine;
+import org.spider.railway.scheme.SchemeMarker;
+import org.spider.railway.scheme.SchemeService;
+import org.spider.railway.scheme.SchemeSwitchService;
+import org.spider.railway.utils.Utils;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrainServiceTest {
+    private static final double EPSILON = 1e-6;
+
+    // Status of the train T1 at the time in millis, the marker time is null or millis as well
+    private record Status(long millis, int speed, Long markerMillis) implements TrainStatusMessage {
+        @Override
+        public String getId() {
+            return "T1";
+        }
+
+        @Override
+        public OffsetDateTime getTimestamp() {
+            return Utils.ofMillis(millis);
+        }
+
+        @Override
+        public OffsetDateTime getReceiveTimestamp() {
+            return Utils.ofMillis(millis);
+        }
+
+        @Override
+        public OffsetDateTime getCorrectedTimestamp() {
+            return Utils.ofMillis(millis);
+        }
+
+        @Override
+        public double getInternalTemp() {
+            return 0;
+        }
+
+        @Override
+        public long getVersion() {
+            return millis;
+        }
+
+        @Override
+        public int getSpeed() {
+            return speed;
+        }
+
+        @Override
+        public double getPower() {
+            return 0;
+        }
+
+        @Override
+        public OffsetDateTime getSchemeMarkerTime() {
+            return markerMillis == null ? null : Utils.ofMillis(markerMillis);
+        }
+    }
+
+    private final SchemeService schemeService = new SchemeService(new SchemeSwitchService(null));
+
+    private final TrainService trainService = new TrainService(null, schemeService, 300);
+
+    private double update(long millis, int speed, Long markerMillis) {
+        trainService.updateStatus(new Status(millis, speed, markerMillis));
+
+        final SchemeCoords coords = trainService.getCoords("T1").block();
+        assertNotNull(coords);
+        assertEquals(0, coords.getY(), EPSILON);
+
+        return coords.getX();
+    }
+
+    // A straight line of 1000 mm with the marker in the middle, the train runs at 460 mm/s
+    @Test
+    void snapsToMarkerOnlyWhenMarkerTimeAdvances() {
+        schemeService.update(List.of(new SchemeLine("L", new SchemeCoords(0, 0), new SchemeCoords(1000, 0), 1000)),
+                List.of(new SchemeMarker(new SchemeCoords(500, 0))));
+
+        assertEquals(0, update(0, 460, null), EPSILON);
+        // Reckoned to 460, a new marker puts it on the marker
+        assertEquals(500, update(1000, 460, 1000L), EPSILON);
+        // The same marker time again, the train goes on from the marker
+        assertEquals(546, update(1100, 460, 1000L), EPSILON);
+        // An older marker time doesn't snap it back either
+        assertEquals(592, update(1200, 460, 500L), EPSILON);
+        // The next marker time does
+        assertEquals(500, update(1300, 460, 1300L), EPSILON);
+        // A status older than the last one is ignored
+        assertEquals(500, update(1250, 460, 1300L), EPSILON);
+        assertEquals(546, update(1400, 460, 1300L), EPSILON);
+    }
+
+    @Test
+    void stopsAtTrackEnd() {
+        schemeService.update(List.of(new SchemeLine("L", new SchemeCoords(0, 0), new SchemeCoords(1000, 0), 1000)),
+                List.of());
+
+        assertEquals(0, update(0, 200, null), EPSILON);
+        // The average of 200 and 600 for a second
+        assertEquals(400, update(1000, 600, null), EPSILON);
+        assertEquals(1000, update(3000, 600, null), EPSILON);
+        assertEquals(1000, update(4000, 600, null), EPSILON);
+    }
+}
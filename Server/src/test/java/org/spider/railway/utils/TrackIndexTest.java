@@ -0,0 +1,164 @@
+package org.spider.railway.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackIndexTest {
+    private static final double EPSILON = 1e-9;
+
+    private static final double TURN = 2 * Math.PI;
+
+    // Shape of the brute force scan: a segment, or an arc split over half a turn the same way as the index does it
+    private record Shape(int value, boolean arc, double a, double b, double c, double d, double sweep) {
+        double distance(double x, double y) {
+            if (!arc)
+                return Math.sqrt(Geometry.distanceToSegmentSquared(x, y, a, b, c, d));
+
+            // a, b: the center, c: the radius, d: the start angle
+            final double angle = Math.atan2(y - b, x - a);
+            final double along = sweep >= 0 ? floorMod(angle - d, TURN) : floorMod(d - angle, TURN);
+
+            if (along <= Math.abs(sweep))
+                return Math.abs(Math.hypot(x - a, y - b) - c);
+
+            return Math.min(Math.hypot(x - a - c * Math.cos(d), y - b - c * Math.sin(d)),
+                    Math.hypot(x - a - c * Math.cos(d + sweep), y - b - c * Math.sin(d + sweep)));
+        }
+    }
+
+    private static double floorMod(double x, double y) {
+        return x - Math.floor(x / y) * y;
+    }
+
+    private final List<Shape> shapes = new ArrayList<>();
+
+    private final TrackIndex.Builder<Integer> builder = TrackIndex.builder();
+
+    private void segment(int value, double ax, double ay, double bx, double by) {
+        shapes.add(new Shape(value, false, ax, ay, bx, by, 0));
+        builder.segment(value, ax, ay, bx, by);
+    }
+
+    private void arc(int value, double cx, double cy, double radius, double start, double sweep) {
+        split(value, cx, cy, radius, start, sweep);
+        builder.arc(value, cx, cy, radius, start, sweep);
+    }
+
+    private void split(int value, double cx, double cy, double radius, double start, double sweep) {
+        if (Math.abs(sweep) > Math.PI) {
+            split(value, cx, cy, radius, start, sweep / 2);
+            split(value, cx, cy, radius, start + sweep / 2, sweep / 2);
+        } else {
+            shapes.add(new Shape(value, true, cx, cy, radius, start, sweep));
+        }
+    }
+
+    private double[] distances(double x, double y) {
+        final double[] result = new double[shapes.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = shapes.get(i).distance(x, y);
+        Arrays.sort(result);
+
+        return result;
+    }
+
+    private boolean hasShape(int value, double distance, double x, double y) {
+        return shapes.stream().anyMatch(shape -> shape.value() == value && Math.abs(shape.distance(x, y) - distance) < EPSILON);
+    }
+
+    private void assertMatches(TrackIndex<Integer> index, double x, double y) {
+        final double[] expected = distances(x, y);
+
+        final TrackIndex.Hit<Integer> nearest = index.nearest(x, y);
+        assertNotNull(nearest);
+        assertEquals(expected[0], nearest.distance(), EPSILON);
+        assertTrue(hasShape(nearest.value(), nearest.distance(), x, y));
+
+        for (int k : new int[] {1, 5, 20, expected.length, expected.length + 10}) {
+            final List<TrackIndex.Hit<Integer>> hits = index.nearest(x, y, k);
+
+            assertEquals(Math.min(k, expected.length), hits.size());
+            for (int i = 0; i < hits.size(); i++) {
+                assertEquals(expected[i], hits.get(i).distance(), EPSILON, "k=" + k + ", hit " + i);
+                assertTrue(hasShape(hits.get(i).value(), hits.get(i).distance(), x, y));
+            }
+        }
+
+        for (double radius : new double[] {0, 10, 100, 400}) {
+            final List<TrackIndex.Hit<Integer>> hits = index.within(x, y, radius);
+            final long count = Arrays.stream(expected).filter(distance -> distance <= radius).count();
+
+            // A shape right on the radius may fall either way
+            assertTrue(Math.abs(hits.size() - count) <= Arrays.stream(expected)
+                    .filter(distance -> Math.abs(distance - radius) < EPSILON).count(), "radius=" + radius);
+            for (int i = 0; i < hits.size(); i++) {
+                assertEquals(expected[i], hits.get(i).distance(), EPSILON, "radius=" + radius + ", hit " + i);
+                assertTrue(hasShape(hits.get(i).value(), hits.get(i).distance(), x, y));
+            }
+        }
+    }
+
+    @Test
+    void matchesBruteForce() {
+        final Random random = new Random(37);
+        final List<double[]> centers = new ArrayList<>();
+
+        for (int value = 0; value < 300; value++) {
+            final double x = random.nextDouble() * 1000, y = random.nextDouble() * 1000;
+
+            if (random.nextBoolean()) {
+                segment(value, x, y, x + random.nextGaussian() * 50, y + random.nextGaussian() * 50);
+            } else {
+                // Sweeps up to almost a full turn both ways, so a part of them is split
+                final double sweep = (random.nextDouble() * 2 - 1) * 1.9 * Math.PI;
+                arc(value, x, y, 5 + random.nextDouble() * 60, (random.nextDouble() * 2 - 1) * TURN, sweep);
+                centers.add(new double[] {x, y});
+            }
+        }
+
+        final TrackIndex<Integer> index = builder.build();
+        assertEquals(shapes.size(), index.size());
+
+        for (int i = 0; i < 200; i++)
+            assertMatches(index, random.nextDouble() * 1200 - 100, random.nextDouble() * 1200 - 100);
+
+        for (double[] center : centers)
+            assertMatches(index, center[0], center[1]);
+    }
+
+    // Clockwise three quarters from the positive x axis: everything but the first quadrant
+    @Test
+    void measuresNegativeSweepOverHalfTurn() {
+        arc(0, 0, 0, 100, 0, -1.5 * Math.PI);
+        final TrackIndex<Integer> index = builder.build();
+
+        assertEquals(2, index.size());
+        // Outside the arc, the nearest points are its ends
+        assertEquals(100, index.nearest(100, 100).distance(), EPSILON);
+        assertEquals(Math.sqrt(2) * 100 - 100, index.nearest(-100, -100).distance(), EPSILON);
+        assertEquals(Math.sqrt(2) * 100 - 100, index.nearest(-100, 100).distance(), EPSILON);
+        // Every point of the arc is as far from the center
+        assertEquals(100, index.nearest(0, 0).distance(), EPSILON);
+        assertEquals(2, index.within(0, 0, 100).size());
+        assertTrue(index.within(0, 0, 99).isEmpty());
+
+        assertMatches(index, 100, 100);
+        assertMatches(index, 0, 0);
+    }
+
+    @Test
+    void findsNothingInEmptyIndex() {
+        final TrackIndex<Integer> index = builder.build();
+
+        assertNull(index.nearest(0, 0));
+        assertEquals(-1, index.nearestShape(0, 0, 100));
+        assertTrue(index.nearest(0, 0, 3).isEmpty());
+        assertTrue(index.within(0, 0, 100).isEmpty());
+    }
+}
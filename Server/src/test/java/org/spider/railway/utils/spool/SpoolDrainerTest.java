@@ -0,0 +1,87 @@
+package org.spider.railway.utils.spool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.spider.railway.messaging.parsers.BinarySerializer;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpoolDrainerTest {
+    private static final int ITEMS = 10;
+
+    public static class Item {
+        private final int value;
+
+        public Item(int value) {
+            this.value = value;
+        }
+
+        public int getValue() {
+            return value;
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private Spool<Item> spool() {
+        final Spool<Item> spool = new Spool<>(directory, "test", BinarySerializer.get(Item.class), 1 << 16, 0);
+        spool.append(IntStream.range(0, ITEMS).mapToObj(Item::new).toList());
+
+        return spool;
+    }
+
+    // Drains in batches of 4 giving up after 3 failures, until all the items are committed
+    private static Spool.Statistics drain(Spool<Item> spool, Function<List<Item>, Mono<?>> writer) throws InterruptedException {
+        final SpoolDrainer<Item> drainer = new SpoolDrainer<>(spool, "test", 4, 3, Duration.ofMillis(10), writer);
+
+        try {
+            final long deadline = System.currentTimeMillis() + 10_000L;
+
+            while (spool.getStatistics().committed() < ITEMS) {
+                assertTrue(System.currentTimeMillis() < deadline, "Not drained: " + spool.getStatistics());
+                Thread.sleep(10);
+            }
+
+            return spool.getStatistics();
+        } finally {
+            drainer.dispose();
+            spool.close();
+        }
+    }
+
+    @Test
+    void skipsItemTheStoreNeverAccepts() throws InterruptedException {
+        final List<Integer> stored = new CopyOnWriteArrayList<>();
+
+        final Spool.Statistics statistics = drain(spool(), items -> items.stream().anyMatch(item -> item.getValue() == 5)
+                ? Mono.error(new IllegalStateException("Poison"))
+                : Mono.fromRunnable(() -> items.forEach(item -> stored.add(item.getValue()))));
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 6, 7, 8, 9), stored);
+        assertEquals(1, statistics.skipped());
+        assertEquals(0, statistics.failures());
+    }
+
+    @Test
+    void repeatsBatchUntilStoreIsBack() throws InterruptedException {
+        final List<Integer> stored = new CopyOnWriteArrayList<>();
+        final AtomicInteger outage = new AtomicInteger(2);
+
+        final Spool.Statistics statistics = drain(spool(), items -> outage.getAndDecrement() > 0
+                ? Mono.error(new IllegalStateException("Unavailable"))
+                : Mono.fromRunnable(() -> items.forEach(item -> stored.add(item.getValue()))));
+
+        assertEquals(IntStream.range(0, ITEMS).boxed().toList(), stored);
+        assertEquals(0, statistics.skipped());
+    }
+}